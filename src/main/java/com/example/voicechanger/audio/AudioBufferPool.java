@@ -0,0 +1,230 @@
+package com.example.voicechanger.audio;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-classed pool of direct buffers for whole-clip audio (upload decode, DSP, encode), so a
+ * request leases a few buffers that are reused instead of allocating half a dozen full-size
+ * arrays. Classes are powers of two between {@code audio.buffer.min-class-bytes} and
+ * {@code max-class-bytes}; larger requests get an unpooled buffer. Idle buffers are kept up to
+ * {@code max-pooled-bytes} in total.
+ * <p>
+ * A {@link Lease} must be closed, after which its buffer (and any view of it) belongs to the
+ * next request. A lease that is garbage collected without being closed is counted and logged
+ * as a leak; set {@code audio.buffer.leak-trace} to record where it was taken.
+ */
+@Slf4j
+@Component
+public class AudioBufferPool {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final int minClassShift;
+    private final int maxClassShift;
+    private final long maxPooledBytes;
+    private final boolean leakTrace;
+    private final List<SizeClass> classes = new ArrayList<>();
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong oversize = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    private static class SizeClass {
+        final int size;
+        final ConcurrentLinkedDeque<ByteBuffer> idle = new ConcurrentLinkedDeque<>();
+        final AtomicInteger leased = new AtomicInteger();
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+    }
+
+    public AudioBufferPool(@Value("${audio.buffer.min-class-bytes:65536}") int minClassBytes,
+                           @Value("${audio.buffer.max-class-bytes:67108864}") int maxClassBytes,
+                           @Value("${audio.buffer.max-pooled-bytes:268435456}") long maxPooledBytes,
+                           @Value("${audio.buffer.leak-trace:false}") boolean leakTrace) {
+        this.minClassShift = ceilLog2(minClassBytes);
+        this.maxClassShift = Math.max(minClassShift, ceilLog2(maxClassBytes));
+        this.maxPooledBytes = maxPooledBytes;
+        this.leakTrace = leakTrace;
+        for (int shift = minClassShift; shift <= maxClassShift; shift++) {
+            classes.add(new SizeClass(1 << shift));
+        }
+    }
+
+    /**
+     * Lease a little-endian buffer of at least {@code bytes}, positioned at 0 with its limit at
+     * {@code bytes}. Contents are whatever the previous holder left.
+     */
+    public Lease lease(int bytes) {
+        leases.incrementAndGet();
+        int index = Math.max(0, ceilLog2(Math.max(1, bytes)) - minClassShift);
+        SizeClass sizeClass = index < classes.size() ? classes.get(index) : null;
+
+        ByteBuffer buffer = null;
+        if (sizeClass != null) {
+            buffer = sizeClass.idle.pollFirst();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-sizeClass.size);
+                reused.incrementAndGet();
+            }
+            sizeClass.leased.incrementAndGet();
+        } else {
+            oversize.incrementAndGet();
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(sizeClass != null ? sizeClass.size : bytes);
+            allocated.incrementAndGet();
+        }
+        buffer.clear().limit(bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return new Lease(buffer, sizeClass);
+    }
+
+    /**
+     * Lease a bigger buffer holding the first {@code old.buffer().position()} bytes of
+     * {@code old}, and close {@code old}. The new buffer is positioned after the copied bytes.
+     */
+    public Lease grow(Lease old, int minBytes) {
+        ByteBuffer source = old.buffer();
+        Lease bigger = lease(Math.max(minBytes, source.capacity() * 2));
+        bigger.buffer().limit(bigger.buffer().capacity());
+        bigger.buffer().put(source.duplicate().flip());
+        old.close();
+        return bigger;
+    }
+
+    private void release(ByteBuffer buffer, SizeClass sizeClass) {
+        if (sizeClass == null) return; // oversize, left to the GC
+        sizeClass.leased.decrementAndGet();
+        if (pooledBytes.addAndGet(sizeClass.size) > maxPooledBytes) {
+            pooledBytes.addAndGet(-sizeClass.size);
+            dropped.incrementAndGet();
+            return;
+        }
+        sizeClass.idle.offerFirst(buffer);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long total = leases.get();
+        stats.put("leases", total);
+        stats.put("reuseRate", total == 0 ? 0.0 : (double) reused.get() / total);
+        stats.put("allocated", allocated.get());
+        stats.put("oversize", oversize.get());
+        stats.put("dropped", dropped.get());
+        stats.put("leaks", leaks.get());
+        stats.put("pooledBytes", pooledBytes.get());
+
+        long leasedBytes = 0;
+        Map<String, Object> byClass = new LinkedHashMap<>();
+        for (SizeClass sizeClass : classes) {
+            int leased = sizeClass.leased.get();
+            int idle = sizeClass.idle.size();
+            leasedBytes += (long) leased * sizeClass.size;
+            if (leased > 0 || idle > 0) {
+                byClass.put(sizeClass.size / 1024 + "KiB", Map.of("leased", leased, "idle", idle));
+            }
+        }
+        stats.put("leasedBytes", leasedBytes);
+        stats.put("classes", byClass);
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                stats.put("jvmDirectBytes", pool.getMemoryUsed());
+            }
+        }
+        return stats;
+    }
+
+    private static int ceilLog2(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, value) - 1);
+    }
+
+    /**
+     * Return-or-report action, kept apart from the {@link Lease} so the cleaner can run it
+     * once the lease is unreachable.
+     */
+    private class Reclaim implements Runnable {
+        final ByteBuffer buffer;
+        final SizeClass sizeClass;
+        final Throwable site;
+        volatile boolean closed;
+
+        Reclaim(ByteBuffer buffer, SizeClass sizeClass, Throwable site) {
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+            this.site = site;
+        }
+
+        @Override
+        public void run() {
+            if (closed) {
+                release(buffer, sizeClass);
+                return;
+            }
+            // Views of the buffer may still be alive, so it is not put back
+            leaks.incrementAndGet();
+            if (sizeClass != null) sizeClass.leased.decrementAndGet();
+            if (site != null) {
+                log.warn("⚠️ Audio buffer of {} bytes was never returned to the pool, leased at:", buffer.capacity(), site);
+            } else {
+                log.warn("⚠️ Audio buffer of {} bytes was never returned to the pool (set audio.buffer.leak-trace=true to see where)",
+                        buffer.capacity());
+            }
+        }
+    }
+
+    public final class Lease implements AutoCloseable {
+
+        private final ByteBuffer buffer;
+        private final Reclaim reclaim;
+        private final Cleaner.Cleanable cleanable;
+
+        private Lease(ByteBuffer buffer, SizeClass sizeClass) {
+            this.buffer = buffer;
+            this.reclaim = new Reclaim(buffer, sizeClass, leakTrace ? new Throwable("lease") : null);
+            this.cleanable = CLEANER.register(this, reclaim);
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * 16-bit samples in {@code [0, limit)} of the buffer.
+         */
+        public ShortBuffer samples() {
+            return buffer.duplicate().position(0).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        }
+
+        public int sampleCount() {
+            return buffer.limit() / 2;
+        }
+
+        @Override
+        public void close() {
+            reclaim.closed = true;
+            cleanable.clean(); // runs at most once
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.voicechanger.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * ITU-T G.711 companding (mu-law and A-law), as found in telephony WAV files and raw call
+ * audio. Both directions are table lookups: 256 entries to decode, and to encode one entry
+ * per value of the 14-bit (mu-law) or 13-bit (A-law) input the codec actually resolves.
+ */
+public final class G711 {
+
+    private static final int CHUNK = 4096;
+    private static final short[] ULAW_TO_LINEAR = new short[256];
+    private static final short[] ALAW_TO_LINEAR = new short[256];
+    private static final byte[] LINEAR_TO_ULAW = new byte[1 << 14];
+    private static final byte[] LINEAR_TO_ALAW = new byte[1 << 13];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            ULAW_TO_LINEAR[i] = ulawToLinear(i);
+            ALAW_TO_LINEAR[i] = alawToLinear(i);
+        }
+        for (int i = 0; i < LINEAR_TO_ULAW.length; i++) {
+            LINEAR_TO_ULAW[i] = linearToUlaw((short) (i << 2) >> 2); // index is the top 14 bits, sign included
+        }
+        for (int i = 0; i < LINEAR_TO_ALAW.length; i++) {
+            LINEAR_TO_ALAW[i] = linearToAlaw((short) (i << 3) >> 3);
+        }
+    }
+
+    private G711() {
+    }
+
+    public static short ulawDecode(byte code) {
+        return ULAW_TO_LINEAR[code & 0xFF];
+    }
+
+    public static short alawDecode(byte code) {
+        return ALAW_TO_LINEAR[code & 0xFF];
+    }
+
+    public static byte ulawEncode(short sample) {
+        return LINEAR_TO_ULAW[(sample >> 2) & 0x3FFF];
+    }
+
+    public static byte alawEncode(short sample) {
+        return LINEAR_TO_ALAW[(sample >> 3) & 0x1FFF];
+    }
+
+    /**
+     * Decode {@code length} mu-law bytes into {@code out} from its position, a chunk at a time
+     * and bulk-copied, which matters for direct buffers.
+     */
+    public static void ulawDecode(byte[] in, int offset, int length, ShortBuffer out) {
+        decode(in, offset, length, out, ULAW_TO_LINEAR);
+    }
+
+    public static void alawDecode(byte[] in, int offset, int length, ShortBuffer out) {
+        decode(in, offset, length, out, ALAW_TO_LINEAR);
+    }
+
+    /**
+     * Encode the remaining samples of {@code in} (without moving it) to mu-law bytes in
+     * {@code out} from {@code offset}.
+     */
+    public static void ulawEncode(ShortBuffer in, byte[] out, int offset) {
+        encode(in, out, offset, LINEAR_TO_ULAW, 2, 0x3FFF);
+    }
+
+    public static void alawEncode(ShortBuffer in, byte[] out, int offset) {
+        encode(in, out, offset, LINEAR_TO_ALAW, 3, 0x1FFF);
+    }
+
+    private static void decode(byte[] in, int offset, int length, ShortBuffer out, short[] table) {
+        int base = out.position();
+        short[] chunk = new short[Math.min(length, CHUNK)];
+        for (int done = 0; done < length; done += chunk.length) {
+            int count = Math.min(chunk.length, length - done);
+            for (int i = 0; i < count; i++) {
+                chunk[i] = table[in[offset + done + i] & 0xFF];
+            }
+            out.put(base + done, chunk, 0, count);
+        }
+    }
+
+    private static void encode(ShortBuffer in, byte[] out, int offset, byte[] table, int shift, int mask) {
+        int start = in.position();
+        int length = in.remaining();
+        short[] chunk = new short[Math.min(length, CHUNK)];
+        for (int done = 0; done < length; done += chunk.length) {
+            int count = Math.min(chunk.length, length - done);
+            in.get(start + done, chunk, 0, count);
+            for (int i = 0; i < count; i++) {
+                out[offset + done + i] = table[(chunk[i] >> shift) & mask];
+            }
+        }
+    }
+
+    private static short ulawToLinear(int code) {
+        int u = ~code & 0xFF;
+        int exponent = (u >> 4) & 0x07;
+        int magnitude = (((u & 0x0F) << 3) + 0x84) << exponent;
+        return (short) ((u & 0x80) != 0 ? 0x84 - magnitude : magnitude - 0x84);
+    }
+
+    private static short alawToLinear(int code) {
+        int a = code ^ 0x55;
+        int exponent = (a >> 4) & 0x07;
+        int mantissa = (a & 0x0F) << 4;
+        int magnitude = exponent == 0 ? mantissa + 8 : (mantissa + 0x108) << (exponent - 1);
+        return (short) ((a & 0x80) != 0 ? magnitude : -magnitude);
+    }
+
+    /**
+     * Reference mu-law encoder for a 14-bit sample (ITU-T G.711 / the Sun g711.c layout).
+     */
+    private static byte linearToUlaw(int sample) {
+        int mask;
+        if (sample < 0) {
+            sample = -sample;
+            mask = 0x7F;
+        } else {
+            mask = 0xFF;
+        }
+        sample = Math.min(sample, 8159) + (0x84 >> 2);
+        int segment = 0;
+        while (segment < 8 && sample >= 0x40 << segment) {
+            segment++;
+        }
+        if (segment >= 8) {
+            return (byte) (0x7F ^ mask);
+        }
+        return (byte) (((segment << 4) | ((sample >> (segment + 1)) & 0x0F)) ^ mask);
+    }
+
+    /**
+     * Reference A-law encoder for a 13-bit sample.
+     */
+    private static byte linearToAlaw(int sample) {
+        int mask;
+        if (sample >= 0) {
+            mask = 0xD5;
+        } else {
+            mask = 0x55;
+            sample = -sample - 1;
+        }
+        int segment = 0;
+        while (segment < 8 && sample >= 0x20 << segment) {
+            segment++;
+        }
+        if (segment >= 8) {
+            return (byte) (0x7F ^ mask);
+        }
+        int mantissa = segment < 2 ? (sample >> 1) & 0x0F : (sample >> segment) & 0x0F;
+        return (byte) (((segment << 4) | mantissa) ^ mask);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.voicechanger.audio;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming polyphase windowed-sinc sample-rate converter for mono float audio.
+ * <p>
+ * The rate ratio is reduced to {@code L/M}; each of the {@code L} phases has its own
+ * Kaiser-windowed sinc kernel, cut off at 0.45 of the lower of the two rates with about
+ * 90 dB of stopband, so downsampling to 8 kHz does not fold the upper band back into the
+ * voice. Ratios that would need more than {@value #MAX_PHASES} phases (odd rates such as
+ * 44056 Hz) use the nearest of {@value #MAX_PHASES} phases, a timing error under
+ * 1/{@value #MAX_PHASES} of a sample.
+ * <p>
+ * Input can arrive in blocks of any size: the converter keeps the filter history between
+ * calls, and {@link #flush} drains the tail once the input has ended. Not thread safe; use
+ * one instance per stream.
+ */
+public final class Resampler {
+
+    static final int MAX_PHASES = 512;
+    private static final int ZERO_CROSSINGS = 16;
+    private static final double ROLLOFF = 0.9;
+    private static final double KAISER_BETA = 8.6;
+    // Filter banks by rate pair, least recently used first; a handful of pairs cover every
+    // upload, so the bank for an odd rate is evicted rather than kept forever
+    static final int CACHE_FLOATS = 4 << 20;
+    private static final LinkedHashMap<Long, float[]> KERNELS = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedFloats;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int phases;
+    private final long step; // input advance per output, in 1/phases of an input sample
+    private final int taps;
+    private final float[] kernels; // phases x taps
+
+    private float[] history;
+    private int buffered; // valid samples in history
+    private long time; // position of the next output relative to history[taps / 2 - 1], in 1/phases
+
+    public Resampler(int inputRate, int outputRate) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive: " + inputRate + " -> " + outputRate);
+        }
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        int gcd = gcd(inputRate, outputRate);
+        if (outputRate / gcd <= MAX_PHASES) {
+            this.phases = outputRate / gcd;
+            this.step = inputRate / gcd;
+        } else {
+            this.phases = MAX_PHASES;
+            this.step = Math.round((double) inputRate * MAX_PHASES / outputRate);
+        }
+
+        // Equal rates keep the full band, which makes every kernel a unit impulse
+        double scale = inputRate == outputRate ? 1.0 : Math.min(1.0, (double) outputRate / inputRate) * ROLLOFF;
+        int half = (int) Math.ceil(ZERO_CROSSINGS / scale);
+        this.taps = 2 * half;
+        if ((long) phases * taps > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Rate ratio too large: " + inputRate + " -> " + outputRate);
+        }
+        this.kernels = kernels((long) inputRate << 32 | outputRate, phases, half, scale);
+        reset();
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    /**
+     * Forget all buffered input; the next sample starts a new stream.
+     */
+    public void reset() {
+        history = new float[Math.max(2 * taps, 4096)];
+        buffered = taps / 2 - 1; // zero lead-in so the first output is centred on input 0
+        time = 0;
+    }
+
+    /**
+     * Upper bound on what one {@link #process} call writes for {@code inputLength} samples.
+     */
+    public int maxOutput(int inputLength) {
+        // between calls fewer than taps samples stay buffered
+        return (int) (((long) taps + inputLength) * phases / step) + 2;
+    }
+
+    /**
+     * Upper bound on what {@link #flush} writes.
+     */
+    public int maxFlush() {
+        return maxOutput(taps);
+    }
+
+    /**
+     * Feed {@code length} samples and write every output that they complete.
+     *
+     * @return the number of samples written to {@code out} from {@code outOffset}
+     */
+    public int process(float[] in, int offset, int length, float[] out, int outOffset) {
+        append(in, offset, length);
+        return drain(out, outOffset);
+    }
+
+    /**
+     * End of input: pad with silence until the last input sample has been fully used.
+     */
+    public int flush(float[] out, int outOffset) {
+        int lead = taps / 2 - 1;
+        long end = (long) (buffered - lead) * phases; // time just past the last real input
+        append(new float[taps], 0, taps);
+        int written = 0;
+        while (time < end) {
+            int n = drainOne(out, outOffset + written);
+            if (n == 0) break;
+            written++;
+        }
+        reset();
+        return written;
+    }
+
+    private void append(float[] in, int offset, int length) {
+        if (buffered + length > history.length) {
+            float[] grown = new float[Math.max(history.length * 2, buffered + length)];
+            System.arraycopy(history, 0, grown, 0, buffered);
+            history = grown;
+        }
+        System.arraycopy(in, offset, history, buffered, length);
+        buffered += length;
+    }
+
+    private int drain(float[] out, int outOffset) {
+        int written = 0;
+        while (drainOne(out, outOffset + written) != 0) {
+            written++;
+        }
+        // Keep only what the next output still needs
+        int first = (int) (time / phases);
+        if (first > 0) {
+            System.arraycopy(history, first, history, 0, buffered - first);
+            buffered -= first;
+            time -= (long) first * phases;
+        }
+        return written;
+    }
+
+    private int drainOne(float[] out, int index) {
+        int base = (int) (time / phases);
+        if (base + taps > buffered) {
+            return 0;
+        }
+        int phase = (int) (time - (long) base * phases);
+        out[index] = dot(history, base, kernels, phase * taps, taps);
+        time += step;
+        return 1;
+    }
+
+    /**
+     * Four independent accumulators so the sums do not serialise on one add chain.
+     */
+    private static float dot(float[] x, int xOffset, float[] h, int hOffset, int n) {
+        float a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+        int k = 0;
+        for (; k + 3 < n; k += 4) {
+            a0 += x[xOffset + k] * h[hOffset + k];
+            a1 += x[xOffset + k + 1] * h[hOffset + k + 1];
+            a2 += x[xOffset + k + 2] * h[hOffset + k + 2];
+            a3 += x[xOffset + k + 3] * h[hOffset + k + 3];
+        }
+        for (; k < n; k++) {
+            a0 += x[xOffset + k] * h[hOffset + k];
+        }
+        return (a0 + a1) + (a2 + a3);
+    }
+
+    private static float[] kernels(long key, int phases, int half, double scale) {
+        synchronized (KERNELS) {
+            float[] cached = KERNELS.get(key);
+            if (cached != null) return cached;
+        }
+        float[] built = buildKernels(phases, half, scale); // outside the lock; a racing build is only wasted work
+        synchronized (KERNELS) {
+            if (KERNELS.putIfAbsent(key, built) == null) {
+                cachedFloats += built.length;
+                Iterator<float[]> eldest = KERNELS.values().iterator();
+                while (cachedFloats > CACHE_FLOATS && KERNELS.size() > 1) {
+                    cachedFloats -= eldest.next().length;
+                    eldest.remove();
+                }
+            }
+            return KERNELS.getOrDefault(key, built);
+        }
+    }
+
+    static long cachedKernelFloats() {
+        synchronized (KERNELS) {
+            return cachedFloats;
+        }
+    }
+
+    private static float[] buildKernels(int phases, int half, double scale) {
+        int taps = 2 * half;
+        float[] kernels = new float[phases * taps];
+        double i0Beta = besselI0(KAISER_BETA);
+        double width = half + 1;
+        for (int p = 0; p < phases; p++) {
+            double frac = (double) p / phases;
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                // tap k weighs input sample (n - half + 1 + k) for an output at n + frac
+                double t = frac - (k - half + 1);
+                double x = t / width;
+                double window = Math.abs(x) >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - x * x)) / i0Beta;
+                double value = scale * sinc(scale * t) * window;
+                kernels[p * taps + k] = (float) value;
+                sum += value;
+            }
+            for (int k = 0; k < taps; k++) {
+                kernels[p * taps + k] /= (float) sum; // unity gain at DC for every phase
+            }
+        }
+        return kernels;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) return 1;
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1, term = 1, q = x * x / 4;
+        for (int k = 1; k < 50; k++) {
+            term *= q / (k * (double) k);
+            sum += term;
+            if (term < 1e-12 * sum) break;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.voicechanger.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A RIFF/WAVE file parsed in place: one pass over the chunk list to find {@code fmt } and
+ * {@code data}, with the sample data left in the caller's array and decoded straight into a
+ * mono or interleaved target buffer. Handles 8/16/24/32-bit PCM, 32/64-bit float, mu-law and A-law, in plain
+ * or {@code WAVE_FORMAT_EXTENSIBLE} headers, and skips unknown and odd-sized chunks.
+ * A data chunk that runs past the end of the file (streamed WAVs) is cut to what is there.
+ */
+public final class WavFile {
+
+    public enum Encoding {PCM_U8, PCM_S16, PCM_S24, PCM_S32, FLOAT_32, FLOAT_64, ALAW, MULAW}
+
+    /** Source rates accepted, in Hz; anything outside is rejected as a broken header. */
+    public static final int MIN_SAMPLE_RATE = 4000;
+    public static final int MAX_SAMPLE_RATE = 384000;
+
+    private static final int FORMAT_PCM = 0x0001;
+    private static final int FORMAT_FLOAT = 0x0003;
+    private static final int FORMAT_ALAW = 0x0006;
+    private static final int FORMAT_MULAW = 0x0007;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int CHUNK_FRAMES = 4096;
+
+    private final byte[] bytes;
+    private final int formatTag;
+    private final Encoding encoding;
+    private final int channels;
+    private final int sampleRate;
+    private final int bitsPerSample;
+    private final int blockAlign;
+    private final int dataOffset;
+    private final int dataLength;
+
+    private WavFile(byte[] bytes, int formatTag, Encoding encoding, int channels, int sampleRate,
+                    int bitsPerSample, int blockAlign, int dataOffset, int dataLength) {
+        this.bytes = bytes;
+        this.formatTag = formatTag;
+        this.encoding = encoding;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        this.blockAlign = blockAlign;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    public static boolean isRiff(byte[] data) {
+        return data.length >= 12
+                && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'A' && data[10] == 'V' && data[11] == 'E';
+    }
+
+    /**
+     * @throws IOException if this is not a WAV file or its fmt/data chunks are missing or broken
+     */
+    public static WavFile parse(byte[] data) throws IOException {
+        if (!isRiff(data)) {
+            throw new IOException("Invalid WAV format: no RIFF/WAVE header");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        int formatTag = -1, channels = 0, sampleRate = 0, blockAlign = 0, bitsPerSample = 0;
+        int dataOffset = -1, dataLength = 0;
+        int pos = 12;
+        while (pos + 8 <= data.length && (formatTag < 0 || dataOffset < 0)) {
+            int id = in.getInt(pos);
+            long size = in.getInt(pos + 4) & 0xFFFFFFFFL;
+            int body = pos + 8;
+            if (id == fourCc("fmt ")) {
+                if (size < 16 || body + 16 > data.length) {
+                    throw new IOException("Invalid WAV format: short fmt chunk");
+                }
+                formatTag = in.getShort(body) & 0xFFFF;
+                channels = in.getShort(body + 2) & 0xFFFF;
+                sampleRate = in.getInt(body + 4);
+                blockAlign = in.getShort(body + 12) & 0xFFFF;
+                bitsPerSample = in.getShort(body + 14) & 0xFFFF;
+                if (formatTag == FORMAT_EXTENSIBLE && size >= 40 && body + 26 <= data.length) {
+                    formatTag = in.getShort(body + 24) & 0xFFFF; // first two bytes of the sub-format GUID
+                }
+            } else if (id == fourCc("data")) {
+                dataOffset = body;
+                dataLength = (int) Math.min(size, data.length - body);
+            }
+            pos = (int) Math.min(Integer.MAX_VALUE, body + size + (size & 1)); // chunks are word aligned
+        }
+        if (formatTag < 0 || dataOffset < 0) {
+            throw new IOException("Invalid WAV format: missing " + (formatTag < 0 ? "fmt" : "data") + " chunk");
+        }
+        if (channels == 0 || !isSupportedRate(sampleRate)) {
+            throw new IOException("Invalid WAV format: " + channels + " channels at " + sampleRate + " Hz");
+        }
+
+        Encoding encoding = encodingOf(formatTag, bitsPerSample);
+        int frameBytes = channels * ((bitsPerSample + 7) / 8);
+        if (blockAlign < frameBytes) {
+            blockAlign = frameBytes;
+        }
+        if (blockAlign == 0) {
+            // Neither the header nor the sample size gives a frame size to count frames by
+            throw new IOException("Invalid WAV format: no block align or bits per sample");
+        }
+        return new WavFile(data, formatTag, encoding, channels, sampleRate, bitsPerSample, blockAlign, dataOffset, dataLength);
+    }
+
+    /**
+     * Whether a source rate is one this service converts; the header comes from the client,
+     * and the resampler's filter bank grows with the ratio of the rates.
+     */
+    public static boolean isSupportedRate(double sampleRate) {
+        return sampleRate >= MIN_SAMPLE_RATE && sampleRate <= MAX_SAMPLE_RATE;
+    }
+
+    private static Encoding encodingOf(int formatTag, int bits) {
+        return switch (formatTag) {
+            case FORMAT_PCM -> switch (bits) {
+                case 8 -> Encoding.PCM_U8;
+                case 16 -> Encoding.PCM_S16;
+                case 24 -> Encoding.PCM_S24;
+                case 32 -> Encoding.PCM_S32;
+                default -> null;
+            };
+            case FORMAT_FLOAT -> bits == 32 ? Encoding.FLOAT_32 : bits == 64 ? Encoding.FLOAT_64 : null;
+            case FORMAT_ALAW -> bits == 8 ? Encoding.ALAW : null;
+            case FORMAT_MULAW -> bits == 8 ? Encoding.MULAW : null;
+            default -> null;
+        };
+    }
+
+    private static int fourCc(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+
+    /**
+     * Whether {@link #decodeMono} can decode this file; other codecs (ADPCM, GSM...) need an
+     * external decoder.
+     */
+    public boolean isSupported() {
+        return encoding != null;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public int getFormatTag() {
+        return formatTag;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public int getFrames() {
+        return dataLength / blockAlign;
+    }
+
+    /**
+     * The sample data, as a little-endian view of the parsed array (no copy).
+     */
+    public ByteBuffer data() {
+        return ByteBuffer.wrap(bytes, dataOffset, getFrames() * blockAlign).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Decode {@link #getFrames()} frames as 16-bit samples into {@code out} from its position,
+     * averaging channels down to mono. Already 16-bit mono data is one bulk copy; everything
+     * else is decoded a chunk at a time and bulk-copied, which matters for direct buffers.
+     */
+    public void decodeMono(ShortBuffer out) {
+        requireSupported();
+        int frames = getFrames();
+        int base = out.position();
+        if (encoding == Encoding.PCM_S16 && channels == 1) {
+            out.put(base, data().asShortBuffer(), 0, frames);
+            return;
+        }
+        short[] chunk = new short[Math.min(frames, CHUNK_FRAMES)];
+        for (int done = 0; done < frames; done += chunk.length) {
+            int count = Math.min(chunk.length, frames - done);
+            decodeChunk(dataOffset + done * blockAlign, count, chunk);
+            out.put(base + done, chunk, 0, count);
+        }
+    }
+
+    /**
+     * Decode {@link #getFrames()} frames as floats in [-1, 1) into {@code out} from its
+     * position, averaging channels down to mono.
+     */
+    public void decodeMono(FloatBuffer out) {
+        int frames = getFrames();
+        int base = out.position();
+        float[] chunk = new float[Math.min(frames, CHUNK_FRAMES)];
+        for (int done = 0; done < frames; done += chunk.length) {
+            int count = decodeMono(done, chunk, 0, Math.min(chunk.length, frames - done));
+            out.put(base + done, chunk, 0, count);
+        }
+    }
+
+    /**
+     * Decode up to {@code count} frames from {@code firstFrame} as floats in [-1, 1),
+     * averaging channels down to mono, for callers that stream the file a block at a time.
+     *
+     * @return the number of frames decoded, 0 past the end
+     */
+    public int decodeMono(int firstFrame, float[] out, int offset, int count) {
+        requireSupported();
+        count = Math.max(0, Math.min(count, getFrames() - firstFrame));
+        for (int i = 0, pos = dataOffset + firstFrame * blockAlign; i < count; i++, pos += blockAlign) {
+            out[offset + i] = mix(pos) / 32768f;
+        }
+        return count;
+    }
+
+    /**
+     * Decode {@link #getFrames()} frames as interleaved 16-bit samples, every channel kept,
+     * into {@code out} from its position. 16-bit data is one bulk copy.
+     */
+    public void decode(ShortBuffer out) {
+        requireSupported();
+        int frames = getFrames();
+        int base = out.position();
+        if (encoding == Encoding.PCM_S16 && blockAlign == 2 * channels) {
+            out.put(base, data().asShortBuffer(), 0, frames * channels);
+            return;
+        }
+        int chunkFrames = Math.min(frames, CHUNK_FRAMES);
+        short[] chunk = new short[chunkFrames * channels];
+        int step = blockAlign / channels;
+        for (int done = 0; done < frames; done += chunkFrames) {
+            int count = Math.min(chunkFrames, frames - done);
+            for (int i = 0, pos = dataOffset + done * blockAlign; i < count; i++, pos += blockAlign) {
+                for (int c = 0; c < channels; c++) {
+                    chunk[i * channels + c] = (short) Math.max(Short.MIN_VALUE,
+                            Math.min(Short.MAX_VALUE, Math.round(sample(pos + c * step))));
+                }
+            }
+            out.put(base + done * channels, chunk, 0, count * channels);
+        }
+    }
+
+    /**
+     * Decode up to {@code count} frames from {@code firstFrame} as interleaved floats in
+     * [-1, 1), every channel kept: {@code count * getChannels()} values from {@code offset}.
+     *
+     * @return the number of frames decoded, 0 past the end
+     */
+    public int decode(int firstFrame, float[] out, int offset, int count) {
+        requireSupported();
+        count = Math.max(0, Math.min(count, getFrames() - firstFrame));
+        int step = blockAlign / channels;
+        for (int i = 0, pos = dataOffset + firstFrame * blockAlign; i < count; i++, pos += blockAlign) {
+            for (int c = 0; c < channels; c++) {
+                out[offset + i * channels + c] = sample(pos + c * step) / 32768f;
+            }
+        }
+        return count;
+    }
+
+    private void decodeChunk(int pos, int count, short[] out) {
+        byte[] b = bytes;
+        if (channels == 1) {
+            switch (encoding) {
+                case PCM_U8 -> {
+                    for (int i = 0; i < count; i++) out[i] = (short) (((b[pos + i] & 0xFF) - 128) << 8);
+                    return;
+                }
+                case MULAW -> {
+                    for (int i = 0; i < count; i++) out[i] = G711.ulawDecode(b[pos + i]);
+                    return;
+                }
+                case ALAW -> {
+                    for (int i = 0; i < count; i++) out[i] = G711.alawDecode(b[pos + i]);
+                    return;
+                }
+                default -> {
+                }
+            }
+        } else if (encoding == Encoding.PCM_S16 && channels == 2) {
+            for (int i = 0; i < count; i++, pos += blockAlign) {
+                int left = (short) ((b[pos] & 0xFF) | b[pos + 1] << 8);
+                int right = (short) ((b[pos + 2] & 0xFF) | b[pos + 3] << 8);
+                out[i] = (short) ((left + right) / 2);
+            }
+            return;
+        } else if (encoding == Encoding.PCM_S16) {
+            for (int i = 0; i < count; i++, pos += blockAlign) {
+                int sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += (short) ((b[pos + 2 * c] & 0xFF) | b[pos + 2 * c + 1] << 8);
+                }
+                out[i] = (short) (sum / channels);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++, pos += blockAlign) {
+            out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(mix(pos))));
+        }
+    }
+
+    private void requireSupported() {
+        if (encoding == null) {
+            throw new IllegalStateException("Unsupported WAV encoding: format 0x"
+                    + Integer.toHexString(formatTag) + ", " + bitsPerSample + " bits");
+        }
+    }
+
+    /**
+     * Mean of one frame's channels, on the 16-bit scale.
+     */
+    private float mix(int pos) {
+        if (channels == 1) {
+            return sample(pos);
+        }
+        int step = blockAlign / channels;
+        float sum = 0;
+        for (int c = 0; c < channels; c++) {
+            sum += sample(pos + c * step);
+        }
+        return sum / channels;
+    }
+
+    private float sample(int pos) {
+        byte[] b = bytes;
+        return switch (encoding) {
+            case PCM_U8 -> ((b[pos] & 0xFF) - 128) << 8;
+            case PCM_S16 -> (short) ((b[pos] & 0xFF) | b[pos + 1] << 8);
+            case PCM_S24 -> ((b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | b[pos + 2] << 16) / 256f;
+            case PCM_S32 -> ((b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | b[pos + 3] << 24) / 65536f;
+            case FLOAT_32 -> Float.intBitsToFloat((b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8
+                    | (b[pos + 2] & 0xFF) << 16 | b[pos + 3] << 24) * 32768f;
+            case FLOAT_64 -> (float) (Double.longBitsToDouble(
+                    (b[pos] & 0xFFL) | (b[pos + 1] & 0xFFL) << 8 | (b[pos + 2] & 0xFFL) << 16 | (b[pos + 3] & 0xFFL) << 24
+                            | (b[pos + 4] & 0xFFL) << 32 | (b[pos + 5] & 0xFFL) << 40 | (b[pos + 6] & 0xFFL) << 48
+                            | (long) b[pos + 7] << 56) * 32768.0);
+            case ALAW -> G711.alawDecode(b[pos]);
+            case MULAW -> G711.ulawDecode(b[pos]);
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.voicechanger.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking client for the talk-time billing API: one keep-alive connection pool shared by
+ * every call, HTTP/2 when the server offers it over TLS, and hard connect/response timeouts so
+ * a slow billing server cannot hold up call setup indefinitely.
+ */
+@Configuration
+public class TalkTimeClientConfig {
+
+    @Value("${talktime.api.base-url:https://applb.magiccall.co:10016/mgcTest/talktime}")
+    private String baseUrl;
+
+    @Value("${talktime.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${talktime.http.max-idle-ms:30000}")
+    private long maxIdleMillis;
+
+    @Value("${talktime.http.connect-timeout-ms:2000}")
+    private int connectTimeoutMillis;
+
+    @Value("${talktime.http.response-timeout-ms:3000}")
+    private long responseTimeoutMillis;
+
+    @Value("${talktime.http.http2:true}")
+    private boolean http2;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider talkTimeConnectionProvider() {
+        return ConnectionProvider.builder("talktime")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxConnections * 4)
+                .pendingAcquireTimeout(Duration.ofMillis(responseTimeoutMillis))
+                .maxIdleTime(Duration.ofMillis(maxIdleMillis))
+                .evictInBackground(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @Bean
+    public WebClient talkTimeWebClient(ConnectionProvider talkTimeConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(talkTimeConnectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMillis))
+                .doOnConnected(connection -> connection.addHandlerLast(
+                        new ReadTimeoutHandler(responseTimeoutMillis, TimeUnit.MILLISECONDS)));
+
+        // HTTP/2 is negotiated through TLS ALPN; plain http stays on HTTP/1.1 keep-alive
+        if (http2 && baseUrl.startsWith("https")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
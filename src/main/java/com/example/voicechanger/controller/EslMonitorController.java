@@ -1,10 +1,16 @@
 package com.example.voicechanger.controller;
 
+import com.example.voicechanger.service.esl.CallDeadlineService;
+import com.example.voicechanger.service.esl.CallEventStream;
+import com.example.voicechanger.service.esl.CallJournal;
 import com.example.voicechanger.service.esl.EslService;
 import com.example.voicechanger.service.esl.FreeSwitchEventListener;
+import com.example.voicechanger.service.esl.TalkTimeService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -18,10 +24,20 @@ public class EslMonitorController {
 
     private final EslService eslService;
     private final FreeSwitchEventListener eventListener;
+    private final CallDeadlineService deadlineService;
+    private final CallJournal callJournal;
+    private final TalkTimeService talkTimeService;
+    private final CallEventStream callEvents;
 
-    public EslMonitorController(EslService eslService, FreeSwitchEventListener eventListener) {
+    public EslMonitorController(EslService eslService, FreeSwitchEventListener eventListener,
+                                CallDeadlineService deadlineService, CallJournal callJournal,
+                                TalkTimeService talkTimeService, CallEventStream callEvents) {
         this.eslService = eslService;
         this.eventListener = eventListener;
+        this.deadlineService = deadlineService;
+        this.callJournal = callJournal;
+        this.talkTimeService = talkTimeService;
+        this.callEvents = callEvents;
     }
 
     @GetMapping("/status")
@@ -33,10 +49,24 @@ public class EslMonitorController {
                 "status", eslService.getConnectionStatus(),
                 "reconnectAttempts", eslService.getReconnectAttempts(),
                 "eventsProcessed", eventListener.getEventCount(),
+                "nodes", eslService.getNodeStatuses(),
+                "deadlines", deadlineService.getStats(),
+                "journal", callJournal.getStats(),
+                "billing", talkTimeService.getStats(),
+                "callEvents", callEvents.getStats(),
                 "timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
         ));
     }
 
+    /**
+     * Live call-state deltas and connection status as server-sent events, instead of polling
+     * /status and /voicechanger/calls (which queries every call on the switch).
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents() {
+        return callEvents.subscribe();
+    }
+
     @PostMapping("/reconnect")
     public ResponseEntity<Map<String, Object>> forceReconnect() {
         log.info("🔄 Manual ESL reconnection requested via API");
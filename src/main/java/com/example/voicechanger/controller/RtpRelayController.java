@@ -0,0 +1,76 @@
+package com.example.voicechanger.controller;
+
+import com.example.voicechanger.service.rtp.RtpRelayService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+@Slf4j
+@CrossOrigin(origins = "*")
+@RestController
+@RequestMapping("/rtp")
+public class RtpRelayController {
+
+    private final RtpRelayService relayService;
+
+    public RtpRelayController(RtpRelayService relayService) {
+        this.relayService = relayService;
+    }
+
+    @PostMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> openSession(
+            @RequestParam("callId") String callId,
+            @RequestParam("targetHost") String targetHost,
+            @RequestParam("targetPort") int targetPort,
+            @RequestParam(value = "shift", defaultValue = "10.0") float shift,
+            @RequestParam(value = "formant", defaultValue = "2.0") float formant,
+            @RequestParam(value = "base", defaultValue = "100.0") float base) {
+
+        if (targetPort < 1 || targetPort > 65535) {
+            return ResponseEntity.badRequest().body(Map.of("error", "targetPort must be 1-65535"));
+        }
+        InetSocketAddress target = new InetSocketAddress(targetHost, targetPort);
+        if (target.isUnresolved()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown host " + targetHost));
+        }
+        try {
+            int port = relayService.open(callId, target, shift, formant, base);
+            return ResponseEntity.ok(Map.of("callId", callId, "port", port, "target", target.toString()));
+        } catch (IllegalStateException e) {
+            log.warn("⚠️ RTP relay session refused for call {}: {}", callId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @PutMapping("/sessions/{port}/settings")
+    public ResponseEntity<Void> updateSettings(
+            @PathVariable("port") int port,
+            @RequestParam(value = "shift", defaultValue = "10.0") float shift,
+            @RequestParam(value = "formant", defaultValue = "2.0") float formant,
+            @RequestParam(value = "base", defaultValue = "100.0") float base) {
+        return relayService.updateSettings(port, shift, formant, base)
+                ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/sessions/{port}")
+    public ResponseEntity<Void> closeSession(@PathVariable("port") int port) {
+        return relayService.close(port) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/calls/{callId}")
+    public ResponseEntity<Map<String, Object>> closeCall(@PathVariable("callId") String callId) {
+        return ResponseEntity.ok(Map.of("callId", callId, "closed", relayService.closeCall(callId)));
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> sessions() {
+        return ResponseEntity.ok(Map.of("relay", relayService.getStats(), "sessions", relayService.getSessionStats()));
+    }
+}
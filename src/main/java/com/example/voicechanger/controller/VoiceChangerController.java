@@ -3,14 +3,13 @@ package com.example.voicechanger.controller;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.multipart.MultipartFile;
+import com.example.voicechanger.dto.AudioEncoding;
 import com.example.voicechanger.dto.VoiceChangerDto;
 import com.example.voicechanger.dto.VoiceChangerDto.*;
 import com.example.voicechanger.service.VoiceChangerService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.File;
-import java.nio.file.Files;
 import java.util.List;
 import java.util.Map;
 
@@ -124,11 +123,7 @@ public class VoiceChangerController {
             @RequestParam("voiceType") String voiceType) {
 
         try {
-            File processedFile = service.processAudioFile(audioFile, voiceType);
-            byte[] audioBytes = Files.readAllBytes(processedFile.toPath());
-
-            // Clean up
-            processedFile.delete();
+            byte[] audioBytes = service.processTestAudio(audioFile.getBytes(), voiceType);
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
@@ -143,17 +138,24 @@ public class VoiceChangerController {
         }
     }
 
-    @PostMapping(value = "/test-live", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    // Raw G.711 bodies are sent as audio/PCMU, audio/PCMA or audio/basic, or flagged with ?inputFormat=
+    @PostMapping(value = "/test-live", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            "audio/PCMU", "audio/PCMA", "audio/basic"})
     public ResponseEntity<byte[]> testLiveVoice(
             @RequestBody byte[] audioData,
-            @RequestParam("voiceType") String voiceType) {
+            @RequestParam("voiceType") String voiceType,
+            @RequestParam(value = "inputFormat", required = false) String inputFormat,
+            @RequestParam(value = "outputFormat", defaultValue = "pcm16") String outputFormat,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType) {
 
         try {
-            File processedFile = service.processLiveAudio(audioData, voiceType);
-            byte[] audioBytes = Files.readAllBytes(processedFile.toPath());
-
-            // Clean up
-            processedFile.delete();
+            AudioEncoding inputEncoding = inputFormat != null
+                    ? AudioEncoding.parse(inputFormat) : AudioEncoding.forRawMediaType(contentType);
+            AudioEncoding outputEncoding = AudioEncoding.parse(outputFormat);
+            if ((inputFormat != null && (inputEncoding == null || !inputEncoding.isG711())) || outputEncoding == null) {
+                return ResponseEntity.badRequest().body("Error: inputFormat must be pcmu or pcma, outputFormat pcm16, pcmu or pcma".getBytes());
+            }
+            byte[] audioBytes = service.processTestAudio(audioData, voiceType, inputEncoding, outputEncoding);
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
@@ -1,18 +1,33 @@
 package com.example.voicechanger.controller;
 
 
+import com.example.voicechanger.audio.AudioBufferPool;
+import com.example.voicechanger.dto.AudioEncoding;
+import com.example.voicechanger.dto.ChannelPreset;
+import com.example.voicechanger.dto.ProcessedAudio;
+import com.example.voicechanger.dto.ProcessingMode;
 import com.example.voicechanger.dto.VoiceProcessRequest;
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import com.example.voicechanger.service.ProcessorUnavailableException;
 import com.example.voicechanger.service.VoiceProcessingService;
+import com.example.voicechanger.service.WarmupService;
+import com.example.voicechanger.service.spool.ScratchSpool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+import java.util.Map;
+
 @Controller
 @RequestMapping("/api")
 public class VoiceController {
@@ -22,22 +37,112 @@ public class VoiceController {
     @Autowired
     private VoiceProcessingService voiceProcessingService;
 
+    @Autowired
+    private ScratchSpool scratchSpool;
+
+    @Autowired
+    private AudioBufferPool audioBufferPool;
+
+    @Autowired
+    private WarmupService warmupService;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
     @GetMapping("/")
     public String index() {
         return "index";
     }
 
+    @GetMapping("/status")
+    @ResponseBody
+    public Map<String, Object> status() {
+        return Map.of("spool", scratchSpool.getStats(), "buffers", audioBufferPool.getStats(),
+                "processors", voiceProcessingService.getProcessorStats(), "native", NativeVoiceProcessor.getNativeStats(),
+                "warmup", warmupService.getStatus(), "overload", voiceProcessingService.getOverloadStats());
+    }
+
+    // Readiness probe: 503 until the voice engine is warmed up
+    @GetMapping("/ready")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> ready() {
+        boolean ready = availability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC;
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                .body(warmupService.getStatus());
+    }
+
+    // Output rates a client can ask for; 0 keeps the rate the audio was processed at
+    private static boolean isValidOutputRate(int outputRate) {
+        return outputRate == 0 || (outputRate >= 8000 && outputRate <= 192000);
+    }
+
+    // telephony / native, any case; null if absent or unknown
+    private static ProcessingMode parseMode(String mode) {
+        if (mode == null) return null;
+        try {
+            return ProcessingMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // "shift,formant,base;..." per channel; null if absent or malformed
+    private static List<ChannelPreset> parseChannelPresets(String presets) {
+        if (presets == null) return List.of();
+        try {
+            return ChannelPreset.parseList(presets);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Headerless G.711 from ?inputFormat=, else from the body's Content-Type; null if neither
+    // says so. PCM16 carries no rate, so only pcmu / pcma count
+    private static AudioEncoding rawInputEncoding(String inputFormat, String contentType) {
+        AudioEncoding encoding = inputFormat != null
+                ? AudioEncoding.parse(inputFormat) : AudioEncoding.forRawMediaType(contentType);
+        return encoding != null && encoding.isG711() ? encoding : null;
+    }
+
+    // G.711 output is 8 kHz by definition
+    private static boolean isValidOutput(AudioEncoding encoding, int outputRate) {
+        return encoding != null && isValidOutputRate(outputRate)
+                && (!encoding.isG711() || outputRate == 0 || outputRate == 8000);
+    }
+
+    private static HttpHeaders rateHeaders(ProcessedAudio audio) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Sample-Rate", String.valueOf(audio.sampleRate()));
+        headers.set("X-Processing-Rate", String.valueOf(audio.processingRate()));
+        headers.set("X-Channels", String.valueOf(audio.channels()));
+        headers.set("X-Quality-Level", String.valueOf(audio.quality().ordinal()));
+        return headers;
+    }
+
     @PostMapping("/process")
     @ResponseBody
     public ResponseEntity<byte[]> processAudio(
             @RequestParam("audio") MultipartFile audioFile,
             @RequestParam(value = "shift", defaultValue = "10.0") double shift,
             @RequestParam(value = "formant", defaultValue = "2.0") double formant,
-            @RequestParam(value = "base", defaultValue = "100.0") double base) {
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "outputRate", defaultValue = "0") int outputRate,
+            @RequestParam(value = "mode", required = false) String mode,
+            @RequestParam(value = "channelPresets", required = false) String channelPresets,
+            @RequestParam(value = "inputFormat", required = false) String inputFormat,
+            @RequestParam(value = "outputFormat", defaultValue = "pcm16") String outputFormat) {
 
         try {
             logger.info("Received /process request");
             logger.info("Shift: {}, Formant: {}, Base: {}", shift, formant, base);
+            ProcessingMode processingMode = parseMode(mode);
+            List<ChannelPreset> presets = parseChannelPresets(channelPresets);
+            AudioEncoding inputEncoding = rawInputEncoding(inputFormat, audioFile.getContentType());
+            AudioEncoding outputEncoding = AudioEncoding.parse(outputFormat);
+            if (!isValidOutput(outputEncoding, outputRate) || (mode != null && processingMode == null) || presets == null
+                    || (inputFormat != null && inputEncoding == null)) {
+                return ResponseEntity.badRequest().build();
+            }
             logger.info("Received audio file: name={}, size={} bytes, type={}",
                     audioFile.getOriginalFilename(), audioFile.getSize(), audioFile.getContentType());
 
@@ -46,19 +151,27 @@ public class VoiceController {
             request.setShift((float) shift);
             request.setFormant((float) formant);
             request.setBase((float) base);
+            request.setOutputSampleRate(outputRate);
+            request.setMode(processingMode);
+            request.setChannelPresets(presets);
+            request.setInputEncoding(inputEncoding);
+            request.setOutputEncoding(outputEncoding);
 
             // Process audio
-            byte[] processedAudio = voiceProcessingService.processAudio(audioFile.getBytes(), request);
+            ProcessedAudio processedAudio = voiceProcessingService.processAudio(audioFile.getBytes(), request);
 
             // Return processed audio
-            HttpHeaders headers = new HttpHeaders();
+            HttpHeaders headers = rateHeaders(processedAudio);
             headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
             headers.setContentDispositionFormData("attachment", "processed_audio.wav");
 
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(processedAudio);
+                    .body(processedAudio.wav());
 
+        } catch (ProcessorUnavailableException e) {
+            logger.warn("No voice processor free: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             logger.error("Error processing audio", e);
             return ResponseEntity.internalServerError().build();
@@ -71,23 +184,48 @@ public class VoiceController {
             @RequestBody byte[] audioData,
             @RequestParam(value = "shift", defaultValue = "10.0") double shift,
             @RequestParam(value = "formant", defaultValue = "2.0") double formant,
-            @RequestParam(value = "base", defaultValue = "100.0") double base) {
+            @RequestParam(value = "base", defaultValue = "100.0") double base,
+            @RequestParam(value = "outputRate", defaultValue = "0") int outputRate,
+            @RequestParam(value = "mode", required = false) String mode,
+            @RequestParam(value = "channelPresets", required = false) String channelPresets,
+            @RequestParam(value = "inputFormat", required = false) String inputFormat,
+            @RequestParam(value = "outputFormat", defaultValue = "pcm16") String outputFormat,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType) {
 
         try {
             logger.info("Received live audio processing request");
             logger.info("Shift: {}, Formant: {}, Base: {}", shift, formant, base);
+            ProcessingMode processingMode = parseMode(mode);
+            List<ChannelPreset> presets = parseChannelPresets(channelPresets);
+            AudioEncoding inputEncoding = rawInputEncoding(inputFormat, contentType);
+            AudioEncoding outputEncoding = AudioEncoding.parse(outputFormat);
+            if (!isValidOutput(outputEncoding, outputRate) || (mode != null && processingMode == null) || presets == null
+                    || (inputFormat != null && inputEncoding == null)) {
+                return ResponseEntity.badRequest().build();
+            }
 
             VoiceProcessRequest request = new VoiceProcessRequest();
             request.setShift((float) shift);
             request.setFormant((float) formant);
             request.setBase((float) base);
+            request.setOutputSampleRate(outputRate);
+            request.setMode(processingMode);
+            request.setChannelPresets(presets);
+            request.setInputEncoding(inputEncoding);
+            request.setOutputEncoding(outputEncoding);
+            request.setLive(true);
 
-            byte[] processedAudio = voiceProcessingService.processAudio(audioData, request);
+            ProcessedAudio processedAudio = voiceProcessingService.processAudio(audioData, request);
 
             return ResponseEntity.ok()
+                    .headers(rateHeaders(processedAudio))
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(processedAudio);
+                    .body(processedAudio.wav());
 
+        } catch (ProcessorUnavailableException e) {
+            // Dropped rather than answered late; the stream carries on with the next chunk
+            logger.warn("Live chunk dropped: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             logger.error("Error processing live audio", e);
             return ResponseEntity.internalServerError().build();
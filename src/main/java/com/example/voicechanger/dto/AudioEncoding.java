@@ -0,0 +1,46 @@
+package com.example.voicechanger.dto;
+
+import java.util.Locale;
+
+/**
+ * Sample encoding of audio going in or out of the processing endpoints.
+ */
+public enum AudioEncoding {
+    /** 16-bit linear PCM. */
+    PCM16,
+    /** G.711 mu-law, 8 kHz: half the bytes of PCM16. */
+    PCMU,
+    /** G.711 A-law, 8 kHz. */
+    PCMA;
+
+    public boolean isG711() {
+        return this != PCM16;
+    }
+
+    /**
+     * pcm16, pcmu / ulaw / mulaw, pcma / alaw, any case; null if absent or unknown.
+     */
+    public static AudioEncoding parse(String name) {
+        if (name == null) return null;
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "pcm16", "pcm", "l16" -> PCM16;
+            case "pcmu", "ulaw", "mulaw" -> PCMU;
+            case "pcma", "alaw" -> PCMA;
+            default -> null;
+        };
+    }
+
+    /**
+     * The G.711 encoding a raw body's Content-Type names (RFC 3551 audio/PCMU and audio/PCMA,
+     * and audio/basic, which is 8 kHz mu-law), or null.
+     */
+    public static AudioEncoding forRawMediaType(String contentType) {
+        if (contentType == null) return null;
+        String type = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case "audio/pcmu", "audio/basic" -> PCMU;
+            case "audio/pcma" -> PCMA;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.voicechanger.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Voice settings for one channel of a multi-channel upload, e.g. one leg of a call recording.
+ */
+public record ChannelPreset(float shift, float formant, float base) {
+
+    /**
+     * Parse {@code shift,formant,base} entries separated by {@code ;}, one per channel from
+     * channel 0. An empty entry is {@code null}: that channel keeps the request's settings.
+     *
+     * @throws IllegalArgumentException if an entry is not three numbers
+     */
+    public static List<ChannelPreset> parseList(String presets) {
+        List<ChannelPreset> parsed = new ArrayList<>();
+        for (String entry : presets.split(";", -1)) {
+            if (entry.isBlank()) {
+                parsed.add(null);
+                continue;
+            }
+            String[] values = entry.split(",");
+            if (values.length != 3) {
+                throw new IllegalArgumentException("Channel preset needs shift,formant,base: " + entry);
+            }
+            try {
+                parsed.add(new ChannelPreset(Float.parseFloat(values[0].trim()),
+                        Float.parseFloat(values[1].trim()), Float.parseFloat(values[2].trim())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Channel preset needs shift,formant,base: " + entry, e);
+            }
+        }
+        return parsed;
+    }
+}
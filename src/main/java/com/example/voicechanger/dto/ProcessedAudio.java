@@ -0,0 +1,9 @@
+package com.example.voicechanger.dto;
+
+/**
+ * A processed clip as WAV bytes, with the rate the engine ran at, the rate of the WAV
+ * (different when the client asked for an output rate), its channel count and the quality
+ * level it was processed at.
+ */
+public record ProcessedAudio(byte[] wav, int processingRate, int sampleRate, int channels, QualityLevel quality) {
+}
@@ -0,0 +1,11 @@
+package com.example.voicechanger.dto;
+
+/**
+ * Sample rate the voice engine runs at for a request.
+ */
+public enum ProcessingMode {
+    /** Everything at 8 kHz, like a phone call; cheapest. */
+    TELEPHONY,
+    /** The upload's own rate, snapped to a supported rate and capped by configuration. */
+    NATIVE
+}
@@ -0,0 +1,24 @@
+package com.example.voicechanger.dto;
+
+/**
+ * How much DSP the voice engine spends per second of audio, stepped down when processing
+ * falls behind. Each level keeps the savings of the ones before it; the ordinal is what the
+ * {@code X-Quality-Level} header reports.
+ */
+public enum QualityLevel {
+    /** 60 ms STFT blocks every 15 ms, their computation spread evenly over the calls. */
+    FULL,
+    /** Blocks every 30 ms: half the FFTs. */
+    LARGER_HOP,
+    /** Each block computed in the call that completes it, without the extra interval of latency. */
+    NO_SPLIT,
+    /** Native mode processes at no more than {@code voice.overload.low-rate-ceiling}. */
+    LOW_RATE;
+
+    /**
+     * The level the native engine is given; {@link #LOW_RATE} is applied on the Java side.
+     */
+    public int nativeLevel() {
+        return Math.min(ordinal(), NO_SPLIT.ordinal());
+    }
+}
@@ -3,12 +3,20 @@ package com.example.voicechanger.dto;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
 @Setter
 @Getter
 public class VoiceProcessRequest {
     private float shift = 10.0f;      // Default: male-to-female
     private float formant = 2.0f;     // Default: male-to-female
     private float base = 100.0f;      // Default: male-to-female
+    private int outputSampleRate = 0; // 0: the rate it was processed at
+    private ProcessingMode mode;      // null: voice.processing.mode
+    private List<ChannelPreset> channelPresets = List.of(); // by channel; missing or null: the settings above
+    private AudioEncoding inputEncoding; // raw G.711 body; null: detect from the file header
+    private AudioEncoding outputEncoding = AudioEncoding.PCM16; // of the returned WAV
+    private boolean live;             // a chunk of a live stream: waits for a processor no longer than it plays
 
     public VoiceProcessRequest() {}
 
@@ -24,9 +32,23 @@ public class VoiceProcessRequest {
                 "shift=" + shift +
                 ", formant=" + formant +
                 ", base=" + base +
+                ", outputSampleRate=" + outputSampleRate +
+                ", mode=" + mode +
+                ", channelPresets=" + channelPresets +
+                ", inputEncoding=" + inputEncoding +
+                ", outputEncoding=" + outputEncoding +
+                ", live=" + live +
                 '}';
     }
 
+    /**
+     * The settings for {@code channel}: its channel preset if it has one, else the request's.
+     */
+    public ChannelPreset presetFor(int channel) {
+        ChannelPreset preset = channel < channelPresets.size() ? channelPresets.get(channel) : null;
+        return preset != null ? preset : new ChannelPreset(shift, formant, base);
+    }
+
     // Preset configurations
     public static VoiceProcessRequest maleToFemale() {
         return new VoiceProcessRequest(10.0f, 2.0f, 100.0f);
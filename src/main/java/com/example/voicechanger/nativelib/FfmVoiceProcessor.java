@@ -0,0 +1,212 @@
+package com.example.voicechanger.nativelib;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * The native voice processor bound through the Foreign Function &amp; Memory API instead of
+ * JNI: downcalls into plain C entry points ({@code vc_create}, {@code vc_process}, ...) in
+ * the same {@code libvoicechanger.so}. Audio is processed where it lies in native memory (an
+ * arena segment or a direct buffer), with no array pinning or copies. A library without those
+ * entry points cannot be bound this way; {@link NativeVoiceProcessor#selectBinding} then
+ * stays on JNI.
+ * <p>
+ * The processor lives as long as its {@link Arena}: closing the arena destroys it. FFM is a
+ * preview API in Java 21, so this class only loads on a JVM started with
+ * {@code --enable-preview} (and {@code --enable-native-access=ALL-UNNAMED} to keep the
+ * restricted-method warnings quiet); {@link NativeVoiceProcessor} keeps every FFM type in
+ * here so it still loads without.
+ */
+public final class FfmVoiceProcessor implements AutoCloseable {
+
+    private static final MethodHandle CREATE;
+    private static final MethodHandle DESTROY;
+    private static final MethodHandle CONFIGURE;
+    private static final MethodHandle CONFIGURE_CHANNELS;
+    private static final MethodHandle SET_SETTINGS;
+    private static final MethodHandle PROCESS;
+    private static final MethodHandle PROCESS_BATCH;
+
+    static {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup library = SymbolLookup.libraryLookup(NativeVoiceProcessor.libraryPath(), Arena.global());
+        CREATE = downcall(linker, library, "vc_create", FunctionDescriptor.of(ADDRESS));
+        DESTROY = downcall(linker, library, "vc_destroy", FunctionDescriptor.ofVoid(ADDRESS));
+        CONFIGURE = downcall(linker, library, "vc_configure", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT));
+        CONFIGURE_CHANNELS = downcall(linker, library, "vc_configure_channels",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+        SET_SETTINGS = downcall(linker, library, "vc_set_settings",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_FLOAT, JAVA_FLOAT, JAVA_FLOAT));
+        PROCESS = downcall(linker, library, "vc_process", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG));
+        PROCESS_BATCH = downcall(linker, library, "vc_process_batch",
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT));
+    }
+
+    private static MethodHandle downcall(Linker linker, SymbolLookup library, String name, FunctionDescriptor descriptor) {
+        return linker.downcallHandle(library.find(name).orElseThrow(() -> new UnsatisfiedLinkError(
+                "libvoicechanger.so has no " + name + " - rebuild it for the FFM binding")), descriptor);
+    }
+
+    private final Arena arena;
+    private final boolean ownsArena;
+    private final MemorySegment handle;
+
+    /**
+     * A processor owned by {@code arena}; it is destroyed when the arena is closed.
+     */
+    public FfmVoiceProcessor(Arena arena) {
+        this(arena, false);
+    }
+
+    /**
+     * A processor with its own shared arena, destroyed by {@link #close}.
+     */
+    public FfmVoiceProcessor() {
+        this(Arena.ofShared(), true);
+    }
+
+    private FfmVoiceProcessor(Arena arena, boolean ownsArena) {
+        this.arena = arena;
+        this.ownsArena = ownsArena;
+        MemorySegment created;
+        try {
+            created = (MemorySegment) CREATE.invokeExact();
+        } catch (Throwable t) {
+            created = MemorySegment.NULL;
+        }
+        if (created.equals(MemorySegment.NULL)) {
+            if (ownsArena) arena.close();
+            throw new RuntimeException("Failed to create native processor");
+        }
+        this.handle = created.reinterpret(arena, FfmVoiceProcessor::destroy);
+    }
+
+    private static void destroy(MemorySegment processor) {
+        try {
+            DESTROY.invokeExact(processor);
+        } catch (Throwable t) {
+            throw failed("vc_destroy", t);
+        }
+    }
+
+    /**
+     * The native processor's address, the same kind of handle the JNI binding uses.
+     */
+    public long address() {
+        return handle.address();
+    }
+
+    public Arena arena() {
+        return arena;
+    }
+
+    public boolean configure(int sampleRate, int maxBufferLength) {
+        try {
+            return (int) CONFIGURE.invokeExact(handle, sampleRate, maxBufferLength) != 0;
+        } catch (Throwable t) {
+            throw failed("vc_configure", t);
+        }
+    }
+
+    public boolean configure(int sampleRate, int maxFrames, int channels, float[] shifts, float[] formants, float[] bases) {
+        try (Arena call = Arena.ofConfined()) {
+            return (int) CONFIGURE_CHANNELS.invokeExact(handle, sampleRate, maxFrames, channels,
+                    call.allocateArray(JAVA_FLOAT, shifts), call.allocateArray(JAVA_FLOAT, formants),
+                    call.allocateArray(JAVA_FLOAT, bases)) != 0;
+        } catch (Throwable t) {
+            throw failed("vc_configure_channels", t);
+        }
+    }
+
+    public boolean setSettings(float shift, float formant, float base) {
+        try {
+            return (int) SET_SETTINGS.invokeExact(handle, shift, formant, base) != 0;
+        } catch (Throwable t) {
+            throw failed("vc_set_settings", t);
+        }
+    }
+
+    /**
+     * Process {@code length} native-order 16-bit samples of a native segment in place.
+     */
+    public boolean process(MemorySegment samples, long length) {
+        if (samples.byteSize() < length * 2) {
+            throw new IndexOutOfBoundsException(length + " samples do not fit a " + samples.byteSize() + "-byte segment");
+        }
+        try {
+            return (int) PROCESS.invokeExact(handle, samples, length) != 0;
+        } catch (Throwable t) {
+            throw failed("vc_process", t);
+        }
+    }
+
+    /**
+     * Process the first {@code length} samples of a direct buffer in place.
+     */
+    public boolean process(ByteBuffer direct, int length) {
+        return process(MemorySegment.ofBuffer(direct.duplicate().clear()), length);
+    }
+
+    /**
+     * Process {@code length} samples of a heap array; they are copied through native memory,
+     * as Java 21 downcalls cannot take heap segments.
+     *
+     * @return the processed samples, or null on failure
+     */
+    public short[] process(short[] input, int length) {
+        try (Arena call = Arena.ofConfined()) {
+            MemorySegment samples = call.allocateArray(ValueLayout.JAVA_SHORT, length);
+            MemorySegment.copy(input, 0, samples, ValueLayout.JAVA_SHORT, 0, length);
+            if (!process(samples, length)) {
+                return null;
+            }
+            return samples.toArray(ValueLayout.JAVA_SHORT);
+        }
+    }
+
+    /**
+     * {@code vc_process_batch} over a direct buffer of frames, with handles from {@link #address}.
+     */
+    public static boolean processBatch(long[] handles, int[] lengths, ByteBuffer frames, int stride, int count,
+                                       int threads) {
+        MemorySegment samples = MemorySegment.ofBuffer(frames.duplicate().clear());
+        if (handles.length < count || lengths.length < count || samples.byteSize() < (long) count * stride * 2) {
+            throw new IndexOutOfBoundsException(count + " frames of " + stride + " do not fit the buffer");
+        }
+        try (Arena call = Arena.ofConfined()) {
+            MemorySegment processors = call.allocateArray(ADDRESS, count);
+            for (int i = 0; i < count; i++) {
+                processors.setAtIndex(ADDRESS, i, MemorySegment.ofAddress(handles[i]));
+            }
+            return (int) PROCESS_BATCH.invokeExact(processors, call.allocateArray(JAVA_INT, lengths),
+                    samples, stride, count, threads) != 0;
+        } catch (Throwable t) {
+            throw failed("vc_process_batch", t);
+        }
+    }
+
+    /**
+     * Destroy the processor now if it owns its arena; otherwise closing the arena does.
+     */
+    @Override
+    public void close() {
+        if (ownsArena && arena.scope().isAlive()) {
+            arena.close();
+        }
+    }
+
+    private static RuntimeException failed(String function, Throwable cause) {
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(function + " failed", cause);
+    }
+}
@@ -6,24 +6,72 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A native voice processor. Its native memory (mostly STFT buffers sized to the largest
+ * block configured) is freed by {@link #dispose}; one that becomes unreachable without being
+ * disposed is freed by a {@link Cleaner}, and counted and logged as a leak. Set
+ * {@link #setLeakTrace} to record where each processor was created or last leased.
+ */
 public class NativeVoiceProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(NativeVoiceProcessor.class);
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final AtomicLong live = new AtomicLong();
+    private static final AtomicLong leaks = new AtomicLong();
+    private static volatile boolean leakTrace = false;
     // Utility methods
     @Getter
     private static boolean libraryLoaded = false;
+    // Cleared on the first UnsatisfiedLinkError from a library built before processAudioDirect
+    @Getter
+    private static volatile boolean directBufferSupported = true;
+    // Cleared likewise for a library built before configureProcessorChannels
+    @Getter
+    private static volatile boolean multiChannelSupported = true;
+    // Cleared likewise for a library built before processBatchDirect
+    @Getter
+    private static volatile boolean batchSupported = true;
+    // Processors created from now on go through FfmVoiceProcessor instead of JNI
+    @Getter
+    private static volatile boolean ffmBinding = false;
+    // Cleared likewise for a library built before quality levels
+    @Getter
+    private static volatile boolean qualitySupported = true;
+    // Cleared likewise for a library built before native memory accounting
+    @Getter
+    private static volatile boolean memoryStatsSupported = true;
 
     static {
-        loadNativeLibrary();
+        try {
+            loadNativeLibrary();
+        } catch (RuntimeException e) {
+            // Already logged; creating a processor fails with "Native library not loaded"
+        }
+    }
+
+    /**
+     * Where libvoicechanger.so is loaded from, by JNI here and by {@link FfmVoiceProcessor}:
+     * {@code src/main/resources/native} under the working directory.
+     */
+    static Path libraryPath() {
+        return Path.of(System.getProperty("user.dir"), "src/main/resources/native/libvoicechanger.so");
     }
 
     private static void loadNativeLibrary() {
         if (libraryLoaded) return;
 
         try {
-            // ALWAYS load from the specific path: /src/main/resources/native/libvoicechanger.so
-            String absolutePath = System.getProperty("user.dir") + "/src/main/resources/native/libvoicechanger.so";
+            String absolutePath = libraryPath().toString();
             logger.info("Loading native library from: {}", absolutePath);
 
             // Verify the file exists
@@ -38,8 +86,7 @@ public class NativeVoiceProcessor {
 
         } catch (UnsatisfiedLinkError e) {
             logger.error("Failed to load native library from explicit path", e);
-            throw new RuntimeException("Could not load native voice processing library from: " +
-                    System.getProperty("user.dir") + "/src/main/resources/native/libvoicechanger.so", e);
+            throw new RuntimeException("Could not load native voice processing library from: " + libraryPath(), e);
         } catch (Exception e) {
             logger.error("Unexpected error loading native library", e);
             throw new RuntimeException("Unexpected error loading native library", e);
@@ -48,28 +95,132 @@ public class NativeVoiceProcessor {
 
     // Native method declarations
     public native long createProcessor();
-    public native void destroyProcessor(long processorHandle);
+    private static native void destroyProcessor(long processorHandle);
     public native boolean configureProcessor(long processorHandle, int sampleRate, int maxBufferLength);
+    public native boolean configureProcessorChannels(long processorHandle, int sampleRate, int maxFrames, int channels,
+                                                     float[] shifts, float[] formants, float[] bases);
     public native boolean setSettings(long processorHandle, float shiftSemitones, float formantSemitones, float formantBaseHz);
     public native short[] processAudioNative(long processorHandle, short[] inputBuffer, int length);
+    public native boolean processAudioDirect(long processorHandle, ByteBuffer buffer, int length);
+    private static native boolean processBatchDirect(long[] processorHandles, int[] lengths, ByteBuffer frames,
+                                                     int stride, int count, int threads);
+    private static native boolean setProcessorQuality(long processorHandle, int level);
+    private static native long processorNativeBytes(long processorHandle);
+    // Live processors, live heap bytes and peak heap bytes of the whole library
+    private static native long[] nativeMemoryStats();
+
+    /**
+     * Choose how processors created from now on call into the library: {@code jni} or
+     * {@code ffm} (see {@link FfmVoiceProcessor}). FFM falls back to JNI, with a warning, when
+     * the JVM was started without {@code --enable-preview} or the library has no C entry
+     * points. Call before the first processor is created.
+     *
+     * @return the binding in use
+     */
+    public static synchronized String selectBinding(String binding) {
+        if (!"ffm".equalsIgnoreCase(binding)) {
+            ffmBinding = false;
+            return "jni";
+        }
+        try {
+            new FfmVoiceProcessor().close();
+            ffmBinding = true;
+            return "ffm";
+        } catch (UnsupportedClassVersionError e) {
+            logger.warn("⚠️ voice.native.binding=ffm needs the JVM started with --enable-preview "
+                    + "--enable-native-access=ALL-UNNAMED, which java -jar cannot take from the manifest - using JNI");
+            ffmBinding = false;
+            return "jni";
+        } catch (LinkageError | RuntimeException e) {
+            logger.warn("⚠️ FFM binding unavailable ({}) - using JNI", e.toString());
+            ffmBinding = false;
+            return "jni";
+        }
+    }
+
+    /**
+     * Record a stack trace when a processor is created or leased, for leak warnings.
+     */
+    public static void setLeakTrace(boolean enabled) {
+        leakTrace = enabled;
+    }
 
     // Java wrapper methods
     private long processorHandle = 0;
+    // Set when this processor was created through FFM; the handle is then its address
+    private FfmVoiceProcessor ffm;
+    private int quality = 0;
+    private final Release release;
+    private final Cleaner.Cleanable cleanable;
+
+    /**
+     * Frees the native processor, kept apart from it so the cleaner can run it once the
+     * processor is unreachable. That can happen while a method's last use of {@code this}
+     * is still in a native call, so every method that passes the handle or the FFM arena
+     * down ends with {@link Reference#reachabilityFence} on it.
+     */
+    private static class Release implements Runnable {
+        final long handle;
+        final FfmVoiceProcessor ffm;
+        volatile boolean disposed;
+        volatile Throwable site;
+        volatile Runnable onLeak;
+
+        Release(long handle, FfmVoiceProcessor ffm) {
+            this.handle = handle;
+            this.ffm = ffm;
+        }
+
+        @Override
+        public void run() {
+            if (!disposed) {
+                leaks.incrementAndGet();
+                Throwable where = site;
+                if (where != null) {
+                    logger.warn("⚠️ Native processor {} was never disposed, created or leased at:", handle, where);
+                } else {
+                    logger.warn("⚠️ Native processor {} was never disposed (set voice.native.leak-trace=true to see where)", handle);
+                }
+                Runnable leaked = onLeak;
+                if (leaked != null) leaked.run();
+            }
+            if (ffm != null) {
+                ffm.close();
+            } else {
+                destroyProcessor(handle);
+            }
+            live.decrementAndGet();
+        }
+    }
 
     public NativeVoiceProcessor() {
         if (!libraryLoaded) {
             throw new RuntimeException("Native library not loaded");
         }
-        processorHandle = createProcessor();
+        if (ffmBinding) {
+            ffm = new FfmVoiceProcessor();
+            processorHandle = ffm.address();
+        } else {
+            processorHandle = createProcessor();
+        }
         if (processorHandle == 0) {
             throw new RuntimeException("Failed to create native processor");
         }
-        logger.info("Native processor created successfully with handle: {}", processorHandle);
+        live.incrementAndGet();
+        release = new Release(processorHandle, ffm);
+        release.site = leakTrace ? new Throwable("processor") : null;
+        cleanable = CLEANER.register(this, release);
+        logger.info("Native processor created successfully with handle: {} ({})", processorHandle, ffm != null ? "ffm" : "jni");
     }
 
     public boolean configure(int sampleRate, int maxBufferLength) {
         if (processorHandle == 0) return false;
-        return configureProcessor(processorHandle, sampleRate, maxBufferLength);
+        try {
+            if (ffm != null) return ffm.configure(sampleRate, maxBufferLength);
+            return configureProcessor(processorHandle, sampleRate, maxBufferLength);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     public boolean configure(int sampleRate) {
@@ -78,7 +229,31 @@ public class NativeVoiceProcessor {
 
     public boolean updateSettings(float shift, float formant, float base) {
         if (processorHandle == 0) return false;
-        return setSettings(processorHandle, shift, formant, base);
+        try {
+            if (ffm != null) return ffm.setSettings(shift, formant, base);
+            return setSettings(processorHandle, shift, formant, base);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Quality level for the following {@link #configure} calls: 0 is full quality, 1 a larger
+     * STFT hop, 2 also no split computation. Ignored, with a warning once, by a library that
+     * predates quality levels.
+     */
+    public void setQuality(int level) {
+        if (level == quality || processorHandle == 0 || !qualitySupported) return;
+        try {
+            if (setProcessorQuality(processorHandle, level)) {
+                quality = level;
+            }
+        } catch (UnsatisfiedLinkError e) {
+            qualitySupported = false;
+            logger.warn("⚠️ Native library has no setProcessorQuality - rebuild libvoicechanger.so; processing at full quality until then");
+        } finally {
+            Reference.reachabilityFence(this);
+        }
     }
 
     public short[] processAudio(short[] inputBuffer, int length, float shift, float formant, float base, int sampleRate) {
@@ -95,7 +270,8 @@ public class NativeVoiceProcessor {
             updateSettings(shift, formant, base);
 
             // Process audio
-            short[] result = processAudioNative(processorHandle, inputBuffer, length);
+            short[] result = ffm != null ? ffm.process(inputBuffer, length)
+                    : processAudioNative(processorHandle, inputBuffer, length);
 
             if (result == null) {
                 logger.warn("Native processing returned null, returning original audio");
@@ -107,21 +283,247 @@ public class NativeVoiceProcessor {
         } catch (Exception e) {
             logger.error("Error during native audio processing", e);
             return inputBuffer; // return original on error
+        } finally {
+            Reference.reachabilityFence(this);
         }
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        if (processorHandle != 0) {
-            destroyProcessor(processorHandle);
-            processorHandle = 0;
+    /**
+     * Process {@code length} little-endian 16-bit samples of a direct buffer in place, starting
+     * at index 0. The native side works on the buffer's memory directly; with a library that
+     * predates the direct entry point the samples are copied through the array path instead.
+     * On failure the samples are not restored: a direct buffer may be partly processed, so a
+     * caller that needs the original audio must keep its own copy.
+     */
+    public void processAudioInPlace(ByteBuffer buffer, int length, float shift, float formant, float base, int sampleRate) {
+        if (processorHandle == 0) {
+            logger.error("Processor not initialized");
+            return;
+        }
+
+        try {
+            configure(sampleRate, Math.max(length, 8192));
+            updateSettings(shift, formant, base);
+            processStreamInPlace(buffer, length);
+        } catch (Exception e) {
+            logger.error("Error during native audio processing", e);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Process {@code frames} frames of {@code channels} interleaved little-endian 16-bit samples
+     * in place, channel {@code c} with {@code shifts[c]}, {@code formants[c]} and
+     * {@code bases[c]}. Channels with equal settings run through one multi-channel stretcher
+     * and share its analysis; with a library that predates multi-channel support each channel
+     * is processed on its own through the mono path. A failed configure leaves the buffer as it
+     * was; a failure while processing may leave it partly processed, and in the per-channel
+     * path a channel that fails keeps its input while the others are processed.
+     */
+    public void processAudioInPlace(ByteBuffer buffer, int frames, int channels,
+                                    float[] shifts, float[] formants, float[] bases, int sampleRate) {
+        if (channels == 1) {
+            processAudioInPlace(buffer, frames, shifts[0], formants[0], bases[0], sampleRate);
+            return;
+        }
+        if (processorHandle == 0) {
+            logger.error("Processor not initialized");
+            return;
+        }
+
+        try {
+            if (ffm != null) {
+                if (!ffm.configure(sampleRate, Math.max(frames, 8192), channels, shifts, formants, bases)) {
+                    logger.warn("Native multi-channel configure failed, leaving original audio");
+                    return;
+                }
+                processStreamInPlace(buffer, frames * channels);
+                return;
+            }
+            if (multiChannelSupported) {
+                try {
+                    if (!configureProcessorChannels(processorHandle, sampleRate, Math.max(frames, 8192), channels,
+                            shifts, formants, bases)) {
+                        logger.warn("Native multi-channel configure failed, leaving original audio");
+                        return;
+                    }
+                    processStreamInPlace(buffer, frames * channels);
+                    return;
+                } catch (UnsatisfiedLinkError e) {
+                    multiChannelSupported = false;
+                    logger.warn("⚠️ Native library has no configureProcessorChannels - rebuild libvoicechanger.so; processing channels one at a time until then");
+                }
+            }
+
+            ShortBuffer samples = buffer.duplicate().position(0).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            short[] channel = new short[frames];
+            for (int c = 0; c < channels; c++) {
+                for (int i = 0; i < frames; i++) {
+                    channel[i] = samples.get(i * channels + c);
+                }
+                configure(sampleRate, Math.max(frames, 8192));
+                updateSettings(shifts[c], formants[c], bases[c]);
+                short[] result = processAudioNative(processorHandle, channel, frames);
+                if (result == null) {
+                    logger.warn("Native processing returned null for channel {}, leaving it as it was", c);
+                    continue;
+                }
+                for (int i = 0; i < Math.min(frames, result.length); i++) {
+                    samples.put(i * channels + c, result[i]);
+                }
+            }
+
+        } catch (Exception e) {
+            logger.error("Error during native audio processing", e);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Run {@code length} samples through the processor as last configured ({@link #configure},
+     * {@link #updateSettings}), in place. Unlike {@link #processAudioInPlace} nothing is reset:
+     * successive calls continue one stream, as frames of live call audio need. Not thread safe.
+     *
+     * @return false if the native side failed; the samples of a direct buffer may then be
+     *         partly processed, those of a heap buffer are as they were
+     */
+    public boolean processStreamInPlace(ByteBuffer buffer, int length) {
+        try {
+            if (ffm != null && buffer.isDirect()) {
+                if (!ffm.process(buffer, length)) {
+                    logger.warn("Native direct processing failed");
+                    return false;
+                }
+                return true;
+            }
+            if (directBufferSupported && ffm == null && buffer.isDirect()) {
+                try {
+                    if (!processAudioDirect(processorHandle, buffer, length)) {
+                        logger.warn("Native direct processing failed");
+                        return false;
+                    }
+                    return true;
+                } catch (UnsatisfiedLinkError e) {
+                    directBufferSupported = false;
+                    logger.warn("⚠️ Native library has no processAudioDirect - rebuild libvoicechanger.so; copying through arrays until then");
+                }
+            }
+
+            ShortBuffer samples = buffer.duplicate().position(0).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            short[] input = new short[length];
+            samples.get(0, input);
+            short[] result = ffm != null ? ffm.process(input, length) : processAudioNative(processorHandle, input, length);
+            if (result == null) {
+                logger.warn("Native processing returned null, returning original audio");
+                return false;
+            }
+            samples.put(0, result, 0, Math.min(length, result.length));
+            return true;
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Process {@code count} frames of different streams in one native call: frame {@code i} is
+     * {@code lengths[i]} samples at sample {@code i * stride} of the direct buffer, run through
+     * {@code processors[i]} as by {@link #processStreamInPlace}. The native side spreads a
+     * large batch over up to {@code threads} threads, so a processor may appear only once per
+     * batch. With a library that predates the batch entry point the frames are processed one
+     * call each.
+     *
+     * @return false if any frame failed; like {@link #processStreamInPlace} those may be
+     *         partly processed
+     */
+    public static boolean processBatch(NativeVoiceProcessor[] processors, int[] lengths, ByteBuffer frames,
+                                       int stride, int count, int threads) {
+        if (count == 0) {
+            return true;
+        }
+        boolean ffmBatch = processors[0].ffm != null;
+        if ((batchSupported || ffmBatch) && frames.isDirect()) {
+            long[] handles = new long[count];
+            for (int i = 0; i < count; i++) {
+                handles[i] = processors[i].processorHandle;
+            }
+            try {
+                if (ffmBatch) {
+                    return FfmVoiceProcessor.processBatch(handles, lengths, frames, stride, count, threads);
+                }
+                return processBatchDirect(handles, lengths, frames, stride, count, threads);
+            } catch (UnsatisfiedLinkError e) {
+                batchSupported = false;
+                logger.warn("⚠️ Native library has no processBatchDirect - rebuild libvoicechanger.so; one call per frame until then");
+            } finally {
+                Reference.reachabilityFence(processors); // the cleaner must not free them mid-batch
+            }
+        }
+
+        boolean ok = true;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer frame = frames.slice(i * stride * 2, lengths[i] * 2).order(ByteOrder.LITTLE_ENDIAN);
+            ok &= processors[i].processStreamInPlace(frame, lengths[i]);
+        }
+        return ok;
+    }
+
+    /**
+     * Mark this processor as handed out by a pool: a leak warning then shows this site (with
+     * leak tracing on) and {@code onLeak} runs, e.g. to give the pool its slot back.
+     */
+    public void leased(Runnable onLeak) {
+        release.onLeak = onLeak;
+        if (leakTrace) {
+            release.site = new Throwable("lease");
+        }
+    }
+
+    /**
+     * Heap the native processor holds, in bytes, as the library counts it; -1 once disposed
+     * or with a library that predates memory accounting.
+     */
+    public long getNativeBytes() {
+        if (processorHandle == 0 || !memoryStatsSupported) return -1;
+        try {
+            return processorNativeBytes(processorHandle);
+        } catch (UnsatisfiedLinkError e) {
+            memoryStatsSupported = false;
+            logger.warn("⚠️ Native library has no memory accounting - rebuild libvoicechanger.so to see native heap sizes");
+            return -1;
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Processors alive and leaked on the Java side and, from the library, the processors and
+     * heap bytes it holds.
+     */
+    public static Map<String, Object> getNativeStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("binding", ffmBinding ? "ffm" : "jni");
+        stats.put("liveProcessors", live.get());
+        stats.put("leaks", leaks.get());
+        if (memoryStatsSupported) {
+            try {
+                long[] heap = nativeMemoryStats();
+                stats.put("nativeProcessors", heap[0]);
+                stats.put("nativeBytes", heap[1]);
+                stats.put("peakNativeBytes", heap[2]);
+            } catch (UnsatisfiedLinkError e) {
+                memoryStatsSupported = false;
+                logger.warn("⚠️ Native library has no memory accounting - rebuild libvoicechanger.so to see native heap sizes");
+            }
         }
-        super.finalize();
+        return stats;
     }
 
     public void dispose() {
         if (processorHandle != 0) {
-            destroyProcessor(processorHandle);
+            release.disposed = true;
+            cleanable.clean(); // runs at most once
             processorHandle = 0;
         }
     }
@@ -0,0 +1,52 @@
+package com.example.voicechanger.service;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Single-tap echo with the semantics of SoX's {@code echo gain-in gain-out delay decay}:
+ * {@code out[n] = gainOut * gainIn * (in[n] + decay * in[n - delay])}. The output is longer
+ * than the input by the delay, so the last echo is not cut off.
+ */
+final class EchoEffect {
+
+    private final float gainIn;
+    private final float gainOut;
+    private final int delayMillis;
+    private final float decay;
+
+    EchoEffect(float gainIn, float gainOut, int delayMillis, float decay) {
+        this.gainIn = gainIn;
+        this.gainOut = gainOut;
+        this.delayMillis = delayMillis;
+        this.decay = decay;
+    }
+
+    int outputLength(int inputLength, int sampleRate) {
+        return inputLength + delaySamples(sampleRate);
+    }
+
+    /**
+     * Write the echoed signal to {@code output}, which must hold
+     * {@link #outputLength(int, int)} samples.
+     */
+    void apply(ShortBuffer input, ShortBuffer output, int sampleRate) {
+        int delay = delaySamples(sampleRate);
+        int inputLength = input.remaining();
+        int in = input.position();
+        int out = output.position();
+        int length = inputLength + delay;
+        float dry = gainIn * gainOut;
+        float wet = dry * decay;
+        for (int i = 0; i < length; i++) {
+            float sample = i < inputLength ? input.get(in + i) * dry : 0f;
+            if (i >= delay && i - delay < inputLength) {
+                sample += input.get(in + i - delay) * wet;
+            }
+            output.put(out + i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample))));
+        }
+    }
+
+    private int delaySamples(int sampleRate) {
+        return (int) ((long) sampleRate * delayMillis / 1000);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Native voice processors kept per sample rate, so a 48 kHz request never reconfigures the
+ * engine an 8 kHz request just used, and up to {@code perRate} requests at one rate run in
+ * parallel. Processors are created on first use and kept for the life of the service.
+ * With an acquire timeout of 0 a full rate fails at once instead of waiting, for holders
+ * that keep a processor for a whole call. A processor that is never released is freed by
+ * its cleaner, counted as a leak and its slot given back.
+ */
+@Slf4j
+public class NativeProcessorPool {
+
+    private final int perRate;
+    private final long acquireTimeoutMillis;
+    private final Supplier<NativeVoiceProcessor> factory;
+    private final Map<Integer, RatePool> pools = new ConcurrentHashMap<>();
+
+    private static class RatePool {
+        final Semaphore permits;
+        final ConcurrentLinkedQueue<NativeVoiceProcessor> idle = new ConcurrentLinkedQueue<>();
+        final AtomicLong created = new AtomicLong();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong waits = new AtomicLong();
+        final AtomicLong leaks = new AtomicLong();
+
+        RatePool(int size) {
+            this.permits = new Semaphore(size, true);
+        }
+    }
+
+    public NativeProcessorPool(int perRate, long acquireTimeoutMillis) {
+        this(perRate, acquireTimeoutMillis, NativeVoiceProcessor::new);
+    }
+
+    NativeProcessorPool(int perRate, long acquireTimeoutMillis, Supplier<NativeVoiceProcessor> factory) {
+        this.perRate = perRate;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.factory = factory;
+    }
+
+    /**
+     * Take a processor for {@code sampleRate}, waiting while all of that rate's are busy.
+     * Hand it back with {@link #release}.
+     *
+     * @throws ProcessorUnavailableException if none came free within the acquire timeout
+     */
+    public NativeVoiceProcessor acquire(int sampleRate) throws InterruptedException {
+        return acquire(sampleRate, acquireTimeoutMillis);
+    }
+
+    /**
+     * {@link #acquire(int)}, waiting at most {@code timeoutMillis}.
+     */
+    public NativeVoiceProcessor acquire(int sampleRate, long timeoutMillis) throws InterruptedException {
+        RatePool pool = pools.computeIfAbsent(sampleRate, rate -> new RatePool(perRate));
+        pool.requests.incrementAndGet();
+        if (!pool.permits.tryAcquire()) {
+            pool.waits.incrementAndGet();
+            if (!pool.permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new ProcessorUnavailableException("No " + sampleRate + " Hz voice processor free after "
+                        + timeoutMillis + " ms");
+            }
+        }
+        NativeVoiceProcessor processor = pool.idle.poll();
+        if (processor == null) {
+            try {
+                processor = factory.get();
+            } catch (RuntimeException e) {
+                pool.permits.release();
+                throw e;
+            }
+            pool.created.incrementAndGet();
+            log.info("🎛️ Created {} Hz voice processor #{}", sampleRate, pool.created.get());
+        }
+        processor.leased(() -> {
+            pool.leaks.incrementAndGet();
+            pool.permits.release();
+        });
+        return processor;
+    }
+
+    public void release(int sampleRate, NativeVoiceProcessor processor) {
+        RatePool pool = pools.get(sampleRate);
+        pool.idle.offer(processor);
+        pool.permits.release();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        pools.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    RatePool pool = entry.getValue();
+                    Map<String, Object> rate = new LinkedHashMap<>();
+                    rate.put("processors", pool.created.get() - pool.leaks.get());
+                    rate.put("busy", perRate - pool.permits.availablePermits());
+                    rate.put("requests", pool.requests.get());
+                    rate.put("waits", pool.waits.get());
+                    rate.put("leaks", pool.leaks.get());
+                    // Native heap of the idle processors; busy ones are measured once back
+                    long idle = 0;
+                    long idleBytes = 0;
+                    long maxBytes = 0;
+                    for (NativeVoiceProcessor processor : pool.idle) {
+                        long bytes = processor.getNativeBytes();
+                        if (bytes >= 0) {
+                            idle++;
+                            idleBytes += bytes;
+                            maxBytes = Math.max(maxBytes, bytes);
+                        }
+                    }
+                    if (idle > 0) {
+                        rate.put("nativeBytesPerProcessor", idleBytes / idle);
+                        rate.put("maxNativeBytes", maxBytes);
+                    }
+                    stats.put(entry.getKey() + "Hz", rate);
+                });
+        return stats;
+    }
+
+    public void shutdown() {
+        pools.values().forEach(pool -> {
+            NativeVoiceProcessor processor;
+            while ((processor = pool.idle.poll()) != null) {
+                processor.dispose();
+            }
+        });
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.dto.QualityLevel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Steps the voice engine's {@link QualityLevel} down when processing falls behind, and back
+ * up once it has kept up for a while. Load is judged from two moving averages over recent
+ * requests: the real-time factor (processing time over audio duration) and the time spent
+ * waiting for a processor. Crossing either high threshold degrades one level, at most every
+ * {@code step-down-ms}; both must stay under their low thresholds for {@code step-up-ms} to
+ * recover one level. With no requests at all the averages decay to zero.
+ */
+@Slf4j
+@Component
+public class OverloadController {
+
+    private static final double ALPHA = 0.2; // weight of the newest request in the averages
+
+    private final boolean enabled;
+    private final QualityLevel maxLevel;
+    private final double rtfHigh;
+    private final double rtfLow;
+    private final double waitHighMillis;
+    private final double waitLowMillis;
+    private final long stepDownMillis;
+    private final long stepUpMillis;
+    private final int lowRateCeiling;
+    private final LongSupplier clock; // epoch millis
+
+    private volatile QualityLevel level = QualityLevel.FULL;
+    private double rtf;
+    private double waitMillis;
+    private long samples;
+    private long lastSampleAt;
+    private long lastChangeAt;
+    private long calmSince = -1;
+    private long stepDowns;
+    private long stepUps;
+    private long liveDropped;
+
+    @Autowired
+    public OverloadController(@Value("${voice.overload.enabled:true}") boolean enabled,
+                              @Value("${voice.overload.max-level:LOW_RATE}") QualityLevel maxLevel,
+                              @Value("${voice.overload.rtf-high:0.5}") double rtfHigh,
+                              @Value("${voice.overload.rtf-low:0.2}") double rtfLow,
+                              @Value("${voice.overload.wait-high-ms:250}") double waitHighMillis,
+                              @Value("${voice.overload.wait-low-ms:20}") double waitLowMillis,
+                              @Value("${voice.overload.step-down-ms:2000}") long stepDownMillis,
+                              @Value("${voice.overload.step-up-ms:15000}") long stepUpMillis,
+                              @Value("${voice.overload.low-rate-ceiling:16000}") int lowRateCeiling) {
+        this(enabled, maxLevel, rtfHigh, rtfLow, waitHighMillis, waitLowMillis, stepDownMillis, stepUpMillis,
+                lowRateCeiling, System::currentTimeMillis);
+    }
+
+    OverloadController(boolean enabled, QualityLevel maxLevel, double rtfHigh, double rtfLow, double waitHighMillis,
+                       double waitLowMillis, long stepDownMillis, long stepUpMillis, int lowRateCeiling,
+                       LongSupplier clock) {
+        this.clock = clock;
+        this.enabled = enabled;
+        this.maxLevel = maxLevel;
+        this.rtfHigh = rtfHigh;
+        this.rtfLow = rtfLow;
+        this.waitHighMillis = waitHighMillis;
+        this.waitLowMillis = waitLowMillis;
+        this.stepDownMillis = stepDownMillis;
+        this.stepUpMillis = stepUpMillis;
+        this.lowRateCeiling = lowRateCeiling;
+    }
+
+    /**
+     * The level a request starting now should run at.
+     */
+    public QualityLevel level() {
+        if (!enabled) {
+            return QualityLevel.FULL;
+        }
+        if (level != QualityLevel.FULL) {
+            synchronized (this) {
+                evaluate(clock.getAsLong());
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Highest rate native mode processes at right now; {@link Integer#MAX_VALUE} when not
+     * limited.
+     */
+    public int rateCeiling() {
+        return level() == QualityLevel.LOW_RATE ? lowRateCeiling : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Account one processed request: how long it waited for a processor, how long it took
+     * and how much audio it was.
+     */
+    public synchronized void record(long waitNanos, long processNanos, long audioNanos) {
+        if (!enabled || audioNanos <= 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        decayIfIdle(now);
+        rtf += ALPHA * ((double) processNanos / audioNanos - rtf);
+        waitMillis += ALPHA * (waitNanos / 1e6 - waitMillis);
+        samples++;
+        lastSampleAt = now;
+        evaluate(now);
+    }
+
+    /**
+     * A live request gave up waiting for a processor rather than fall behind real time.
+     */
+    public synchronized void recordLiveDrop(long waitNanos) {
+        liveDropped++;
+        if (enabled) {
+            long now = clock.getAsLong();
+            decayIfIdle(now);
+            waitMillis += ALPHA * (waitNanos / 1e6 - waitMillis);
+            lastSampleAt = now;
+            evaluate(now);
+        }
+    }
+
+    /**
+     * Forget the load seen so far and return to full quality, e.g. after the start-up
+     * warm-up, whose cold code says nothing about real load.
+     */
+    public synchronized void reset() {
+        rtf = 0;
+        waitMillis = 0;
+        calmSince = -1;
+        level = QualityLevel.FULL;
+    }
+
+    private void decayIfIdle(long now) {
+        if (now - lastSampleAt >= stepUpMillis) {
+            rtf = 0;
+            waitMillis = 0;
+        }
+    }
+
+    private void evaluate(long now) {
+        decayIfIdle(now);
+        boolean overloaded = rtf > rtfHigh || waitMillis > waitHighMillis;
+        boolean calm = rtf < rtfLow && waitMillis < waitLowMillis;
+        if (overloaded) {
+            calmSince = -1;
+            if (level.ordinal() < maxLevel.ordinal() && now - lastChangeAt >= stepDownMillis) {
+                change(QualityLevel.values()[level.ordinal() + 1], now);
+                stepDowns++;
+            }
+        } else if (calm) {
+            if (calmSince < 0) {
+                calmSince = now;
+            }
+            if (level != QualityLevel.FULL && now - calmSince >= stepUpMillis && now - lastChangeAt >= stepUpMillis) {
+                change(QualityLevel.values()[level.ordinal() - 1], now);
+                stepUps++;
+                calmSince = now;
+            }
+        } else {
+            calmSince = -1;
+        }
+    }
+
+    private void change(QualityLevel next, long now) {
+        log.warn("{} Voice quality {} -> {} (real-time factor {}, processor wait {} ms)",
+                next.ordinal() > level.ordinal() ? "⚠️" : "✅", level, next,
+                String.format("%.2f", rtf), String.format("%.1f", waitMillis));
+        level = next;
+        lastChangeAt = now;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("level", level);
+        stats.put("levelNumber", level.ordinal());
+        stats.put("realTimeFactor", Math.round(rtf * 1000) / 1000.0);
+        stats.put("processorWaitMs", Math.round(waitMillis * 10) / 10.0);
+        stats.put("requests", samples);
+        stats.put("stepDowns", stepDowns);
+        stats.put("stepUps", stepUps);
+        stats.put("liveDropped", liveDropped);
+        return stats;
+    }
+}
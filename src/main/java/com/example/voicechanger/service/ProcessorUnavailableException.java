@@ -0,0 +1,13 @@
+package com.example.voicechanger.service;
+
+/**
+ * No voice processor of the requested rate came free in time; the caller is answered with
+ * 503 (or drops a live chunk) instead of waiting longer. Other processing failures are not
+ * this exception.
+ */
+public class ProcessorUnavailableException extends RuntimeException {
+
+    public ProcessorUnavailableException(String message) {
+        super(message);
+    }
+}
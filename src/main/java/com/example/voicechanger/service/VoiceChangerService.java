@@ -1,14 +1,18 @@
 package com.example.voicechanger.service;
 
+import com.example.voicechanger.audio.AudioBufferPool;
+import com.example.voicechanger.dto.AudioEncoding;
 import com.example.voicechanger.dto.VoiceChangerDto;
+import com.example.voicechanger.service.esl.CallDeadlineService;
+import com.example.voicechanger.service.esl.CallDeadlineService.Deadline;
+import com.example.voicechanger.service.esl.CallDeadlineService.Kind;
+import com.example.voicechanger.service.esl.CallEventStream;
+import com.example.voicechanger.service.esl.EslCommandBatcher;
 import com.example.voicechanger.service.esl.EslService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.regex.Pattern;
@@ -18,20 +22,28 @@ import java.util.regex.Pattern;
 public class VoiceChangerService {
 
     private final EslService eslService;
-    private static final String TEMP_DIR = System.getProperty("java.io.tmpdir") + "/voice_morph/";
+    private final EslCommandBatcher commandBatcher;
+    private final CallDeadlineService deadlineService;
+    private final CallEventStream callEvents;
+    private final VoiceProcessingService voiceProcessingService;
 
     private static final Pattern UUID_PATTERN = Pattern.compile(
             "^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$"
     );
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(5);
-    private final Map<String, ScheduledTermination> scheduledTerminations = new ConcurrentHashMap<>();
-
     // Global call duration setting (in seconds)
     private volatile int globalCallDuration = 0; // 0 means disabled
 
-    public VoiceChangerService(EslService eslService) {
+    public VoiceChangerService(EslService eslService, EslCommandBatcher commandBatcher,
+                               CallDeadlineService deadlineService, CallEventStream callEvents,
+                               VoiceProcessingService voiceProcessingService) {
         this.eslService = eslService;
+        this.commandBatcher = commandBatcher;
+        this.deadlineService = deadlineService;
+        this.callEvents = callEvents;
+        this.voiceProcessingService = voiceProcessingService;
+        deadlineService.registerHandler(Kind.GLOBAL_DURATION, this::terminateScheduledCall);
+        deadlineService.registerHandler(Kind.MANUAL, this::terminateScheduledCall);
     }
 
     // Voice type presets
@@ -41,94 +53,43 @@ public class VoiceChangerService {
             "monster", new VoicePreset(-15, -4, 300)  // Monster voice
     );
 
+    // Same echo the presets had when they were rendered by SoX (echo 0.8 0.88 100 0.4)
+    private static final EchoEffect PRESET_ECHO = new EchoEffect(0.8f, 0.88f, 100, 0.4f);
+
     // ------------------- Audio Processing Methods -------------------
-    public File processAudioFile(MultipartFile audioFile, String voiceType) throws Exception {
-        // Create temp directory if it doesn't exist
-        Files.createDirectories(Path.of(TEMP_DIR));
-
-        // Save uploaded file
-        File inputFile = new File(TEMP_DIR + "input_" + System.currentTimeMillis() + ".wav");
-        try (FileOutputStream fos = new FileOutputStream(inputFile)) {
-            fos.write(audioFile.getBytes());
-        }
 
-        return processAudioFile(inputFile, voiceType);
+    public Set<String> getVoiceTypes() {
+        return VOICE_PRESETS.keySet();
     }
 
-    public File processLiveAudio(byte[] audioData, String voiceType) throws Exception {
-        // Create temp directory if it doesn't exist
-        Files.createDirectories(Path.of(TEMP_DIR));
-
-        // Save audio data to file
-        File inputFile = new File(TEMP_DIR + "live_input_" + System.currentTimeMillis() + ".wav");
-        try (FileOutputStream fos = new FileOutputStream(inputFile)) {
-            fos.write(audioData);
-        }
-
-        return processAudioFile(inputFile, voiceType);
+    /**
+     * Render a voice preset on an uploaded WAV/MP3 in-process: the native engine followed by
+     * the preset echo, returned as a WAV.
+     */
+    public byte[] processTestAudio(byte[] audioData, String voiceType) throws IOException {
+        return processTestAudio(audioData, voiceType, null, AudioEncoding.PCM16);
     }
 
-    private File processAudioFile(File inputFile, String voiceType) throws Exception {
-        // Get voice preset
+    /**
+     * {@link #processTestAudio(byte[], String)} for a body that may be raw G.711
+     * ({@code inputEncoding}), returned as a WAV in {@code outputEncoding}.
+     */
+    public byte[] processTestAudio(byte[] audioData, String voiceType, AudioEncoding inputEncoding,
+                                   AudioEncoding outputEncoding) throws IOException {
         VoicePreset preset = VOICE_PRESETS.get(voiceType.toLowerCase());
         if (preset == null) {
             throw new IllegalArgumentException("Invalid voice type");
         }
 
-        // Process audio using SoX (Sound eXchange) - you'll need to install sox
-        File outputFile = new File(TEMP_DIR + "output_" + System.currentTimeMillis() + ".wav");
-
-        String soxCommand = String.format("sox \"%s\" \"%s\" pitch %.1f formant %.1f echo 0.8 0.88 100 0.4",
-                inputFile.getAbsolutePath(),
-                outputFile.getAbsolutePath(),
-                preset.shift,
-                preset.formant);
-
-        Process process = Runtime.getRuntime().exec(soxCommand);
-        int exitCode = process.waitFor();
-
-        if (exitCode != 0) {
-            throw new RuntimeException("Audio processing failed");
+        int sampleRate = voiceProcessingService.getSampleRate();
+        try (AudioBufferPool.Lease pcm = voiceProcessingService.decodeToPcm(audioData, inputEncoding)) {
+            voiceProcessingService.process(pcm, preset.shift, preset.formant, preset.base);
+            try (AudioBufferPool.Lease echoed = voiceProcessingService.leaseSamples(
+                    PRESET_ECHO.outputLength(pcm.sampleCount(), sampleRate))) {
+                PRESET_ECHO.apply(pcm.samples(), echoed.samples(), sampleRate);
+                return voiceProcessingService.encodeWav(echoed.samples(), sampleRate, 1, outputEncoding);
+            }
         }
-
-        // Clean up input file
-        inputFile.delete();
-
-        return outputFile;
-    }
-
-    // Alternative method using FFmpeg (if you prefer)
-    public File processAudioWithFFmpeg(MultipartFile audioFile, String voiceType) throws Exception {
-        Files.createDirectories(Path.of(TEMP_DIR));
-
-        File inputFile = new File(TEMP_DIR + "input_" + System.currentTimeMillis() + ".wav");
-        try (FileOutputStream fos = new FileOutputStream(inputFile)) {
-            fos.write(audioFile.getBytes());
-        }
-
-        VoicePreset preset = VOICE_PRESETS.get(voiceType.toLowerCase());
-        if (preset == null) {
-            throw new IllegalArgumentException("Invalid voice type");
-        }
-
-        File outputFile = new File(TEMP_DIR + "output_" + System.currentTimeMillis() + ".wav");
-
-        // FFmpeg command for voice morphing
-        String ffmpegCommand = String.format("ffmpeg -i \"%s\" -af \"asetrate=44100*%.2f,atempo=1/%.2f\" \"%s\"",
-                inputFile.getAbsolutePath(),
-                (1.0 + preset.shift/100.0),
-                (1.0 + preset.shift/100.0),
-                outputFile.getAbsolutePath());
-
-        Process process = Runtime.getRuntime().exec(ffmpegCommand);
-        int exitCode = process.waitFor();
-
-        if (exitCode != 0) {
-            throw new RuntimeException("FFmpeg processing failed");
-        }
-
-        inputFile.delete();
-        return outputFile;
     }
 
     // ------------------- Global Call Duration -------------------
@@ -159,6 +120,10 @@ public class VoiceChangerService {
 
     // ------------------- Automatic Call Termination -------------------
     public void scheduleAutomaticTermination(String uuid) {
+        scheduleAutomaticTermination(uuid, getLiveCallDuration(uuid));
+    }
+
+    private void scheduleAutomaticTermination(String uuid, long currentDurationSeconds) {
         if (globalCallDuration <= 0) {
             return; // Global duration not set
         }
@@ -166,7 +131,6 @@ public class VoiceChangerService {
         // Cancel any existing termination for this UUID
         cancelScheduledTermination(uuid);
 
-        long currentDurationSeconds = getLiveCallDuration(uuid);
         long remainingSeconds = globalCallDuration - currentDurationSeconds;
 
         if (remainingSeconds <= 0) {
@@ -175,13 +139,7 @@ public class VoiceChangerService {
             return;
         }
 
-        ScheduledTermination scheduledTermination = new ScheduledTermination(
-                uuid,
-                System.currentTimeMillis() + (remainingSeconds * 1000)
-        );
-
-        scheduler.schedule(() -> terminateScheduledCall(uuid), remainingSeconds, TimeUnit.SECONDS);
-        scheduledTerminations.put(uuid, scheduledTermination);
+        deadlineService.schedule(uuid, Kind.GLOBAL_DURATION, remainingSeconds * 1000);
 
         System.out.println("Automatically scheduled termination for " + uuid + " in " + remainingSeconds + " seconds");
     }
@@ -249,12 +207,14 @@ public class VoiceChangerService {
         String fsCommand = String.format("voicechanger set %s %.1f %.1f %.1f",
                 request.uuid(), preset.shift, preset.formant, preset.base);
 
-        String result = eslService.sendCommand(fsCommand);
+        // Batched so rapid preset switching on the same call collapses into the last request
+        String result = commandBatcher.submit(fsCommand).join();
         if (result.contains("-ERR") || result.startsWith("ERROR:")) {
             log.error("❌ Voice type setting failed: {}", result);
             return "Error: " + result;
         }
         log.info("✅ Voice type '{}' applied successfully to call {}", request.voiceType(), request.uuid());
+        callEvents.presetChanged(request.uuid(), request.voiceType().toLowerCase());
         return result;
     }
 
@@ -305,13 +265,7 @@ public class VoiceChangerService {
             return "Call already exceeded desired duration. Terminated immediately.";
         }
 
-        ScheduledTermination scheduledTermination = new ScheduledTermination(
-                request.uuid(),
-                System.currentTimeMillis() + (remainingSeconds * 1000)
-        );
-
-        scheduler.schedule(() -> terminateScheduledCall(request.uuid()), remainingSeconds, TimeUnit.SECONDS);
-        scheduledTerminations.put(request.uuid(), scheduledTermination);
+        deadlineService.schedule(request.uuid(), Kind.MANUAL, remainingSeconds * 1000);
 
         return String.format("Call scheduled to terminate in %d seconds", remainingSeconds);
     }
@@ -327,14 +281,17 @@ public class VoiceChangerService {
         List<VoiceChangerDto.ScheduleTerminationResponse> responses = new ArrayList<>();
         long currentTime = System.currentTimeMillis();
 
-        for (ScheduledTermination termination : scheduledTerminations.values()) {
-            long remainingSeconds = (termination.scheduledTime - currentTime) / 1000;
+        List<Deadline> terminations = new ArrayList<>(deadlineService.getDeadlines(Kind.MANUAL));
+        terminations.addAll(deadlineService.getDeadlines(Kind.GLOBAL_DURATION));
+
+        for (Deadline termination : terminations) {
+            long remainingSeconds = (termination.fireAt() - currentTime) / 1000;
             if (remainingSeconds > 0) {
                 responses.add(new VoiceChangerDto.ScheduleTerminationResponse(
-                        termination.uuid,
+                        termination.uuid(),
                         remainingSeconds,
-                        termination.scheduledTime,
-                        getLiveCallDuration(termination.uuid),
+                        termination.fireAt(),
+                        getLiveCallDuration(termination.uuid()),
                         false,
                         "Scheduled termination active"
                 ));
@@ -378,8 +335,8 @@ public class VoiceChangerService {
             return new ArrayList<>();
         }
 
-        log.debug("📊 Retrieving active calls from FreeSWITCH");
-        String result = eslService.sendCommand("show calls");
+        log.debug("📊 Retrieving active calls from all FreeSWITCH nodes");
+        String result = eslService.sendListingToAllNodes("show calls");
         List<VoiceChangerDto.CallInfo> calls = new ArrayList<>();
 
         if (result.startsWith("ERROR:")) {
@@ -390,6 +347,7 @@ public class VoiceChangerService {
         try {
             String[] lines = result.split("\n");
             boolean headerSkipped = false;
+            List<String[]> rows = new ArrayList<>();
 
             for (String line : lines) {
                 if (!headerSkipped) {
@@ -402,17 +360,26 @@ public class VoiceChangerService {
                 if (parts.length < 25) continue;
 
                 String uuid = parts[21].trim();
-                String caller = parts[5].trim();
-                String callee = parts[6].trim();
-
                 if (isValidUuid(uuid)) {
-                    long durationSeconds = getLiveCallDuration(uuid);
-                    calls.add(new VoiceChangerDto.CallInfo(uuid, caller, callee, durationSeconds));
+                    rows.add(new String[]{uuid, parts[5].trim(), parts[6].trim()});
+                }
+            }
 
-                    // Schedule automatic termination for new calls if global duration is set
-                    if (globalCallDuration > 0 && !scheduledTerminations.containsKey(uuid)) {
-                        scheduleAutomaticTermination(uuid);
-                    }
+            // Pipeline every uuid_dump in one write instead of one round trip per call
+            List<String> dumpCommands = new ArrayList<>(rows.size());
+            for (String[] row : rows) {
+                dumpCommands.add("uuid_dump " + row[0]);
+            }
+            List<CompletableFuture<String>> dumps = commandBatcher.submitNow(dumpCommands);
+
+            for (int i = 0; i < rows.size(); i++) {
+                String uuid = rows.get(i)[0];
+                long durationSeconds = parseLiveCallDuration(uuid, dumps.get(i).join());
+                calls.add(new VoiceChangerDto.CallInfo(uuid, rows.get(i)[1], rows.get(i)[2], durationSeconds));
+
+                // Schedule automatic termination for new calls if global duration is set
+                if (globalCallDuration > 0 && !hasScheduledTermination(uuid)) {
+                    scheduleAutomaticTermination(uuid, durationSeconds);
                 }
             }
 
@@ -426,9 +393,11 @@ public class VoiceChangerService {
 
     // ------------------- Helpers -------------------
     private long getLiveCallDuration(String uuid) {
-        try {
-            String result = eslService.sendCommand("uuid_dump " + uuid);
+        return parseLiveCallDuration(uuid, eslService.sendCommand("uuid_dump " + uuid));
+    }
 
+    private long parseLiveCallDuration(String uuid, String result) {
+        try {
             if (result.startsWith("ERROR:")) {
                 log.debug("🔍 Could not get call duration for {}: {}", uuid, result);
                 return 0;
@@ -460,7 +429,6 @@ public class VoiceChangerService {
         try {
             log.info("⏰ Executing scheduled termination for call {}", uuid);
             String result = eslService.sendCommand("uuid_kill " + uuid + " NORMAL_CLEARING");
-            scheduledTerminations.remove(uuid);
 
             if (result.contains("-ERR") || result.startsWith("ERROR:")) {
                 log.error("❌ Scheduled termination failed for {}: {}", uuid, result);
@@ -473,7 +441,13 @@ public class VoiceChangerService {
     }
 
     private boolean cancelScheduledTermination(String uuid) {
-        return scheduledTerminations.remove(uuid) != null;
+        boolean manual = deadlineService.cancel(uuid, Kind.MANUAL);
+        boolean automatic = deadlineService.cancel(uuid, Kind.GLOBAL_DURATION);
+        return manual || automatic;
+    }
+
+    private boolean hasScheduledTermination(String uuid) {
+        return deadlineService.get(uuid, Kind.MANUAL) != null || deadlineService.get(uuid, Kind.GLOBAL_DURATION) != null;
     }
 
     private boolean isValidUuid(String uuid) {
@@ -482,16 +456,6 @@ public class VoiceChangerService {
 
 
     // ------------------- Inner Classes -------------------
-    private static class ScheduledTermination {
-        private final String uuid;
-        private final long scheduledTime;
-
-        public ScheduledTermination(String uuid, long scheduledTime) {
-            this.uuid = uuid;
-            this.scheduledTime = scheduledTime;
-        }
-    }
-
     private static class VoicePreset {
         private final float shift;
         private final float formant;
@@ -17,8 +17,8 @@ public class VoiceMorphService {
 
     public String setVoiceByEmail(String email, String code) {
         try {
-            // Get channels in CSV format
-            String channelsOutput = eslService.sendCommand("show channels as csv");
+            // Get channels in CSV format, merged across all FreeSWITCH nodes
+            String channelsOutput = eslService.sendListingToAllNodes("show channels as csv");
             if (channelsOutput == null || channelsOutput.isEmpty()) {
                 return "No active channels found.";
             }
@@ -1,24 +1,42 @@
 package com.example.voicechanger.service;
 
+import com.example.voicechanger.audio.AudioBufferPool;
+import com.example.voicechanger.audio.G711;
+import com.example.voicechanger.audio.Resampler;
+import com.example.voicechanger.audio.WavFile;
+import com.example.voicechanger.dto.AudioEncoding;
+import com.example.voicechanger.dto.ChannelPreset;
+import com.example.voicechanger.dto.ProcessedAudio;
+import com.example.voicechanger.dto.ProcessingMode;
+import com.example.voicechanger.dto.QualityLevel;
 import com.example.voicechanger.dto.VoiceProcessRequest;
 import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import com.example.voicechanger.service.spool.ScratchSpool;
+import jakarta.annotation.PreDestroy;
 import net.bramp.ffmpeg.FFmpeg;
 import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.FFprobe;
 import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
 import net.bramp.ffmpeg.probe.FFmpegProbeResult;
 import net.bramp.ffmpeg.probe.FFmpegStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.sound.sampled.*;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 @Service
 public class VoiceProcessingService {
@@ -26,72 +44,452 @@ public class VoiceProcessingService {
     private static final Logger logger = LoggerFactory.getLogger(VoiceProcessingService.class);
     private static final int SAMPLE_RATE = 8000;
     private static final int SAMPLE_SIZE = 16; // 16-bit
-    private static final int CHANNELS = 1; // mono
-
-    private final NativeVoiceProcessor nativeProcessor;
-    private final FFmpeg ffmpeg;
-    private final FFprobe ffprobe;
+    private static final int CHANNELS = 1; // mono, in telephony mode and for test presets
+    private static final int WAV_HEADER_BYTES = 44;
+    private static final int G711_WAV_HEADER_BYTES = 58; // fmt with cbSize, and the fact chunk non-PCM needs
+    private static final int RESAMPLE_BLOCK = 4096;
+    // Staging for AudioInputStream, which only reads into arrays
+    private static final ThreadLocal<byte[]> READ_CHUNK = ThreadLocal.withInitial(() -> new byte[16 * 1024]);
+
+    // Probed on the first conversion that needs it, so a host without FFmpeg still starts
+    private volatile FFmpegExecutor ffmpegExecutor;
+    private final ScratchSpool spool;
+    private final AudioBufferPool bufferPool;
+    private final OverloadController overload;
+    private final NativeProcessorPool processors;
+    private final ProcessingMode defaultMode;
+    private final int[] nativeRates; // ascending, none above the configured ceiling
+    private final int maxChannels;
+    private final int processorsPerRate;
+    private final String nativeBinding;
+    private final boolean nativeLeakTrace;
+    private volatile boolean nativeLoaded;
+
+    /**
+     * Decoded 16-bit audio, interleaved when it has more than one channel, with its sample
+     * rate. Closing returns the buffer.
+     */
+    public record Pcm(AudioBufferPool.Lease lease, int sampleRate, int channels) implements AutoCloseable {
+        public int frames() {
+            return lease.sampleCount() / channels;
+        }
 
-    public VoiceProcessingService() {
-        this.nativeProcessor = new NativeVoiceProcessor();
-        try {
-            // Initialize FFmpeg (assumes ffmpeg is in PATH)
-            this.ffmpeg = new FFmpeg("ffmpeg");
-            this.ffprobe = new FFprobe("ffprobe");
-        } catch (IOException e) {
-            logger.warn("FFmpeg not found in PATH. MP3 conversion will not be available.", e);
-            throw new RuntimeException("FFmpeg initialization failed", e);
+        @Override
+        public void close() {
+            lease.close();
         }
     }
 
-    public byte[] processAudio(byte[] audioData, VoiceProcessRequest request) throws IOException {
-        logger.info("Processing audio: {} bytes", audioData.length);
-
-        try {
-            // First, detect if audio is already in the target format
-            AudioFormatInfo formatInfo = detectAudioFormat(audioData);
-            logger.info("Detected format: {} Hz, {} channels, {} bits, format: {}",
-                    formatInfo.sampleRate, formatInfo.channels, formatInfo.sampleSize, formatInfo.encoding);
+    public VoiceProcessingService(ScratchSpool spool, AudioBufferPool bufferPool, OverloadController overload,
+                                  @Value("${voice.processing.mode:native}") String mode,
+                                  @Value("${voice.changer.sample.rate:44100}") int maxNativeRate,
+                                  @Value("${voice.processing.native-rates:8000,16000,22050,24000,32000,44100,48000}") int[] nativeRates,
+                                  @Value("${voice.processing.processors-per-rate:2}") int processorsPerRate,
+                                  @Value("${voice.processing.acquire-timeout-ms:30000}") long acquireTimeoutMillis,
+                                  @Value("${voice.processing.max-channels:8}") int maxChannels,
+                                  @Value("${voice.native.binding:jni}") String nativeBinding,
+                                  @Value("${voice.native.leak-trace:false}") boolean nativeLeakTrace) {
+        this.spool = spool;
+        this.bufferPool = bufferPool;
+        this.overload = overload;
+        this.defaultMode = ProcessingMode.valueOf(mode.trim().toUpperCase());
+        this.nativeRates = IntStream.concat(IntStream.of(SAMPLE_RATE), Arrays.stream(nativeRates))
+                .filter(rate -> rate >= SAMPLE_RATE && rate <= Math.max(SAMPLE_RATE, maxNativeRate))
+                .distinct().sorted().toArray();
+        this.maxChannels = Math.max(1, maxChannels);
+        this.processorsPerRate = processorsPerRate;
+        this.nativeBinding = nativeBinding;
+        this.nativeLeakTrace = nativeLeakTrace;
+        // The native library is loaded by loadNative(), from the warm-up or the first request
+        this.processors = new NativeProcessorPool(processorsPerRate, acquireTimeoutMillis);
+        logger.info("Voice processing: {} mode by default, native rates {} Hz, {} processors per rate, up to {} channels",
+                defaultMode, Arrays.toString(this.nativeRates), processorsPerRate, this.maxChannels);
+    }
 
-            short[] pcmData;
+    @PreDestroy
+    public void shutdown() {
+        processors.shutdown();
+    }
 
-            // Check if already in target format (8kHz, 16-bit, mono WAV)
-            if (formatInfo.sampleRate == SAMPLE_RATE &&
-                formatInfo.channels == CHANNELS &&
-                formatInfo.sampleSize == SAMPLE_SIZE &&
-                formatInfo.encoding.equals("PCM_SIGNED")) {
+    /**
+     * Load the native library, pick its binding and create the first processor; a no-op once
+     * done. Throws if the library cannot be loaded.
+     */
+    public void loadNative() {
+        if (nativeLoaded) return;
+        synchronized (this) {
+            if (nativeLoaded) return;
+            logger.info("🔌 Native voice processors bound through {}", NativeVoiceProcessor.selectBinding(nativeBinding));
+            NativeVoiceProcessor.setLeakTrace(nativeLeakTrace);
+            processors.release(SAMPLE_RATE, takeProcessor(SAMPLE_RATE));
+            nativeLoaded = true;
+        }
+    }
 
-                logger.info("Audio already in target format (8kHz WAV), skipping conversion");
-                pcmData = extractPCMFromWav(audioData);
-            } else {
-                logger.info("Converting audio to target format (8kHz WAV)");
-                // Convert to target format
-                pcmData = convertToTargetFormat(audioData, formatInfo);
+    /**
+     * Run {@code frames} frames of synthetic audio through every processor of
+     * {@code sampleRate}'s pool, holding them all at once so each is created and configured
+     * before a request needs it.
+     */
+    public void warmUp(int sampleRate, int frames) {
+        loadNative();
+        NativeVoiceProcessor[] held = new NativeVoiceProcessor[processorsPerRate];
+        try (AudioBufferPool.Lease pcm = bufferPool.lease(frames * 2)) {
+            int count = 0;
+            try {
+                while (count < held.length) {
+                    held[count] = acquireProcessor(sampleRate);
+                    count++;
+                }
+                ShortBuffer samples = pcm.samples();
+                for (NativeVoiceProcessor processor : held) {
+                    synthesize(samples, sampleRate);
+                    processor.processAudioInPlace(pcm.buffer(), frames, 10.0f, 2.0f, 100.0f, sampleRate);
+                }
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    processors.release(sampleRate, held[i]);
+                }
             }
+        }
+    }
 
-            logger.info("Ready for processing: {} samples", pcmData.length);
+    /**
+     * A WAV of {@code frames} frames of synthetic voice-like audio at {@code sampleRate}.
+     */
+    public byte[] synthesizeWav(int sampleRate, int frames) {
+        try (AudioBufferPool.Lease pcm = bufferPool.lease(frames * 2)) {
+            ShortBuffer samples = pcm.samples();
+            synthesize(samples, sampleRate);
+            return encodeWav(samples, sampleRate, CHANNELS);
+        }
+    }
 
-            // Process with native library
-            short[] processedPcm = nativeProcessor.processAudio(
-                    pcmData,
-                    pcmData.length,
-                    request.getShift(),
-                    request.getFormant(),
-                    request.getBase(),
-                    SAMPLE_RATE
-            );
+    // A 140 Hz buzz with a few harmonics, fading in and out every quarter second
+    private static void synthesize(ShortBuffer samples, int sampleRate) {
+        for (int i = 0; i < samples.limit(); i++) {
+            double t = (double) i / sampleRate;
+            double buzz = Math.sin(2 * Math.PI * 140 * t) + 0.5 * Math.sin(2 * Math.PI * 280 * t)
+                    + 0.25 * Math.sin(2 * Math.PI * 420 * t);
+            samples.put(i, (short) (6000 * buzz * Math.abs(Math.sin(2 * Math.PI * 2 * t))));
+        }
+    }
 
-            logger.info("Native processing complete: {} samples", processedPcm.length);
+    public ProcessedAudio processAudio(byte[] audioData, VoiceProcessRequest request) throws IOException {
+        logger.info("Processing audio: {} bytes", audioData.length);
+        ProcessingMode mode = request.getMode() != null ? request.getMode() : defaultMode;
+        QualityLevel quality = overload.level();
+
+        try (Pcm pcm = decode(audioData, mode, request.getInputEncoding())) {
+            int rate = pcm.sampleRate();
+            int channels = pcm.channels();
+            logger.info("Ready for processing: {} frames x {} channels at {} Hz ({} mode)",
+                    pcm.frames(), channels, rate, mode);
+
+            process(pcm, request, quality);
+            logger.info("Native processing complete: {} samples", pcm.lease().sampleCount());
+
+            AudioEncoding encoding = request.getOutputEncoding();
+            int outputRate = encoding.isG711() ? SAMPLE_RATE : request.getOutputSampleRate();
+            if (outputRate > 0 && outputRate != rate) {
+                logger.info("Resampling output to {} Hz", outputRate);
+                try (AudioBufferPool.Lease resampled = resample(pcm.lease(), rate, outputRate, channels)) {
+                    return new ProcessedAudio(encodeWav(resampled.samples(), outputRate, channels, encoding),
+                            rate, outputRate, channels, quality);
+                }
+            }
 
             // Convert back to byte array and create WAV
-            return createWavFile(processedPcm);
+            return new ProcessedAudio(encodeWav(pcm.lease().samples(), rate, channels, encoding), rate, rate, channels,
+                    quality);
 
+        } catch (ProcessorUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error in audio processing", e);
             throw new IOException("Failed to process audio: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Decode an uploaded WAV or MP3 to 16-bit mono PCM at {@link #getSampleRate()}, in a
+     * pooled buffer whose limit is the end of the audio. The caller closes the lease.
+     */
+    public AudioBufferPool.Lease decodeToPcm(byte[] audioData) throws IOException {
+        return decodeToPcm(audioData, null);
+    }
+
+    /**
+     * {@link #decodeToPcm(byte[])} for a body that may be raw G.711 ({@code rawEncoding}).
+     */
+    public AudioBufferPool.Lease decodeToPcm(byte[] audioData, AudioEncoding rawEncoding) throws IOException {
+        return decode(audioData, ProcessingMode.TELEPHONY, rawEncoding).lease();
+    }
+
+    /**
+     * Decode an uploaded WAV or MP3 to 16-bit PCM at the rate {@code mode} picks for it
+     * (see {@link #processingRate}), with the channels {@link #keptChannels} keeps.
+     */
+    public Pcm decode(byte[] audioData, ProcessingMode mode) throws IOException {
+        return decode(audioData, mode, null);
+    }
+
+    /**
+     * {@link #decode(byte[], ProcessingMode)}, reading a body without a file header as
+     * headerless 8 kHz mono G.711 when {@code rawEncoding} says it is. Files with a header
+     * are decoded from the header whatever the client said.
+     */
+    public Pcm decode(byte[] audioData, ProcessingMode mode, AudioEncoding rawEncoding) throws IOException {
+        if (rawEncoding != null && rawEncoding.isG711() && !WavFile.isRiff(audioData) && !isAuFile(audioData)) {
+            logger.info("Raw {} audio: {} samples at {} Hz", rawEncoding, audioData.length, SAMPLE_RATE);
+            AudioBufferPool.Lease pcm = bufferPool.lease(audioData.length * 2);
+            if (rawEncoding == AudioEncoding.PCMU) {
+                G711.ulawDecode(audioData, 0, audioData.length, pcm.samples());
+            } else {
+                G711.alawDecode(audioData, 0, audioData.length, pcm.samples());
+            }
+            return new Pcm(pcm, SAMPLE_RATE, CHANNELS);
+        }
+        if (WavFile.isRiff(audioData)) {
+            WavFile wav = WavFile.parse(audioData);
+            logger.info("Detected format: {} Hz, {} channels, {} bits, format: {}",
+                    wav.getSampleRate(), wav.getChannels(), wav.getBitsPerSample(), wav.getEncoding());
+            if (!wav.isSupported()) {
+                // Codecs the parser does not know (ADPCM, GSM...) go through FFmpeg
+                logger.info("Converting audio with FFmpeg");
+                return convertWithFFmpeg(audioData, mode);
+            }
+            int rate = processingRate(wav.getSampleRate(), mode);
+            int channels = keptChannels(wav.getChannels(), mode);
+            if (wav.getSampleRate() == rate) {
+                logger.info("WAV already at {} Hz, decoding directly", rate);
+                AudioBufferPool.Lease pcm = bufferPool.lease(wav.getFrames() * channels * 2);
+                if (channels == 1) {
+                    wav.decodeMono(pcm.samples());
+                } else {
+                    wav.decode(pcm.samples());
+                }
+                return new Pcm(pcm, rate, channels);
+            }
+            logger.info("Resampling {} Hz WAV to {} Hz", wav.getSampleRate(), rate);
+            int[] next = {0};
+            return new Pcm(resample(wav.getSampleRate(), rate, channels, wav.getFrames(), block -> {
+                int frames = channels == 1
+                        ? wav.decodeMono(next[0], block, 0, block.length)
+                        : wav.decode(next[0], block, 0, block.length / channels);
+                next[0] += frames;
+                return frames == 0 ? -1 : frames;
+            }), rate, channels);
+        }
+
+        // Not RIFF: detect MP3 or another Java Sound format (AU, AIFF)
+        AudioFormatInfo formatInfo = detectAudioFormat(audioData);
+        logger.info("Detected format: {} Hz, {} channels, {} bits, format: {}",
+                formatInfo.sampleRate, formatInfo.channels, formatInfo.sampleSize, formatInfo.encoding);
+        return formatInfo.isMP3 ? convertWithFFmpeg(audioData, mode) : convertToPCM16(audioData, mode);
+    }
+
+    /**
+     * The rate the engine runs at for a source: 8 kHz in telephony mode, otherwise the
+     * lowest configured native rate at or above the source's, capped by
+     * {@code voice.changer.sample.rate}.
+     */
+    public int processingRate(int sourceRate, ProcessingMode mode) {
+        if (mode == ProcessingMode.TELEPHONY) {
+            return SAMPLE_RATE;
+        }
+        // Under heavy overload native mode drops to a lower ceiling; 8 kHz is always kept
+        int ceiling = overload.rateCeiling();
+        int chosen = nativeRates[0];
+        for (int rate : nativeRates) {
+            if (rate > ceiling) {
+                break;
+            }
+            chosen = rate;
+            if (rate >= sourceRate) {
+                break;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * How many channels of a {@code sourceChannels} upload are processed: all of them in
+     * native mode, up to {@code voice.processing.max-channels}; otherwise they are mixed to
+     * mono.
+     */
+    public int keptChannels(int sourceChannels, ProcessingMode mode) {
+        return mode == ProcessingMode.NATIVE && sourceChannels <= maxChannels ? sourceChannels : CHANNELS;
+    }
+
+    /**
+     * Run decoded PCM through a native voice engine in place, each channel with the
+     * request's {@link VoiceProcessRequest#presetFor preset} for it.
+     */
+    public void process(Pcm pcm, VoiceProcessRequest request) {
+        process(pcm, request, overload.level());
+    }
+
+    private void process(Pcm pcm, VoiceProcessRequest request, QualityLevel quality) {
+        int channels = pcm.channels();
+        float[] shifts = new float[channels];
+        float[] formants = new float[channels];
+        float[] bases = new float[channels];
+        for (int c = 0; c < channels; c++) {
+            ChannelPreset preset = request.presetFor(c);
+            shifts[c] = preset.shift();
+            formants[c] = preset.formant();
+            bases[c] = preset.base();
+        }
+        int sampleRate = pcm.sampleRate();
+        runMeasured(sampleRate, pcm.frames(), request.isLive(), quality, processor ->
+                processor.processAudioInPlace(pcm.lease().buffer(), pcm.frames(), channels, shifts, formants, bases, sampleRate));
+    }
+
+    /**
+     * Run 8 kHz PCM through the native voice engine, in place.
+     */
+    public void process(AudioBufferPool.Lease pcm, float shift, float formant, float base) {
+        process(pcm, SAMPLE_RATE, shift, formant, base);
+    }
+
+    /**
+     * Run PCM through a native voice engine for its rate, in place. An engine keeps stream
+     * state, so each request has one to itself; requests wait when all of a rate's are busy.
+     */
+    public void process(AudioBufferPool.Lease pcm, int sampleRate, float shift, float formant, float base) {
+        runMeasured(sampleRate, pcm.sampleCount(), false, overload.level(), processor ->
+                processor.processAudioInPlace(pcm.buffer(), pcm.sampleCount(), shift, formant, base, sampleRate));
+    }
+
+    /**
+     * Run {@code work} on a processor for {@code sampleRate} at {@code quality}, and report
+     * the wait for it and the real-time factor to the {@link OverloadController}. A live
+     * chunk waits no longer than it plays, so a stream drops a chunk instead of falling
+     * behind; the {@link ProcessorUnavailableException} then says so.
+     */
+    private void runMeasured(int sampleRate, long frames, boolean live, QualityLevel quality,
+                             Consumer<NativeVoiceProcessor> work) {
+        loadNative();
+        long audioNanos = frames * 1_000_000_000L / sampleRate;
+        long start = System.nanoTime();
+        NativeVoiceProcessor processor;
+        try {
+            processor = live ? processors.acquire(sampleRate, audioNanos / 1_000_000) : processors.acquire(sampleRate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a voice processor", e);
+        } catch (ProcessorUnavailableException e) {
+            if (live) overload.recordLiveDrop(System.nanoTime() - start);
+            throw e;
+        }
+        long acquired = System.nanoTime();
+        try {
+            processor.setQuality(quality.nativeLevel());
+            work.accept(processor);
+        } finally {
+            processors.release(sampleRate, processor);
+            overload.record(acquired - start, System.nanoTime() - acquired, audioNanos);
+        }
+    }
+
+    private NativeVoiceProcessor acquireProcessor(int sampleRate) {
+        loadNative();
+        return takeProcessor(sampleRate);
+    }
+
+    private NativeVoiceProcessor takeProcessor(int sampleRate) {
+        try {
+            return processors.acquire(sampleRate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a voice processor", e);
+        }
+    }
+
+    public Map<String, Object> getProcessorStats() {
+        return processors.getStats();
+    }
+
+    public Map<String, Object> getOverloadStats() {
+        return overload.getStats();
+    }
+
+    /**
+     * The rates native mode processes at, ascending; each has its own processor pool.
+     */
+    public int[] getNativeRates() {
+        return nativeRates.clone();
+    }
+
+    /**
+     * Resample PCM of {@code channels} interleaved channels from {@code sampleRate} to
+     * {@code outputRate}, e.g. to hand clients back the rate they uploaded at. The caller
+     * closes the returned lease.
+     */
+    public AudioBufferPool.Lease resample(AudioBufferPool.Lease pcm, int sampleRate, int outputRate, int channels)
+            throws IOException {
+        ShortBuffer samples = pcm.samples();
+        short[] chunk = new short[RESAMPLE_BLOCK * channels];
+        return resample(sampleRate, outputRate, channels, samples.remaining() / channels, block -> {
+            int count = Math.min(block.length, samples.remaining()) / channels * channels;
+            if (count == 0) return -1;
+            samples.get(chunk, 0, count);
+            for (int i = 0; i < count; i++) {
+                block[i] = chunk[i] / 32768f;
+            }
+            return count / channels;
+        });
+    }
+
+    /**
+     * Lease a buffer for {@code samples} 16-bit samples, for stages that cannot work in place.
+     */
+    public AudioBufferPool.Lease leaseSamples(int samples) {
+        return bufferPool.lease(samples * 2);
+    }
+
+    /**
+     * Wrap the remaining samples in a WAV header. The result is the only heap copy of the
+     * audio on the way out.
+     */
+    public byte[] encodeWav(ShortBuffer pcmData) {
+        return encodeWav(pcmData, SAMPLE_RATE, CHANNELS);
+    }
+
+    public byte[] encodeWav(ShortBuffer pcmData, int sampleRate, int channels) {
+        return encodeWav(pcmData, sampleRate, channels, AudioEncoding.PCM16);
+    }
+
+    /**
+     * Encode the remaining samples as a WAV in {@code encoding}; G.711 takes one byte per
+     * sample instead of two. Does not move {@code pcmData}.
+     */
+    public byte[] encodeWav(ShortBuffer pcmData, int sampleRate, int channels, AudioEncoding encoding) {
+        if (encoding == AudioEncoding.PCM16) {
+            int dataSize = pcmData.remaining() * 2; // 2 bytes per sample
+            byte[] wav = new byte[WAV_HEADER_BYTES + dataSize];
+            ByteBuffer out = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+            writeWavHeader(out, sampleRate, channels, encoding, dataSize);
+            out.asShortBuffer().put(pcmData.duplicate());
+            return wav;
+        }
+        int dataSize = pcmData.remaining();
+        byte[] wav = new byte[G711_WAV_HEADER_BYTES + dataSize + (dataSize & 1)]; // chunks are word aligned
+        ByteBuffer out = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+        writeWavHeader(out, sampleRate, channels, encoding, dataSize);
+        if (encoding == AudioEncoding.PCMU) {
+            G711.ulawEncode(pcmData, wav, out.position());
+        } else {
+            G711.alawEncode(pcmData, wav, out.position());
+        }
+        return wav;
+    }
+
+    public int getSampleRate() {
+        return SAMPLE_RATE;
+    }
+
     // Helper class to store audio format information
     private static class AudioFormatInfo {
         final float sampleRate;
@@ -133,6 +531,12 @@ public class VoiceProcessingService {
         }
     }
 
+    // Sun/NeXT .au ("audio/basic" files), which Java Sound reads
+    private static boolean isAuFile(byte[] audioData) {
+        return audioData.length >= 4
+                && audioData[0] == '.' && audioData[1] == 's' && audioData[2] == 'n' && audioData[3] == 'd';
+    }
+
     private boolean isMP3Format(byte[] audioData) {
         // Check for MP3 header signatures
         if (audioData.length < 3) return false;
@@ -150,67 +554,68 @@ public class VoiceProcessingService {
         return false;
     }
 
-    private short[] extractPCMFromWav(byte[] wavData) throws IOException {
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(wavData);
-             AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(bais)) {
-
-            // Read all data
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
+    /**
+     * Read a whole 16-bit stream into a leased buffer, sized from the frame length when the
+     * stream knows it.
+     */
+    private AudioBufferPool.Lease readPcm(AudioInputStream stream) throws IOException {
+        long frames = stream.getFrameLength();
+        int frameSize = Math.max(1, stream.getFormat().getFrameSize());
+        int expected = frames > 0 && frames * frameSize <= Integer.MAX_VALUE / 2
+                ? (int) (frames * frameSize) : 64 * 1024;
+
+        AudioBufferPool.Lease lease = bufferPool.lease(expected);
+        try {
+            ByteBuffer target = lease.buffer();
+            target.limit(target.capacity());
+            byte[] chunk = READ_CHUNK.get();
             int bytesRead;
-            while ((bytesRead = audioInputStream.read(buffer)) != -1) {
-                baos.write(buffer, 0, bytesRead);
+            while ((bytesRead = stream.read(chunk)) != -1) {
+                if (target.remaining() < bytesRead) {
+                    lease = bufferPool.grow(lease, target.position() + bytesRead);
+                    target = lease.buffer();
+                }
+                target.put(chunk, 0, bytesRead);
             }
-
-            byte[] pcmBytes = baos.toByteArray();
-            short[] samples = new short[pcmBytes.length / 2];
-            ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
-
-            return samples;
-        } catch (UnsupportedAudioFileException e) {
-            throw new IOException("Invalid WAV format", e);
-        }
-    }
-
-    private short[] convertToTargetFormat(byte[] audioData, AudioFormatInfo formatInfo) throws IOException {
-        if (formatInfo.isMP3) {
-            return convertMP3ToTargetFormat(audioData);
-        } else {
-            return convertWavToTargetFormat(audioData);
+            target.limit(target.position() & ~1).position(0);
+            return lease;
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
         }
     }
 
-    private short[] convertMP3ToTargetFormat(byte[] mp3Data) throws IOException {
-        try {
-            // Create temporary files for conversion
-            Path inputPath = Files.createTempFile("input", ".mp3");
-            Path outputPath = Files.createTempFile("output", ".wav");
+    private Pcm convertWithFFmpeg(byte[] mp3Data, ProcessingMode mode) throws IOException {
+        // 16-bit mono is 2 bytes per sample per second of output, up to rate / 1000 times a
+        // low-bitrate (16 kbps) MP3: 8x at 8 kHz. Both files are reserved on the first one so
+        // concurrent conversions never hold half a reservation.
+        int outputRate = mode == ProcessingMode.TELEPHONY ? SAMPLE_RATE : nativeRates[nativeRates.length - 1];
+        long expectedBytes = mp3Data.length + (long) outputRate / 1000 * mp3Data.length;
+        try (ScratchSpool.ScratchFile input = spool.create("input_", ".mp3", expectedBytes);
+             ScratchSpool.ScratchFile output = spool.create("output_", ".wav", 0)) {
+            Path inputPath = input.getPath();
+            Path outputPath = output.getPath();
+
+            // Write input MP3 data
+            Files.write(inputPath, mp3Data, StandardOpenOption.WRITE);
+
+            // Build FFmpeg command to convert MP3 to 16-bit WAV; in native mode rate and
+            // channels are kept and picked afterwards, once the source's are known
+            FFmpegOutputBuilder outputBuilder = new FFmpegBuilder()
+                    .setInput(inputPath.toString())
+                    .overrideOutputFiles(true)
+                    .addOutput(outputPath.toString())
+                    .setAudioCodec("pcm_s16le");
+            if (mode == ProcessingMode.TELEPHONY) {
+                outputBuilder.setAudioChannels(CHANNELS).setAudioSampleRate(SAMPLE_RATE);
+            }
+            FFmpegBuilder builder = outputBuilder.done();
 
-            try {
-                // Write input MP3 data
-                Files.write(inputPath, mp3Data, StandardOpenOption.WRITE);
-
-                // Build FFmpeg command to convert MP3 to 8kHz WAV
-                FFmpegBuilder builder = new FFmpegBuilder()
-                        .setInput(inputPath.toString())
-                        .overrideOutputFiles(true)
-                        .addOutput(outputPath.toString())
-                        .setAudioCodec("pcm_s16le")
-                        .setAudioSampleRate(SAMPLE_RATE)
-                        .setAudioChannels(CHANNELS)
-                        .done();
-
-                FFmpegExecutor executor = new FFmpegExecutor(ffmpeg, ffprobe);
-                executor.createJob(builder).run();
-
-                // Read converted WAV file
-                byte[] wavData = Files.readAllBytes(outputPath);
-                return extractPCMFromWav(wavData);
+            ffmpegExecutor().createJob(builder).run();
 
-            } finally {
-                // Clean up temporary files
-                Files.deleteIfExists(inputPath);
-                Files.deleteIfExists(outputPath);
+            // Read converted WAV file
+            try (AudioInputStream converted = AudioSystem.getAudioInputStream(outputPath.toFile())) {
+                return readPcm16(converted, mode);
             }
 
         } catch (Exception e) {
@@ -219,55 +624,49 @@ public class VoiceProcessingService {
         }
     }
 
-    private short[] convertWavToTargetFormat(byte[] wavData) throws IOException {
-        return convertToPCM16(wavData);
+    private FFmpegExecutor ffmpegExecutor() throws IOException {
+        FFmpegExecutor executor = ffmpegExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (ffmpegExecutor == null) {
+                    try {
+                        ffmpegExecutor = new FFmpegExecutor(new FFmpeg("ffmpeg"), new FFprobe("ffprobe"));
+                        logger.info("FFmpeg found in PATH");
+                    } catch (IOException e) {
+                        throw new IOException("FFmpeg not found in PATH; MP3 and other codecs need it", e);
+                    }
+                }
+                executor = ffmpegExecutor;
+            }
+        }
+        return executor;
     }
 
-    private short[] convertToPCM16(byte[] audioData) throws IOException {
-        try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
-            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(bais);
+    private Pcm convertToPCM16(byte[] audioData, ProcessingMode mode) throws IOException {
+        try (ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
+             AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(bais)) {
 
             AudioFormat sourceFormat = audioInputStream.getFormat();
             logger.info("Source format: {} Hz, {} channels, {} bits",
                     sourceFormat.getSampleRate(), sourceFormat.getChannels(), sourceFormat.getSampleSizeInBits());
 
-            // Define target format (16-bit PCM, mono, 8kHz)
-            AudioFormat targetFormat = new AudioFormat(
-                    AudioFormat.Encoding.PCM_SIGNED,
-                    SAMPLE_RATE,
-                    SAMPLE_SIZE,
-                    CHANNELS,
-                    CHANNELS * (SAMPLE_SIZE / 8), // frame size
-                    SAMPLE_RATE, // frame rate
-                    false // little endian
-            );
-
-            // Convert if necessary
-            if (!AudioSystem.isConversionSupported(targetFormat, sourceFormat)) {
-                throw new IOException("Conversion from " + sourceFormat + " to " + targetFormat + " not supported");
+            // Java Sound only decodes to 16-bit PCM; channel mixing and rate conversion are ours
+            int channels = sourceFormat.getChannels();
+            float rate = sourceFormat.getSampleRate();
+            AudioFormat pcm16 = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, SAMPLE_SIZE, channels,
+                    channels * (SAMPLE_SIZE / 8), rate, false);
+            if (!WavFile.isSupportedRate(rate)) {
+                throw new IOException("Unsupported sample rate " + rate + " Hz (" + WavFile.MIN_SAMPLE_RATE
+                        + " to " + WavFile.MAX_SAMPLE_RATE + " Hz)");
             }
-
-            AudioInputStream convertedStream = AudioSystem.getAudioInputStream(targetFormat, audioInputStream);
-
-            // Read all data
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = convertedStream.read(buffer)) != -1) {
-                baos.write(buffer, 0, bytesRead);
+            if (channels <= 0 || !AudioSystem.isConversionSupported(pcm16, sourceFormat)) {
+                throw new IOException("Conversion from " + sourceFormat + " to 16-bit PCM not supported");
             }
 
-            byte[] pcmBytes = baos.toByteArray();
-
-            // Convert to short array
-            short[] samples = new short[pcmBytes.length / 2];
-            ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
-
-            convertedStream.close();
-            audioInputStream.close();
-
-            return samples;
+            try (AudioInputStream decoded = sourceFormat.matches(pcm16)
+                    ? audioInputStream : AudioSystem.getAudioInputStream(pcm16, audioInputStream)) {
+                return readPcm16(decoded, mode);
+            }
 
         } catch (UnsupportedAudioFileException e) {
             logger.error("Unsupported audio format", e);
@@ -275,44 +674,144 @@ public class VoiceProcessingService {
         }
     }
 
-    private byte[] createWavFile(short[] pcmData) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
+    /**
+     * Read a 16-bit little-endian stream at the rate {@code mode} picks for it, with the
+     * channels {@link #keptChannels} keeps. Streams already in that shape are copied as they are.
+     */
+    private Pcm readPcm16(AudioInputStream pcm16, ProcessingMode mode) throws IOException {
+        AudioFormat format = pcm16.getFormat();
+        int sourceRate = Math.round(format.getSampleRate());
+        int channels = format.getChannels();
+        int rate = processingRate(sourceRate, mode);
+        int kept = keptChannels(channels, mode);
+        if (kept == channels && sourceRate == rate) {
+            return new Pcm(readPcm(pcm16), rate, channels);
+        }
+
+        byte[] chunk = READ_CHUNK.get();
+        ByteBuffer bytes = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+        int frameBytes = channels * 2;
+        return new Pcm(resample(sourceRate, rate, kept, pcm16.getFrameLength(), block -> {
+            int wanted = Math.min(block.length / kept, chunk.length / frameBytes) * frameBytes;
+            int read = pcm16.readNBytes(chunk, 0, wanted);
+            int frames = read / frameBytes;
+            if (frames == 0) return -1;
+            if (kept == channels) {
+                for (int i = 0; i < frames * channels; i++) {
+                    block[i] = bytes.getShort(i * 2) / 32768f;
+                }
+                return frames;
+            }
+            for (int i = 0; i < frames; i++) {
+                int sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += bytes.getShort(i * frameBytes + c * 2);
+                }
+                block[i] = sum / (32768f * channels);
+            }
+            return frames;
+        }), rate, kept);
+    }
 
-        // WAV header
-        int sampleRate = SAMPLE_RATE;
-        int bitsPerSample = SAMPLE_SIZE;
-        int channels = CHANNELS;
+    /**
+     * Frames in [-1, 1), interleaved when there is more than one channel, a block at a time.
+     */
+    @FunctionalInterface
+    private interface FrameSource {
+        /** Fill the start of {@code block}; return the frame count, or -1 at the end. */
+        int read(float[] block) throws IOException;
+    }
+
+    /**
+     * Run a source through a {@link Resampler} per channel into a leased, interleaved 16-bit
+     * buffer, a block of {@value #RESAMPLE_BLOCK} frames at a time.
+     */
+    private AudioBufferPool.Lease resample(int sourceRate, int targetRate, int channels, long expectedFrames,
+                                           FrameSource source) throws IOException {
+        Resampler[] resamplers = new Resampler[channels];
+        for (int c = 0; c < channels; c++) {
+            resamplers[c] = new Resampler(sourceRate, targetRate);
+        }
+        float[] in = new float[RESAMPLE_BLOCK * channels];
+        int outFrames = Math.max(resamplers[0].maxOutput(RESAMPLE_BLOCK), resamplers[0].maxFlush());
+        // Mono runs straight through; more channels are split out and back around the resamplers
+        float[][] channelIn = channels == 1 ? new float[][]{in} : new float[channels][RESAMPLE_BLOCK];
+        float[][] channelOut = new float[channels][outFrames];
+        short[] converted = new short[outFrames * channels];
+        long expected = expectedFrames > 0 ? expectedFrames * targetRate / sourceRate + 16 : 32 * 1024;
+
+        AudioBufferPool.Lease lease = bufferPool.lease((int) Math.min(Integer.MAX_VALUE / 2, expected * channels * 2));
+        try {
+            ByteBuffer target = lease.buffer();
+            target.limit(target.capacity());
+            while (true) {
+                int read = source.read(in);
+                if (channels > 1) {
+                    for (int i = 0; i < read; i++) {
+                        for (int c = 0; c < channels; c++) {
+                            channelIn[c][i] = in[i * channels + c];
+                        }
+                    }
+                }
+                int produced = 0;
+                for (int c = 0; c < channels; c++) {
+                    // Every channel's resampler has seen the same number of frames, so they agree on the count
+                    produced = read < 0 ? resamplers[c].flush(channelOut[c], 0)
+                            : resamplers[c].process(channelIn[c], 0, read, channelOut[c], 0);
+                    for (int i = 0; i < produced; i++) {
+                        converted[i * channels + c] = (short) Math.max(Short.MIN_VALUE,
+                                Math.min(Short.MAX_VALUE, Math.round(channelOut[c][i] * 32768f)));
+                    }
+                }
+                int bytes = produced * channels * 2;
+                if (target.remaining() < bytes) {
+                    lease = bufferPool.grow(lease, target.position() + bytes);
+                    target = lease.buffer();
+                }
+                target.asShortBuffer().put(converted, 0, produced * channels);
+                target.position(target.position() + bytes);
+                if (read < 0) break;
+            }
+            target.limit(target.position()).position(0);
+            return lease;
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    private void writeWavHeader(ByteBuffer out, int sampleRate, int channels, AudioEncoding encoding, int dataSize) {
+        boolean pcm = encoding == AudioEncoding.PCM16;
+        int bitsPerSample = pcm ? SAMPLE_SIZE : 8;
         int byteRate = sampleRate * channels * bitsPerSample / 8;
         int blockAlign = channels * bitsPerSample / 8;
-        int dataSize = pcmData.length * 2; // 2 bytes per sample
-        int fileSize = 36 + dataSize;
+        int headerSize = pcm ? WAV_HEADER_BYTES : G711_WAV_HEADER_BYTES;
 
         // RIFF header
-        dos.writeBytes("RIFF");
-        dos.writeInt(Integer.reverseBytes(fileSize));
-        dos.writeBytes("WAVE");
+        out.put(new byte[]{'R', 'I', 'F', 'F'});
+        out.putInt(headerSize - 8 + dataSize + (dataSize & 1));
+        out.put(new byte[]{'W', 'A', 'V', 'E'});
 
         // Format chunk
-        dos.writeBytes("fmt ");
-        dos.writeInt(Integer.reverseBytes(16)); // chunk size
-        dos.writeShort(Short.reverseBytes((short) 1)); // PCM format
-        dos.writeShort(Short.reverseBytes((short) channels));
-        dos.writeInt(Integer.reverseBytes(sampleRate));
-        dos.writeInt(Integer.reverseBytes(byteRate));
-        dos.writeShort(Short.reverseBytes((short) blockAlign));
-        dos.writeShort(Short.reverseBytes((short) bitsPerSample));
-
-        // Data chunk
-        dos.writeBytes("data");
-        dos.writeInt(Integer.reverseBytes(dataSize));
-
-        // PCM data
-        for (short sample : pcmData) {
-            dos.writeShort(Short.reverseBytes(sample));
+        out.put(new byte[]{'f', 'm', 't', ' '});
+        out.putInt(pcm ? 16 : 18); // chunk size
+        out.putShort((short) (pcm ? 1 : encoding == AudioEncoding.PCMU ? 7 : 6)); // PCM, mu-law or A-law
+        out.putShort((short) channels);
+        out.putInt(sampleRate);
+        out.putInt(byteRate);
+        out.putShort((short) blockAlign);
+        out.putShort((short) bitsPerSample);
+        if (!pcm) {
+            out.putShort((short) 0); // no extra format bytes
+
+            // Fact chunk: frame count, required for compressed formats
+            out.put(new byte[]{'f', 'a', 'c', 't'});
+            out.putInt(4);
+            out.putInt(dataSize / blockAlign);
         }
 
-        dos.close();
-        return baos.toByteArray();
+        // Data chunk
+        out.put(new byte[]{'d', 'a', 't', 'a'});
+        out.putInt(dataSize);
     }
-}
\ No newline at end of file
+}
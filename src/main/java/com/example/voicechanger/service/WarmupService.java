@@ -0,0 +1,126 @@
+package com.example.voicechanger.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Warms the voice engine up once the application has started, off the startup path: loads
+ * the native library, runs synthetic audio through every processor of every native rate and
+ * through each voice preset, so the first real request pays neither STFT setup nor
+ * interpreted code. Readiness ({@link ReadinessState}) is refused until that is done; if it
+ * fails, e.g. the native library is missing, it stays refused.
+ */
+@Slf4j
+@Service
+public class WarmupService {
+
+    public enum State { PENDING, WARMING, READY, FAILED }
+
+    private final VoiceProcessingService voiceProcessingService;
+    private final VoiceChangerService voiceChangerService;
+    private final OverloadController overload;
+    private final ApplicationEventPublisher events;
+    private final boolean enabled;
+    private final int rounds;
+    private final int audioMillis;
+
+    private volatile State state = State.PENDING;
+    private volatile long startedAt;
+    private volatile long tookMillis = -1;
+    private volatile String failure;
+
+    public WarmupService(VoiceProcessingService voiceProcessingService, VoiceChangerService voiceChangerService,
+                         OverloadController overload, ApplicationEventPublisher events,
+                         @Value("${voice.warmup.enabled:true}") boolean enabled,
+                         @Value("${voice.warmup.rounds:3}") int rounds,
+                         @Value("${voice.warmup.audio-ms:500}") int audioMillis) {
+        this.voiceProcessingService = voiceProcessingService;
+        this.voiceChangerService = voiceChangerService;
+        this.overload = overload;
+        this.events = events;
+        this.enabled = enabled;
+        this.rounds = Math.max(1, rounds);
+        this.audioMillis = Math.max(20, audioMillis);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            state = State.READY;
+            return;
+        }
+        state = State.WARMING;
+        startedAt = System.currentTimeMillis();
+        AvailabilityChangeEvent.publish(events, this, ReadinessState.REFUSING_TRAFFIC);
+        Thread thread = new Thread(this::warmUp, "voice-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Spring Boot accepts traffic right after ApplicationReadyEvent; not before we are warm.
+    // Holds the lock markReady takes, so READY cannot land between the check and the refusal
+    @EventListener
+    public synchronized void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && state != State.READY) {
+            AvailabilityChangeEvent.publish(events, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+
+    private void warmUp() {
+        try {
+            voiceProcessingService.loadNative();
+            int[] rates = voiceProcessingService.getNativeRates();
+            for (int round = 0; round < rounds; round++) {
+                for (int rate : rates) {
+                    voiceProcessingService.warmUp(rate, rate * audioMillis / 1000);
+                }
+                byte[] wav = voiceProcessingService.synthesizeWav(voiceProcessingService.getSampleRate(),
+                        voiceProcessingService.getSampleRate() * audioMillis / 1000);
+                for (String voiceType : voiceChangerService.getVoiceTypes()) {
+                    voiceChangerService.processTestAudio(wav, voiceType);
+                }
+            }
+            overload.reset();
+            tookMillis = System.currentTimeMillis() - startedAt;
+            markReady();
+            log.info("🔥 Voice engine warmed up in {} ms ({} rates, {} presets, {} rounds) - accepting traffic",
+                    tookMillis, rates.length, voiceChangerService.getVoiceTypes().size(), rounds);
+        } catch (Exception | LinkageError e) {
+            failure = e.toString();
+            state = State.FAILED;
+            log.error("❌ Voice engine warm-up failed - refusing traffic", e);
+        }
+    }
+
+    private synchronized void markReady() {
+        state = State.READY;
+        AvailabilityChangeEvent.publish(events, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        if (tookMillis >= 0) {
+            status.put("tookMs", tookMillis);
+        } else if (state == State.WARMING) {
+            status.put("elapsedMs", System.currentTimeMillis() - startedAt);
+        }
+        if (failure != null) {
+            status.put("failure", failure);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.voicechanger.service.esl;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Every per-call deadline (talk-time expiry, global call duration, manually scheduled
+ * termination) on one hashed timer wheel, keyed by call UUID and kind. Scheduling and
+ * cancelling are O(1) and no thread is held per call; expired deadlines run the handler
+ * registered for their kind on a virtual thread, so a slow ESL command never stalls the wheel.
+ * <p>
+ * Every arm and clear is written to the {@link CallJournal}, so open deadlines can be
+ * re-armed after a restart.
+ */
+@Slf4j
+@Service
+public class CallDeadlineService {
+
+    public enum Kind { TALK_TIME, GLOBAL_DURATION, MANUAL }
+
+    public record Deadline(String uuid, Kind kind, long fireAt, Timeout timeout) {
+        public long remainingMillis() {
+            return Math.max(0, fireAt - System.currentTimeMillis());
+        }
+    }
+
+    private record Key(String uuid, Kind kind) {
+    }
+
+    private final HashedWheelTimer timer;
+    private final CallJournal journal;
+    private final Map<Kind, Consumer<String>> handlers = new ConcurrentHashMap<>();
+    private final ExecutorService actionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Key, Deadline> deadlines = new ConcurrentHashMap<>();
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    public CallDeadlineService(CallJournal journal,
+                               @Value("${call.deadline.tick-ms:100}") long tickMillis,
+                               @Value("${call.deadline.wheel-size:512}") int wheelSize) {
+        this.journal = journal;
+        this.timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "call-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        }, tickMillis, TimeUnit.MILLISECONDS, wheelSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int pending = timer.stop().size();
+        actionExecutor.shutdown();
+        log.info("🛑 Call deadline wheel stopped with {} pending deadline(s)", pending);
+    }
+
+    /**
+     * Set what happens when a deadline of the given kind expires; called with the call UUID.
+     */
+    public void registerHandler(Kind kind, Consumer<String> handler) {
+        handlers.put(kind, handler);
+    }
+
+    /**
+     * Arm a deadline for the call, replacing any existing one of the same kind.
+     * A non-positive delay fires on the next tick.
+     */
+    public Deadline schedule(String uuid, Kind kind, long delayMillis) {
+        Key key = new Key(uuid, kind);
+        Timeout timeout = timer.newTimeout(t -> expire(key, t), Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        Deadline deadline = new Deadline(uuid, kind, System.currentTimeMillis() + delayMillis, timeout);
+        journal.deadlineArmed(uuid, kind, deadline.fireAt());
+
+        Deadline previous = deadlines.put(key, deadline);
+        if (previous != null) {
+            previous.timeout().cancel();
+            cancelled.incrementAndGet();
+        }
+        if (timeout.isExpired()) {
+            expire(key, timeout); // fired before it was registered
+        }
+        log.debug("⏳ {} deadline for {} in {} ms", kind, uuid, delayMillis);
+        return deadline;
+    }
+
+    public boolean cancel(String uuid, Kind kind) {
+        Deadline removed = deadlines.remove(new Key(uuid, kind));
+        if (removed == null) {
+            return false;
+        }
+        removed.timeout().cancel();
+        cancelled.incrementAndGet();
+        journal.deadlineCleared(uuid, kind);
+        return true;
+    }
+
+    /**
+     * Cancel every deadline for the call, e.g. once it has hung up.
+     */
+    public int cancelAll(String uuid) {
+        int count = 0;
+        for (Kind kind : Kind.values()) {
+            if (cancel(uuid, kind)) count++;
+        }
+        return count;
+    }
+
+    public Deadline get(String uuid, Kind kind) {
+        return deadlines.get(new Key(uuid, kind));
+    }
+
+    public List<Deadline> getDeadlines(Kind kind) {
+        List<Deadline> result = new ArrayList<>();
+        for (Deadline deadline : deadlines.values()) {
+            if (deadline.kind() == kind) result.add(deadline);
+        }
+        return result;
+    }
+
+    public long getPendingCount() {
+        return timer.pendingTimeouts();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<Kind, Integer> byKind = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            byKind.put(kind, 0);
+        }
+        deadlines.keySet().forEach(key -> byKind.merge(key.kind(), 1, Integer::sum));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", deadlines.size());
+        stats.put("wheelTimeouts", getPendingCount());
+        stats.put("byKind", byKind);
+        stats.put("fired", fired.get());
+        stats.put("cancelled", cancelled.get());
+        return stats;
+    }
+
+    private void expire(Key key, Timeout timeout) {
+        Deadline deadline = deadlines.get(key);
+        if (deadline == null || deadline.timeout() != timeout || !deadlines.remove(key, deadline)) {
+            return; // replaced, cancelled or not registered yet
+        }
+
+        fired.incrementAndGet();
+        journal.deadlineCleared(deadline.uuid(), deadline.kind());
+        Consumer<String> handler = handlers.get(deadline.kind());
+        if (handler == null) {
+            log.warn("⚠️ No handler for expired {} deadline of {}", deadline.kind(), deadline.uuid());
+            return;
+        }
+        actionExecutor.execute(() -> {
+            try {
+                handler.accept(deadline.uuid());
+            } catch (Exception e) {
+                log.error("❌ {} deadline action failed for {}: {}", deadline.kind(), deadline.uuid(), e.getMessage(), e);
+            }
+        });
+    }
+}
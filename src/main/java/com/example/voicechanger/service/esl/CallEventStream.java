@@ -0,0 +1,277 @@
+package com.example.voicechanger.service.esl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Live call state pushed to dashboards over server-sent events, built from the FreeSWITCH
+ * event stream rather than by querying the switch. Call handlers report each change as it
+ * happens; once per tick the changes are coalesced to the latest state of each call and
+ * written, serialized once, to every subscriber, together with the ESL connection status when
+ * it changed. A new subscriber first gets a snapshot of every tracked call.
+ * <p>
+ * Events: {@code snapshot} ({@code calls} and {@code connection}) on subscribe, then
+ * {@code delta} ({@code calls} changed since the last tick, {@code connection} if it changed).
+ */
+@Slf4j
+@Service
+public class CallEventStream {
+
+    public enum Change { CREATED, ANSWERED, BRIDGED, PRESET_CHANGED, HUNG_UP }
+
+    /**
+     * Latest known state of a call leg; {@code change} is the last thing that happened to it.
+     */
+    public record CallState(String uuid, Change change, String caller, String callee, String peerUuid,
+                            String preset, boolean answered, String hangupCause, long createdAt, long updatedAt) {
+    }
+
+    public record ConnectionState(boolean connected, String status, int reconnectAttempts) {
+    }
+
+    private record Batch(List<CallState> calls, ConnectionState connection) {
+    }
+
+    private final EslService eslService;
+    private final ObjectMapper objectMapper;
+    private final long keepAliveMillis;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "call-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, CallState> calls = new ConcurrentHashMap<>();
+    private final Map<String, CallState> pending = new ConcurrentHashMap<>();
+    private final Map<String, String> peers = new ConcurrentHashMap<>(); // bridged leg -> tracked call
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private volatile ConnectionState connection;
+    private long lastWriteAt;
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public CallEventStream(EslService eslService, ObjectMapper objectMapper,
+                           @Value("${call.events.tick-ms:250}") long tickMillis,
+                           @Value("${call.events.keep-alive-ms:15000}") long keepAliveMillis) {
+        this.eslService = eslService;
+        this.objectMapper = objectMapper;
+        this.keepAliveMillis = keepAliveMillis;
+        if (tickMillis > 0) {
+            ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+        subscribers.forEach(SseEmitter::complete);
+        subscribers.clear();
+    }
+
+    // ------------------- Changes reported by the call handlers -------------------
+    // Only created() starts tracking a call. Other changes for a call that is not tracked, or
+    // already hung up (a late bridge event, a preset set over REST), are dropped
+
+    public void created(String uuid, String caller, String callee) {
+        if (uuid == null) return;
+        updates.incrementAndGet();
+        calls.compute(uuid, (key, state) -> publish(state == null
+                ? newState(uuid, Change.CREATED, caller, callee)
+                : copy(state, Change.CREATED, caller, callee, null, null, state.answered(), null)));
+    }
+
+    public void answered(String uuid, String caller) {
+        update(uuid, state -> copy(state, Change.ANSWERED, caller, null, null, null, true, null));
+    }
+
+    /**
+     * @param uuid     the tracked (A) leg
+     * @param peerUuid the leg it was bridged to; later changes reported for it apply to this call
+     */
+    public void bridged(String uuid, String peerUuid, String preset) {
+        CallState state = update(uuid, current -> copy(current, Change.BRIDGED, null, null, peerUuid, preset, true, null));
+        if (state != null && peerUuid != null) {
+            peers.put(peerUuid, state.uuid());
+        }
+    }
+
+    public void presetChanged(String uuid, String preset) {
+        update(uuid, state -> copy(state, Change.PRESET_CHANGED, null, null, null, preset, state.answered(), null));
+    }
+
+    public void hungUp(String uuid, String cause) {
+        if (uuid == null) return;
+        if (peers.remove(uuid) != null) return; // the other leg; the call ends with its own hangup
+        calls.computeIfPresent(uuid, (key, last) -> {
+            updates.incrementAndGet();
+            if (last.peerUuid() != null) {
+                peers.remove(last.peerUuid());
+            }
+            publish(copy(last, Change.HUNG_UP, null, null, null, null, last.answered(),
+                    cause != null ? cause : "UNKNOWN"));
+            return null;
+        });
+    }
+
+    /**
+     * Calls whose hangup was missed while a node's events were down are gone by now.
+     */
+    @EventListener
+    public void onReconnected(EslReconnectedEvent event) {
+        event.endedUuids().forEach(uuid -> hungUp(uuid, "ESL_OUTAGE"));
+    }
+
+    /**
+     * Apply a change to a tracked call, found by its own UUID or its bridged peer's.
+     *
+     * @return the new state, or null if the call is not tracked
+     */
+    private CallState update(String uuid, UnaryOperator<CallState> next) {
+        if (uuid == null) return null;
+        String tracked = calls.containsKey(uuid) ? uuid : peers.get(uuid);
+        if (tracked == null) return null;
+        // Published inside compute, so a hangup racing with it cannot be overwritten in pending
+        return calls.computeIfPresent(tracked, (key, current) -> {
+            updates.incrementAndGet();
+            return publish(next.apply(current));
+        });
+    }
+
+    private CallState publish(CallState state) {
+        pending.put(state.uuid(), state);
+        return state;
+    }
+
+    private static CallState newState(String uuid, Change change, String caller, String callee) {
+        long now = System.currentTimeMillis();
+        return new CallState(uuid, change, caller, callee, null, null, false, null, now, now);
+    }
+
+    // Null arguments keep the current value
+    private static CallState copy(CallState state, Change change, String caller, String callee, String peerUuid,
+                                  String preset, boolean answered, String hangupCause) {
+        return new CallState(state.uuid(), change,
+                caller != null ? caller : state.caller(),
+                callee != null ? callee : state.callee(),
+                peerUuid != null ? peerUuid : state.peerUuid(),
+                preset != null ? preset : state.preset(),
+                answered, hangupCause, state.createdAt(), System.currentTimeMillis());
+    }
+
+    // ------------------- Subscribers -------------------
+
+    /**
+     * Register a dashboard; it is sent the current snapshot right away and the deltas after it.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L); // kept open; dead clients show on the next write
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        emitter.onError(e -> subscribers.remove(emitter));
+
+        // Under the tick's lock, so no delta falls between the snapshot and the first tick
+        synchronized (this) {
+            try {
+                emitter.send(event("snapshot", new Batch(new ArrayList<>(calls.values()), currentConnection())));
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+                return emitter;
+            }
+            subscribers.add(emitter);
+        }
+        log.debug("📡 Call event subscriber added ({} total)", subscribers.size());
+        return emitter;
+    }
+
+    synchronized void tick() {
+        try {
+            List<CallState> changed = new ArrayList<>(pending.size());
+            for (String uuid : pending.keySet()) {
+                CallState state = pending.remove(uuid);
+                if (state != null) changed.add(state);
+            }
+            ConnectionState now = currentConnection();
+            ConnectionState connectionChange = now.equals(connection) ? null : now;
+            connection = now;
+
+            long at = System.currentTimeMillis();
+            if (changed.isEmpty() && connectionChange == null) {
+                if (at - lastWriteAt >= keepAliveMillis && !subscribers.isEmpty()) {
+                    broadcast(SseEmitter.event().comment("keep-alive").build());
+                    lastWriteAt = at;
+                }
+                return;
+            }
+            published.addAndGet(changed.size());
+            batches.incrementAndGet();
+            if (!subscribers.isEmpty()) {
+                broadcast(event("delta", new Batch(changed, connectionChange)));
+            }
+            lastWriteAt = at;
+        } catch (Exception e) {
+            log.error("❌ Error publishing call events: {}", e.getMessage(), e);
+        }
+    }
+
+    private void broadcast(Set<DataWithMediaType> payload) {
+        for (SseEmitter emitter : subscribers) {
+            try {
+                emitter.send(payload);
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(emitter);
+                dropped.incrementAndGet();
+                log.debug("📡 Call event subscriber dropped: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Serialized once, whatever the number of subscribers
+    private Set<DataWithMediaType> event(String name, Batch batch) {
+        try {
+            return SseEmitter.event().name(name).data(objectMapper.writeValueAsString(batch)).build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize call events", e);
+        }
+    }
+
+    private ConnectionState currentConnection() {
+        return new ConnectionState(eslService.isConnected(), eslService.getConnectionStatus(),
+                eslService.getReconnectAttempts());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("trackedCalls", calls.size());
+        stats.put("updates", updates.get());
+        stats.put("published", published.get());
+        stats.put("coalesced", updates.get() - published.get() - pending.size());
+        stats.put("batches", batches.get());
+        stats.put("droppedSubscribers", dropped.get());
+        return stats;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.voicechanger.service.esl;
 
+import com.example.voicechanger.service.rtp.RtpRelayService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -13,13 +14,22 @@ public class CallHandlerService {
     private final TalkTimeService talkTimeService;
     private final CallTransferService callTransferService;
     private final EslService eslService;
+    private final CallDeadlineService deadlineService;
+    private final RtpRelayService rtpRelayService;
+    private final CallEventStream callEvents;
 
     public CallHandlerService(TalkTimeService talkTimeService,
                               CallTransferService callTransferService,
-                              EslService eslService) {
+                              EslService eslService,
+                              CallDeadlineService deadlineService,
+                              RtpRelayService rtpRelayService,
+                              CallEventStream callEvents) {
         this.talkTimeService = talkTimeService;
         this.callTransferService = callTransferService;
         this.eslService = eslService;
+        this.deadlineService = deadlineService;
+        this.rtpRelayService = rtpRelayService;
+        this.callEvents = callEvents;
     }
 
     public void handleBridge(Map<String, String> headers) {
@@ -35,7 +45,7 @@ public class CallHandlerService {
         }
 
         try {
-            applyVoiceChanger(bLegUuid, userName);
+            callEvents.bridged(aLegUuid, bLegUuid, applyVoiceChanger(bLegUuid, userName));
         } catch (Exception e) {
             log.error("❌ Error applying voice changer for bridge {}: {}", bLegUuid, e.getMessage(), e);
         }
@@ -61,19 +71,25 @@ public class CallHandlerService {
 
         String aParty = parts[0], bParty = parts[1], email = parts[2];
         log.debug("📋 Parsed user data - A-Party={}, B-Party={}, Email={}", aParty, bParty, email);
-
-        try {
-            if (!talkTimeService.checkAndReserveTalkTime(uuid, aParty, bParty, email)) {
-                log.warn("❌ Call {} dropped from park due to insufficient talk time", uuid);
-                eslService.sendCommand("uuid_kill " + uuid);
-                return;
-            }
-
-            callTransferService.transferToDefault(uuid, calledNumber);
-            log.info("✅ Call {} successfully transferred after park validation", uuid);
-        } catch (Exception e) {
-            log.error("❌ Error handling park for call {}: {}", uuid, e.getMessage(), e);
-        }
+        callEvents.created(uuid, aParty, bParty);
+
+        // Non-blocking: the event thread moves on while the billing API answers
+        talkTimeService.checkAndReserveTalkTime(uuid, aParty, bParty, email)
+                .thenCompose(reserved -> {
+                    if (!reserved) {
+                        log.warn("❌ Call {} dropped from park due to insufficient talk time", uuid);
+                        return eslService.sendCommandAsync("uuid_kill " + uuid);
+                    }
+                    return callTransferService.transferToDefault(uuid, calledNumber)
+                            .thenApply(response -> {
+                                log.info("✅ Call {} successfully transferred after park validation", uuid);
+                                return response;
+                            });
+                })
+                .exceptionally(e -> {
+                    log.error("❌ Error handling park for call {}: {}", uuid, e.getMessage(), e);
+                    return null;
+                });
     }
 
     public void handleAnswer(Map<String, String> headers) {
@@ -82,6 +98,7 @@ public class CallHandlerService {
 
         log.info("✅ Call answered | Caller={}, UUID={}", caller, uuid);
 
+        callEvents.answered(uuid, caller);
         try {
             talkTimeService.markAnswered(uuid);
             log.debug("📝 Call {} marked as answered in talk time service", uuid);
@@ -99,6 +116,13 @@ public class CallHandlerService {
         log.info("❌ Call hangup | Caller={}, Direction={}, Cause={}", caller, direction, hangupCause);
 
         try {
+            if (hangupUuid != null) {
+                callEvents.hungUp(hangupUuid, hangupCause);
+                deadlineService.cancelAll(hangupUuid);
+                if (rtpRelayService.isEnabled()) {
+                    rtpRelayService.closeCall(hangupUuid);
+                }
+            }
             if ("inbound".equalsIgnoreCase(direction)) {
                 talkTimeService.deductTalkTime(hangupUuid, new Date());
             }
@@ -115,29 +139,35 @@ public class CallHandlerService {
         log.debug("🚀 Call {} is now active and being processed", uuid);
     }
 
-    private void applyVoiceChanger(String uuid, String userName) {
+    /**
+     * Start the voice changer the user's suffix asks for; returns the preset applied.
+     */
+    private String applyVoiceChanger(String uuid, String userName) {
         String suffix = userName.substring(userName.lastIndexOf("_") + 1);
 
         switch (suffix) {
             case "901" -> {
                 log.info("🎭 Applying standard voice changer for call {}", uuid);
                 callTransferService.startVoiceChanger(uuid);
+                return "standard";
             }
             case "902" -> {
                 log.info("👹 Applying monster voice preset for call {}", uuid);
-                callTransferService.startVoiceChanger(uuid);
-                callTransferService.setVoiceChangerParams(uuid, "-15", "-4", "300");
+                callTransferService.startVoiceChangerWithParams(uuid, "-15", "-4", "300");
+                return "monster";
             }
             case "903" -> {
                 log.info("👶 Applying child voice preset for call {}", uuid);
-                callTransferService.startVoiceChanger(uuid);
-                callTransferService.setVoiceChangerParams(uuid, "8", "4", "120");
+                callTransferService.startVoiceChangerWithParams(uuid, "8", "4", "120");
+                return "child";
             }
             case "904" -> {
                 log.info("📞 Normal call bridge for {} - no voice changer applied", uuid);
+                return "none";
             }
             default -> {
                 log.warn("⚠️ Unknown voice changer suffix '{}' for user {} - defaulting to normal call", suffix, userName);
+                return "none";
             }
         }
     }
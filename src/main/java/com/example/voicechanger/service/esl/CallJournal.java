@@ -0,0 +1,199 @@
+package com.example.voicechanger.service.esl;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.queue.ChronicleQueue;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder;
+import net.openhft.chronicle.wire.WireIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only, memory-mapped log (Chronicle Queue) of call deadlines and reserved talk-time
+ * sessions, so both survive a restart. Writes land in the page cache and cost a few
+ * microseconds; {@link #replay()} folds the log back into the state that was open when
+ * the process stopped.
+ * <p>
+ * If the queue cannot be opened (for example when the JVM was started without the
+ * {@code --add-opens} flags Chronicle needs) the journal logs an error and stays disabled.
+ */
+@Slf4j
+@Service
+public class CallJournal {
+
+    public record SessionRecord(String uuid, String sessionId, long startTime, long answerTime, int talkTime) {
+    }
+
+    /** State still open at the end of the log. */
+    public record Snapshot(Map<String, SessionRecord> sessions,
+                           Map<CallDeadlineService.Kind, Map<String, Long>> deadlines) {
+    }
+
+    private final ChronicleQueue queue;
+    private final ExcerptAppender appender;
+    private final LatencyRecorder writeLatency = new LatencyRecorder();
+    private final AtomicLong entriesWritten = new AtomicLong();
+
+    public CallJournal(@Value("${call.journal.enabled:true}") boolean enabled,
+                       @Value("${call.journal.path:./data/call-journal}") String path,
+                       @Value("${call.journal.retention-days:2}") int retentionDays) {
+        this.queue = enabled ? open(path, retentionDays, "Call journal") : null;
+        this.appender = queue != null ? queue.createAppender() : null;
+        if (appender != null) {
+            appender.singleThreadedCheckDisabled(true); // shared between threads under its monitor
+        }
+    }
+
+    /**
+     * Open a daily-rolled queue after dropping cycle files older than the retention, or return
+     * {@code null} (logged) if Chronicle cannot start in this JVM.
+     */
+    static ChronicleQueue open(String path, int retentionDays, String name) {
+        if (System.getProperty("chronicle.analytics.disable") == null) {
+            System.setProperty("chronicle.analytics.disable", "true");
+        }
+        try {
+            deleteExpiredCycles(new File(path), retentionDays);
+            ChronicleQueue queue = SingleChronicleQueueBuilder.single(path)
+                    .rollCycle(RollCycles.FAST_DAILY)
+                    .build();
+            log.info("📒 {} opened at {}", name, path);
+            return queue;
+        } catch (Throwable e) {
+            log.error("❌ {} unavailable - its state will not survive a restart: {}", name, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Whole daily files older than the retention are dropped; no call outlives them.
+     * A non-positive retention keeps everything.
+     */
+    static void deleteExpiredCycles(File directory, int retentionDays) {
+        File[] cycles = directory.listFiles((dir, name) -> name.endsWith(".cq4"));
+        if (cycles == null || retentionDays <= 0) return;
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        for (File cycle : cycles) {
+            if (cycle.lastModified() < cutoff && cycle.delete()) {
+                log.info("🧹 Removed expired journal file {}", cycle.getName());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (queue != null) {
+            synchronized (appender) {
+                appender.close();
+            }
+            queue.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return queue != null;
+    }
+
+    public void deadlineArmed(String uuid, CallDeadlineService.Kind kind, long fireAt) {
+        write("ARM", uuid, kind.name(), fireAt, 0);
+    }
+
+    public void deadlineCleared(String uuid, CallDeadlineService.Kind kind) {
+        write("CLEAR", uuid, kind.name(), 0, 0);
+    }
+
+    public void sessionReserved(String uuid, String sessionId, long startTime, int talkTime) {
+        write("RESERVE", uuid, sessionId, startTime, talkTime);
+    }
+
+    public void sessionAnswered(String uuid, long answerTime) {
+        write("ANSWER", uuid, null, answerTime, 0);
+    }
+
+    public void sessionClosed(String uuid) {
+        write("CLOSE", uuid, null, 0, 0);
+    }
+
+    private void write(String event, String uuid, String value, long time, int amount) {
+        if (queue == null) return;
+        long start = System.nanoTime();
+        try {
+            synchronized (appender) {
+                appender.writeDocument(wire -> wire
+                        .write("event").text(event)
+                        .write("uuid").text(uuid)
+                        .write("value").text(value)
+                        .write("time").int64(time)
+                        .write("amount").int32(amount));
+            }
+            entriesWritten.incrementAndGet();
+        } catch (Exception e) {
+            log.error("❌ Failed to journal {} for {}: {}", event, uuid, e.getMessage());
+        }
+        writeLatency.recordSince(start);
+    }
+
+    /**
+     * Read the whole log and return the sessions and deadlines that were still open.
+     */
+    public Snapshot replay() {
+        Map<String, SessionRecord> sessions = new LinkedHashMap<>();
+        Map<CallDeadlineService.Kind, Map<String, Long>> deadlines = new EnumMap<>(CallDeadlineService.Kind.class);
+        for (CallDeadlineService.Kind kind : CallDeadlineService.Kind.values()) {
+            deadlines.put(kind, new LinkedHashMap<>());
+        }
+        if (queue == null) {
+            return new Snapshot(sessions, deadlines);
+        }
+
+        ExcerptTailer tailer = queue.createTailer();
+        long entries = 0;
+        while (tailer.readDocument(wire -> apply(wire, sessions, deadlines))) {
+            entries++;
+        }
+        log.info("📒 Replayed {} journal entries: {} open session(s), {} open deadline(s)", entries, sessions.size(),
+                deadlines.values().stream().mapToInt(Map::size).sum());
+        return new Snapshot(sessions, deadlines);
+    }
+
+    private static void apply(WireIn wire, Map<String, SessionRecord> sessions,
+                              Map<CallDeadlineService.Kind, Map<String, Long>> deadlines) {
+        String event = wire.read("event").text();
+        String uuid = wire.read("uuid").text();
+        String value = wire.read("value").text();
+        long time = wire.read("time").int64();
+        int amount = wire.read("amount").int32();
+        if (event == null || uuid == null) return;
+
+        switch (event) {
+            case "ARM" -> deadlines.get(CallDeadlineService.Kind.valueOf(value)).put(uuid, time);
+            case "CLEAR" -> deadlines.get(CallDeadlineService.Kind.valueOf(value)).remove(uuid);
+            case "RESERVE" -> sessions.put(uuid, new SessionRecord(uuid, value, time, 0, amount));
+            case "ANSWER" -> sessions.computeIfPresent(uuid, (key, session) ->
+                    new SessionRecord(uuid, session.sessionId(), session.startTime(), time, session.talkTime()));
+            case "CLOSE" -> sessions.remove(uuid);
+            default -> log.debug("Unknown journal entry {}", event);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("entriesWritten", entriesWritten.get());
+        stats.put("writeP50Micros", writeLatency.percentileMicros(50));
+        stats.put("writeP99Micros", writeLatency.percentileMicros(99));
+        stats.put("writeMaxMicros", writeLatency.getMaxMicros());
+        return stats;
+    }
+}
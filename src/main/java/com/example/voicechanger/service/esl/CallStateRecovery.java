@@ -0,0 +1,113 @@
+package com.example.voicechanger.service.esl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replays the {@link CallJournal} at startup and squares it with the switch: sessions and
+ * deadlines of calls that are still up are restored and re-armed (already expired ones fire
+ * straight away), calls that ended while the backend was down are billed and closed.
+ */
+@Slf4j
+@Component
+public class CallStateRecovery {
+
+    private final CallJournal journal;
+    private final CallDeadlineService deadlineService;
+    private final TalkTimeService talkTimeService;
+    private final EslService eslService;
+
+    @Value("${call.journal.recovery-wait-seconds:60}")
+    private int recoveryWaitSeconds;
+
+    public CallStateRecovery(CallJournal journal, CallDeadlineService deadlineService,
+                             TalkTimeService talkTimeService, EslService eslService) {
+        this.journal = journal;
+        this.deadlineService = deadlineService;
+        this.talkTimeService = talkTimeService;
+        this.eslService = eslService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (journal.isEnabled()) {
+            Thread.ofVirtual().name("call-recovery").start(this::recover);
+        }
+    }
+
+    public void recover() {
+        CallJournal.Snapshot snapshot = journal.replay();
+        int openDeadlines = snapshot.deadlines().values().stream().mapToInt(Map::size).sum();
+        if (snapshot.sessions().isEmpty() && openDeadlines == 0) {
+            return;
+        }
+
+        // Restore first, so hangups that arrive while we look at the switch are billed normally
+        snapshot.sessions().values().forEach(talkTimeService::restoreSession);
+
+        Set<String> live = awaitLiveChannels();
+        if (live == null) {
+            log.error("❌ Could not list live channels within {}s - {} journaled session(s) and {} deadline(s) not recovered",
+                    recoveryWaitSeconds, snapshot.sessions().size(), openDeadlines);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int billed = 0;
+        for (CallJournal.SessionRecord session : snapshot.sessions().values()) {
+            if (!live.contains(session.uuid())) {
+                // The switch did not enforce the talk time while we were down, but the call cannot
+                // have been billable past it
+                long talkTimeEnd = (session.answerTime() > 0 ? session.answerTime() : session.startTime())
+                        + session.talkTime() * 1000L;
+                talkTimeService.deductTalkTime(session.uuid(), new Date(Math.min(now, talkTimeEnd)));
+                billed++;
+            }
+        }
+
+        int rearmed = 0, expired = 0, dropped = 0;
+        for (Map.Entry<CallDeadlineService.Kind, Map<String, Long>> byKind : snapshot.deadlines().entrySet()) {
+            for (Map.Entry<String, Long> deadline : byKind.getValue().entrySet()) {
+                String uuid = deadline.getKey();
+                if (!live.contains(uuid)) {
+                    journal.deadlineCleared(uuid, byKind.getKey());
+                    dropped++;
+                    continue;
+                }
+                long remaining = deadline.getValue() - now;
+                deadlineService.schedule(uuid, byKind.getKey(), remaining);
+                if (remaining <= 0) expired++; else rearmed++;
+            }
+        }
+
+        log.info("♻️ Call state recovered from journal: {} session(s) restored, {} billed after ending during downtime, "
+                        + "{} deadline(s) re-armed, {} expired and fired, {} dropped for ended calls",
+                snapshot.sessions().size() - billed, billed, rearmed, expired, dropped);
+    }
+
+    private Set<String> awaitLiveChannels() {
+        long giveUpAt = System.currentTimeMillis() + recoveryWaitSeconds * 1000L;
+        while (System.currentTimeMillis() < giveUpAt) {
+            if (eslService.isConnected()) {
+                Set<String> live = eslService.getLiveChannelUuids();
+                if (live != null) {
+                    return live;
+                }
+            }
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -2,55 +2,90 @@ package com.example.voicechanger.service.esl;
 
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class CallTransferService {
 
-    private final EslService eslService;
+    private final EslCommandBatcher commandBatcher;
 
-    public CallTransferService(EslService eslService) {
-        this.eslService = eslService;
+    public CallTransferService(EslCommandBatcher commandBatcher) {
+        this.commandBatcher = commandBatcher;
     }
 
     /**
-     * Transfer parked call to default context
+     * Transfer parked call to default context (pipelined, does not block the caller)
      */
-    public void transferToDefault(String uuid, String calledNumber) {
-        try {
-            String command = String.format("uuid_transfer %s %s XML Voice", uuid, calledNumber);
-            String response = eslService.sendCommand(command);
-            System.out.println("➡️ Executed transfer: " + command);
-            System.out.println("✅ Response: " + response);
-        } catch (Exception e) {
-            System.err.println("❌ Failed to transfer call: " + e.getMessage());
-        }
+    public CompletableFuture<String> transferToDefault(String uuid, String calledNumber) {
+        String command = String.format("uuid_transfer %s %s XML Voice", uuid, calledNumber);
+        return commandBatcher.submitNow(List.of(command)).get(0).whenComplete((response, error) -> {
+            if (error != null || failed(response)) {
+                System.err.println("❌ Failed to transfer call: " + (error != null ? error.getMessage() : response));
+            } else {
+                System.out.println("➡️ Executed transfer: " + command);
+                System.out.println("✅ Response: " + response);
+            }
+        });
     }
 
     /**
      * Start voicechanger
      */
-    public void startVoiceChanger(String uuid) {
-        try {
-            String command = String.format("voicechanger start %s", uuid);
-            String response = eslService.sendCommand(command);
-            System.out.println("🎙️ Voicechanger started for UUID=" + uuid);
-            System.out.println("✅ Response: " + response);
-        } catch (Exception e) {
-            System.err.println("❌ Failed to start voicechanger: " + e.getMessage());
-        }
+    public CompletableFuture<String> startVoiceChanger(String uuid) {
+        String command = String.format("voicechanger start %s", uuid);
+        return commandBatcher.submitNow(List.of(command)).get(0).whenComplete((response, error) -> {
+            if (error != null || failed(response)) {
+                System.err.println("❌ Failed to start voicechanger: " + (error != null ? error.getMessage() : response));
+            } else {
+                System.out.println("🎙️ Voicechanger started for UUID=" + uuid);
+                System.out.println("✅ Response: " + response);
+            }
+        });
+    }
+
+    /**
+     * Set voicechanger parameters. Queued on the command batcher, so rapid repeated
+     * changes for the same call collapse into the last one.
+     */
+    public CompletableFuture<String> setVoiceChangerParams(String uuid, String... params) {
+        String args = String.join(" ", params);
+        String command = String.format("voicechanger set %s %s", uuid, args);
+        return commandBatcher.submit(command).whenComplete((response, error) -> {
+            if (error != null || failed(response)) {
+                System.err.println("❌ Failed to set voicechanger params: " + (error != null ? error.getMessage() : response));
+            } else {
+                System.out.println("🎛️ Voicechanger params set for UUID=" + uuid + " [" + args + "]");
+                System.out.println("✅ Response: " + response);
+            }
+        });
     }
 
     /**
-     * Set voicechanger parameters
+     * Start voicechanger and apply a preset in one pipelined write (one round trip instead of two)
      */
-    public void setVoiceChangerParams(String uuid, String... params) {
-        try {
-            String args = String.join(" ", params);
-            String command = String.format("voicechanger set %s %s", uuid, args);
-            String response = eslService.sendCommand(command);
-            System.out.println("🎛️ Voicechanger params set for UUID=" + uuid + " [" + args + "]");
-            System.out.println("✅ Response: " + response);
-        } catch (Exception e) {
-            System.err.println("❌ Failed to set voicechanger params: " + e.getMessage());
-        }
+    public CompletableFuture<Void> startVoiceChangerWithParams(String uuid, String... params) {
+        String args = String.join(" ", params);
+        List<CompletableFuture<String>> responses = commandBatcher.submitNow(List.of(
+                String.format("voicechanger start %s", uuid),
+                String.format("voicechanger set %s %s", uuid, args)));
+
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).thenRun(() -> {
+            String startResponse = responses.get(0).join();
+            String setResponse = responses.get(1).join();
+            if (failed(startResponse)) {
+                System.err.println("❌ Failed to start voicechanger: " + startResponse);
+            } else if (failed(setResponse)) {
+                System.err.println("❌ Voicechanger started for UUID=" + uuid + " but params [" + args + "] failed: " + setResponse);
+            } else {
+                System.out.println("🎙️ Voicechanger started for UUID=" + uuid + " with params [" + args + "]");
+                System.out.println("✅ Response: " + startResponse + " / " + setResponse);
+            }
+        });
+    }
+
+    // Transport errors come back as ERROR:, refusals from FreeSWITCH as -ERR
+    private static boolean failed(String response) {
+        return response.startsWith("ERROR:") || response.contains("-ERR");
     }
 }
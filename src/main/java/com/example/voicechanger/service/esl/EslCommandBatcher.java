@@ -0,0 +1,198 @@
+package com.example.voicechanger.service.esl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects ESL API commands into batches that are pipelined over a single write.
+ * <p>
+ * Pending commands are keyed by verb and call UUID, so a newer command replaces a
+ * superseded one for the same call (two {@code voicechanger set}s in a row keep only the
+ * last) and {@code uuid_kill} drops everything still queued for that call. Superseded
+ * callers receive the result of the command that replaced theirs. Commands for one call
+ * always go out in the order they were submitted: a command only replaces the last one
+ * queued for its call, so a {@code start} never overtakes a {@code set} queued after it.
+ */
+@Slf4j
+@Service
+public class EslCommandBatcher {
+
+    private final EslService eslService;
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<PendingCommand> pending = new ArrayList<>();
+    private final AtomicLong commandsSubmitted = new AtomicLong();
+    private final AtomicLong commandsCoalesced = new AtomicLong();
+    private boolean flushScheduled;
+
+    @Value("${freeswitch.esl.batch.window-ms:2}")
+    private long batchWindowMs;
+
+    public EslCommandBatcher(EslService eslService) {
+        this.eslService = eslService;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        flushScheduler.shutdown();
+    }
+
+    /**
+     * Queue a command for the next batch, which is flushed after the batch window.
+     */
+    public CompletableFuture<String> submit(String command) {
+        CompletableFuture<String> result;
+        synchronized (this) {
+            result = enqueue(command);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                flushScheduler.schedule(this::flush, batchWindowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Queue the commands in order and flush immediately, together with anything already
+     * pending. Returns one result per command, in the order given.
+     */
+    public List<CompletableFuture<String>> submitNow(List<String> commands) {
+        List<CompletableFuture<String>> results = new ArrayList<>(commands.size());
+        synchronized (this) {
+            for (String command : commands) {
+                results.add(enqueue(command));
+            }
+        }
+        flush();
+        return results;
+    }
+
+    /**
+     * Send everything pending. The batch is handed to {@link EslService#sendCommandsPipelined},
+     * which does not block, while still holding the monitor: a scheduled flush and a
+     * {@link #submitNow} flush racing each other cannot put their batches on the wire out of
+     * order.
+     */
+    public void flush() {
+        List<PendingCommand> batch;
+        List<CompletableFuture<String>> responses;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+
+            List<String> commands = new ArrayList<>(batch.size());
+            for (PendingCommand command : batch) {
+                commands.add(command.command);
+            }
+            responses = eslService.sendCommandsPipelined(commands);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<String> target = batch.get(i).result;
+            responses.get(i).whenComplete((response, error) -> {
+                if (error != null) {
+                    target.complete("ERROR: " + error.getMessage());
+                } else {
+                    target.complete(response);
+                }
+            });
+        }
+    }
+
+    public long getCommandsSubmitted() {
+        return commandsSubmitted.get();
+    }
+
+    public long getCommandsCoalesced() {
+        return commandsCoalesced.get();
+    }
+
+    // Caller holds the monitor
+    private CompletableFuture<String> enqueue(String command) {
+        commandsSubmitted.incrementAndGet();
+        PendingCommand next = new PendingCommand(command);
+        CommandKey key = next.key;
+
+        if (key.uuid != null && key.verb.equals("uuid_kill")) {
+            Iterator<PendingCommand> it = pending.iterator();
+            while (it.hasNext()) {
+                PendingCommand queued = it.next();
+                if (key.uuid.equals(queued.key.uuid)) {
+                    it.remove();
+                    commandsCoalesced.incrementAndGet();
+                    queued.result.complete("ERROR: superseded by uuid_kill " + key.uuid);
+                }
+            }
+        }
+
+        // Only the last command queued for the call can be replaced; anything else for the
+        // call goes behind it, so the call's commands keep their order
+        int last = lastFor(key);
+        if (last >= 0 && pending.get(last).key.value.equals(key.value)) {
+            PendingCommand superseded = pending.set(last, next);
+            commandsCoalesced.incrementAndGet();
+            log.debug("🔀 Coalesced ESL command '{}' -> '{}'", superseded.command, command);
+            next.result.whenComplete((response, error) -> superseded.result.complete(response));
+        } else {
+            pending.add(next);
+        }
+        return next.result;
+    }
+
+    // Index of the last pending command for the same call, or with the same key if it targets none
+    private int lastFor(CommandKey key) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            CommandKey queued = pending.get(i).key;
+            if (key.uuid != null ? key.uuid.equals(queued.uuid) : key.value.equals(queued.value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class PendingCommand {
+        private final String command;
+        private final CommandKey key;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private PendingCommand(String command) {
+            this.command = command;
+            this.key = CommandKey.of(command);
+        }
+    }
+
+    /**
+     * Coalescing key: the verb plus the call UUID it targets. Commands that do not
+     * target a call (e.g. {@code show calls}) are keyed by their full text, so identical
+     * reads inside one window share a single round trip.
+     */
+    private record CommandKey(String value, String verb, String uuid) {
+
+        static CommandKey of(String command) {
+            String[] tokens = command.trim().split("\\s+");
+            if (tokens.length >= 3 && tokens[0].equals("voicechanger")) {
+                String verb = tokens[0] + " " + tokens[1];
+                return new CommandKey(verb + " " + tokens[2], verb, tokens[2]);
+            }
+            if (tokens.length >= 2 && tokens[0].startsWith("uuid_")) {
+                return new CommandKey(tokens[0] + " " + tokens[1], tokens[0], tokens[1]);
+            }
+            return new CommandKey(command.trim(), tokens[0], null);
+        }
+    }
+}
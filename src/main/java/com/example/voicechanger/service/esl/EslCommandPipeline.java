@@ -0,0 +1,181 @@
+package com.example.voicechanger.service.esl;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.string.StringEncoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedicated ESL connection for API commands. Commands are written back-to-back
+ * without waiting for each reply; FreeSWITCH answers them in order on the socket,
+ * so replies are matched to callers FIFO.
+ */
+@Slf4j
+public class EslCommandPipeline {
+
+    private final EventLoopGroup group;
+    private final Queue<CompletableFuture<String>> pending = new ConcurrentLinkedQueue<>();
+    private final Object writeLock = new Object();
+    private volatile Channel channel;
+    private volatile CompletableFuture<Void> authenticated;
+
+    public EslCommandPipeline(EventLoopGroup group) {
+        this.group = group;
+    }
+
+    public void connect(String host, int port, String password, int timeoutMillis) throws Exception {
+        CompletableFuture<Void> auth = new CompletableFuture<>();
+        this.authenticated = auth;
+
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeoutMillis)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new EslFrameDecoder())
+                                .addLast(new StringEncoder(StandardCharsets.UTF_8))
+                                .addLast(new ReplyHandler(password));
+                    }
+                });
+
+        Channel ch = bootstrap.connect(host, port).syncUninterruptibly().channel();
+        try {
+            auth.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            ch.close();
+            throw new IOException("ESL command pipeline authentication failed: " + e.getMessage(), e);
+        }
+        this.channel = ch;
+        log.info("🚇 ESL command pipeline connected to {}:{}", host, port);
+    }
+
+    public boolean isActive() {
+        Channel ch = channel;
+        return ch != null && ch.isActive();
+    }
+
+    /**
+     * Send a single API command. The future completes with the response body.
+     */
+    public CompletableFuture<String> send(String command) {
+        return sendAll(List.of(command)).get(0);
+    }
+
+    /**
+     * Write every command in one flush and return one future per command, in order.
+     */
+    public List<CompletableFuture<String>> sendAll(List<String> commands) {
+        List<CompletableFuture<String>> results = new ArrayList<>(commands.size());
+        Channel ch = channel;
+        if (ch == null || !ch.isActive()) {
+            for (int i = 0; i < commands.size(); i++) {
+                results.add(CompletableFuture.failedFuture(new IOException("ESL command pipeline not connected")));
+            }
+            return results;
+        }
+
+        synchronized (writeLock) {
+            for (String command : commands) {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                pending.add(future);
+                results.add(future);
+                ch.write("api " + command + "\n\n");
+            }
+            ch.flush();
+        }
+        return results;
+    }
+
+    public void close() {
+        Channel ch = channel;
+        channel = null;
+        if (ch != null) {
+            ch.close();
+        }
+        failPending(new IOException("ESL command pipeline closed"));
+    }
+
+    private void failPending(Throwable cause) {
+        CompletableFuture<String> future;
+        while ((future = pending.poll()) != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    private class ReplyHandler extends SimpleChannelInboundHandler<EslFrame> {
+
+        private final String password;
+
+        ReplyHandler(String password) {
+            this.password = password;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, EslFrame frame) {
+            switch (frame.contentType()) {
+                case "auth/request" -> ctx.writeAndFlush("auth " + password + "\n\n");
+                case "command/reply" -> {
+                    String replyText = frame.header("Reply-Text");
+                    if (!authenticated.isDone()) {
+                        if (replyText != null && replyText.startsWith("+OK")) {
+                            authenticated.complete(null);
+                        } else {
+                            authenticated.completeExceptionally(new IOException(String.valueOf(replyText)));
+                        }
+                    } else {
+                        complete(replyText);
+                    }
+                }
+                case "api/response" -> complete(frame.body());
+                case "text/rude-rejection" ->
+                        authenticated.completeExceptionally(new IOException("Rejected by FreeSWITCH ACL"));
+                case "text/disconnect-notice" -> ctx.close();
+                default -> log.trace("Ignoring ESL frame on command pipeline: {}", frame.contentType());
+            }
+        }
+
+        private void complete(String body) {
+            CompletableFuture<String> future = pending.poll();
+            if (future == null) {
+                log.warn("⚠️ ESL reply received with no pending command");
+                return;
+            }
+            String result = body == null ? "" : body;
+            future.complete(result.endsWith("\n") ? result.substring(0, result.length() - 1) : result);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            authenticated.completeExceptionally(new IOException("Connection closed during authentication"));
+            failPending(new IOException("ESL command pipeline connection lost"));
+            log.warn("💔 ESL command pipeline disconnected");
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.error("❌ ESL command pipeline error: {}", cause.getMessage());
+            ctx.close();
+        }
+    }
+}
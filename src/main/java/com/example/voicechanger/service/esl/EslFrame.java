@@ -0,0 +1,18 @@
+package com.example.voicechanger.service.esl;
+
+import java.util.Map;
+
+/**
+ * A single ESL protocol message: a header block terminated by a blank line,
+ * optionally followed by a {@code Content-Length} body.
+ */
+public record EslFrame(String firstLine, Map<String, String> headers, String body) {
+
+    public String header(String name) {
+        return headers.get(name);
+    }
+
+    public String contentType() {
+        return headers.getOrDefault("Content-Type", "");
+    }
+}
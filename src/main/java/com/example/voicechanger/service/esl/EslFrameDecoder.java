@@ -0,0 +1,71 @@
+package com.example.voicechanger.service.esl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits an ESL byte stream into {@link EslFrame}s. Used on both sides of the
+ * socket: by the command pipeline to read replies and by local test servers to read commands.
+ */
+public class EslFrameDecoder extends ByteToMessageDecoder {
+
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        while (in.isReadable()) {
+            if (in.getByte(in.readerIndex()) == '\n') {
+                in.skipBytes(1); // stray separator between frames
+                continue;
+            }
+            int start = in.readerIndex();
+            int end = in.writerIndex();
+
+            int headerEnd = -1;
+            for (int i = start; i < end - 1; i++) {
+                if (in.getByte(i) == '\n' && in.getByte(i + 1) == '\n') {
+                    headerEnd = i;
+                    break;
+                }
+            }
+            if (headerEnd < 0) {
+                if (end - start > MAX_HEADER_BYTES) {
+                    throw new TooLongFrameException("ESL header block exceeds " + MAX_HEADER_BYTES + " bytes");
+                }
+                return;
+            }
+
+            String headerBlock = in.toString(start, headerEnd - start, StandardCharsets.UTF_8);
+            String[] lines = headerBlock.split("\n");
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (String line : lines) {
+                int colon = line.indexOf(": ");
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon), line.substring(colon + 2).trim());
+                }
+            }
+
+            int bodyLength = 0;
+            String contentLength = headers.get("Content-Length");
+            if (contentLength != null) {
+                bodyLength = Integer.parseInt(contentLength);
+            }
+
+            int bodyStart = headerEnd + 2;
+            if (end - bodyStart < bodyLength) {
+                return; // wait for the rest of the body
+            }
+
+            String body = bodyLength > 0 ? in.toString(bodyStart, bodyLength, StandardCharsets.UTF_8) : "";
+            in.readerIndex(bodyStart + bodyLength);
+            out.add(new EslFrame(lines.length > 0 ? lines[0] : "", headers, body));
+        }
+    }
+}
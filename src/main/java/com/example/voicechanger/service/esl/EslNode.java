@@ -0,0 +1,452 @@
+package com.example.voicechanger.service.esl;
+
+import io.netty.channel.EventLoopGroup;
+import lombok.extern.slf4j.Slf4j;
+import org.freeswitch.esl.client.IEslEventListener;
+import org.freeswitch.esl.client.inbound.Client;
+import org.freeswitch.esl.client.transport.event.EslEvent;
+import org.freeswitch.esl.client.transport.message.EslMessage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * One FreeSWITCH media server: its event connection, command pipeline,
+ * reconnection state and per-node throughput counters.
+ * <p>
+ * A second, pre-authenticated connection is kept warm as a hot standby. A fast watchdog
+ * notices when the primary socket drops and promotes the standby by subscribing it to
+ * events, which takes one round trip instead of a full reconnect with backoff. The standby
+ * goes to the same host and port as the primary: it covers a dropped socket, not a node
+ * that is down, which still waits for a reconnect.
+ * <p>
+ * The watchdog runs on a scheduler that never blocks on a connect; opening connections
+ * (reconnects, standby warm-up, the command pipeline) happens on a separate executor, so a
+ * slow or unreachable node cannot hold up failover detection on the others.
+ */
+@Slf4j
+public class EslNode {
+
+    private final String id;
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int connectionTimeout;
+    private final int reconnectInterval;
+    private final int maxReconnectAttempts;
+    private final boolean pipelineEnabled;
+    private final boolean standbyEnabled;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService connectExecutor;
+    private final EventLoopGroup pipelineGroup;
+    private final ExecutorService fallbackExecutor = Executors.newSingleThreadExecutor();
+    private final IEslEventListener eventListener;
+    private final BiConsumer<EslNode, Long> reconnectHandler;
+
+    private volatile Client eslClient;
+    private volatile Client standbyClient;
+    private volatile boolean wasConnected;
+    private volatile long disconnectedAt;
+    private volatile long lastStandbyAttempt;
+    private final AtomicBoolean failingOver = new AtomicBoolean(false);
+    private final AtomicInteger failovers = new AtomicInteger(0);
+    private volatile EslCommandPipeline commandPipeline;
+    private final AtomicBoolean isConnected = new AtomicBoolean(false);
+    private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+    private final AtomicInteger reconnectAttempts = new AtomicInteger(0);
+
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong commandsSent = new AtomicLong();
+    private volatile long lastEventAt;
+    private volatile double eventsPerSecond;
+    private volatile double commandsPerSecond;
+    private long lastSampleEvents;
+    private long lastSampleCommands;
+    private long lastSampleAt = System.nanoTime();
+
+    /**
+     * @param scheduler        runs the watchdog and other short, non-blocking checks
+     * @param connectExecutor  opens connections, which can block for the connection timeout
+     * @param reconnectHandler called with the time the connection was lost, after events are
+     *                         flowing again (standby promotion or full reconnect)
+     */
+    public EslNode(String id, String host, int port, String password, int connectionTimeout,
+                   int reconnectInterval, int maxReconnectAttempts, boolean pipelineEnabled,
+                   boolean standbyEnabled, ScheduledExecutorService scheduler, ExecutorService connectExecutor,
+                   EventLoopGroup pipelineGroup,
+                   BiConsumer<EslNode, EslEvent> eventSink, BiConsumer<EslNode, Long> reconnectHandler) {
+        this.id = id;
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.connectionTimeout = connectionTimeout;
+        this.reconnectInterval = reconnectInterval;
+        this.maxReconnectAttempts = maxReconnectAttempts;
+        this.pipelineEnabled = pipelineEnabled;
+        this.standbyEnabled = standbyEnabled;
+        this.reconnectHandler = reconnectHandler;
+        this.scheduler = scheduler;
+        this.connectExecutor = connectExecutor;
+        this.pipelineGroup = pipelineGroup;
+        this.eventListener = new IEslEventListener() {
+            @Override
+            public void eventReceived(EslEvent event) {
+                eventsReceived.incrementAndGet();
+                lastEventAt = System.currentTimeMillis();
+                eventSink.accept(EslNode.this, event);
+            }
+
+            @Override
+            public void backgroundJobResultReceived(EslEvent event) {
+                eventSink.accept(EslNode.this, event);
+            }
+        };
+    }
+
+    public void start(long failoverCheckMillis) {
+        connect();
+        scheduler.scheduleWithFixedDelay(this::watchdog, failoverCheckMillis, failoverCheckMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(() -> {
+            if (!isConnected() && !reconnecting.get()) {
+                log.warn("💔 [{}] Connection lost detected by monitor - initiating reconnection", id);
+                scheduleReconnect();
+            }
+        }, 30, 30, TimeUnit.SECONDS); // Check every 30 seconds
+        scheduler.scheduleAtFixedRate(this::sampleThroughput, 5, 5, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        fallbackExecutor.shutdown();
+        closePipeline();
+        closeQuietly(standbyClient);
+        if (eslClient != null) {
+            try {
+                eslClient.close();
+                log.info("✅ [{}] ESL connection closed gracefully", id);
+            } catch (Exception e) {
+                log.warn("⚠️ [{}] Error closing ESL connection: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    private void connect() {
+        try {
+            if (eslClient != null) {
+                try {
+                    eslClient.close();
+                } catch (Exception e) {
+                    log.debug("Error closing existing client: {}", e.getMessage());
+                }
+            }
+
+            log.info("🔌 [{}] Attempting to connect to FreeSWITCH ESL at {}:{}", id, host, port);
+            eslClient = openClient(true);
+            connectPipeline();
+
+            isConnected.set(true);
+            wasConnected = true;
+            reconnectAttempts.set(0);
+            reconnecting.set(false);
+
+            log.info("✅ [{}] Successfully connected to FreeSWITCH ESL on {}:{}", id, host, port);
+            log.info("📡 [{}] ESL event subscription activated - monitoring all FreeSWITCH events", id);
+
+            connectExecutor.execute(this::warmStandby);
+            notifyReconnected();
+
+        } catch (Exception e) {
+            isConnected.set(false);
+            reconnecting.set(false);
+            log.error("❌ [{}] Failed to connect to FreeSWITCH ESL: {}", id, e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private Client openClient(boolean subscribe) throws Exception {
+        Client client = new Client();
+        client.addEventListener(eventListener);
+        client.connect(host, port, password, connectionTimeout);
+        if (subscribe) {
+            client.setEventSubscriptions("plain", "all");
+        }
+        return client;
+    }
+
+    /**
+     * Open and authenticate a standby connection, without subscribing it to events.
+     */
+    private void warmStandby() {
+        if (!standbyEnabled || !isConnected()) {
+            return;
+        }
+        lastStandbyAttempt = System.currentTimeMillis();
+        Client previous = standbyClient;
+        standbyClient = null;
+        closeQuietly(previous);
+        try {
+            standbyClient = openClient(false);
+            log.info("🧊 [{}] Hot standby ESL connection ready", id);
+        } catch (Exception e) {
+            log.warn("⚠️ [{}] Could not open standby ESL connection: {}", id, e.getMessage());
+        }
+    }
+
+    private void watchdog() {
+        Client client = eslClient;
+        boolean primaryDown = client == null || !client.canSend() || !isConnected.get();
+        if (primaryDown) {
+            if (wasConnected && !reconnecting.get()) {
+                failover("primary ESL connection lost");
+            }
+            return;
+        }
+
+        Client standby = standbyClient;
+        long now = System.currentTimeMillis();
+        if (standbyEnabled && (standby == null || !standby.canSend())
+                && now - lastStandbyAttempt > reconnectInterval * 1000L) {
+            lastStandbyAttempt = now; // not asked again while this warm-up blocks
+            connectExecutor.execute(this::warmStandby);
+        }
+    }
+
+    private void failover(String reason) {
+        if (!failingOver.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (disconnectedAt == 0) {
+                disconnectedAt = System.currentTimeMillis();
+            }
+            isConnected.set(false);
+            Client standby = standbyClient;
+            standbyClient = null;
+
+            if (standby != null && standby.canSend()) {
+                long start = System.nanoTime();
+                standby.setEventSubscriptions("plain", "all");
+                Client failed = eslClient;
+                eslClient = standby;
+                isConnected.set(true);
+                failovers.incrementAndGet();
+                log.warn("⚡ [{}] {} - promoted hot standby, events re-subscribed in {} ms",
+                        id, reason, (System.nanoTime() - start) / 1_000_000);
+                closeQuietly(failed);
+
+                connectExecutor.execute(() -> {
+                    connectPipeline();
+                    warmStandby();
+                });
+                notifyReconnected();
+            } else {
+                log.error("❌ [{}] {} - no standby available, falling back to reconnect", id, reason);
+                closeQuietly(standby);
+                wasConnected = false;
+                scheduleReconnect();
+            }
+        } catch (Exception e) {
+            log.error("❌ [{}] Standby promotion failed: {}", id, e.getMessage());
+            isConnected.set(false);
+            wasConnected = false;
+            scheduleReconnect();
+        } finally {
+            failingOver.set(false);
+        }
+    }
+
+    private void notifyReconnected() {
+        long lostAt = disconnectedAt;
+        disconnectedAt = 0;
+        if (lostAt > 0) {
+            CompletableFuture.runAsync(() -> reconnectHandler.accept(this, lostAt));
+        }
+    }
+
+    private void closeQuietly(Client client) {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (Exception e) {
+                log.debug("Error closing ESL client: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void connectPipeline() {
+        closePipeline();
+        if (!pipelineEnabled) {
+            return;
+        }
+        try {
+            EslCommandPipeline pipeline = new EslCommandPipeline(pipelineGroup);
+            pipeline.connect(host, port, password, connectionTimeout);
+            commandPipeline = pipeline;
+        } catch (Exception e) {
+            log.warn("⚠️ [{}] ESL command pipeline unavailable, commands will be sent one at a time: {}", id, e.getMessage());
+        }
+    }
+
+    private void closePipeline() {
+        EslCommandPipeline pipeline = commandPipeline;
+        commandPipeline = null;
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (!reconnecting.compareAndSet(false, true)) {
+            return; // Already reconnecting
+        }
+
+        int attempts = reconnectAttempts.incrementAndGet();
+
+        if (disconnectedAt == 0) {
+            disconnectedAt = System.currentTimeMillis();
+        }
+
+        if (attempts > maxReconnectAttempts) {
+            log.error("💥 [{}] Maximum reconnection attempts ({}) exceeded. Giving up reconnection.", id, maxReconnectAttempts);
+            reconnecting.set(false);
+            return;
+        }
+
+        long delay = Math.min(reconnectInterval * attempts, 60); // Max 60 seconds delay
+
+        log.warn("🔄 [{}] Scheduling reconnection attempt #{} in {} seconds", id, attempts, delay);
+
+        scheduler.schedule(() -> connectExecutor.execute(() -> {
+            log.info("🔄 [{}] Reconnection attempt #{} starting...", id, attempts);
+            connect();
+        }), delay, TimeUnit.SECONDS);
+    }
+
+    public String sendCommand(String command) {
+        if (!isConnected()) {
+            log.warn("⚠️ [{}] Cannot send command '{}' - ESL not connected", id, command);
+            return "ERROR: ESL not connected";
+        }
+
+        try {
+            log.debug("📤 [{}] Sending ESL command: {}", id, command);
+            commandsSent.incrementAndGet();
+            EslMessage response = eslClient.sendSyncApiCommand(command, "");
+
+            if (response != null && response.getBodyLines() != null) {
+                String result = String.join("\n", response.getBodyLines());
+                log.debug("📥 [{}] ESL response: {}", id, result);
+                return result;
+            } else {
+                log.warn("⚠️ [{}] Empty response for command: {}", id, command);
+                return "ERROR: Empty response";
+            }
+        } catch (Exception e) {
+            log.error("❌ [{}] Error sending ESL command '{}': {}", id, command, e.getMessage());
+            isConnected.set(false); // Mark as disconnected to trigger reconnection
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Write all commands in one go over the command pipeline and return one result per command,
+     * in order. Without a pipeline the commands are sent one at a time on a background thread.
+     */
+    public List<CompletableFuture<String>> sendCommandsPipelined(List<String> commands) {
+        EslCommandPipeline pipeline = commandPipeline;
+        List<CompletableFuture<String>> results = new ArrayList<>(commands.size());
+
+        if (pipeline != null && pipeline.isActive() && isConnected()) {
+            log.debug("📤 [{}] Pipelining {} ESL command(s): {}", id, commands.size(), commands);
+            commandsSent.addAndGet(commands.size());
+            for (CompletableFuture<String> future : pipeline.sendAll(commands)) {
+                results.add(future
+                        .orTimeout(connectionTimeout, TimeUnit.MILLISECONDS)
+                        .exceptionally(e -> "ERROR: " + e.getMessage()));
+            }
+            return results;
+        }
+
+        for (String command : commands) {
+            results.add(CompletableFuture.supplyAsync(() -> sendCommand(command), fallbackExecutor));
+        }
+        return results;
+    }
+
+    public boolean isConnected() {
+        return isConnected.get() && eslClient != null && eslClient.canSend();
+    }
+
+    public boolean isReconnecting() {
+        return reconnecting.get();
+    }
+
+    public String getConnectionStatus() {
+        if (isConnected()) {
+            return String.format("✅ Connected to %s:%d", host, port);
+        } else if (reconnecting.get()) {
+            return String.format("🔄 Reconnecting to %s:%d (attempt %d/%d)",
+                    host, port, reconnectAttempts.get(), maxReconnectAttempts);
+        } else {
+            return String.format("❌ Disconnected from %s:%d", host, port);
+        }
+    }
+
+    public int getReconnectAttempts() {
+        return reconnectAttempts.get();
+    }
+
+    public void forceReconnect() {
+        log.info("🔄 [{}] Manual reconnection requested", id);
+        isConnected.set(false);
+        reconnectAttempts.set(0);
+        reconnecting.set(false);
+        connect();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", id);
+        status.put("host", host);
+        status.put("port", port);
+        status.put("connected", isConnected());
+        status.put("status", getConnectionStatus());
+        status.put("reconnectAttempts", reconnectAttempts.get());
+        status.put("pipelined", commandPipeline != null && commandPipeline.isActive());
+        status.put("standbyReady", standbyClient != null && standbyClient.canSend());
+        status.put("failovers", failovers.get());
+        status.put("eventsReceived", eventsReceived.get());
+        status.put("commandsSent", commandsSent.get());
+        status.put("eventsPerSecond", Math.round(eventsPerSecond * 10) / 10.0);
+        status.put("commandsPerSecond", Math.round(commandsPerSecond * 10) / 10.0);
+        status.put("lastEventAt", lastEventAt);
+        return status;
+    }
+
+    private synchronized void sampleThroughput() {
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleAt) / 1e9;
+        long events = eventsReceived.get();
+        long commands = commandsSent.get();
+        eventsPerSecond = (events - lastSampleEvents) / seconds;
+        commandsPerSecond = (commands - lastSampleCommands) / seconds;
+        lastSampleEvents = events;
+        lastSampleCommands = commands;
+        lastSampleAt = now;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.voicechanger.service.esl;
+
+import java.util.Set;
+
+/**
+ * Published once a FreeSWITCH node's event stream is back (standby promotion or reconnect).
+ *
+ * @param nodeId         node that lost its event connection
+ * @param disconnectedAt epoch millis when the loss was detected
+ * @param endedUuids     calls tracked on that node that are no longer live, i.e. whose
+ *                       hangup events were missed while the connection was down
+ */
+public record EslReconnectedEvent(String nodeId, long disconnectedAt, Set<String> endedUuids) {
+}
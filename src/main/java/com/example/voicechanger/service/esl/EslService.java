@@ -1,29 +1,52 @@
 package com.example.voicechanger.service.esl;
 
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.freeswitch.esl.client.inbound.Client;
-import org.freeswitch.esl.client.transport.message.EslMessage;
+import org.freeswitch.esl.client.transport.event.EslEvent;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Registry of FreeSWITCH nodes. Each node has its own event stream; a UUID→node map is
+ * kept up to date from those events so call-scoped commands ({@code uuid_kill},
+ * {@code voicechanger set}, {@code uuid_transfer}, ...) are routed to the switch that owns
+ * the call. Commands that are not call-scoped go to the first connected node.
+ * <p>
+ * When a node's event stream comes back after an outage, the calls it was tracking are
+ * checked against its live channels and an {@link EslReconnectedEvent} is published for
+ * the ones that ended while events were not being received.
+ */
 @Slf4j
 @Service
 public class EslService {
 
     private final FreeSwitchEventListener freeSwitchEventListener;
-    private volatile Client eslClient;
-    private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor();
-    private final AtomicBoolean isConnected = new AtomicBoolean(false);
-    private final AtomicBoolean reconnecting = new AtomicBoolean(false);
-    private final AtomicInteger reconnectAttempts = new AtomicInteger(0);
+    private final ApplicationEventPublisher eventPublisher;
+    // Watchdogs and other short checks of every node; never blocks on a connect
+    private final ScheduledExecutorService watchdogScheduler = Executors.newSingleThreadScheduledExecutor();
+    // Reconnects, standby warm-up and pipeline connects, each of which can block for the connection timeout
+    private final ExecutorService connectExecutor = Executors.newCachedThreadPool();
+    private final EventLoopGroup pipelineGroup = new NioEventLoopGroup(2);
+    private final Map<String, EslNode> nodes = new LinkedHashMap<>();
+    private final Map<String, EslNode> uuidOwners = new ConcurrentHashMap<>();
+    // Calls being looked for on every node; their commands are sent, in order, once found
+    private final Map<String, CompletableFuture<EslNode>> locating = new ConcurrentHashMap<>();
 
     @Value("${freeswitch.esl.host:127.0.0.1}")
     private String host;
@@ -43,143 +66,368 @@ public class EslService {
     @Value("${freeswitch.esl.reconnect.max.attempts:10}")
     private int maxReconnectAttempts;
 
-    public EslService(FreeSwitchEventListener freeSwitchEventListener) {
+    @Value("${freeswitch.esl.pipeline.enabled:true}")
+    private boolean pipelineEnabled;
+
+    @Value("${freeswitch.esl.standby.enabled:true}")
+    private boolean standbyEnabled;
+
+    @Value("${freeswitch.esl.failover.check-ms:200}")
+    private long failoverCheckMillis;
+
+    /**
+     * Comma-separated {@code id=host:port[:password]} entries. Empty means a single node
+     * built from {@code freeswitch.esl.host}/{@code port}/{@code password}.
+     */
+    @Value("${freeswitch.esl.nodes:}")
+    private String nodeList;
+
+    public EslService(FreeSwitchEventListener freeSwitchEventListener, ApplicationEventPublisher eventPublisher) {
         this.freeSwitchEventListener = freeSwitchEventListener;
+        this.eventPublisher = eventPublisher;
     }
 
     @PostConstruct
     public void init() {
-        log.info("🚀 Initializing ESL Service - connecting to FreeSWITCH at {}:{}", host, port);
-        connect();
-        startConnectionMonitor();
+        if (nodeList == null || nodeList.isBlank()) {
+            addNode("default", host, port, password);
+        } else {
+            for (String entry : nodeList.split(",")) {
+                String spec = entry.trim();
+                if (spec.isEmpty()) continue;
+                String id = spec.contains("=") ? spec.substring(0, spec.indexOf('=')).trim() : spec;
+                String[] address = spec.substring(spec.indexOf('=') + 1).trim().split(":");
+                addNode(id, address[0], address.length > 1 ? Integer.parseInt(address[1]) : 8021,
+                        address.length > 2 ? address[2] : password);
+            }
+        }
+
+        log.info("🚀 Initializing ESL Service - connecting to {} FreeSWITCH node(s): {}", nodes.size(), nodes.keySet());
+        nodes.values().forEach(node -> node.start(failoverCheckMillis));
     }
 
     @PreDestroy
     public void shutdown() {
         log.info("🛑 Shutting down ESL Service");
-        reconnectScheduler.shutdown();
-        if (eslClient != null) {
-            try {
-                eslClient.close();
-                log.info("✅ ESL connection closed gracefully");
-            } catch (Exception e) {
-                log.warn("⚠️ Error closing ESL connection: {}", e.getMessage());
-            }
-        }
+        watchdogScheduler.shutdown();
+        connectExecutor.shutdown();
+        nodes.values().forEach(EslNode::shutdown);
+        pipelineGroup.shutdownGracefully();
     }
 
-    private void connect() {
-        try {
-            if (eslClient != null) {
-                try {
-                    eslClient.close();
-                } catch (Exception e) {
-                    log.debug("Error closing existing client: {}", e.getMessage());
-                }
-            }
+    private void addNode(String id, String nodeHost, int nodePort, String nodePassword) {
+        nodes.put(id, new EslNode(id, nodeHost, nodePort, nodePassword, connectionTimeout, reconnectInterval,
+                maxReconnectAttempts, pipelineEnabled, standbyEnabled, watchdogScheduler, connectExecutor,
+                pipelineGroup, this::onNodeEvent, this::onNodeReconnected));
+    }
 
-            eslClient = new Client();
-            eslClient.addEventListener(freeSwitchEventListener);
+    /**
+     * Reconcile calls tracked on a node against its live channels after its event stream
+     * was down, so hangups missed in the gap are not left unbilled.
+     */
+    private void onNodeReconnected(EslNode node, long disconnectedAt) {
+        Set<String> live = liveChannelUuids(node);
+        if (live == null) {
+            log.warn("⚠️ [{}] Could not list channels after reconnect - skipping call reconciliation", node.getId());
+            return;
+        }
 
-            log.info("🔌 Attempting to connect to FreeSWITCH ESL at {}:{}", host, port);
-            eslClient.connect(host, port, password, connectionTimeout);
-            eslClient.setEventSubscriptions("plain", "all");
+        Set<String> ended = new HashSet<>();
+        uuidOwners.forEach((uuid, owner) -> {
+            if (owner == node && !live.contains(uuid)) {
+                ended.add(uuid);
+            }
+        });
+        ended.forEach(uuidOwners::remove);
 
-            isConnected.set(true);
-            reconnectAttempts.set(0);
-            reconnecting.set(false);
+        log.info("🧾 [{}] Reconciled after {} ms outage: {} live channel(s), {} call(s) ended while disconnected",
+                node.getId(), System.currentTimeMillis() - disconnectedAt, live.size(), ended.size());
+        eventPublisher.publishEvent(new EslReconnectedEvent(node.getId(), disconnectedAt, ended));
+    }
 
-            log.info("✅ Successfully connected to FreeSWITCH ESL on {}:{}", host, port);
-            log.info("📡 ESL event subscription activated - monitoring all FreeSWITCH events");
+    /**
+     * UUIDs of every live channel across all nodes, or {@code null} if any node could not be
+     * listed (a missing node's calls must not be mistaken for ended ones).
+     */
+    public Set<String> getLiveChannelUuids() {
+        Set<String> live = new HashSet<>();
+        for (EslNode node : nodes.values()) {
+            Set<String> uuids = node.isConnected() ? liveChannelUuids(node) : null;
+            if (uuids == null) {
+                return null;
+            }
+            live.addAll(uuids);
+        }
+        return live;
+    }
 
-        } catch (Exception e) {
-            isConnected.set(false);
-            log.error("❌ Failed to connect to FreeSWITCH ESL: {}", e.getMessage());
-            scheduleReconnect();
+    private Set<String> liveChannelUuids(EslNode node) {
+        String result = node.sendCommand("show channels as csv");
+        if (result.startsWith("ERROR:")) {
+            return null;
+        }
+        Set<String> uuids = new HashSet<>();
+        String[] lines = result.split("\n");
+        for (int i = 1; i < lines.length; i++) { // skip header
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.matches("\\d+ total\\.")) continue;
+            uuids.add(line.split(",", 2)[0]);
         }
+        return uuids;
     }
 
-    private void scheduleReconnect() {
-        if (!reconnecting.compareAndSet(false, true)) {
-            return; // Already reconnecting
+    private void onNodeEvent(EslNode node, EslEvent event) {
+        Map<String, String> headers = event.getEventHeaders();
+        String uuid = headers.get("Unique-ID");
+        if (uuid != null) {
+            String eventName = event.getEventName();
+            if ("CHANNEL_DESTROY".equals(eventName)) {
+                uuidOwners.remove(uuid);
+            } else if (eventName == null || !eventName.startsWith("CHANNEL_HANGUP")) {
+                // Hangup events can be dispatched after the destroy and still name the peer leg,
+                // so only live-call events register ownership
+                uuidOwners.put(uuid, node);
+                String otherLeg = headers.get("Other-Leg-Unique-ID");
+                if (otherLeg != null) uuidOwners.put(otherLeg, node);
+                String bLeg = headers.get("Bridge-B-Unique-ID");
+                if (bLeg != null) uuidOwners.put(bLeg, node);
+            }
         }
 
-        int attempts = reconnectAttempts.incrementAndGet();
+        if ("BACKGROUND_JOB".equals(event.getEventName())) {
+            freeSwitchEventListener.backgroundJobResultReceived(event);
+        } else {
+            freeSwitchEventListener.eventReceived(event);
+        }
+    }
 
-        if (attempts > maxReconnectAttempts) {
-            log.error("💥 Maximum reconnection attempts ({}) exceeded. Giving up reconnection.", maxReconnectAttempts);
-            reconnecting.set(false);
-            return;
+    /**
+     * Send a command to the node that owns the call it targets (or the first connected node).
+     */
+    public String sendCommand(String command) {
+        EslNode node = route(command);
+        if (node == null) {
+            log.warn("⚠️ Cannot send command '{}' - ESL not connected", command);
+            return "ERROR: ESL not connected";
         }
+        return node.sendCommand(command);
+    }
 
-        long delay = Math.min(reconnectInterval * attempts, 60); // Max 60 seconds delay
+    /**
+     * Send a command without blocking the caller. Errors are reported the same way as
+     * {@link #sendCommand(String)}: the future completes with an {@code ERROR:} string.
+     */
+    public CompletableFuture<String> sendCommandAsync(String command) {
+        return sendCommandsPipelined(List.of(command)).get(0);
+    }
 
-        log.warn("🔄 Scheduling reconnection attempt #{} in {} seconds", attempts, delay);
+    /**
+     * Pipeline the commands, one write per owning node, and return one result per command
+     * in the order given. Never blocks: commands for a call no node is known to own are held
+     * while every node is asked about it at once, then sent to the one that has it.
+     */
+    public List<CompletableFuture<String>> sendCommandsPipelined(List<String> commands) {
+        List<CompletableFuture<String>> results = new ArrayList<>(commands.size());
+        Map<EslNode, List<Integer>> byNode = new LinkedHashMap<>();
+        Map<String, List<Integer>> unlocated = new LinkedHashMap<>();
+
+        for (int i = 0; i < commands.size(); i++) {
+            results.add(null);
+            String uuid = targetUuid(commands.get(i));
+            if (uuid != null && nodes.size() > 1 && (!uuidOwners.containsKey(uuid) || locating.containsKey(uuid))) {
+                unlocated.computeIfAbsent(uuid, k -> new ArrayList<>()).add(i);
+                continue;
+            }
+            EslNode node = route(commands.get(i));
+            if (node == null) {
+                results.set(i, CompletableFuture.completedFuture("ERROR: ESL not connected"));
+            } else {
+                byNode.computeIfAbsent(node, n -> new ArrayList<>()).add(i);
+            }
+        }
+
+        byNode.forEach((node, indexes) -> {
+            List<String> nodeCommands = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                nodeCommands.add(commands.get(index));
+            }
+            List<CompletableFuture<String>> responses = node.sendCommandsPipelined(nodeCommands);
+            for (int i = 0; i < indexes.size(); i++) {
+                results.set(indexes.get(i), responses.get(i));
+            }
+        });
+        unlocated.forEach((uuid, indexes) -> sendOnceLocated(uuid, commands, indexes, results));
+        return results;
+    }
 
-        reconnectScheduler.schedule(() -> {
-            log.info("🔄 Reconnection attempt #{} starting...", attempts);
-            connect();
-        }, delay, TimeUnit.SECONDS);
+    /**
+     * Send a call's commands to its node once {@link #locateAsync} has found it, or to the
+     * first connected node if none has it. Chained per call, so commands submitted while a
+     * lookup is running still go out in the order they were submitted.
+     */
+    private void sendOnceLocated(String uuid, List<String> commands, List<Integer> indexes,
+                                 List<CompletableFuture<String>> results) {
+        List<String> callCommands = new ArrayList<>(indexes.size());
+        List<CompletableFuture<String>> pending = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            callCommands.add(commands.get(index));
+            CompletableFuture<String> result = new CompletableFuture<>();
+            pending.add(result);
+            results.set(index, result);
+        }
+        CompletableFuture<EslNode> sent = locating.compute(uuid, (key, previous) -> {
+            CompletableFuture<EslNode> owner = previous != null ? previous
+                    : uuidOwners.containsKey(uuid) ? CompletableFuture.completedFuture(uuidOwners.get(uuid))
+                    : locateAsync(uuid);
+            return owner.thenApply(node -> {
+                EslNode target = node != null && node.isConnected() ? node : firstConnected();
+                if (target == null) {
+                    pending.forEach(result -> result.complete("ERROR: ESL not connected"));
+                    return node;
+                }
+                List<CompletableFuture<String>> responses = target.sendCommandsPipelined(callCommands);
+                for (int i = 0; i < pending.size(); i++) {
+                    CompletableFuture<String> result = pending.get(i);
+                    responses.get(i).whenComplete((response, error) ->
+                            result.complete(error == null ? response : "ERROR: " + error.getMessage()));
+                }
+                return node;
+            });
+        });
+        sent.whenComplete((node, error) -> locating.remove(uuid, sent));
     }
 
-    private void startConnectionMonitor() {
-        reconnectScheduler.scheduleAtFixedRate(() -> {
-            if (!isConnected() && !reconnecting.get()) {
-                log.warn("💔 Connection lost detected by monitor - initiating reconnection");
-                scheduleReconnect();
+    /**
+     * Run a {@code show ... } listing on every connected node and merge the CSV output into
+     * one listing with a single header and a combined {@code N total.} footer.
+     */
+    public String sendListingToAllNodes(String command) {
+        String header = null;
+        StringBuilder rows = new StringBuilder();
+        int total = 0;
+        String lastError = null;
+
+        for (EslNode node : nodes.values()) {
+            if (!node.isConnected()) continue;
+            String result = node.sendCommand(command);
+            if (result.startsWith("ERROR:")) {
+                lastError = result;
+                continue;
+            }
+            String[] lines = result.split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
+                if (i == 0) {
+                    if (header == null) header = line;
+                    continue;
+                }
+                if (line.trim().isEmpty() || line.trim().matches("\\d+ total\\.")) continue;
+                rows.append(line).append('\n');
+                total++;
             }
-        }, 30, 30, TimeUnit.SECONDS); // Check every 30 seconds
+        }
+
+        if (header == null) {
+            return lastError != null ? lastError : "ERROR: ESL not connected";
+        }
+        return header + "\n" + rows + "\n" + total + " total.";
     }
 
-    public String sendCommand(String command) {
-        if (!isConnected()) {
-            log.warn("⚠️ Cannot send command '{}' - ESL not connected", command);
-            return "ERROR: ESL not connected";
+    /**
+     * Node owning the call targeted by the command, or the first connected node.
+     */
+    private EslNode route(String command) {
+        String uuid = targetUuid(command);
+        if (uuid != null) {
+            EslNode owner = uuidOwners.get(uuid);
+            if (owner == null && nodes.size() > 1) {
+                owner = locateAsync(uuid).join();
+            }
+            if (owner != null && owner.isConnected()) {
+                return owner;
+            }
         }
+        return firstConnected();
+    }
 
-        try {
-            log.debug("📤 Sending ESL command: {}", command);
-            EslMessage response = eslClient.sendSyncApiCommand(command, "");
+    private EslNode firstConnected() {
+        for (EslNode node : nodes.values()) {
+            if (node.isConnected()) return node;
+        }
+        return null;
+    }
 
-            if (response != null && response.getBodyLines() != null) {
-                String result = String.join("\n", response.getBodyLines());
-                log.debug("📥 ESL response: {}", result);
-                return result;
-            } else {
-                log.warn("⚠️ Empty response for command: {}", command);
-                return "ERROR: Empty response";
+    /**
+     * Ask every connected node whether it has the call, all at once; completes with the
+     * first node in configuration order that does, or null.
+     */
+    private CompletableFuture<EslNode> locateAsync(String uuid) {
+        List<EslNode> connected = new ArrayList<>();
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (EslNode node : nodes.values()) {
+            if (node.isConnected()) {
+                connected.add(node);
+                answers.add(node.sendCommandsPipelined(List.of("uuid_exists " + uuid)).get(0));
             }
-        } catch (Exception e) {
-            log.error("❌ Error sending ESL command '{}': {}", command, e.getMessage());
-            isConnected.set(false); // Mark as disconnected to trigger reconnection
-            return "ERROR: " + e.getMessage();
         }
+        return CompletableFuture.allOf(answers.toArray(CompletableFuture[]::new))
+                .handle((done, error) -> {
+                    for (int i = 0; i < connected.size(); i++) {
+                        CompletableFuture<String> answer = answers.get(i);
+                        if (!answer.isCompletedExceptionally() && "true".equals(answer.join().trim())) {
+                            EslNode node = connected.get(i);
+                            uuidOwners.put(uuid, node);
+                            log.debug("🧭 Located call {} on node {}", uuid, node.getId());
+                            return node;
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    static String targetUuid(String command) {
+        String[] tokens = command.trim().split("\\s+");
+        if (tokens.length >= 3 && tokens[0].equals("voicechanger")) {
+            return tokens[2];
+        }
+        if (tokens.length >= 2 && tokens[0].startsWith("uuid_")) {
+            return tokens[1];
+        }
+        return null;
     }
 
     public boolean isConnected() {
-        return isConnected.get() && eslClient != null && eslClient.canSend();
+        for (EslNode node : nodes.values()) {
+            if (node.isConnected()) return true;
+        }
+        return false;
     }
 
     public String getConnectionStatus() {
-        if (isConnected()) {
-            return String.format("✅ Connected to %s:%d", host, port);
-        } else if (reconnecting.get()) {
-            return String.format("🔄 Reconnecting to %s:%d (attempt %d/%d)",
-                    host, port, reconnectAttempts.get(), maxReconnectAttempts);
-        } else {
-            return String.format("❌ Disconnected from %s:%d", host, port);
+        if (nodes.size() == 1) {
+            return nodes.values().iterator().next().getConnectionStatus();
         }
+        long connected = nodes.values().stream().filter(EslNode::isConnected).count();
+        return String.format("%s %d/%d FreeSWITCH nodes connected",
+                connected == nodes.size() ? "✅" : connected > 0 ? "⚠️" : "❌", connected, nodes.size());
     }
 
     public int getReconnectAttempts() {
-        return reconnectAttempts.get();
+        return nodes.values().stream().mapToInt(EslNode::getReconnectAttempts).max().orElse(0);
+    }
+
+    public List<Map<String, Object>> getNodeStatuses() {
+        List<Map<String, Object>> statuses = new ArrayList<>();
+        for (EslNode node : nodes.values()) {
+            Map<String, Object> status = node.getStatus();
+            status.put("trackedCalls", uuidOwners.values().stream().filter(owner -> owner == node).count());
+            statuses.add(status);
+        }
+        return statuses;
     }
 
     public void forceReconnect() {
         log.info("🔄 Manual reconnection requested");
-        isConnected.set(false);
-        reconnectAttempts.set(0);
-        reconnecting.set(false);
-        connect();
+        nodes.values().forEach(EslNode::forceReconnect);
     }
 }
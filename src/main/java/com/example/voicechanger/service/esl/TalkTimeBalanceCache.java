@@ -0,0 +1,142 @@
+package com.example.voicechanger.service.esl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived per-aParty view of the talk-time balance, so repeat callers can be let through
+ * without waiting for {@code getTalkTime}. Each entry holds the balance last returned by the
+ * billing API, minus what calls ended since then used, and the seconds currently granted to
+ * live calls of that aParty. A reservation is served locally only while the entry is younger
+ * than the TTL and the balance left after in-flight grants covers {@code min-seconds}.
+ * <p>
+ * The cache is never authoritative: {@link TalkTimeService} still asks the API for every call
+ * and enforces its answer, this only takes the round trip off call setup.
+ */
+@Component
+public class TalkTimeBalanceCache {
+
+    private static class Entry {
+        long fetchedAt;
+        int balance;   // seconds, as of fetchedAt minus calls ended since
+        int inFlight;  // seconds granted to calls still up
+    }
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int minSeconds;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong disagreements = new AtomicLong();
+
+    public TalkTimeBalanceCache(@Value("${talktime.cache.enabled:false}") boolean enabled,
+                                @Value("${talktime.cache.ttl-ms:30000}") long ttlMillis,
+                                @Value("${talktime.cache.min-seconds:60}") int minSeconds,
+                                @Value("${talktime.cache.max-entries:100000}") int maxEntries) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlMillis;
+        this.minSeconds = minSeconds;
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Grant the aParty's whole remaining balance from the cache.
+     *
+     * @return seconds granted, or 0 if the caller must go to the billing API
+     */
+    public int tryReserve(String aParty) {
+        if (!enabled) return 0;
+        int[] granted = {0};
+        entries.computeIfPresent(aParty, (key, entry) -> {
+            int available = entry.balance - entry.inFlight;
+            if (!isStale(entry) && available >= minSeconds) {
+                entry.inFlight += available;
+                granted[0] = available;
+            }
+            return entry;
+        });
+        (granted[0] > 0 ? hits : misses).incrementAndGet();
+        return granted[0];
+    }
+
+    /**
+     * Record a balance fetched from the API for a call that now holds it.
+     */
+    public void fetched(String aParty, int talkTime) {
+        if (!enabled) return;
+        entries.compute(aParty, (key, entry) -> {
+            Entry updated = entry != null ? entry : new Entry();
+            updated.fetchedAt = System.currentTimeMillis();
+            updated.balance = talkTime;
+            updated.inFlight += talkTime;
+            return updated;
+        });
+        if (entries.size() > maxEntries) {
+            entries.values().removeIf(entry -> entry.inFlight == 0 && isStale(entry));
+        }
+    }
+
+    /**
+     * The API answered the background check for a call granted from the cache. If it allows
+     * less than was granted the entry is expired, so the next call goes to the API.
+     *
+     * @return false if the API disagreed with the grant
+     */
+    public boolean reconciled(String aParty, int granted, int talkTime) {
+        if (talkTime >= granted) return true;
+        disagreements.incrementAndGet();
+        invalidate(aParty);
+        return false;
+    }
+
+    /**
+     * A call ended: its grant is released and the seconds it used come off the balance.
+     */
+    public void released(String aParty, int granted, int usedSeconds) {
+        if (!enabled || aParty == null) return; // sessions restored from the journal carry no aParty
+        entries.computeIfPresent(aParty, (key, entry) -> {
+            entry.inFlight = Math.max(0, entry.inFlight - granted);
+            entry.balance = Math.max(0, entry.balance - usedSeconds);
+            return entry.inFlight == 0 && isStale(entry) ? null : entry;
+        });
+    }
+
+    /**
+     * Stop serving the aParty from the cache. The entry stays until its live calls end, so
+     * their grants are still counted if a fresh balance is fetched meanwhile.
+     */
+    public void invalidate(String aParty) {
+        entries.computeIfPresent(aParty, (key, entry) -> {
+            entry.fetchedAt = 0;
+            return entry.inFlight == 0 ? null : entry;
+        });
+    }
+
+    private boolean isStale(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt > ttlMillis;
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get(), missCount = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("disagreements", disagreements.get());
+        return stats;
+    }
+}
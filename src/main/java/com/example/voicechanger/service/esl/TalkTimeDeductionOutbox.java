@@ -0,0 +1,280 @@
+package com.example.voicechanger.service.esl;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.queue.ChronicleQueue;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable outbox for talk-time deductions. A hangup only appends the deduction to a local
+ * Chronicle Queue and returns; a background sender drains it to the billing API with bounded
+ * concurrency, retrying with exponential backoff until the API confirms. Deductions are keyed
+ * by {@code sessionId}, so a session is never queued or in flight twice, and entries not
+ * acknowledged before a restart are sent again on startup.
+ * <p>
+ * A deduction still failing after {@code max-attempts} is parked rather than dropped: it is
+ * logged once, counted under {@code parked} and from then on retried every
+ * {@code park-retry-ms} until the API takes it, across restarts like any other unsent entry.
+ * <p>
+ * The billing API has no batch endpoint, so deductions go out as individual requests over
+ * the pooled client rather than in batches.
+ */
+@Slf4j
+@Service
+public class TalkTimeDeductionOutbox {
+
+    record Deduction(String sessionId, int duration, String startTime, String endTime) {
+    }
+
+    private final WebClient talkTimeWebClient;
+    private final String path;
+    private final int retentionDays;
+    private final ChronicleQueue queue;
+    private final ExcerptAppender appender;
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "deduction-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Deduction> unsent = new ConcurrentHashMap<>();
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final Queue<Deduction> waiting = new ConcurrentLinkedQueue<>();
+    private final Semaphore inFlight;
+
+    private final LatencyRecorder sendLatency = new LatencyRecorder();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final Set<String> parked = ConcurrentHashMap.newKeySet();
+
+    @Value("${talktime.api.auth-key:59d09db@MGC40f434c36b2d36ed39e5d35be1@PXVI77be602ae166cb345549c3a0dfe}")
+    private String authKey;
+
+    @Value("${talktime.outbox.max-attempts:50}")
+    private int maxAttempts;
+
+    @Value("${talktime.outbox.backoff-initial-ms:500}")
+    private long initialBackoffMillis;
+
+    @Value("${talktime.outbox.backoff-max-ms:60000}")
+    private long maxBackoffMillis;
+
+    @Value("${talktime.outbox.park-retry-ms:600000}")
+    private long parkRetryMillis;
+
+    public TalkTimeDeductionOutbox(WebClient talkTimeWebClient,
+                                   @Value("${talktime.outbox.durable:true}") boolean durable,
+                                   @Value("${talktime.outbox.path:./data/talktime-outbox}") String path,
+                                   @Value("${talktime.outbox.retention-days:7}") int retentionDays,
+                                   @Value("${talktime.outbox.max-in-flight:32}") int maxInFlight) {
+        this.talkTimeWebClient = talkTimeWebClient;
+        this.path = path;
+        this.retentionDays = retentionDays;
+        this.inFlight = new Semaphore(maxInFlight);
+        // Old files are only removed once their unsent entries are carried forward (see init)
+        this.queue = durable ? CallJournal.open(path, 0, "Deduction outbox") : null;
+        this.appender = queue != null ? queue.createAppender() : null;
+        if (appender != null) {
+            appender.singleThreadedCheckDisabled(true); // shared between threads under its monitor
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (queue != null) {
+            recover();
+            CallJournal.deleteExpiredCycles(new File(path), retentionDays);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        if (queue != null) {
+            synchronized (appender) {
+                appender.close();
+            }
+            queue.close();
+        }
+        if (!unsent.isEmpty()) {
+            log.warn("⚠️ Shutting down with {} unsent talk-time deduction(s){}", unsent.size(),
+                    queue != null ? " - they will be sent on next start" : "");
+        }
+    }
+
+    /**
+     * Queue a deduction; returns once it is on local disk. Duplicate session ids are ignored.
+     */
+    public void enqueue(String sessionId, int duration, String startTime, String endTime) {
+        Deduction deduction = new Deduction(sessionId, duration, startTime, endTime);
+        if (unsent.putIfAbsent(sessionId, deduction) != null) {
+            log.debug("Deduction for session {} already queued", sessionId);
+            return;
+        }
+        append("ENQUEUE", deduction);
+        dispatch(deduction);
+    }
+
+    public int getUnsentCount() {
+        return unsent.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(sendLatency.snapshot());
+        stats.put("unsent", unsent.size());
+        stats.put("waiting", waiting.size());
+        stats.put("sent", sent.get());
+        stats.put("retries", retries.get());
+        stats.put("parked", parked.size());
+        stats.put("durable", queue != null);
+        return stats;
+    }
+
+    private void dispatch(Deduction deduction) {
+        if (!inFlight.tryAcquire()) {
+            waiting.add(deduction);
+            return;
+        }
+        send(deduction);
+    }
+
+    private void send(Deduction deduction) {
+        long start = System.nanoTime();
+        try {
+            request(deduction, start);
+        } catch (Exception e) {
+            retry(deduction, e.getMessage());
+            releaseAndDispatchNext();
+        }
+    }
+
+    private void request(Deduction deduction, long start) {
+        talkTimeWebClient.get()
+                .uri(uri -> uri.path("/deductTalkTime")
+                        .queryParam("authKey", authKey)
+                        .queryParam("callDuration", deduction.duration())
+                        .queryParam("callEndTime", deduction.endTime())
+                        .queryParam("callStartTime", deduction.startTime())
+                        .queryParam("sessionId", deduction.sessionId())
+                        .build())
+                .retrieve()
+                .bodyToMono(String.class)
+                .toFuture()
+                .whenComplete((response, error) -> {
+                    sendLatency.recordSince(start);
+                    boolean success = error == null && response != null && response.contains("success");
+                    if (success) {
+                        acknowledge(deduction);
+                        System.out.println("💰 TalkTime deducted | SessionId=" + deduction.sessionId() +
+                                ", Duration=\u001B[33m" + deduction.duration() + "s\u001B[0m, Status=✅ Success");
+                    } else {
+                        retry(deduction, error != null ? error.getMessage() : response);
+                    }
+                    releaseAndDispatchNext();
+                });
+    }
+
+    private void acknowledge(Deduction deduction) {
+        sent.incrementAndGet();
+        attempts.remove(deduction.sessionId());
+        parked.remove(deduction.sessionId());
+        unsent.remove(deduction.sessionId());
+        append("ACK", deduction);
+    }
+
+    private void retry(Deduction deduction, String reason) {
+        int attempt = attempts.merge(deduction.sessionId(), 1, Integer::sum);
+        retries.incrementAndGet();
+        if (attempt >= maxAttempts) {
+            if (parked.add(deduction.sessionId())) {
+                log.error("💥 Talk-time deduction for session {} still failing after {} attempts ({}s, {} → {}), parked - retrying every {} ms: {}",
+                        deduction.sessionId(), attempt, deduction.duration(), deduction.startTime(), deduction.endTime(),
+                        parkRetryMillis, reason);
+            }
+            retryScheduler.schedule(() -> dispatch(deduction), parkRetryMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        long jittered = backoff / 2 + (long) (Math.random() * backoff / 2);
+        log.warn("⚠️ Talk-time deduction for session {} failed (attempt {}), retrying in {} ms: {}",
+                deduction.sessionId(), attempt, jittered, reason);
+        retryScheduler.schedule(() -> dispatch(deduction), jittered, TimeUnit.MILLISECONDS);
+    }
+
+    private void releaseAndDispatchNext() {
+        inFlight.release();
+        Deduction next;
+        while ((next = waiting.peek()) != null && inFlight.tryAcquire()) {
+            if (waiting.remove(next)) {
+                send(next);
+            } else {
+                inFlight.release();
+            }
+        }
+    }
+
+    private void append(String event, Deduction deduction) {
+        if (appender == null) return;
+        try {
+            synchronized (appender) {
+                appender.writeDocument(wire -> wire
+                        .write("event").text(event)
+                        .write("sessionId").text(deduction.sessionId())
+                        .write("duration").int32(deduction.duration())
+                        .write("start").text(deduction.startTime())
+                        .write("end").text(deduction.endTime()));
+            }
+        } catch (Exception e) {
+            log.error("❌ Failed to persist {} for session {}: {}", event, deduction.sessionId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Re-queue everything enqueued but never acknowledged, and write it again to the current
+     * file so older files can be dropped.
+     */
+    private void recover() {
+        Map<String, Deduction> pending = new LinkedHashMap<>();
+        ExcerptTailer tailer = queue.createTailer();
+        long entries = 0;
+        while (tailer.readDocument(wire -> {
+            String event = wire.read("event").text();
+            Deduction deduction = new Deduction(wire.read("sessionId").text(), wire.read("duration").int32(),
+                    wire.read("start").text(), wire.read("end").text());
+            if ("ENQUEUE".equals(event)) {
+                pending.put(deduction.sessionId(), deduction);
+            } else {
+                pending.remove(deduction.sessionId());
+            }
+        })) {
+            entries++;
+        }
+        tailer.close();
+
+        if (!pending.isEmpty()) {
+            log.info("📤 Resending {} talk-time deduction(s) left unsent before restart ({} outbox entries read)",
+                    pending.size(), entries);
+        }
+        pending.values().forEach(d -> enqueue(d.sessionId(), d.duration(), d.startTime(), d.endTime()));
+    }
+}
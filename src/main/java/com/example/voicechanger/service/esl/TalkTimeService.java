@@ -1,77 +1,280 @@
 package com.example.voicechanger.service.esl;
 
+import com.example.voicechanger.metrics.LatencyRecorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class TalkTimeService {
 
-    private static final String AUTH_KEY = "59d09db@MGC40f434c36b2d36ed39e5d35be1@PXVI77be602ae166cb345549c3a0dfe";
-    private static final String GET_API = "https://applb.magiccall.co:10016/mgcTest/talktime/getTalkTime";
-    private static final String DEDUCT_API = "https://applb.magiccall.co:10016/mgcTest/talktime/deductTalkTime";
+    @Value("${talktime.api.auth-key:59d09db@MGC40f434c36b2d36ed39e5d35be1@PXVI77be602ae166cb345549c3a0dfe}")
+    private String authKey;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${talktime.cache.reconcile-max-attempts:20}")
+    private int reconcileMaxAttempts;
+
+    @Value("${talktime.cache.reconcile-backoff-initial-ms:500}")
+    private long reconcileInitialBackoffMillis;
+
+    @Value("${talktime.cache.reconcile-backoff-max-ms:30000}")
+    private long reconcileMaxBackoffMillis;
+
+    private final WebClient talkTimeWebClient;
     private final EslService eslService;
+    private final CallDeadlineService deadlineService;
+    private final CallJournal journal;
+    private final TalkTimeDeductionOutbox deductionOutbox;
+    private final TalkTimeBalanceCache balanceCache;
+    // Sent with getTalkTime so a retried request the API already acted on gets the same session
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
     private final Map<String, SessionInfo> activeSessions = new ConcurrentHashMap<>();
+    // Calls waiting on getTalkTime; true once their hangup has arrived
+    private final Map<String, Boolean> reserving = new ConcurrentHashMap<>();
 
-    public TalkTimeService(EslService eslService) {
+    private final LatencyRecorder reserveLatency = new LatencyRecorder();
+    private final AtomicLong reserveErrors = new AtomicLong();
+
+    public TalkTimeService(WebClient talkTimeWebClient, EslService eslService, CallDeadlineService deadlineService,
+                           CallJournal journal, TalkTimeDeductionOutbox deductionOutbox,
+                           TalkTimeBalanceCache balanceCache) {
+        this.talkTimeWebClient = talkTimeWebClient;
         this.eslService = eslService;
+        this.deadlineService = deadlineService;
+        this.journal = journal;
+        this.deductionOutbox = deductionOutbox;
+        this.balanceCache = balanceCache;
+        deadlineService.registerHandler(CallDeadlineService.Kind.TALK_TIME, this::talkTimeExpired);
     }
 
     /**
-     * Check & reserve talktime before bridging or transferring
+     * Check & reserve talktime before bridging or transferring.
+     * Completes with false on rejection, timeout or any billing API error.
+     * With the balance cache enabled, repeat callers are let through straight away and the
+     * API is asked in the background (see {@link #reconcile}).
      */
-    public boolean checkAndReserveTalkTime(String uuid, String aParty, String bParty, String email) {
-        try {
-            String url = String.format("%s?aPartyMsisdn=%s&authKey=%s&bPartyMsisdn=%s&email=%s",
-                    GET_API, aParty, AUTH_KEY, bParty, email);
-
-            Map<String, Object> body = restTemplate.getForObject(url, Map.class);
-
-            if (body == null) return false;
-
-            int statusCode = (int) body.get("statusCode");
-            if (statusCode == 1001) {
-                int talkTime = (int) body.get("talkTime");
-                if (talkTime > 0) {
-                    String sessionId = (String) body.get("sessionId");
-                    Date startTime = new Date();
-
-                    activeSessions.put(uuid, new SessionInfo(sessionId, startTime, talkTime));
-                    System.out.printf("✅ TalkTime reserved | SessionId=%s, Duration=\u001B[33m%ds\u001B[0m, Status=Success%n",
-                            sessionId, talkTime);
-
-                    // Schedule hangup after reserved talktime
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(talkTime * 1000L);
-                            if (activeSessions.containsKey(uuid)) {
-                                System.out.println("⏰ TalkTime expired for UUID=" + uuid + " → killing call");
-                                eslService.sendCommand("uuid_kill " + uuid);
-                            }
-                        } catch (InterruptedException ignored) {}
-                    }).start();
-
-                    return true;
-                } else {
-                    System.out.println("❌ TalkTime = \u001B[31m0s\u001B[0m, rejecting call UUID=" + uuid);
-                    return false;
+    public CompletableFuture<Boolean> checkAndReserveTalkTime(String uuid, String aParty, String bParty, String email) {
+        int granted = balanceCache.tryReserve(aParty);
+        if (granted > 0) {
+            reserveFromCache(uuid, aParty, bParty, email, granted);
+            return CompletableFuture.completedFuture(true);
+        }
+        reserving.put(uuid, Boolean.FALSE);
+        return requestTalkTime(uuid, aParty, bParty, email)
+                .handle((body, error) -> {
+                    try {
+                        return error == null && reserve(uuid, aParty, body);
+                    } finally {
+                        reserving.remove(uuid);
+                    }
+                });
+    }
+
+    /**
+     * Ask getTalkTime for a call, keyed by its uuid: the API opens one session per key, so
+     * asking again after a timeout does not leave an orphan session behind.
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Map<String, Object>> requestTalkTime(String uuid, String aParty, String bParty, String email) {
+        long start = System.nanoTime();
+        return talkTimeWebClient.get()
+                .uri(uri -> uri.path("/getTalkTime")
+                        .queryParam("aPartyMsisdn", aParty)
+                        .queryParam("authKey", authKey)
+                        .queryParam("bPartyMsisdn", bParty)
+                        .queryParam("email", email)
+                        .build())
+                .header(IDEMPOTENCY_KEY_HEADER, uuid)
+                .retrieve()
+                .bodyToMono(Map.class)
+                .toFuture()
+                .whenComplete((body, error) -> {
+                    reserveLatency.recordSince(start);
+                    if (error != null) {
+                        reserveErrors.incrementAndGet();
+                        System.err.println("❌ Error in checkAndReserveTalkTime: " + error.getMessage());
+                    }
+                })
+                .thenApply(body -> (Map<String, Object>) body);
+    }
+
+    private boolean reserve(String uuid, String aParty, Map<String, Object> body) {
+        int talkTime = approvedTalkTime(body);
+        if (talkTime > 0) {
+            String sessionId = (String) body.get("sessionId");
+            Date startTime = new Date();
+
+            boolean[] hungUp = {false};
+            // Under the marker's lock, so a hangup either sees the session or flags the marker first
+            reserving.compute(uuid, (key, hangupSeen) -> {
+                if (Boolean.TRUE.equals(hangupSeen)) {
+                    hungUp[0] = true;
+                    return null;
                 }
+                activeSessions.put(uuid, new SessionInfo(sessionId, startTime, talkTime, aParty));
+                balanceCache.fetched(aParty, talkTime);
+                journal.sessionReserved(uuid, sessionId, startTime.getTime(), talkTime);
+                // Schedule hangup after reserved talktime
+                deadlineService.schedule(uuid, CallDeadlineService.Kind.TALK_TIME, talkTime * 1000L);
+                return null;
+            });
+
+            if (hungUp[0]) {
+                // Nothing to bill, but the billing side holds the session open until it is deducted
+                String at = formatDate(startTime);
+                deductionOutbox.enqueue(sessionId, 0, at, at);
+                System.out.println("⚠️ Call hung up before its talk time was reserved → released session "
+                        + sessionId + " for UUID=" + uuid);
+                return false;
             }
+            System.out.printf("✅ TalkTime reserved | SessionId=%s, Duration=\u001B[33m%ds\u001B[0m, Status=Success%n",
+                    sessionId, talkTime);
+            return true;
+        }
 
+        if (talkTime == 0) {
+            System.out.println("❌ TalkTime = \u001B[31m0s\u001B[0m, rejecting call UUID=" + uuid);
+        } else {
             System.out.println("❌ TalkTime check failed or insufficient → UUID=" + uuid);
-            return false;
+        }
+        return false;
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error in checkAndReserveTalkTime: " + e.getMessage());
+    // Whether the API answered at all, granting or refusing, rather than failing
+    private static boolean isAnswer(Map<String, Object> body) {
+        return body != null && body.get("statusCode") instanceof Number;
+    }
+
+    /**
+     * @return the approved talk time in seconds, 0 if the API granted none, -1 if it refused
+     */
+    private static int approvedTalkTime(Map<String, Object> body) {
+        if (body == null || !(body.get("statusCode") instanceof Number statusCode) || statusCode.intValue() != 1001) {
+            return -1;
+        }
+        return ((Number) body.get("talkTime")).intValue();
+    }
+
+    private void reserveFromCache(String uuid, String aParty, String bParty, String email, int granted) {
+        SessionInfo session = new SessionInfo(null, new Date(), granted, aParty);
+        session.reconciled = new CompletableFuture<>();
+        activeSessions.put(uuid, session);
+        deadlineService.schedule(uuid, CallDeadlineService.Kind.TALK_TIME, granted * 1000L);
+        System.out.printf("✅ TalkTime reserved from cache | UUID=%s, Duration=\u001B[33m%ds\u001B[0m%n", uuid, granted);
+
+        checkCacheGrant(uuid, session, bParty, email, 1);
+    }
+
+    /**
+     * Ask the billing API about a cache-granted call, retrying with backoff while it errors
+     * or answers with no status. The grant stands for {@code reconcileMaxAttempts} attempts;
+     * after that a call still up is killed, as it has no billing session to deduct from. A
+     * call that has already ended is asked about until the API answers, so its deduction,
+     * waiting on the session id, still goes out.
+     */
+    private void checkCacheGrant(String uuid, SessionInfo session, String bParty, String email, int attempt) {
+        requestTalkTime(uuid, session.getAParty(), bParty, email)
+                .whenComplete((body, error) -> {
+                    if (error == null && isAnswer(body)) {
+                        reconcile(uuid, session, body);
+                        return;
+                    }
+                    if (attempt >= reconcileMaxAttempts) {
+                        balanceCache.invalidate(session.getAParty());
+                        if (killCacheGrant(uuid, session, "Billing API unreachable for cache-granted call after "
+                                + attempt + " attempts")) {
+                            session.reconciled.complete(null);
+                            return;
+                        }
+                    }
+                    long backoff = Math.min(reconcileMaxBackoffMillis,
+                            reconcileInitialBackoffMillis << Math.min(attempt - 1, 20));
+                    System.out.println("⚠️ Billing API check of cache-granted UUID=" + uuid + " failed (attempt "
+                            + attempt + ") → retrying in " + backoff + " ms");
+                    CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS)
+                            .execute(() -> checkCacheGrant(uuid, session, bParty, email, attempt + 1));
+                });
+    }
+
+    /**
+     * Square a cache-granted call with the billing API. The API wins: a refusal kills the
+     * call, a smaller talk time pulls the deadline in. The session is journaled and can be
+     * deducted only once the API has issued its session id.
+     */
+    private void reconcile(String uuid, SessionInfo session, Map<String, Object> body) {
+        try {
+            int talkTime = approvedTalkTime(body);
+            if (talkTime <= 0) {
+                balanceCache.reconciled(session.getAParty(), session.getTalkTime(), 0);
+                killCacheGrant(uuid, session, "Billing API refused a cache-granted call");
+                return;
+            }
+
+            session.setSessionId((String) body.get("sessionId"));
+            journal.sessionReserved(uuid, session.getSessionId(), session.getStartTime().getTime(),
+                    Math.min(talkTime, session.getTalkTime()));
+            if (!balanceCache.reconciled(session.getAParty(), session.getTalkTime(), talkTime)
+                    && activeSessions.get(uuid) == session) {
+                long remaining = session.getStartTime().getTime() + talkTime * 1000L - System.currentTimeMillis();
+                deadlineService.schedule(uuid, CallDeadlineService.Kind.TALK_TIME, remaining);
+                System.out.println("⚠️ Billing API allows " + talkTime + "s, less than the " + session.getTalkTime()
+                        + "s granted from cache → deadline moved for UUID=" + uuid);
+            }
+        } finally {
+            session.reconciled.complete(null);
+        }
+    }
+
+    /**
+     * Kill a cache-granted call that is still up and release its grant.
+     *
+     * @return false if the call had already ended
+     */
+    private boolean killCacheGrant(String uuid, SessionInfo session, String reason) {
+        if (!activeSessions.remove(uuid, session)) {
             return false;
         }
+        balanceCache.released(session.getAParty(), session.getTalkTime(), 0);
+        deadlineService.cancel(uuid, CallDeadlineService.Kind.TALK_TIME);
+        System.out.println("❌ " + reason + " → killing UUID=" + uuid);
+        eslService.sendCommandAsync("uuid_kill " + uuid);
+        return true;
+    }
+
+    private void talkTimeExpired(String uuid) {
+        if (activeSessions.containsKey(uuid)) {
+            System.out.println("⏰ TalkTime expired for UUID=" + uuid + " → killing call");
+            String result = eslService.sendCommand("uuid_kill " + uuid);
+            SessionInfo dropped;
+            if (result.contains("No such channel") && (dropped = activeSessions.remove(uuid)) != null) {
+                // Reservation completed after the call had already hung up
+                balanceCache.released(dropped.getAParty(), dropped.getTalkTime(), 0);
+                journal.sessionClosed(uuid);
+                System.out.println("⚠️ Dropped talk-time session of a call that no longer exists → UUID=" + uuid);
+            }
+        }
+    }
+
+    /**
+     * Put back a session replayed from the call journal after a restart
+     */
+    void restoreSession(CallJournal.SessionRecord record) {
+        SessionInfo session = new SessionInfo(record.sessionId(), new Date(record.startTime()), record.talkTime(), null);
+        if (record.answerTime() > 0) {
+            session.setAnswerTime(new Date(record.answerTime()));
+        }
+        activeSessions.put(record.uuid(), session);
     }
 
     /**
@@ -81,20 +284,21 @@ public class TalkTimeService {
         SessionInfo session = activeSessions.get(uuid);
         if (session != null) {
             session.setAnswerTime(new Date());
+            long answeredAt = session.getAnswerTime().getTime();
+            session.reconciled.thenRun(() -> journal.sessionAnswered(uuid, answeredAt)); // after its RESERVE entry
             System.out.println("📞 Call answered → UUID=" + uuid + ", answerTime=" + session.getAnswerTime());
         }
     }
 
     /**
-     * Deduct talktime after hangup
-     */
-    /**
-     * Deduct talktime after hangup
+     * Deduct talktime after hangup. Only queues the deduction on the durable outbox,
+     * which sends it to the billing API in the background.
      */
     public void deductTalkTime(String uuid, Date endTime) {
         try {
-            SessionInfo session = activeSessions.remove(uuid);
+            SessionInfo session = removeSession(uuid);
             if (session == null) return;
+            deadlineService.cancel(uuid, CallDeadlineService.Kind.TALK_TIME);
 
             Date answerTime = session.getAnswerTime();
             int duration;
@@ -115,19 +319,63 @@ public class TalkTimeService {
             String startStr = formatDate(callStartTime);
             String endStr = formatDate(endTime);
 
-            String url = String.format(
-                    "%s?authKey=%s&callDuration=%d&callEndTime=%s&callStartTime=%s&sessionId=%s",
-                    DEDUCT_API, AUTH_KEY, duration, endStr, startStr, session.getSessionId());
-
-            String response = restTemplate.getForObject(url, String.class);
-            System.out.println("💰 TalkTime deducted | SessionId=" + session.getSessionId() +
-                    ", Duration=\u001B[33m" + duration + "s\u001B[0m, Status=" + (response.contains("success") ? "✅ Success" : "❌ Failed"));
+            balanceCache.released(session.getAParty(), session.getTalkTime(), duration);
 
+            // A cache-granted call gets its session id from the background check
+            int billed = duration;
+            session.reconciled.thenRun(() -> {
+                journal.sessionClosed(uuid);
+                if (session.getSessionId() == null) {
+                    System.out.println("⚠️ No billing session for UUID=" + uuid + " - nothing to deduct");
+                    return;
+                }
+                deductionOutbox.enqueue(session.getSessionId(), billed, startStr, endStr);
+            });
         } catch (Exception e) {
             System.err.println("❌ Error in deductTalkTime: " + e.getMessage());
         }
     }
 
+    private SessionInfo removeSession(String uuid) {
+        SessionInfo session = activeSessions.remove(uuid);
+        if (session == null) {
+            // Still reserving: flag the hangup so the reservation is released when it lands.
+            // Waits out a reservation being stored right now, which is then found below
+            reserving.computeIfPresent(uuid, (key, hangupSeen) -> Boolean.TRUE);
+            session = activeSessions.remove(uuid);
+        }
+        return session;
+    }
+
+    /**
+     * Bill calls whose hangup was missed while a FreeSWITCH node's events were down.
+     * The end time is when the outage was detected, the last moment the call was known live.
+     */
+    @EventListener
+    public void reconcileAfterReconnect(EslReconnectedEvent event) {
+        for (String uuid : event.endedUuids()) {
+            if (activeSessions.containsKey(uuid)) {
+                System.out.println("🧾 Hangup missed during ESL outage on node " + event.nodeId() + " → deducting UUID=" + uuid);
+                deductTalkTime(uuid, new Date(event.disconnectedAt()));
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeSessions", activeSessions.size());
+        stats.put("getTalkTime", withErrors(reserveLatency.snapshot(), reserveErrors.get()));
+        stats.put("deductTalkTime", deductionOutbox.getStats());
+        stats.put("balanceCache", balanceCache.getStats());
+        return stats;
+    }
+
+    private static Map<String, Object> withErrors(Map<String, Object> latency, long errors) {
+        Map<String, Object> stats = new LinkedHashMap<>(latency);
+        stats.put("errors", errors);
+        return stats;
+    }
+
     private String formatDate(Date date) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
         sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -135,21 +383,26 @@ public class TalkTimeService {
     }
 
     private static class SessionInfo {
-        private final String sessionId;
+        private volatile String sessionId; // null until the API confirms a cache-granted call
         private final Date startTime;   // when session reserved
         private Date answerTime;        // when call answered
         private final int talkTime;
+        private final String aParty;
+        private CompletableFuture<Void> reconciled = CompletableFuture.completedFuture(null);
 
-        public SessionInfo(String sessionId, Date startTime, int talkTime) {
+        public SessionInfo(String sessionId, Date startTime, int talkTime, String aParty) {
             this.sessionId = sessionId;
             this.startTime = startTime;
             this.talkTime = talkTime;
+            this.aParty = aParty;
         }
 
         public String getSessionId() { return sessionId; }
+        public void setSessionId(String sessionId) { this.sessionId = sessionId; }
         public Date getStartTime() { return startTime; }
         public Date getAnswerTime() { return answerTime; }
         public void setAnswerTime(Date answerTime) { this.answerTime = answerTime; }
         public int getTalkTime() { return talkTime; }
+        public String getAParty() { return aParty; }
     }
 }
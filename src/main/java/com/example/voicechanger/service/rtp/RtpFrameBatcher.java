@@ -0,0 +1,201 @@
+package com.example.voicechanger.service.rtp;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Voice-changes the relay's G.711 frames a tick at a time instead of one native call per
+ * packet: every {@code tickMillis} the frames that arrived since the last tick are decoded
+ * side by side into one direct buffer, processed in a single JNI crossing (spread over
+ * native worker threads when the batch is large), re-encoded into their packets and sent.
+ * <p>
+ * A stream's processor may be in a batch only once, so a second frame of the same stream
+ * within one tick waits for the next, keeping its order. Everything but {@link #submit}
+ * runs on the tick thread, which also frees processors of closed sessions (see
+ * {@link #execute}) so none is released while a batch still holds it.
+ */
+@Slf4j
+class RtpFrameBatcher {
+
+    record Frame(RtpRelaySession session, ByteBuf rtp, int start, int length, int payloadType, long arrivalNanos) {
+    }
+
+    /**
+     * Runs a batch as {@link NativeVoiceProcessor#processBatch} does.
+     */
+    interface BatchProcessor {
+        boolean process(NativeVoiceProcessor[] processors, int[] lengths, ByteBuffer frames, int stride, int count,
+                        int threads);
+    }
+
+    private final int maxBatch;
+    private final long tickMillis;
+    private final int nativeThreads;
+    private final BatchProcessor batchProcessor;
+    private final ScheduledExecutorService ticker =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("rtp-batch"));
+    private final ConcurrentLinkedQueue<Frame> submitted = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Frame> carried = new ArrayDeque<>();
+    private final ArrayDeque<Frame> next = new ArrayDeque<>();
+    private final ByteBuffer frames;
+    private final ShortBuffer sampleView;
+    private final NativeVoiceProcessor[] processors;
+    private final int[] lengths;
+    private final Frame[] batch;
+    private final byte[] payload = new byte[RtpRelaySession.MAX_FRAME_SAMPLES];
+    private final LatencyRecorder batchTime = new LatencyRecorder();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong framesProcessed = new AtomicLong();
+    private final AtomicLong framesCarried = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile int largestBatch;
+    private long tick;
+
+    RtpFrameBatcher(int maxBatch, long tickMillis, int nativeThreads) {
+        this(maxBatch, tickMillis, nativeThreads, NativeVoiceProcessor::processBatch);
+    }
+
+    RtpFrameBatcher(int maxBatch, long tickMillis, int nativeThreads, BatchProcessor batchProcessor) {
+        this.maxBatch = maxBatch;
+        this.batchProcessor = batchProcessor;
+        this.tickMillis = tickMillis;
+        this.nativeThreads = nativeThreads > 0 ? nativeThreads : Runtime.getRuntime().availableProcessors();
+        this.frames = ByteBuffer.allocateDirect(maxBatch * RtpRelaySession.MAX_FRAME_SAMPLES * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.sampleView = frames.asShortBuffer();
+        this.processors = new NativeVoiceProcessor[maxBatch];
+        this.lengths = new int[maxBatch];
+        this.batch = new Frame[maxBatch];
+    }
+
+    void start() {
+        ticker.scheduleAtFixedRate(this::runTick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void shutdown() {
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        carried.forEach(frame -> frame.rtp().release());
+        submitted.forEach(frame -> frame.rtp().release());
+    }
+
+    /**
+     * Queue a frame for the next tick; the batcher owns (and releases) its buffer from here.
+     */
+    void submit(Frame frame) {
+        submitted.offer(frame);
+    }
+
+    /**
+     * Run a task on the tick thread, between batches.
+     */
+    void execute(Runnable task) {
+        ticker.execute(task);
+    }
+
+    private void runTick() {
+        try {
+            processTick();
+        } catch (RuntimeException e) {
+            log.error("❌ RTP batch tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    void processTick() {
+        tick++;
+        int count = 0;
+        Frame frame;
+        while ((frame = carried.poll()) != null) {
+            count = take(frame, count);
+        }
+        int stillCarried = next.size();
+        while ((frame = submitted.poll()) != null) {
+            count = take(frame, count);
+        }
+        framesCarried.addAndGet(next.size() - stillCarried);
+        carried.addAll(next);
+        next.clear();
+        if (count == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (!batchProcessor.process(processors, lengths, frames, RtpRelaySession.MAX_FRAME_SAMPLES, count,
+                nativeThreads)) {
+            failedBatches.incrementAndGet();
+        }
+        batchTime.recordSince(start);
+
+        for (int i = 0; i < count; i++) {
+            Frame done = batch[i];
+            sampleView.limit(i * RtpRelaySession.MAX_FRAME_SAMPLES + done.length())
+                    .position(i * RtpRelaySession.MAX_FRAME_SAMPLES);
+            RtpRelaySession.encode(sampleView, done.payloadType(), payload, done.rtp(), done.start(), done.length());
+            done.session().sendProcessed(done.rtp(), done.arrivalNanos());
+            batch[i] = null;
+            processors[i] = null;
+        }
+        sampleView.clear();
+        ticks.incrementAndGet();
+        framesProcessed.addAndGet(count);
+        if (count > largestBatch) {
+            largestBatch = count;
+        }
+    }
+
+    // Decode a frame into the next slot, or hold it over if its stream already has one
+    private int take(Frame frame, int count) {
+        RtpRelaySession session = frame.session();
+        if (session.isClosed()) {
+            frame.rtp().release();
+            return count;
+        }
+        if (session.batchTick == tick || count == maxBatch) {
+            session.batchTick = tick;
+            next.add(frame);
+            return count;
+        }
+        session.batchTick = tick;
+        sampleView.clear().position(count * RtpRelaySession.MAX_FRAME_SAMPLES);
+        RtpRelaySession.decode(frame.rtp(), frame.start(), frame.length(), frame.payloadType(), payload, sampleView);
+        processors[count] = session.getProcessor();
+        lengths[count] = frame.length();
+        batch[count] = frame;
+        return count + 1;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long tickCount = ticks.get();
+        stats.put("tickMs", tickMillis);
+        stats.put("nativeThreads", nativeThreads);
+        stats.put("nativeBatch", NativeVoiceProcessor.isBatchSupported());
+        stats.put("batches", tickCount);
+        stats.put("frames", framesProcessed.get());
+        stats.put("meanBatch", tickCount == 0 ? 0 : (double) framesProcessed.get() / tickCount);
+        stats.put("largestBatch", largestBatch);
+        stats.put("carriedOver", framesCarried.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("batchTime", batchTime.snapshot());
+        return stats;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.voicechanger.service.rtp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * RTP (RFC 3550) fixed-header fields read straight out of a datagram's {@link ByteBuf},
+ * relative to its reader index, without copying the packet.
+ */
+public final class RtpPacket {
+
+    public static final int HEADER_LENGTH = 12;
+    public static final int PT_PCMU = 0;
+    public static final int PT_PCMA = 8;
+
+    private RtpPacket() {
+    }
+
+    /**
+     * Where the payload starts, past CSRCs and any header extension; -1 if this is not an
+     * RTP version 2 packet or the header runs past the end of it.
+     */
+    public static int payloadOffset(ByteBuf packet) {
+        int base = packet.readerIndex();
+        int length = packet.readableBytes();
+        if (length < HEADER_LENGTH || (packet.getUnsignedByte(base) >> 6) != 2) {
+            return -1;
+        }
+        int first = packet.getUnsignedByte(base);
+        int offset = HEADER_LENGTH + 4 * (first & 0x0F);
+        if ((first & 0x10) != 0) {
+            if (length < offset + 4) {
+                return -1;
+            }
+            offset += 4 + 4 * packet.getUnsignedShort(base + offset + 2);
+        }
+        return offset <= length ? offset : -1;
+    }
+
+    /**
+     * Payload bytes after {@code payloadOffset}, less trailing padding.
+     */
+    public static int payloadLength(ByteBuf packet, int payloadOffset) {
+        int length = packet.readableBytes() - payloadOffset;
+        if ((packet.getUnsignedByte(packet.readerIndex()) & 0x20) != 0 && length > 0) {
+            length -= packet.getUnsignedByte(packet.writerIndex() - 1);
+        }
+        return Math.max(0, length);
+    }
+
+    public static int payloadType(ByteBuf packet) {
+        return packet.getUnsignedByte(packet.readerIndex() + 1) & 0x7F;
+    }
+
+    public static int sequence(ByteBuf packet) {
+        return packet.getUnsignedShort(packet.readerIndex() + 2);
+    }
+
+    public static long timestamp(ByteBuf packet) {
+        return packet.getUnsignedInt(packet.readerIndex() + 4);
+    }
+
+    public static long ssrc(ByteBuf packet) {
+        return packet.getUnsignedInt(packet.readerIndex() + 8);
+    }
+
+    /**
+     * Append a 12-byte header (no CSRCs, extension or padding) to {@code out}.
+     */
+    public static ByteBuf writeHeader(ByteBuf out, int payloadType, boolean marker, int sequence,
+                                      long timestamp, long ssrc) {
+        return out.writeByte(0x80)
+                .writeByte((marker ? 0x80 : 0) | (payloadType & 0x7F))
+                .writeShort(sequence)
+                .writeInt((int) timestamp)
+                .writeInt((int) ssrc);
+    }
+}
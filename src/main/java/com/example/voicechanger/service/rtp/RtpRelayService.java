@@ -0,0 +1,282 @@
+package com.example.voicechanger.service.rtp;
+
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import com.example.voicechanger.service.NativeProcessorPool;
+import com.example.voicechanger.service.ProcessorUnavailableException;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-JVM RTP media relay: each session binds a UDP port from the configured range, and
+ * G.711 audio sent to it is voice-changed with a pooled native processor held for the
+ * life of the session, then forwarded to the session's target (see {@link RtpRelaySession}).
+ * This keeps per-call voice changing off the media server for calls whose media can be
+ * pointed at us. Only RTP is relayed; RTCP (the odd port) is not.
+ * <p>
+ * Without the native library the relay still runs, passing audio through unchanged.
+ * <p>
+ * Off by default ({@code rtp.relay.enabled}); nothing is bound until it is enabled.
+ * Sessions that see no packets for {@code rtp.relay.idle-timeout-ms} are closed. With
+ * {@code rtp.relay.batch.enabled} all sessions' frames go through one
+ * {@link RtpFrameBatcher}, one native call per tick rather than per packet.
+ */
+@Slf4j
+@Service
+public class RtpRelayService {
+
+    private final boolean enabled;
+    private final String bindAddress;
+    private final int portMin;
+    private final int portMax;
+    private final int threads;
+    private final int maxSessions;
+    private final long idleTimeoutMillis;
+    private final boolean batchEnabled;
+    private final long batchTickMillis;
+    private final int batchNativeThreads;
+    private final Map<Integer, RtpRelaySession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong idleClosed = new AtomicLong();
+
+    private EventLoopGroup group;
+    private NativeProcessorPool processors;
+    private RtpFrameBatcher batcher;
+    private int nextPort;
+
+    public RtpRelayService(@Value("${rtp.relay.enabled:false}") boolean enabled,
+                           @Value("${rtp.relay.bind-address:0.0.0.0}") String bindAddress,
+                           @Value("${rtp.relay.port-min:40000}") int portMin,
+                           @Value("${rtp.relay.port-max:40999}") int portMax,
+                           @Value("${rtp.relay.threads:0}") int threads,
+                           @Value("${rtp.relay.max-sessions:200}") int maxSessions,
+                           @Value("${rtp.relay.idle-timeout-ms:30000}") long idleTimeoutMillis,
+                           @Value("${rtp.relay.batch.enabled:false}") boolean batchEnabled,
+                           @Value("${rtp.relay.batch.tick-ms:5}") long batchTickMillis,
+                           @Value("${rtp.relay.batch.native-threads:0}") int batchNativeThreads) {
+        this.enabled = enabled;
+        this.bindAddress = bindAddress;
+        this.portMin = portMin;
+        this.portMax = portMax;
+        this.threads = threads;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.batchEnabled = batchEnabled;
+        this.batchTickMillis = batchTickMillis;
+        this.batchNativeThreads = batchNativeThreads;
+        this.nextPort = portMin;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("⏸️ RTP relay disabled (rtp.relay.enabled=false)");
+            return;
+        }
+        group = new NioEventLoopGroup(threads, new DefaultThreadFactory("rtp-relay"));
+        processors = new NativeProcessorPool(maxSessions, 0);
+        if (batchEnabled) {
+            batcher = new RtpFrameBatcher(maxSessions, batchTickMillis, batchNativeThreads);
+            batcher.start();
+        }
+        if (!NativeVoiceProcessor.isLibraryLoaded()) {
+            log.warn("⚠️ Native library not loaded - RTP relay passes audio through without voice changing");
+        }
+        group.scheduleAtFixedRate(this::closeIdleSessions, idleTimeoutMillis, idleTimeoutMillis / 2, TimeUnit.MILLISECONDS);
+        log.info("🎙️ RTP relay ready on {}:{}-{} for up to {} sessions{}", bindAddress, portMin, portMax, maxSessions,
+                batchEnabled ? ", frames batched every " + batchTickMillis + " ms" : "");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (group == null) {
+            return;
+        }
+        log.info("🛑 Shutting down RTP relay ({} open sessions)", sessions.size());
+        new ArrayList<>(sessions.keySet()).forEach(this::close);
+        group.shutdownGracefully().syncUninterruptibly();
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+        processors.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Bind a port for {@code callId} that voice-changes what it receives and forwards it to
+     * {@code target}; returns the local port to send the call's RTP to.
+     *
+     * @throws IllegalStateException if the relay is off, or no processor or port is free
+     */
+    public int open(String callId, InetSocketAddress target, float shift, float formant, float base)
+            throws InterruptedException {
+        if (!enabled) {
+            throw new IllegalStateException("RTP relay is disabled");
+        }
+        if (sessions.size() >= maxSessions) {
+            rejected.incrementAndGet();
+            throw new IllegalStateException("All " + maxSessions + " RTP relay sessions in use");
+        }
+        NativeVoiceProcessor processor = null;
+        if (NativeVoiceProcessor.isLibraryLoaded()) {
+            try {
+                processor = processors.acquire(RtpRelaySession.CLOCK_RATE);
+            } catch (ProcessorUnavailableException e) {
+                rejected.incrementAndGet();
+                throw new IllegalStateException("All " + maxSessions + " RTP relay sessions in use");
+            }
+        }
+
+        RtpRelaySession session;
+        Channel channel;
+        try {
+            session = new RtpRelaySession(callId, target, processor, batcher, shift, formant, base);
+            channel = bindNextPort(session);
+        } catch (RuntimeException e) {
+            if (processor != null) {
+                processors.release(RtpRelaySession.CLOCK_RATE, processor);
+            }
+            rejected.incrementAndGet();
+            throw e;
+        }
+        session.bind(channel);
+        int port = session.getLocalPort();
+        sessions.put(port, session);
+        // Once closed, the handler (on this channel's loop) is done with the processor; a batch
+        // may still hold it, so with batching it is released on the batch thread
+        NativeVoiceProcessor held = processor;
+        channel.closeFuture().addListener(future -> {
+            sessions.remove(port, session);
+            session.markClosed();
+            if (held == null) {
+                return;
+            }
+            Runnable release = () -> processors.release(RtpRelaySession.CLOCK_RATE, held);
+            if (batcher != null) {
+                batcher.execute(release);
+            } else {
+                release.run();
+            }
+        });
+        opened.incrementAndGet();
+        log.info("🔀 RTP relay port {} opened for call {} -> {}", port, callId, target);
+        return port;
+    }
+
+    public boolean updateSettings(int port, float shift, float formant, float base) {
+        RtpRelaySession session = sessions.get(port);
+        if (session == null) {
+            return false;
+        }
+        session.updateSettings(shift, formant, base);
+        return true;
+    }
+
+    public boolean close(int port) {
+        RtpRelaySession session = sessions.remove(port);
+        if (session == null) {
+            return false;
+        }
+        session.getChannel().close();
+        log.info("🔚 RTP relay port {} closed for call {}", port, session.getCallId());
+        return true;
+    }
+
+    /**
+     * Close every session of a call; returns how many there were.
+     */
+    public int closeCall(String callId) {
+        int closed = 0;
+        for (Map.Entry<Integer, RtpRelaySession> entry : sessions.entrySet()) {
+            if (entry.getValue().getCallId().equals(callId) && close(entry.getKey())) {
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        sessions.values().forEach(session -> stats.add(session.getStats()));
+        return stats;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("activeSessions", sessions.size());
+        stats.put("maxSessions", maxSessions);
+        stats.put("opened", opened.get());
+        stats.put("rejected", rejected.get());
+        stats.put("idleClosed", idleClosed.get());
+        if (processors != null) {
+            stats.put("processors", processors.getStats());
+        }
+        if (batcher != null) {
+            stats.put("batching", batcher.getStats());
+        }
+        return stats;
+    }
+
+    RtpRelaySession getSession(int port) {
+        return sessions.get(port);
+    }
+
+    // Ports are handed out round-robin, so a just-closed port is not reused straight away
+    private synchronized Channel bindNextPort(RtpRelaySession session) {
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .option(ChannelOption.SO_RCVBUF, 64 * 1024)
+                .handler(session);
+        int range = portMax - portMin + 1;
+        for (int tried = 0; tried < range; tried++) {
+            int port = nextPort;
+            nextPort = port == portMax ? portMin : port + 1;
+            if (sessions.containsKey(port)) {
+                continue;
+            }
+            try {
+                return bootstrap.bind(bindAddress, port).syncUninterruptibly().channel();
+            } catch (Exception e) {
+                log.debug("RTP relay port {} unavailable: {}", port, e.getMessage());
+            }
+        }
+        throw new IllegalStateException("No free RTP relay port in " + portMin + "-" + portMax);
+    }
+
+    private void closeIdleSessions() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        sessions.forEach((port, session) -> {
+            if (session.getIdleNanos() > idleNanos) {
+                log.info("⌛ RTP relay port {} idle for {} ms - closing (call {})", port,
+                        TimeUnit.NANOSECONDS.toMillis(session.getIdleNanos()), session.getCallId());
+                if (close(port)) {
+                    idleClosed.incrementAndGet();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.voicechanger.service.rtp;
+
+import com.example.voicechanger.audio.G711;
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One relayed call leg on its own UDP port. The first packet from anywhere but the target
+ * latches its sender, and its SSRC, as the caller: the caller's G.711 payloads (PT 0 / 8) are
+ * voice-changed in place in the received buffer and the packet goes on to the target with
+ * its header untouched. Packets from the target go back to the latched caller as they are.
+ * Packets from any other address are dropped; the caller moves (NAT rebinding) only after
+ * {@value #RELATCH_PACKETS} consecutive packets from one new address with the caller's SSRC,
+ * so a stray or spoofed packet cannot take over the call's return audio.
+ * <p>
+ * The processor keeps its state from packet to packet, so the voice is one continuous
+ * stream rather than a series of 20 ms clips. Packets are handled on the channel's event
+ * loop; with a {@link RtpFrameBatcher} the G.711 frames are handed to it instead, and
+ * processed and sent from its tick.
+ */
+@Slf4j
+public class RtpRelaySession extends SimpleChannelInboundHandler<DatagramPacket> {
+
+    static final int CLOCK_RATE = 8000;
+    /** Longest payload processed, 120 ms; longer ones pass through unchanged. */
+    static final int MAX_FRAME_SAMPLES = 960;
+    static final int RELATCH_PACKETS = 5;
+
+    private final String callId;
+    private final InetSocketAddress target;
+    private final NativeVoiceProcessor processor;
+    private final RtpStreamStats forward = new RtpStreamStats(CLOCK_RATE);
+    private final RtpStreamStats backward = new RtpStreamStats(CLOCK_RATE);
+    private final ByteBuffer samples = ByteBuffer.allocateDirect(MAX_FRAME_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+    private final ShortBuffer sampleView = samples.asShortBuffer();
+    private final byte[] payload = new byte[MAX_FRAME_SAMPLES];
+    private final long createdAt = System.currentTimeMillis();
+    private final RtpFrameBatcher batcher;
+    /** Tick of the batch this session last had a frame in; the batcher's thread only. */
+    long batchTick = -1;
+
+    private volatile Channel channel;
+    private volatile InetSocketAddress source;
+    private long sourceSsrc;
+    private InetSocketAddress candidate; // where the caller may have moved to; the event loop only
+    private int candidatePackets;
+    private volatile long rejected;
+    private volatile long relatched;
+    private volatile long lastPacketNanos = System.nanoTime();
+    private volatile long passedThrough;
+    private volatile long malformed;
+    private volatile boolean closed;
+
+    RtpRelaySession(String callId, InetSocketAddress target, NativeVoiceProcessor processor, RtpFrameBatcher batcher,
+                    float shift, float formant, float base) {
+        this.callId = callId;
+        this.batcher = batcher;
+        this.target = target;
+        this.processor = processor;
+        if (processor != null) {
+            processor.configure(CLOCK_RATE, MAX_FRAME_SAMPLES);
+            processor.updateSettings(shift, formant, base);
+        }
+    }
+
+    void bind(Channel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+        long arrival = System.nanoTime();
+        lastPacketNanos = arrival;
+        ByteBuf rtp = packet.content();
+        int offset = RtpPacket.payloadOffset(rtp);
+        if (offset < 0) {
+            malformed++;
+            return;
+        }
+
+        if (packet.sender().equals(target)) {
+            backward.onPacket(RtpPacket.ssrc(rtp), RtpPacket.sequence(rtp), RtpPacket.timestamp(rtp), arrival);
+            if (source != null) {
+                ctx.writeAndFlush(new DatagramPacket(rtp.retain(), source), ctx.voidPromise());
+                backward.recordRelayNanos(System.nanoTime() - arrival);
+            }
+            return;
+        }
+        if (!fromCaller(packet.sender(), RtpPacket.ssrc(rtp))) {
+            rejected++;
+            return;
+        }
+        forward.onPacket(RtpPacket.ssrc(rtp), RtpPacket.sequence(rtp), RtpPacket.timestamp(rtp), arrival);
+        voiceChange(rtp, offset, arrival);
+    }
+
+    /**
+     * Whether a packet that is not from the target comes from the caller, latching the caller
+     * on the first one and moving it as described above.
+     */
+    private boolean fromCaller(InetSocketAddress sender, long ssrc) {
+        if (source == null || sender.equals(source)) {
+            source = sender;
+            sourceSsrc = ssrc;
+            candidate = null;
+            return true;
+        }
+        if (ssrc != sourceSsrc) {
+            return false;
+        }
+        if (!sender.equals(candidate)) {
+            candidate = sender;
+            candidatePackets = 0;
+        }
+        if (++candidatePackets < RELATCH_PACKETS) {
+            return false;
+        }
+        log.info("🔀 RTP relay port {} (call {}): caller moved {} -> {}", getLocalPort(), callId, source, sender);
+        source = sender;
+        candidate = null;
+        relatched++;
+        return true;
+    }
+
+    private void voiceChange(ByteBuf rtp, int offset, long arrival) {
+        int payloadType = RtpPacket.payloadType(rtp);
+        int length = RtpPacket.payloadLength(rtp, offset);
+        if ((payloadType != RtpPacket.PT_PCMU && payloadType != RtpPacket.PT_PCMA) || length > MAX_FRAME_SAMPLES
+                || processor == null) {
+            passedThrough++;
+            sendProcessed(rtp.retain(), arrival);
+            return;
+        }
+        int start = rtp.readerIndex() + offset;
+        if (batcher != null) {
+            batcher.submit(new RtpFrameBatcher.Frame(this, rtp.retain(), start, length, payloadType, arrival));
+            return;
+        }
+        sampleView.clear();
+        decode(rtp, start, length, payloadType, payload, sampleView);
+        processor.processStreamInPlace(samples, length);
+        encode(sampleView.limit(length), payloadType, payload, rtp, start, length);
+        sendProcessed(rtp.retain(), arrival);
+    }
+
+    /**
+     * Send a (processed) packet on to the target; takes over the buffer. Any thread.
+     */
+    void sendProcessed(ByteBuf rtp, long arrivalNanos) {
+        channel.writeAndFlush(new DatagramPacket(rtp, target), channel.voidPromise());
+        forward.recordRelayNanos(System.nanoTime() - arrivalNanos);
+    }
+
+    /**
+     * Decode a G.711 payload into {@code out} from its position, through the {@code scratch} bytes.
+     */
+    static void decode(ByteBuf rtp, int start, int length, int payloadType, byte[] scratch, ShortBuffer out) {
+        rtp.getBytes(start, scratch, 0, length);
+        if (payloadType == RtpPacket.PT_PCMU) {
+            G711.ulawDecode(scratch, 0, length, out);
+        } else {
+            G711.alawDecode(scratch, 0, length, out);
+        }
+    }
+
+    /**
+     * Encode the remaining samples of {@code in} back over the payload.
+     */
+    static void encode(ShortBuffer in, int payloadType, byte[] scratch, ByteBuf rtp, int start, int length) {
+        if (payloadType == RtpPacket.PT_PCMU) {
+            G711.ulawEncode(in, scratch, 0);
+        } else {
+            G711.alawEncode(in, scratch, 0);
+        }
+        rtp.setBytes(start, scratch, 0, length);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.warn("⚠️ RTP relay error on port {} (call {}): {}", getLocalPort(), callId, cause.getMessage());
+    }
+
+    /**
+     * Apply new voice settings between packets: on the batch thread when batching, since the
+     * processor runs there, otherwise on the channel's event loop.
+     */
+    void updateSettings(float shift, float formant, float base) {
+        if (processor == null) {
+            return;
+        }
+        Runnable update = () -> processor.updateSettings(shift, formant, base);
+        if (batcher != null) {
+            batcher.execute(update);
+        } else {
+            channel.eventLoop().execute(update);
+        }
+    }
+
+    void markClosed() {
+        closed = true;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    String getCallId() {
+        return callId;
+    }
+
+    NativeVoiceProcessor getProcessor() {
+        return processor;
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    int getLocalPort() {
+        return ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    long getIdleNanos() {
+        return System.nanoTime() - lastPacketNanos;
+    }
+
+    RtpStreamStats getForwardStats() {
+        return forward;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("callId", callId);
+        stats.put("port", getLocalPort());
+        stats.put("target", target.toString());
+        stats.put("source", source == null ? null : source.toString());
+        stats.put("ageMs", System.currentTimeMillis() - createdAt);
+        stats.put("processed", forward.snapshot());
+        stats.put("returned", backward.snapshot());
+        stats.put("passedThrough", passedThrough);
+        stats.put("malformed", malformed);
+        stats.put("rejected", rejected);
+        stats.put("relatched", relatched);
+        return stats;
+    }
+}
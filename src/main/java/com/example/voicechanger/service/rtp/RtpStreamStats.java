@@ -0,0 +1,119 @@
+package com.example.voicechanger.service.rtp;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Receive statistics for one direction of an RTP stream, kept the RFC 3550 way: loss from
+ * the extended highest sequence number against packets received, and interarrival jitter
+ * as the running {@code J += (|D| - J) / 16} over transit-time differences. A new SSRC
+ * starts the sequence and transit tracking again, keeping the totals.
+ * <p>
+ * {@link #onPacket} is called from the one event loop the stream's channel lives on; the
+ * getters may be read from anywhere.
+ */
+public class RtpStreamStats {
+
+    private final int clockRate;
+    private final LatencyRecorder relayLatency = new LatencyRecorder();
+
+    private volatile long packets;
+    private volatile long lostBeforeSsrc;
+    private volatile long outOfOrder;
+    private volatile double jitterUnits;
+    private volatile double maxJitterUnits;
+
+    private boolean started;
+    private long ssrc;
+    private int baseSequence;
+    private long highestSequence; // extended with the wrap count
+    private long receivedSinceSsrc;
+    private long lastArrivalNanos;
+    private long lastTimestamp;
+
+    public RtpStreamStats(int clockRate) {
+        this.clockRate = clockRate;
+    }
+
+    public void onPacket(long packetSsrc, int sequence, long rtpTimestamp, long arrivalNanos) {
+        if (!started || packetSsrc != ssrc) {
+            lostBeforeSsrc += currentLost();
+            started = true;
+            ssrc = packetSsrc;
+            baseSequence = sequence;
+            highestSequence = sequence;
+            receivedSinceSsrc = 0;
+        } else {
+            int delta = (short) (sequence - (int) (highestSequence & 0xFFFF));
+            if (delta > 0) {
+                highestSequence += delta;
+            } else {
+                outOfOrder++;
+            }
+            // D = (Rj - Ri) - (Sj - Si), the timestamp difference taken mod 2^32
+            double d = Math.abs((arrivalNanos - lastArrivalNanos) * (double) clockRate / 1e9
+                    - (int) (rtpTimestamp - lastTimestamp));
+            double jitter = jitterUnits + (d - jitterUnits) / 16.0;
+            jitterUnits = jitter;
+            if (jitter > maxJitterUnits) {
+                maxJitterUnits = jitter;
+            }
+        }
+        lastArrivalNanos = arrivalNanos;
+        lastTimestamp = rtpTimestamp;
+        receivedSinceSsrc++;
+        packets++;
+    }
+
+    /**
+     * Time from a packet arriving to its relayed copy being handed to the socket.
+     */
+    public void recordRelayNanos(long nanos) {
+        relayLatency.recordNanos(nanos);
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public long getLost() {
+        return lostBeforeSsrc + currentLost();
+    }
+
+    public long getOutOfOrder() {
+        return outOfOrder;
+    }
+
+    public double getJitterMillis() {
+        return jitterUnits * 1000.0 / clockRate;
+    }
+
+    public double getMaxJitterMillis() {
+        return maxJitterUnits * 1000.0 / clockRate;
+    }
+
+    public LatencyRecorder getRelayLatency() {
+        return relayLatency;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("packets", getPackets());
+        snapshot.put("lost", getLost());
+        snapshot.put("outOfOrder", getOutOfOrder());
+        snapshot.put("jitterMs", getJitterMillis());
+        snapshot.put("maxJitterMs", getMaxJitterMillis());
+        snapshot.put("relay", relayLatency.snapshot());
+        return snapshot;
+    }
+
+    private long currentLost() {
+        if (!started) {
+            return 0;
+        }
+        long expected = highestSequence - baseSequence + 1;
+        return Math.max(0, expected - receivedSinceSsrc);
+    }
+}
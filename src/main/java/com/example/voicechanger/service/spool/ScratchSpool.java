@@ -0,0 +1,212 @@
+package com.example.voicechanger.service.spool;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded scratch directory for audio conversion files (FFmpeg input/output).
+ * <p>
+ * Every file is created with a unique name and reserves its expected size against a byte
+ * quota; when the quota is used up callers wait up to {@code spool.acquire-timeout-ms} for
+ * space and then fail, so a burst of uploads queues instead of filling the disk. Files are
+ * deleted when their {@link ScratchFile} is closed, and a reaper removes anything older than
+ * {@code spool.ttl-ms}, including leftovers from a previous run. With {@code spool.memory-backed}
+ * the spool lives on tmpfs ({@code /dev/shm}) when the host has it.
+ */
+@Slf4j
+@Service
+public class ScratchSpool {
+
+    private static final Path SHM = Path.of("/dev/shm");
+    private static final int KIB = 1024;
+
+    private final Path directory;
+    private final boolean memoryBacked;
+    private final long quotaBytes;
+    private final long acquireTimeoutMillis;
+    private final long ttlMillis;
+    private final Semaphore quota; // in KiB
+    private final Map<Path, ScratchFile> open = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spool-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LatencyRecorder acquireWait = new LatencyRecorder();
+    private final AtomicLong filesCreated = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong reaped = new AtomicLong();
+    private volatile long bytesOnDisk;
+
+    public ScratchSpool(@Value("${spool.dir:${java.io.tmpdir}/voice_morph}") String dir,
+                        @Value("${spool.memory-backed:false}") boolean memoryBacked,
+                        @Value("${spool.max-bytes:536870912}") long quotaBytes,
+                        @Value("${spool.acquire-timeout-ms:10000}") long acquireTimeoutMillis,
+                        @Value("${spool.ttl-ms:600000}") long ttlMillis,
+                        @Value("${spool.reap-interval-ms:60000}") long reapIntervalMillis) throws IOException {
+        boolean tmpfs = memoryBacked && Files.isDirectory(SHM) && Files.isWritable(SHM);
+        if (memoryBacked && !tmpfs) {
+            log.warn("⚠️ spool.memory-backed is set but {} is not available - spooling to {}", SHM, dir);
+        }
+        this.directory = tmpfs ? SHM.resolve("voice_morph") : Path.of(dir);
+        this.memoryBacked = tmpfs;
+        this.quotaBytes = quotaBytes;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.ttlMillis = ttlMillis;
+        this.quota = new Semaphore(toKib(quotaBytes), true);
+
+        Files.createDirectories(directory);
+        reaper.scheduleWithFixedDelay(this::reap, 0, reapIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("🗂️ Scratch spool at {} ({}quota {} MB, ttl {} s)", directory, tmpfs ? "tmpfs, " : "",
+                quotaBytes / (KIB * KIB), ttlMillis / 1000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        open.values().forEach(ScratchFile::close);
+    }
+
+    /**
+     * Create a uniquely named empty file, reserving {@code expectedBytes} of the quota until
+     * it is closed. Waits for space if the spool is full.
+     *
+     * @throws IOException if no space frees up within the acquire timeout
+     */
+    public ScratchFile create(String prefix, String suffix, long expectedBytes) throws IOException {
+        int kib = Math.min(toKib(expectedBytes), toKib(quotaBytes));
+        if (!quota.tryAcquire(kib)) {
+            waits.incrementAndGet();
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = quota.tryAcquire(kib, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for spool space", e);
+            }
+            acquireWait.recordSince(start);
+            if (!acquired) {
+                rejections.incrementAndGet();
+                throw new IOException("Scratch spool full: " + (quotaBytes / KIB - quota.availablePermits())
+                        + " KiB of " + quotaBytes / KIB + " KiB in use");
+            }
+        }
+
+        try {
+            Path path = Files.createTempFile(directory, prefix, suffix);
+            ScratchFile file = new ScratchFile(path, kib);
+            open.put(path, file);
+            filesCreated.incrementAndGet();
+            return file;
+        } catch (IOException | RuntimeException e) {
+            quota.release(kib);
+            throw e;
+        }
+    }
+
+    /**
+     * Delete expired open files and any stray file older than the TTL, and refresh the
+     * on-disk byte count. Synchronized so a reap run by hand never counts a file the
+     * scheduled one is removing.
+     */
+    synchronized void reap() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                try {
+                    if (Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                        ScratchFile file = open.get(path);
+                        if (file != null) {
+                            file.close();
+                        } else {
+                            Files.deleteIfExists(path);
+                        }
+                        reaped.incrementAndGet();
+                        log.warn("🧹 Reaped scratch file {} older than {} s", path.getFileName(), ttlMillis / 1000);
+                    } else {
+                        total += Files.size(path);
+                    }
+                } catch (IOException e) {
+                    log.debug("Could not reap {}: {}", path, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("❌ Failed to scan scratch spool {}: {}", directory, e.getMessage());
+        }
+        bytesOnDisk = total;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("memoryBacked", memoryBacked);
+        stats.put("openFiles", open.size());
+        stats.put("reservedBytes", (toKib(quotaBytes) - (long) quota.availablePermits()) * KIB);
+        stats.put("quotaBytes", quotaBytes);
+        stats.put("bytesOnDisk", bytesOnDisk);
+        stats.put("filesCreated", filesCreated.get());
+        stats.put("waits", waits.get());
+        stats.put("rejections", rejections.get());
+        stats.put("reaped", reaped.get());
+        stats.put("acquireWait", acquireWait.snapshot());
+        return stats;
+    }
+
+    private static int toKib(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + KIB - 1) / KIB));
+    }
+
+    /**
+     * A spool file; closing deletes it and returns its reservation. Safe to close twice.
+     */
+    public class ScratchFile implements AutoCloseable {
+
+        private final Path path;
+        private final int reservedKib;
+        private boolean closed;
+
+        private ScratchFile(Path path, int reservedKib) {
+            this.path = path;
+            this.reservedKib = reservedKib;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+            }
+            open.remove(path);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("⚠️ Could not delete scratch file {}: {} - the reaper will retry", path, e.getMessage());
+            }
+            quota.release(reservedKib);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.voicechanger.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AudioBufferPoolTest {
+
+    @Test
+    void closedBuffersAreReusedWithinTheirSizeClass() {
+        AudioBufferPool pool = new AudioBufferPool(1024, 64 * 1024, 64 * 1024, false);
+
+        AudioBufferPool.Lease first = pool.lease(3000);
+        ByteBuffer buffer = first.buffer();
+        assertEquals(4096, buffer.capacity());
+        assertEquals(3000, buffer.limit());
+        first.close();
+        first.close(); // second close must not pool the buffer twice
+
+        try (AudioBufferPool.Lease second = pool.lease(2100)) {
+            assertSame(buffer, second.buffer());
+            assertEquals(2100, second.buffer().limit());
+        }
+        pool.lease(128 * 1024).close(); // oversize, never pooled
+
+        Map<String, Object> stats = pool.getStats();
+        assertEquals(3L, stats.get("leases"));
+        assertEquals(2L, stats.get("allocated"));
+        assertEquals(1L, stats.get("oversize"));
+        assertEquals(4096L, stats.get("pooledBytes"));
+        assertEquals(0L, stats.get("leasedBytes"));
+    }
+
+    @Test
+    void growKeepsWrittenSamplesAndPoolRespectsItsCap() {
+        AudioBufferPool pool = new AudioBufferPool(1024, 64 * 1024, 8 * 1024, false);
+
+        AudioBufferPool.Lease lease = pool.lease(1024);
+        for (short i = 0; i < 512; i++) {
+            lease.buffer().putShort(i);
+        }
+        lease = pool.grow(lease, 1026);
+        assertEquals(1024, lease.buffer().position());
+        assertTrue(lease.buffer().capacity() >= 2048);
+        lease.buffer().putShort((short) 512).flip();
+        for (short i = 0; i <= 512; i++) {
+            assertEquals(i, lease.samples().get(i));
+        }
+
+        AudioBufferPool.Lease big = pool.lease(8 * 1024);
+        lease.close();
+        big.close(); // 1 KiB + 2 KiB + 8 KiB idle would exceed the 8 KiB cap
+        assertEquals(1L, pool.getStats().get("dropped"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.voicechanger.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class G711Test {
+
+    @Test
+    void encodeInvertsDecodeAndClipsAtTheEnds() {
+        for (int code = 0; code < 256; code++) {
+            short ulaw = G711.ulawDecode((byte) code);
+            assertEquals(ulaw, G711.ulawDecode(G711.ulawEncode(ulaw)), "mu-law " + code);
+            short alaw = G711.alawDecode((byte) code);
+            assertEquals((byte) code, G711.alawEncode(alaw), "A-law " + code); // A-law has no negative zero
+        }
+        assertEquals((byte) 0xFF, G711.ulawEncode((short) 0));
+        assertEquals((byte) 0x80, G711.ulawEncode(Short.MAX_VALUE));
+        assertEquals((byte) 0x00, G711.ulawEncode(Short.MIN_VALUE));
+        assertEquals((byte) 0xD5, G711.alawEncode((short) 0));
+        assertEquals((byte) 0xAA, G711.alawEncode(Short.MAX_VALUE));
+        assertEquals((byte) 0x2A, G711.alawEncode(Short.MIN_VALUE));
+    }
+
+    @Test
+    void bulkCodecsMatchPerSampleFromTheBufferPosition() {
+        short[] samples = new short[10_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i * 6553);
+        }
+        ShortBuffer in = ShortBuffer.wrap(samples).position(3);
+
+        byte[] ulaw = new byte[samples.length];
+        byte[] alaw = new byte[samples.length];
+        G711.ulawEncode(in, ulaw, 3);
+        G711.alawEncode(in, alaw, 3);
+        assertEquals(3, in.position());
+        for (int i = 3; i < samples.length; i++) {
+            assertEquals(G711.ulawEncode(samples[i]), ulaw[i]);
+            assertEquals(G711.alawEncode(samples[i]), alaw[i]);
+        }
+
+        short[] decoded = new short[samples.length];
+        G711.alawDecode(alaw, 3, samples.length - 3, ShortBuffer.wrap(decoded).position(3));
+        short[] expected = new short[samples.length];
+        for (int i = 3; i < samples.length; i++) {
+            expected[i] = G711.alawDecode(alaw[i]);
+        }
+        assertArrayEquals(expected, decoded);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.voicechanger.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResamplerTest {
+
+    @Test
+    void downsamplingKeepsTheVoiceBandAndRejectsWhatWouldAlias() {
+        float[] voice = resample(tone(48000, 1000, 48000), 48000, 8000);
+        assertEquals(8000, voice.length, 1);
+        // Outputs are centred on the inputs, so the tone lines up with an ideal 8 kHz one
+        double maxError = 0;
+        for (int n = 200; n < voice.length - 200; n++) {
+            maxError = Math.max(maxError, Math.abs(voice[n] - 0.5 * Math.sin(2 * Math.PI * 1000 * n / 8000.0)));
+        }
+        assertTrue(maxError < 2e-3, "1 kHz error " + maxError);
+
+        float[] folded = resample(tone(48000, 6000, 48000), 48000, 8000);
+        assertTrue(rms(folded, 200) < 0.5e-3, "6 kHz leaked through at rms " + rms(folded, 200));
+    }
+
+    @Test
+    void blockInputMatchesOneShotForOddRatios() {
+        float[] input = new float[44100];
+        Random random = new Random(7);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        for (int[] rates : new int[][]{{44100, 8000}, {8000, 44100}, {44056, 8000}}) {
+            float[] oneShot = resample(input, rates[0], rates[1]);
+
+            Resampler resampler = new Resampler(rates[0], rates[1]);
+            float[] streamed = new float[oneShot.length + 16];
+            int written = 0;
+            for (int offset = 0; offset < input.length; ) {
+                int block = Math.min(1 + random.nextInt(3000), input.length - offset);
+                float[] out = new float[resampler.maxOutput(block)];
+                int n = resampler.process(input, offset, block, out, 0);
+                System.arraycopy(out, 0, streamed, written, n);
+                written += n;
+                offset += block;
+            }
+            float[] tail = new float[resampler.maxFlush()];
+            int n = resampler.flush(tail, 0);
+            System.arraycopy(tail, 0, streamed, written, n);
+            written += n;
+
+            assertArrayEquals(oneShot, Arrays.copyOf(streamed, written), Arrays.toString(rates));
+        }
+    }
+
+    @Test
+    void filterBanksOfOddRatesAreEvicted() {
+        for (int rate = 383_977; rate < 384_000; rate += 2) { // ~3.5 MB of kernels each
+            new Resampler(rate, 8000);
+        }
+        assertTrue(Resampler.cachedKernelFloats() <= Resampler.CACHE_FLOATS,
+                "kernel cache holds " + Resampler.cachedKernelFloats() + " floats");
+    }
+
+    private static float[] resample(float[] input, int from, int to) {
+        Resampler resampler = new Resampler(from, to);
+        float[] out = new float[resampler.maxOutput(input.length) + resampler.maxFlush()];
+        int n = resampler.process(input, 0, input.length, out, 0);
+        n += resampler.flush(out, n);
+        return Arrays.copyOf(out, n);
+    }
+
+    private static float[] tone(int rate, double frequency, int samples) {
+        float[] tone = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            tone[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return tone;
+    }
+
+    private static double rms(float[] signal, int skip) {
+        double sum = 0;
+        for (int i = skip; i < signal.length - skip; i++) {
+            sum += signal[i] * signal[i];
+        }
+        return Math.sqrt(sum / (signal.length - 2 * skip));
+    }
+}
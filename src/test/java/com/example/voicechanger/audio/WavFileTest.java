@@ -0,0 +1,123 @@
+package com.example.voicechanger.audio;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WavFileTest {
+
+    @Test
+    void compandingMatchesJavaSound() throws Exception {
+        byte[] codes = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            codes[i] = (byte) i;
+        }
+        for (AudioFormat.Encoding encoding : new AudioFormat.Encoding[]{AudioFormat.Encoding.ULAW, AudioFormat.Encoding.ALAW}) {
+            AudioFormat source = new AudioFormat(encoding, 8000, 8, 1, 1, 8000, false);
+            AudioFormat pcm = new AudioFormat(8000, 16, 1, true, false);
+            short[] expected = readShorts(AudioSystem.getAudioInputStream(pcm,
+                    new AudioInputStream(new ByteArrayInputStream(codes), source, codes.length)));
+
+            int tag = encoding == AudioFormat.Encoding.ULAW ? 7 : 6;
+            WavFile wav = WavFile.parse(wav(tag, 1, 8000, 8, codes, false));
+            short[] decoded = new short[256];
+            wav.decodeMono(ShortBuffer.wrap(decoded));
+            assertArrayEquals(expected, decoded, encoding.toString());
+        }
+    }
+
+    @Test
+    void extensibleFloatStereoAfterOddChunkIsMixedToMono() throws IOException {
+        ByteBuffer samples = ByteBuffer.allocate(3 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        samples.putFloat(0.5f).putFloat(0.25f)
+                .putFloat(-1f).putFloat(-1f)
+                .putFloat(2f).putFloat(2f); // clipped
+        WavFile wav = WavFile.parse(wav(0xFFFE, 2, 16000, 32, samples.array(), true));
+
+        assertEquals(WavFile.Encoding.FLOAT_32, wav.getEncoding());
+        assertEquals(3, wav.getFrames());
+        short[] decoded = new short[3];
+        wav.decodeMono(ShortBuffer.wrap(decoded));
+        assertArrayEquals(new short[]{12288, -32768, 32767}, decoded);
+    }
+
+    @Test
+    void multiChannelDecodeKeepsChannelsInterleaved() throws IOException {
+        // 24-bit stereo, left and right different: 0x123456 / -256, then 0 / 0x7FFFFF
+        byte[] samples = {0x56, 0x34, 0x12, 0x00, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, 0x7F};
+        WavFile wav = WavFile.parse(wav(1, 2, 48000, 24, samples, false));
+
+        short[] decoded = new short[4];
+        wav.decode(ShortBuffer.wrap(decoded));
+        assertArrayEquals(new short[]{0x1234, -1, 0, 0x7FFF}, decoded);
+
+        float[] block = new float[4];
+        assertEquals(1, wav.decode(1, block, 2, 5));
+        assertArrayEquals(new float[]{0, 0, 0, 0x7FFFFF / 8388608f}, block);
+    }
+
+    @Test
+    void truncatedDataIsCutAndBrokenHeadersAreRejected() throws IOException {
+        byte[] pcm = {1, 0, 2, 0, 3, 0, 4, 0};
+        byte[] full = wav(1, 1, 8000, 16, pcm, false);
+        byte[] truncated = Arrays.copyOf(full, full.length - 3);
+
+        WavFile wav = WavFile.parse(truncated);
+        short[] decoded = new short[wav.getFrames()];
+        wav.decodeMono(ShortBuffer.wrap(decoded));
+        assertArrayEquals(new short[]{1, 2}, decoded);
+
+        assertFalse(WavFile.parse(wav(0x0011, 1, 8000, 4, pcm, false)).isSupported()); // IMA ADPCM
+        assertThrows(IOException.class, () -> WavFile.parse(Arrays.copyOf(full, 30)));
+        assertThrows(IOException.class, () -> WavFile.parse(wav(0x0011, 1, 8000, 0, pcm, false))); // no frame size
+        // Rates the resampler would need a huge filter bank for
+        assertThrows(IOException.class, () -> WavFile.parse(wav(1, 1, 999983, 16, pcm, false)));
+        assertThrows(IOException.class, () -> WavFile.parse(wav(1, 1, 100, 16, pcm, false)));
+    }
+
+    /**
+     * A WAV with the given fmt fields; {@code extensible} puts the tag in a 40-byte
+     * WAVE_FORMAT_EXTENSIBLE fmt chunk after an odd-sized LIST chunk.
+     */
+    private static byte[] wav(int tag, int channels, int rate, int bits, byte[] data, boolean extensible) {
+        int blockAlign = channels * bits / 8;
+        ByteBuffer out = ByteBuffer.allocate(100 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        out.put("RIFF".getBytes()).putInt(0).put("WAVE".getBytes());
+        if (extensible) {
+            out.put("LIST".getBytes()).putInt(3).put(new byte[]{'a', 'b', 'c', 0});
+            out.put("fmt ".getBytes()).putInt(40).putShort((short) 0xFFFE);
+        } else {
+            out.put("fmt ".getBytes()).putInt(16).putShort((short) tag);
+        }
+        out.putShort((short) channels).putInt(rate).putInt(rate * blockAlign)
+                .putShort((short) blockAlign).putShort((short) bits);
+        if (extensible) {
+            out.putShort((short) 22).putShort((short) bits).putInt(3).putShort((short) 3).put(new byte[14]);
+        }
+        out.put("data".getBytes()).putInt(data.length).put(data);
+        out.putInt(4, out.position() - 8);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private static short[] readShorts(AudioInputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.transferTo(bytes);
+        short[] samples = new short[bytes.size() / 2];
+        ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        return samples;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.voicechanger.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChannelPresetTest {
+
+    @Test
+    void entriesParseInChannelOrderAndEmptyOnesAreNull() {
+        assertEquals(Arrays.asList(new ChannelPreset(10f, 2f, 100f), null, new ChannelPreset(-4.5f, 0f, 150f)),
+                ChannelPreset.parseList("10,2,100;; -4.5 , 0 ,150"));
+        assertEquals(Arrays.asList(new ChannelPreset(1f, 1f, 1f), null), ChannelPreset.parseList("1,1,1;"));
+    }
+
+    @Test
+    void badEntriesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ChannelPreset.parseList("10,2"));
+        assertThrows(IllegalArgumentException.class, () -> ChannelPreset.parseList("10,2,100,1"));
+        assertThrows(IllegalArgumentException.class, () -> ChannelPreset.parseList("10,2,100;1,,1"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ChannelPreset.parseList("ten,2,100"));
+        assertInstanceOf(NumberFormatException.class, e.getCause());
+    }
+
+    @Test
+    void channelsWithoutAPresetKeepTheRequestsSettings() {
+        VoiceProcessRequest request = new VoiceProcessRequest(3f, 1f, 120f);
+        request.setChannelPresets(ChannelPreset.parseList(";-2,0,90"));
+
+        ChannelPreset requestSettings = new ChannelPreset(3f, 1f, 120f);
+        assertEquals(requestSettings, request.presetFor(0)); // empty entry
+        assertEquals(new ChannelPreset(-2f, 0f, 90f), request.presetFor(1));
+        assertEquals(requestSettings, request.presetFor(2)); // fewer presets than channels
+        assertEquals(requestSettings, new VoiceProcessRequest(3f, 1f, 120f).presetFor(0));
+        assertEquals(List.of(), new VoiceProcessRequest().getChannelPresets());
+    }
+}
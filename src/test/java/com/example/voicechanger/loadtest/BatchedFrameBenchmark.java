@@ -0,0 +1,104 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Streams per core for live 20 ms frames at 8 kHz, processed one JNI call per frame per
+ * stream (the relay without batching) against one {@link NativeVoiceProcessor#processBatch}
+ * call per tick for all streams, single-threaded and spread over native workers. Runs the
+ * ticks back to back and measures process CPU, so native worker threads are counted.
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.BatchedFrameBenchmark 200 10 4
+ * </pre>
+ * Arguments: streams, seconds of audio, native threads for the spread batch. Needs the
+ * native library (run from the project root); with one built before processBatchDirect
+ * the batch rows fall back to a call per frame and say so.
+ */
+public class BatchedFrameBenchmark {
+
+    private static final int FRAME = 160;
+
+    public static void main(String[] args) {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        ControlPlaneLoadHarness.quietLogging();
+
+        short[] speech = TestAudioThroughputBenchmark.speechLike(8000, seconds);
+        NativeVoiceProcessor[] processors = new NativeVoiceProcessor[streams];
+        for (int i = 0; i < streams; i++) {
+            processors[i] = new NativeVoiceProcessor();
+            processors[i].configure(8000, FRAME);
+            processors[i].updateSettings(10f, 2f, 100f);
+        }
+        ByteBuffer frames = ByteBuffer.allocateDirect(streams * FRAME * 2).order(ByteOrder.LITTLE_ENDIAN);
+        int[] lengths = new int[streams];
+        Arrays.fill(lengths, FRAME);
+
+        System.out.printf("%d streams x %ds of 20 ms frames, %d cores%n%n", streams, seconds,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-22s %10s %14s %14s %16s%n", "mode", "wall ms", "JNI calls/s", "CPU us/frame", "streams per core");
+        run("per frame", streams, seconds, speech, frames, () -> {
+            for (int i = 0; i < streams; i++) {
+                processors[i].processStreamInPlace(frames.slice(i * FRAME * 2, FRAME * 2).order(ByteOrder.LITTLE_ENDIAN), FRAME);
+            }
+            return streams;
+        });
+        run("batch, 1 thread", streams, seconds, speech, frames, () -> {
+            NativeVoiceProcessor.processBatch(processors, lengths, frames, FRAME, streams, 1);
+            return batchCalls(streams);
+        });
+        run("batch, " + threads + " threads", streams, seconds, speech, frames, () -> {
+            NativeVoiceProcessor.processBatch(processors, lengths, frames, FRAME, streams, threads);
+            return batchCalls(streams);
+        });
+        if (!NativeVoiceProcessor.isBatchSupported()) {
+            System.out.println("\n(native library has no processBatchDirect - batch rows are a call per frame)");
+        }
+        System.exit(0);
+    }
+
+    private interface Tick {
+        int process();
+    }
+
+    private static int batchCalls(int streams) {
+        return NativeVoiceProcessor.isBatchSupported() ? 1 : streams;
+    }
+
+    private static void run(String mode, int streams, int seconds, short[] speech, ByteBuffer frames, Tick tick) {
+        int ticks = seconds * 50;
+        for (int t = 0; t < 50; t++) { // warm-up
+            fill(frames, speech, t, streams);
+            tick.process();
+        }
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpu = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        long calls = 0;
+        for (int t = 0; t < ticks; t++) {
+            fill(frames, speech, t, streams);
+            calls += tick.process();
+        }
+        double wallMs = (System.nanoTime() - start) / 1e6;
+        double cpuMicrosPerFrame = (os.getProcessCpuTime() - cpu) / 1e3 / ((double) ticks * streams);
+        System.out.printf("%-22s %10.0f %14.0f %14.1f %16.0f%n", mode, wallMs, calls / (wallMs / 1000),
+                cpuMicrosPerFrame, 20_000 / cpuMicrosPerFrame);
+    }
+
+    private static void fill(ByteBuffer frames, short[] speech, int tick, int streams) {
+        int offset = (tick * FRAME) % (speech.length - FRAME);
+        ShortBuffer samples = frames.asShortBuffer();
+        for (int i = 0; i < streams; i++) {
+            samples.put(i * FRAME, speech, offset, FRAME);
+        }
+    }
+}
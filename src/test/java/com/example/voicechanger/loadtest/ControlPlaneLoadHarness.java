@@ -0,0 +1,156 @@
+package com.example.voicechanger.loadtest;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.voicechanger.config.TalkTimeClientConfig;
+import com.example.voicechanger.metrics.LatencyRecorder;
+import com.example.voicechanger.service.esl.CallDeadlineService;
+import com.example.voicechanger.service.esl.CallHandlerService;
+import com.example.voicechanger.service.esl.CallJournal;
+import com.example.voicechanger.service.esl.CallTransferService;
+import com.example.voicechanger.service.esl.EslCommandBatcher;
+import com.example.voicechanger.service.esl.EslService;
+import com.example.voicechanger.service.esl.FreeSwitchEventListener;
+import com.example.voicechanger.service.esl.TalkTimeBalanceCache;
+import com.example.voicechanger.service.esl.TalkTimeDeductionOutbox;
+import com.example.voicechanger.service.esl.TalkTimeService;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Drives the ESL control plane ({@link CallHandlerService} and friends) against a
+ * {@link FakeFreeSwitchServer} at increasing calls per second and reports event-to-action
+ * latency per step and the highest rate that stayed within the latency budget.
+ * <p>
+ * Talk-time billing is stubbed out so the numbers reflect the control plane only.
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.ControlPlaneLoadHarness 10,50,100,200,400 15 250
+ * </pre>
+ * Arguments: comma-separated CPS steps, seconds per step, p99 budget in milliseconds.
+ */
+public class ControlPlaneLoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        double[] steps = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToDouble(Double::parseDouble).toArray()
+                : new double[]{10, 25, 50, 100, 200, 400, 800};
+        int stepSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double p99BudgetMs = args.length > 2 ? Double.parseDouble(args[2]) : 250;
+        quietLogging();
+
+        try (FakeFreeSwitchServer server = new FakeFreeSwitchServer("ClueCon").start(0);
+             AnnotationConfigApplicationContext context = controlPlane(server.getPort(), InstantTalkTimeService.class)) {
+
+            server.setHoldMillis(1_000);
+            waitForSubscription(server);
+
+            System.out.printf("%8s %10s %10s %10s %10s %12s %12s %8s%n",
+                    "CPS", "started", "actioned", "timedOut", "park p50", "park p99", "voice p99", "ok");
+
+            double maxSustainable = 0;
+            for (double cps : steps) {
+                server.resetStats();
+                server.generateCalls(cps);
+                Thread.sleep(stepSeconds * 1000L);
+                server.stopGenerating();
+                Thread.sleep(2_000); // let in-flight parks resolve
+
+                Map<String, Object> stats = server.getStats();
+                LatencyRecorder park = server.getParkToAction();
+                LatencyRecorder voice = server.getBridgeToVoice();
+                long started = (long) stats.get("callsStarted");
+                long actioned = (long) stats.get("callsTransferred") + (long) stats.get("callsKilled");
+                long timedOut = (long) stats.get("callsTimedOut");
+                double parkP99 = park.percentileMicros(99) / 1000.0;
+                boolean ok = timedOut == 0 && actioned >= started && parkP99 <= p99BudgetMs;
+
+                System.out.printf("%8.0f %10d %10d %10d %8.2fms %10.2fms %10.2fms %8s%n",
+                        cps, started, actioned, timedOut, park.percentileMicros(50) / 1000.0, parkP99,
+                        voice.percentileMicros(99) / 1000.0, ok ? "yes" : "NO");
+
+                if (!ok) break;
+                maxSustainable = cps;
+                Thread.sleep(1_500); // drain hangups before the next step
+            }
+
+            System.out.printf("%nMax sustainable CPS within p99 <= %.0fms: %.0f%n", p99BudgetMs, maxSustainable);
+            System.out.println("Commands coalesced by batcher: " + context.getBean(EslCommandBatcher.class).getCommandsCoalesced());
+        }
+        System.exit(0); // the ESL client library leaves non-daemon threads behind
+    }
+
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    /**
+     * Minimal Spring context with only the ESL control-plane beans, pointed at the given port.
+     */
+    static AnnotationConfigApplicationContext controlPlane(int eslPort, Class<? extends TalkTimeService> talkTimeService,
+                                                           Map<String, Object> extraProperties) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("freeswitch.esl.host", "127.0.0.1");
+        properties.put("freeswitch.esl.port", eslPort);
+        properties.put("freeswitch.esl.password", "ClueCon");
+        properties.put("freeswitch.esl.timeout", 5_000);
+        properties.put("freeswitch.esl.reconnect.interval", 1);
+        properties.put("call.journal.enabled", false);
+        properties.put("talktime.outbox.durable", false);
+        properties.putAll(extraProperties);
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("loadtest", properties));
+        context.register(EslService.class, FreeSwitchEventListener.class, CallHandlerService.class,
+                CallTransferService.class, EslCommandBatcher.class, CallDeadlineService.class, CallJournal.class, TalkTimeClientConfig.class, TalkTimeDeductionOutbox.class, TalkTimeBalanceCache.class, talkTimeService);
+        context.refresh();
+        return context;
+    }
+
+    static AnnotationConfigApplicationContext controlPlane(int eslPort, Class<? extends TalkTimeService> talkTimeService) {
+        return controlPlane(eslPort, talkTimeService, Map.of());
+    }
+
+    static void waitForSubscription(FakeFreeSwitchServer server) throws InterruptedException {
+        for (int i = 0; i < 100 && !server.hasSubscribers(); i++) {
+            Thread.sleep(50);
+        }
+        if (!server.hasSubscribers()) {
+            throw new IllegalStateException("Backend did not subscribe to events on the fake ESL server");
+        }
+    }
+
+    /**
+     * Approves every call instantly, so only the ESL path is measured.
+     */
+    public static class InstantTalkTimeService extends TalkTimeService {
+
+        public InstantTalkTimeService(WebClient talkTimeWebClient, EslService eslService, CallDeadlineService deadlineService,
+                                      CallJournal journal, TalkTimeDeductionOutbox deductionOutbox,
+                                      TalkTimeBalanceCache balanceCache) {
+            super(talkTimeWebClient, eslService, deadlineService, journal, deductionOutbox, balanceCache);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> checkAndReserveTalkTime(String uuid, String aParty, String bParty, String email) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public void markAnswered(String uuid) {
+        }
+
+        @Override
+        public void deductTalkTime(String uuid, Date endTime) {
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+import com.example.voicechanger.service.esl.EslFrame;
+import com.example.voicechanger.service.esl.EslFrameDecoder;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for a FreeSWITCH inbound ESL socket, for load testing the control plane.
+ * <p>
+ * Speaks enough of the protocol for {@code org.freeswitch.esl.client} and
+ * {@code EslCommandPipeline}: {@code auth}, {@code event plain}, {@code api}, {@code bgapi}
+ * and {@code exit}. It generates synthetic calls at a configurable rate
+ * (CREATE → PARK → [uuid_transfer from the backend] → ANSWER → BRIDGE → HANGUP → DESTROY)
+ * and answers {@code show calls}, {@code show channels as csv}, {@code uuid_dump},
+ * {@code uuid_kill}, {@code uuid_transfer} and {@code voicechanger *}.
+ * <p>
+ * Latency is measured from the moment an event is written to the moment the backend's
+ * reaction arrives: PARK → uuid_transfer/uuid_kill and BRIDGE → voicechanger start.
+ */
+public class FakeFreeSwitchServer implements AutoCloseable {
+
+    private static final AttributeKey<Boolean> SUBSCRIBED = AttributeKey.valueOf("subscribed");
+    private static final AttributeKey<Boolean> AUTHENTICATED = AttributeKey.valueOf("authenticated");
+    private static final String[] VOICE_CODES = {"901", "902", "903", "904"};
+
+    private final String password;
+    private final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+    private final EventLoopGroup workerGroup = new NioEventLoopGroup(2);
+    private final ChannelGroup subscribers = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private final ScheduledExecutorService lifecycle = Executors.newScheduledThreadPool(2);
+    private final Map<String, FakeCall> callsByUuid = new ConcurrentHashMap<>();
+    private Channel serverChannel;
+    private ScheduledFuture<?> generator;
+
+    private volatile long answerDelayMillis = 50;
+    private volatile long holdMillis = 2_000;
+    private volatile long actionTimeoutMillis = 5_000;
+    private volatile int callerPoolSize;
+
+    private final LatencyRecorder parkToAction = new LatencyRecorder();
+    private final LatencyRecorder parkToTransfer = new LatencyRecorder();
+    private final LatencyRecorder bridgeToVoice = new LatencyRecorder();
+    private final AtomicLong callsStarted = new AtomicLong();
+    private final AtomicLong callsTransferred = new AtomicLong();
+    private final AtomicLong callsKilled = new AtomicLong();
+    private final AtomicLong callsTimedOut = new AtomicLong();
+    private final AtomicLong commandsReceived = new AtomicLong();
+    private final AtomicLong eventsSent = new AtomicLong();
+
+    public FakeFreeSwitchServer(String password) {
+        this.password = password;
+    }
+
+    public FakeFreeSwitchServer start(int port) throws InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new EslFrameDecoder())
+                                .addLast(new StringEncoder(StandardCharsets.UTF_8))
+                                .addLast(new CommandHandler());
+                    }
+                });
+        serverChannel = bootstrap.bind(port).sync().channel();
+        return this;
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    /**
+     * Start generating calls at the given rate; replaces any previous rate.
+     */
+    public void generateCalls(double callsPerSecond) {
+        stopGenerating();
+        long periodNanos = (long) (1_000_000_000L / callsPerSecond);
+        generator = lifecycle.scheduleAtFixedRate(this::startCall, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void stopGenerating() {
+        if (generator != null) {
+            generator.cancel(false);
+            generator = null;
+        }
+    }
+
+    public void setAnswerDelayMillis(long answerDelayMillis) {
+        this.answerDelayMillis = answerDelayMillis;
+    }
+
+    public void setHoldMillis(long holdMillis) {
+        this.holdMillis = holdMillis;
+    }
+
+    public void setActionTimeoutMillis(long actionTimeoutMillis) {
+        this.actionTimeoutMillis = actionTimeoutMillis;
+    }
+
+    /**
+     * Draw A-parties from a fixed pool of this many numbers, so callers repeat; 0 makes every caller new.
+     */
+    public void setCallerPoolSize(int callerPoolSize) {
+        this.callerPoolSize = callerPoolSize;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * Close every event-subscribed connection, as if the backend's event socket dropped.
+     * Unsubscribed connections (command pipeline, standby) stay up.
+     */
+    public void dropSubscribers() {
+        subscribers.close().awaitUninterruptibly();
+    }
+
+    /**
+     * End up to {@code count} calls without sending their hangup events, as calls that end
+     * while the backend is not receiving events.
+     *
+     * @return the uuids of the channels that went away
+     */
+    public Set<String> endCallsUnannounced(int count) {
+        Set<String> ended = new HashSet<>();
+        int calls = 0;
+        for (FakeCall call : callsByUuid.values()) {
+            if (calls >= count) break;
+            if (!call.aLeg || callsByUuid.get(call.uuid) != call) continue;
+            calls++;
+            for (FakeCall leg : new FakeCall[]{call, call.peer}) {
+                if (leg != null && callsByUuid.remove(leg.uuid) != null) {
+                    if (leg.timeout != null) leg.timeout.cancel(false);
+                    ended.add(leg.uuid);
+                }
+            }
+        }
+        return ended;
+    }
+
+    public Set<String> getLiveUuids() {
+        return Set.copyOf(callsByUuid.keySet());
+    }
+
+    public LatencyRecorder getParkToAction() {
+        return parkToAction;
+    }
+
+    /**
+     * PARK → uuid_transfer only; calls the backend rejected with uuid_kill are left out.
+     */
+    public LatencyRecorder getParkToTransfer() {
+        return parkToTransfer;
+    }
+
+    public LatencyRecorder getBridgeToVoice() {
+        return bridgeToVoice;
+    }
+
+    public int getLiveCalls() {
+        return (int) callsByUuid.values().stream().filter(c -> c.aLeg).count();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("callsStarted", callsStarted.get());
+        stats.put("callsTransferred", callsTransferred.get());
+        stats.put("callsKilled", callsKilled.get());
+        stats.put("callsTimedOut", callsTimedOut.get());
+        stats.put("liveCalls", getLiveCalls());
+        stats.put("commandsReceived", commandsReceived.get());
+        stats.put("eventsSent", eventsSent.get());
+        stats.put("parkToAction", parkToAction.snapshot());
+        stats.put("parkToTransfer", parkToTransfer.snapshot());
+        stats.put("bridgeToVoice", bridgeToVoice.snapshot());
+        return stats;
+    }
+
+    public void resetStats() {
+        parkToAction.reset();
+        parkToTransfer.reset();
+        bridgeToVoice.reset();
+        callsStarted.set(0);
+        callsTransferred.set(0);
+        callsKilled.set(0);
+        callsTimedOut.set(0);
+        commandsReceived.set(0);
+        eventsSent.set(0);
+    }
+
+    @Override
+    public void close() {
+        stopGenerating();
+        lifecycle.shutdownNow();
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        subscribers.close();
+        workerGroup.shutdownGracefully();
+        bossGroup.shutdownGracefully();
+    }
+
+    // ------------------- Synthetic call lifecycle -------------------
+
+    private void startCall() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long n = callsStarted.incrementAndGet();
+        int pool = callerPoolSize;
+        String aParty = "88017" + String.format("%08d", random.nextInt(pool > 0 ? pool : 100_000_000));
+        String bParty = "88018" + String.format("%08d", random.nextInt(100_000_000));
+        String code = VOICE_CODES[random.nextInt(VOICE_CODES.length)];
+        // aParty_bParty_email, with the voice code appended as the final segment
+        String userName = aParty + "_" + bParty + "_loadtest" + n + "@example.com_" + code;
+
+        FakeCall call = new FakeCall(UUID.randomUUID().toString(), true, userName, bParty, aParty);
+        callsByUuid.put(call.uuid, call);
+
+        sendEvent("CHANNEL_CREATE", call.headers());
+        call.parkedAt = System.nanoTime();
+        sendEvent("CHANNEL_PARK", call.headers());
+
+        call.timeout = lifecycle.schedule(() -> {
+            if (callsByUuid.containsKey(call.uuid) && !call.transferred) {
+                callsTimedOut.incrementAndGet();
+                hangup(call, "RECOVERY_ON_TIMER_EXPIRE");
+            }
+        }, actionTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void onTransferred(FakeCall call) {
+        call.transferred = true;
+        if (call.timeout != null) {
+            call.timeout.cancel(false);
+        }
+        sendEvent("CHANNEL_UNPARK", call.headers());
+
+        lifecycle.schedule(() -> {
+            if (!callsByUuid.containsKey(call.uuid)) return;
+            FakeCall bLeg = new FakeCall(UUID.randomUUID().toString(), false, call.userName, call.destination, call.callerNumber);
+            call.peer = bLeg;
+            bLeg.peer = call;
+            callsByUuid.put(bLeg.uuid, bLeg);
+            sendEvent("CHANNEL_CREATE", bLeg.headers());
+
+            long answeredMicros = System.currentTimeMillis() * 1000;
+            call.answeredEpochMicros = answeredMicros;
+            bLeg.answeredEpochMicros = answeredMicros;
+            sendEvent("CHANNEL_ANSWER", call.headers());
+            sendEvent("CHANNEL_ANSWER", bLeg.headers());
+
+            Map<String, String> bridge = call.headers();
+            bridge.put("Bridge-A-Unique-ID", call.uuid);
+            bridge.put("Bridge-B-Unique-ID", bLeg.uuid);
+            bLeg.bridgedAt = System.nanoTime();
+            sendEvent("CHANNEL_BRIDGE", bridge);
+
+            lifecycle.schedule(() -> hangup(call, "NORMAL_CLEARING"), holdMillis, TimeUnit.MILLISECONDS);
+        }, answerDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void hangup(FakeCall call, String cause) {
+        for (FakeCall leg : new FakeCall[]{call, call.peer}) {
+            if (leg == null || callsByUuid.remove(leg.uuid) == null) continue;
+            Map<String, String> headers = leg.headers();
+            headers.put("Hangup-Cause", cause);
+            sendEvent("CHANNEL_HANGUP", headers);
+            sendEvent("CHANNEL_HANGUP_COMPLETE", headers);
+            sendEvent("CHANNEL_DESTROY", leg.headers());
+        }
+    }
+
+    private void sendEvent(String eventName, Map<String, String> headers) {
+        if (subscribers.isEmpty()) return;
+
+        StringBuilder body = new StringBuilder();
+        body.append("Event-Name: ").append(eventName).append('\n');
+        body.append("Event-Date-Timestamp: ").append(System.currentTimeMillis() * 1000).append('\n');
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            body.append(header.getKey()).append(": ")
+                    .append(URLEncoder.encode(header.getValue(), StandardCharsets.UTF_8)).append('\n');
+        }
+        body.append('\n');
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        eventsSent.incrementAndGet();
+        subscribers.writeAndFlush("Content-Length: " + bytes.length + "\nContent-Type: text/event-plain\n\n" + body);
+    }
+
+    // ------------------- API commands -------------------
+
+    private String executeApi(String commandLine) {
+        commandsReceived.incrementAndGet();
+        String[] args = commandLine.trim().split("\\s+");
+
+        switch (args[0]) {
+            case "status" -> {
+                return "UP 0 years, 0 days, 0 hours, 1 minute, 0 seconds\n"
+                        + callsByUuid.size() + " session(s) - peak 0, last 5min 0\n";
+            }
+            case "show" -> {
+                if (args.length > 1 && args[1].equals("calls")) return showCalls();
+                if (args.length > 1 && args[1].equals("channels")) return showChannels();
+                return "-ERR Unknown show command\n";
+            }
+            case "uuid_exists" -> {
+                return args.length > 1 && callsByUuid.containsKey(args[1]) ? "true\n" : "false\n";
+            }
+            case "uuid_dump" -> {
+                FakeCall call = args.length > 1 ? callsByUuid.get(args[1]) : null;
+                return call == null ? "-ERR No such channel!\n" : call.dump();
+            }
+            case "uuid_kill" -> {
+                FakeCall call = args.length > 1 ? callsByUuid.get(args[1]) : null;
+                if (call == null) return "-ERR No such channel!\n";
+                if (call.parkedAt > 0 && !call.transferred) {
+                    parkToAction.recordSince(call.parkedAt);
+                    call.transferred = true;
+                    if (call.timeout != null) call.timeout.cancel(false);
+                }
+                callsKilled.incrementAndGet();
+                lifecycle.execute(() -> hangup(call, args.length > 2 ? args[2] : "NORMAL_CLEARING"));
+                return "+OK\n";
+            }
+            case "uuid_transfer" -> {
+                FakeCall call = args.length > 2 ? callsByUuid.get(args[1]) : null;
+                if (call == null) return "-ERR No such channel!\n";
+                if (!call.transferred) {
+                    parkToAction.recordSince(call.parkedAt);
+                    parkToTransfer.recordSince(call.parkedAt);
+                    callsTransferred.incrementAndGet();
+                    call.context = args.length > 4 ? args[4] : "default";
+                    lifecycle.execute(() -> onTransferred(call));
+                }
+                return "+OK\n";
+            }
+            case "voicechanger" -> {
+                return voiceChanger(args);
+            }
+            default -> {
+                return "-ERR " + args[0] + " Command not found!\n";
+            }
+        }
+    }
+
+    private String voiceChanger(String[] args) {
+        if (args.length < 3) return "-ERR Usage: voicechanger <start|stop|set|status> <uuid> [shift formant base]\n";
+        FakeCall call = callsByUuid.get(args[2]);
+        if (call == null) return "-ERR No such channel!\n";
+
+        switch (args[1]) {
+            case "start" -> {
+                if (call.bridgedAt > 0 && !call.voiceChangerRunning) {
+                    bridgeToVoice.recordSince(call.bridgedAt);
+                }
+                call.voiceChangerRunning = true;
+                return "+OK Started\n";
+            }
+            case "stop" -> {
+                call.voiceChangerRunning = false;
+                return "+OK Stopped\n";
+            }
+            case "set" -> {
+                return call.voiceChangerRunning ? "+OK Settings updated\n" : "-ERR Not running\n";
+            }
+            case "status" -> {
+                return call.voiceChangerRunning ? "+OK Running\n" : "+OK Stopped\n";
+            }
+            default -> {
+                return "-ERR Unknown voicechanger command\n";
+            }
+        }
+    }
+
+    private String showCalls() {
+        StringBuilder out = new StringBuilder("uuid,direction,created,created_epoch,name,state,cid_name,cid_num,"
+                + "ip_addr,dest,presence_id,presence_data,accountcode,callstate,callee_name,callee_num,"
+                + "callee_direction,call_uuid,hostname,sent_callee_name,sent_callee_num,b_uuid,b_direction,"
+                + "b_created,b_created_epoch,b_name,b_state,b_cid_name,b_cid_num,b_ip_addr,b_dest,"
+                + "b_presence_id,b_presence_data,b_accountcode,b_callstate,b_callee_name,b_callee_num,"
+                + "b_callee_direction,b_sent_callee_name,b_sent_callee_num,call_created_epoch\n");
+        int count = 0;
+        for (FakeCall call : callsByUuid.values()) {
+            if (!call.aLeg || call.peer == null) continue;
+            FakeCall b = call.peer;
+            long epoch = call.createdMillis / 1000;
+            out.append(String.join(",", call.uuid, "inbound", "", String.valueOf(epoch), "sofia/internal/" + call.callerNumber,
+                    "CS_EXECUTE", call.userName, call.callerNumber, "127.0.0.1", call.destination, "", "", "",
+                    "ACTIVE", "", "", "", "", "fake-fs", "", "",
+                    b.uuid, "outbound", "", String.valueOf(epoch), "sofia/external/" + call.destination,
+                    "CS_EXCHANGE_MEDIA", call.userName, call.callerNumber, "127.0.0.1", call.destination,
+                    "", "", "", "ACTIVE", "", "", "", "", "", String.valueOf(epoch))).append('\n');
+            count++;
+        }
+        return out.append('\n').append(count).append(" total.\n").toString();
+    }
+
+    private String showChannels() {
+        StringBuilder out = new StringBuilder("uuid,direction,created,created_epoch,name,state,cid_name,cid_num,"
+                + "ip_addr,dest,application,application_data,dialplan,context,read_codec,read_rate,read_bit_rate,"
+                + "write_codec,write_rate,write_bit_rate,secure,hostname,presence_id,presence_data,accountcode,"
+                + "callstate,callee_name,callee_num,callee_direction,call_uuid,sent_callee_name,sent_callee_num,"
+                + "initial_cid_name,initial_cid_num,initial_ip_addr,initial_dest,initial_dialplan,initial_context\n");
+        int count = 0;
+        for (FakeCall call : callsByUuid.values()) {
+            out.append(String.join(",", call.uuid, call.aLeg ? "inbound" : "outbound", "",
+                    String.valueOf(call.createdMillis / 1000), "sofia/internal/" + call.callerNumber, "CS_EXECUTE",
+                    call.userName, call.callerNumber, "127.0.0.1", call.destination, "", "", "XML", call.context,
+                    "PCMU", "8000", "64000", "PCMU", "8000", "64000", "", "fake-fs", "", "", "",
+                    "ACTIVE", "", "", "", call.uuid, "", "",
+                    call.userName, call.callerNumber, "127.0.0.1", call.destination, "XML", call.context)).append('\n');
+            count++;
+        }
+        return out.append('\n').append(count).append(" total.\n").toString();
+    }
+
+    private class CommandHandler extends SimpleChannelInboundHandler<EslFrame> {
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            ctx.writeAndFlush("Content-Type: auth/request\n\n");
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, EslFrame frame) {
+            String line = frame.firstLine().trim();
+            Channel ch = ctx.channel();
+
+            if (line.startsWith("auth ")) {
+                boolean ok = line.substring(5).trim().equals(password);
+                ch.attr(AUTHENTICATED).set(ok);
+                reply(ctx, ok ? "+OK accepted" : "-ERR invalid");
+                if (!ok) ctx.close();
+                return;
+            }
+            if (!Boolean.TRUE.equals(ch.attr(AUTHENTICATED).get())) {
+                reply(ctx, "-ERR command not found");
+                return;
+            }
+
+            if (line.startsWith("event ")) {
+                ch.attr(SUBSCRIBED).set(true);
+                subscribers.add(ch);
+                reply(ctx, "+OK event listener enabled plain");
+            } else if (line.startsWith("noevents")) {
+                subscribers.remove(ch);
+                reply(ctx, "+OK no longer listening for events");
+            } else if (line.startsWith("api ")) {
+                String body = executeApi(line.substring(4));
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                ctx.writeAndFlush("Content-Type: api/response\nContent-Length: " + bytes.length + "\n\n" + body);
+            } else if (line.startsWith("bgapi ")) {
+                String jobUuid = UUID.randomUUID().toString();
+                ctx.writeAndFlush("Content-Type: command/reply\nReply-Text: +OK Job-UUID: " + jobUuid
+                        + "\nJob-UUID: " + jobUuid + "\n\n");
+                String command = line.substring(6);
+                lifecycle.execute(() -> {
+                    String result = executeApi(command);
+                    byte[] bytes = result.getBytes(StandardCharsets.UTF_8);
+                    String event = "Event-Name: BACKGROUND_JOB\nJob-UUID: " + jobUuid
+                            + "\nContent-Length: " + bytes.length + "\n\n" + result;
+                    byte[] eventBytes = event.getBytes(StandardCharsets.UTF_8);
+                    ctx.writeAndFlush("Content-Length: " + eventBytes.length
+                            + "\nContent-Type: text/event-plain\n\n" + event);
+                });
+            } else if (line.equals("exit")) {
+                reply(ctx, "+OK bye");
+                ctx.writeAndFlush("Content-Type: text/disconnect-notice\nContent-Length: 0\n\n");
+                ctx.close();
+            } else {
+                reply(ctx, "+OK");
+            }
+        }
+
+        private void reply(ChannelHandlerContext ctx, String replyText) {
+            ctx.writeAndFlush("Content-Type: command/reply\nReply-Text: " + replyText + "\n\n");
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+
+    private static final class FakeCall {
+        final String uuid;
+        final boolean aLeg;
+        final String userName;
+        final String destination;
+        final String callerNumber;
+        final long createdMillis = System.currentTimeMillis();
+        volatile String context = "public";
+        volatile FakeCall peer;
+        volatile long parkedAt;
+        volatile long bridgedAt;
+        volatile long answeredEpochMicros;
+        volatile boolean transferred;
+        volatile boolean voiceChangerRunning;
+        volatile ScheduledFuture<?> timeout;
+
+        FakeCall(String uuid, boolean aLeg, String userName, String destination, String callerNumber) {
+            this.uuid = uuid;
+            this.aLeg = aLeg;
+            this.userName = userName;
+            this.destination = destination;
+            this.callerNumber = callerNumber;
+        }
+
+        Map<String, String> headers() {
+            Map<String, String> headers = new LinkedHashMap<>();
+            headers.put("Unique-ID", uuid);
+            headers.put("Call-Direction", aLeg ? "inbound" : "outbound");
+            headers.put("Caller-ANI", callerNumber);
+            headers.put("Caller-Caller-ID-Number", callerNumber);
+            headers.put("Caller-Destination-Number", destination);
+            headers.put("variable_user_name", userName);
+            if (peer != null) {
+                headers.put("Other-Leg-Unique-ID", peer.uuid);
+            }
+            return headers;
+        }
+
+        String dump() {
+            StringBuilder out = new StringBuilder();
+            for (Map.Entry<String, String> header : headers().entrySet()) {
+                out.append(header.getKey()).append(": ").append(header.getValue()).append('\n');
+            }
+            out.append("Caller-Channel-Created-Time: ").append(createdMillis * 1000).append('\n');
+            out.append("Caller-Channel-Answered-Time: ").append(answeredEpochMicros).append('\n');
+            out.append("variable_direction: ").append(aLeg ? "inbound" : "outbound").append('\n');
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the talk-time billing API ({@code /getTalkTime} and
+ * {@code /deductTalkTime}), for load testing the call setup path.
+ * <p>
+ * Every request is held for {@code latency ± jitter} before it is answered, and a configurable
+ * share of requests fails: {@code errorRate} with HTTP 500, {@code stallRate} by not answering
+ * for {@link #STALL_MILLIS} (past the client's response timeout), and for {@code getTalkTime}
+ * {@code rejectRate} with a zero talk-time answer. Requests are served on virtual threads, so
+ * the stand-in itself never becomes the bottleneck. Like the real API, a {@code getTalkTime}
+ * repeated with the same {@code Idempotency-Key} gets the session it was first given.
+ */
+public class FakeTalkTimeServer implements AutoCloseable {
+
+    static final long STALL_MILLIS = 30_000;
+
+    private final HttpServer server;
+
+    private volatile long latencyMillis = 30;
+    private volatile long jitterMillis = 10;
+    private volatile double errorRate;
+    private volatile double stallRate;
+    private volatile double rejectRate;
+    private volatile int talkTimeSeconds = 3_600;
+
+    private final Map<String, String> sessionsByKey = new ConcurrentHashMap<>();
+
+    private final LatencyRecorder served = new LatencyRecorder();
+    private final AtomicLong reserveRequests = new AtomicLong();
+    private final AtomicLong deductRequests = new AtomicLong();
+    private final AtomicLong errorsInjected = new AtomicLong();
+    private final AtomicLong stallsInjected = new AtomicLong();
+    private final AtomicLong rejectsInjected = new AtomicLong();
+
+    public FakeTalkTimeServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/talktime/getTalkTime", exchange -> handle(exchange, true));
+        server.createContext("/talktime/deductTalkTime", exchange -> handle(exchange, false));
+    }
+
+    public FakeTalkTimeServer start() {
+        server.start();
+        return this;
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/talktime";
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setJitterMillis(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setStallRate(double stallRate) {
+        this.stallRate = stallRate;
+    }
+
+    public void setRejectRate(double rejectRate) {
+        this.rejectRate = rejectRate;
+    }
+
+    public void setTalkTimeSeconds(int talkTimeSeconds) {
+        this.talkTimeSeconds = talkTimeSeconds;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("reserveRequests", reserveRequests.get());
+        stats.put("deductRequests", deductRequests.get());
+        stats.put("errorsInjected", errorsInjected.get());
+        stats.put("stallsInjected", stallsInjected.get());
+        stats.put("rejectsInjected", rejectsInjected.get());
+        stats.put("served", served.snapshot());
+        return stats;
+    }
+
+    public void resetStats() {
+        served.reset();
+        reserveRequests.set(0);
+        deductRequests.set(0);
+        errorsInjected.set(0);
+        stallsInjected.set(0);
+        rejectsInjected.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange, boolean reserve) throws IOException {
+        long start = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        (reserve ? reserveRequests : deductRequests).incrementAndGet();
+        try (exchange) {
+            double roll = random.nextDouble();
+            if (roll < stallRate) {
+                stallsInjected.incrementAndGet();
+                sleep(STALL_MILLIS);
+                return;
+            }
+
+            long jitter = jitterMillis > 0 ? random.nextLong(-jitterMillis, jitterMillis + 1) : 0;
+            sleep(Math.max(0, latencyMillis + jitter));
+
+            if (roll < stallRate + errorRate) {
+                errorsInjected.incrementAndGet();
+                respond(exchange, 500, "{\"status\":\"error\",\"message\":\"injected failure\"}");
+            } else if (!reserve) {
+                respond(exchange, 200, "{\"status\":\"success\"}");
+            } else if (roll < stallRate + errorRate + rejectRate) {
+                rejectsInjected.incrementAndGet();
+                respond(exchange, 200, "{\"statusCode\":1002,\"talkTime\":0}");
+            } else {
+                respond(exchange, 200, "{\"statusCode\":1001,\"talkTime\":" + talkTimeSeconds
+                        + ",\"sessionId\":\"" + sessionId(exchange) + "\"}");
+            }
+        } finally {
+            served.recordSince(start);
+        }
+    }
+
+    private String sessionId(HttpExchange exchange) {
+        String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        return key == null ? UUID.randomUUID().toString()
+                : sessionsByKey.computeIfAbsent(key, k -> UUID.randomUUID().toString());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
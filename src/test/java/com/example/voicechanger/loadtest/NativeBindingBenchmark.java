@@ -0,0 +1,105 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.nativelib.FfmVoiceProcessor;
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the JNI and FFM bindings per call. {@code *Settings} is a native call
+ * that does almost nothing, so it is the crossing itself; {@code *Process*} runs a frame
+ * through the engine from a direct buffer, a heap buffer (JNI copies through a
+ * {@code short[]}) and an arena segment. At 160 samples the engine dominates; the small
+ * frame shows the binding.
+ * <pre>
+ * java --enable-preview -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      org.openjdk.jmh.Main NativeBindingBenchmark
+ * </pre>
+ * Needs the native library built with the C entry points (run from the project root).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+@State(Scope.Thread)
+public class NativeBindingBenchmark {
+
+    @Param({"16", "160"})
+    int samples;
+
+    private NativeVoiceProcessor jni;
+    private Arena arena;
+    private FfmVoiceProcessor ffm;
+    private ByteBuffer direct;
+    private ByteBuffer heap;
+    private MemorySegment segment;
+
+    @Setup
+    public void setUp() {
+        ControlPlaneLoadHarness.quietLogging();
+        short[] speech = TestAudioThroughputBenchmark.speechLike(8000, 1);
+
+        jni = new NativeVoiceProcessor();
+        jni.configure(8000, 960);
+        jni.updateSettings(10f, 2f, 100f);
+        direct = ByteBuffer.allocateDirect(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        heap = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        direct.asShortBuffer().put(speech, 0, samples);
+        heap.asShortBuffer().put(speech, 0, samples);
+
+        arena = Arena.ofConfined();
+        ffm = new FfmVoiceProcessor(arena);
+        ffm.configure(8000, 960);
+        ffm.setSettings(10f, 2f, 100f);
+        segment = arena.allocate(samples * 2L, 2);
+        segment.copyFrom(MemorySegment.ofBuffer(direct));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jni.dispose();
+        arena.close(); // destroys the FFM processor
+    }
+
+    @Benchmark
+    public boolean jniSettings() {
+        return jni.updateSettings(10f, 2f, 100f);
+    }
+
+    @Benchmark
+    public boolean ffmSettings() {
+        return ffm.setSettings(10f, 2f, 100f);
+    }
+
+    @Benchmark
+    public void jniProcessDirect() {
+        jni.processStreamInPlace(direct, samples);
+    }
+
+    @Benchmark
+    public void jniProcessHeap() {
+        jni.processStreamInPlace(heap, samples);
+    }
+
+    @Benchmark
+    public boolean ffmProcessSegment() {
+        return ffm.process(segment, samples);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.metrics.LatencyRecorder;
+import com.example.voicechanger.service.esl.TalkTimeService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * End-to-end benchmark of call setup: CHANNEL_PARK → {@code getTalkTime} over HTTP →
+ * {@code uuid_transfer}, with the real {@link TalkTimeService} talking to a
+ * {@link FakeTalkTimeServer} and the control plane to a {@link FakeFreeSwitchServer}.
+ * Steps through increasing calls per second and reports the park-to-transfer distribution per
+ * step and the saturation point, the first rate at which the p99 budget is broken or parked
+ * calls go unanswered.
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.ParkToTransferBenchmark 10,50,100,200 15 250 30 0.01 0.001 500
+ * </pre>
+ * Arguments: comma-separated CPS steps, seconds per step, p99 budget in milliseconds, billing
+ * latency in milliseconds (±1/3 jitter), billing error rate and billing stall rate (0-1), and
+ * the number of distinct callers (0 for a new caller every call). Add
+ * {@code -Dtalktime.cache.enabled=true} to measure with the balance cache.
+ * Injected errors and stalls turn into rejected (killed) calls and are not held against the
+ * budget; transfer latency only counts calls that were let through.
+ */
+public class ParkToTransferBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        double[] steps = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToDouble(Double::parseDouble).toArray()
+                : new double[]{10, 25, 50, 100, 200, 400, 800};
+        int stepSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double p99BudgetMs = args.length > 2 ? Double.parseDouble(args[2]) : 250;
+        long billingLatencyMs = args.length > 3 ? Long.parseLong(args[3]) : 30;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        double stallRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        int callers = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+        ControlPlaneLoadHarness.quietLogging();
+        // TalkTimeService and CallTransferService report every call on stdout; keep it for the table only
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try (FakeTalkTimeServer billing = new FakeTalkTimeServer().start();
+             FakeFreeSwitchServer server = new FakeFreeSwitchServer("ClueCon").start(0)) {
+
+            billing.setLatencyMillis(billingLatencyMs);
+            billing.setJitterMillis(billingLatencyMs / 3);
+            billing.setErrorRate(errorRate);
+            billing.setStallRate(stallRate);
+
+            try (AnnotationConfigApplicationContext context = ControlPlaneLoadHarness.controlPlane(server.getPort(),
+                    TalkTimeService.class, Map.of("talktime.api.base-url", billing.getBaseUrl()))) {
+
+                // Parked calls must outlive a stalled billing request, so those count as rejected, not lost
+                server.setActionTimeoutMillis(10_000);
+                server.setHoldMillis(1_000);
+                server.setCallerPoolSize(callers);
+                ControlPlaneLoadHarness.waitForSubscription(server);
+                TalkTimeService talkTimeService = context.getBean(TalkTimeService.class);
+
+                // Warm up connections and JIT so the first step is not charged for them
+                server.generateCalls(Math.min(steps[0], 20));
+                Thread.sleep(5_000);
+                server.stopGenerating();
+                Thread.sleep(2_500);
+
+                out.printf("Billing stand-in: %dms ±%dms, errors %.1f%%, stalls %.1f%%%n%n",
+                        billingLatencyMs, billingLatencyMs / 3, errorRate * 100, stallRate * 100);
+                out.printf("%8s %9s %9s %9s %9s %10s %10s %10s %10s %12s %6s%n", "CPS", "started",
+                        "transfer", "killed", "timedOut", "xfer p50", "xfer p99", "xfer max", "billErrors", "deductUnsent", "ok");
+
+                double maxSustainable = 0;
+                long billingErrorsBefore = 0;
+                String saturation = null;
+                for (double cps : steps) {
+                    server.resetStats();
+                    billing.resetStats();
+                    server.generateCalls(cps);
+                    Thread.sleep(stepSeconds * 1000L);
+                    server.stopGenerating();
+                    Thread.sleep(stallRate > 0 ? 4_000 : 2_000); // let in-flight parks resolve
+
+                    Map<String, Object> stats = server.getStats();
+                    LatencyRecorder transfer = server.getParkToTransfer();
+                    long started = (long) stats.get("callsStarted");
+                    long transferred = (long) stats.get("callsTransferred");
+                    long killed = (long) stats.get("callsKilled");
+                    long timedOut = (long) stats.get("callsTimedOut");
+                    double p99 = transfer.percentileMicros(99) / 1000.0;
+                    Map<?, ?> billingStats = talkTimeService.getStats();
+                    long billingErrors = (long) ((Map<?, ?>) billingStats.get("getTalkTime")).get("errors");
+                    Object unsent = ((Map<?, ?>) billingStats.get("deductTalkTime")).get("unsent");
+
+                    String failure = timedOut > 0 ? timedOut + " parked call(s) never actioned"
+                            : transferred + killed < started ? (started - transferred - killed) + " call(s) still parked"
+                            : p99 > p99BudgetMs ? String.format("park-to-transfer p99 %.1fms over budget", p99)
+                            : null;
+
+                    out.printf("%8.0f %9d %9d %9d %9d %8.2fms %8.2fms %8.2fms %10d %12s %6s%n",
+                            cps, started, transferred, killed, timedOut, transfer.percentileMicros(50) / 1000.0, p99,
+                            transfer.getMaxMicros() / 1000.0, billingErrors - billingErrorsBefore, unsent, failure == null ? "yes" : "NO");
+
+                    billingErrorsBefore = billingErrors;
+                    if (failure != null) {
+                        saturation = String.format("%.0f CPS (%s)", cps, failure);
+                        break;
+                    }
+                    maxSustainable = cps;
+                    Thread.sleep(1_500); // drain hangups and deductions before the next step
+                }
+
+                out.printf("%nMax sustainable CPS within park-to-transfer p99 <= %.0fms: %.0f%n",
+                        p99BudgetMs, maxSustainable);
+                out.println("Saturation point: " + (saturation != null ? saturation : "not reached"));
+                out.println("Billing stand-in: " + billing.getStats());
+                out.println("Balance cache: " + talkTimeService.getStats().get("balanceCache"));
+            }
+        }
+        System.exit(0); // the ESL client library leaves non-daemon threads behind
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.audio.AudioBufferPool;
+import com.example.voicechanger.dto.QualityLevel;
+import com.example.voicechanger.service.OverloadController;
+import com.example.voicechanger.service.VoiceProcessingService;
+import com.example.voicechanger.service.spool.ScratchSpool;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * CPU cost of the native voice engine per second of audio at each rate it can run at, to
+ * choose between {@code voice.processing.mode=telephony} and {@code native} and a sensible
+ * {@code voice.changer.sample.rate} ceiling. Measures engine time only (decode and encode
+ * are the same order of cost at every rate and far smaller).
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.ProcessingRateCostBenchmark 10 5
+ * </pre>
+ * Arguments: seconds of audio per clip, clips per rate. Needs the native library (run from
+ * the project root).
+ */
+public class ProcessingRateCostBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int clips = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int[] rates = {8000, 16000, 22050, 32000, 44100, 48000};
+        ControlPlaneLoadHarness.quietLogging();
+
+        AudioBufferPool pool = new AudioBufferPool(64 * 1024, 64 << 20, 256L << 20, false);
+        VoiceProcessingService service = new VoiceProcessingService(new ScratchSpool(
+                System.getProperty("java.io.tmpdir") + "/voice_morph", false, 512L << 20, 10_000, 600_000, 60_000),
+                pool, new OverloadController(false, QualityLevel.FULL, 0.5, 0.2, 250, 20, 2000, 15000, 16000),
+                "native", 48000, rates, 1, 30_000, 8, "jni", false);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        System.out.printf("%ds clips, %d per rate, engine only%n%n", seconds, clips);
+        System.out.printf("%8s %16s %18s %10s%n", "rate", "CPU ms/audio s", "streams per core", "vs 8 kHz");
+        double telephony = 0;
+        for (int rate : rates) {
+            short[] speech = TestAudioThroughputBenchmark.speechLike(rate, seconds);
+            try (AudioBufferPool.Lease pcm = pool.lease(speech.length * 2)) {
+                process(service, pcm, speech, rate); // warm-up, and the first configure at this rate
+                long cpu = threads.getCurrentThreadCpuTime();
+                for (int i = 0; i < clips; i++) {
+                    process(service, pcm, speech, rate);
+                }
+                double cpuMsPerSecond = (threads.getCurrentThreadCpuTime() - cpu) / 1e6 / clips / seconds;
+                if (telephony == 0) {
+                    telephony = cpuMsPerSecond;
+                }
+                System.out.printf("%8d %16.1f %18.0f %9.1fx%n", rate, cpuMsPerSecond, 1000 / cpuMsPerSecond,
+                        cpuMsPerSecond / telephony);
+            }
+        }
+        System.out.println();
+        System.out.println("processors: " + service.getProcessorStats());
+        System.exit(0);
+    }
+
+    private static void process(VoiceProcessingService service, AudioBufferPool.Lease pcm, short[] speech, int rate) {
+        pcm.samples().put(0, speech);
+        service.process(pcm, rate, 10.0f, 2.0f, 100.0f);
+    }
+}
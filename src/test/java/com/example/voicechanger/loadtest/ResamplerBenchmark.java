@@ -0,0 +1,82 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.audio.Resampler;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+
+/**
+ * Throughput of {@link Resampler} for the rate pairs uploads and outputs actually use, fed in
+ * 4096-sample blocks as the upload path does, next to Java Sound's converter where it
+ * accepts the pair at all.
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.ResamplerBenchmark 60
+ * </pre>
+ * Argument: seconds of audio per run.
+ */
+public class ResamplerBenchmark {
+
+    static volatile float blackhole;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        System.out.printf("%ds of audio per run, input samples per second of CPU%n%n", seconds);
+        System.out.printf("%-16s %16s %10s %22s%n", "rates", "Resampler", "x realtime", "Java Sound");
+        int[][] pairs = {{48000, 8000}, {44100, 8000}, {22050, 8000}, {16000, 8000}, {8000, 16000}, {8000, 44100}, {8000, 48000}};
+        for (int[] pair : pairs) {
+            float[] input = new float[pair[0] * seconds];
+            short[] speech = TestAudioThroughputBenchmark.speechLike(pair[0], seconds);
+            for (int i = 0; i < input.length; i++) {
+                input[i] = speech[i] / 32768f;
+            }
+            for (int warm = 0; warm < 3; warm++) {
+                resampler(input, pair[0], pair[1]);
+            }
+            long start = System.nanoTime();
+            int runs = 5;
+            for (int run = 0; run < runs; run++) {
+                resampler(input, pair[0], pair[1]);
+            }
+            double rate = (double) input.length * runs / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("%-16s %14.1fM/s %9.0fx %22s%n", pair[0] + "->" + pair[1], rate / 1e6,
+                    rate / pair[0], javaSound(speech, pair[0], pair[1]));
+        }
+    }
+
+    private static void resampler(float[] input, int from, int to) {
+        Resampler resampler = new Resampler(from, to);
+        float[] out = new float[Math.max(resampler.maxOutput(4096), resampler.maxFlush())];
+        float sink = 0;
+        for (int offset = 0; offset < input.length; offset += 4096) {
+            int n = resampler.process(input, offset, Math.min(4096, input.length - offset), out, 0);
+            sink += n > 0 ? out[n - 1] : 0;
+        }
+        resampler.flush(out, 0);
+        blackhole = sink;
+    }
+
+    private static String javaSound(short[] speech, int from, int to) {
+        byte[] pcm = new byte[speech.length * 2];
+        for (int i = 0; i < speech.length; i++) {
+            pcm[2 * i] = (byte) speech[i];
+            pcm[2 * i + 1] = (byte) (speech[i] >> 8);
+        }
+        AudioFormat source = new AudioFormat(from, 16, 1, true, false);
+        AudioFormat target = new AudioFormat(to, 16, 1, true, false);
+        if (!AudioSystem.isConversionSupported(target, source)) {
+            return "not supported";
+        }
+        try {
+            long start = System.nanoTime();
+            AudioInputStream converted = AudioSystem.getAudioInputStream(target,
+                    new AudioInputStream(new ByteArrayInputStream(pcm), source, speech.length));
+            converted.readAllBytes();
+            return String.format("%.1fM/s", speech.length / ((System.nanoTime() - start) / 1e9) / 1e6);
+        } catch (Exception e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.audio.G711;
+import com.example.voicechanger.metrics.LatencyRecorder;
+import com.example.voicechanger.service.rtp.RtpPacket;
+import com.example.voicechanger.service.rtp.RtpRelayService;
+import com.example.voicechanger.service.rtp.RtpStreamStats;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the RTP relay without Spring against synthetic calls on loopback: each stream has a
+ * sender pacing 20 ms PCMU packets at its relay port and a receiver standing in for the far
+ * end. Reports per stream the end-to-end latency (send to receive, so including the voice
+ * processing), the relay's own time per packet, loss, and RFC 3550 jitter as seen by the
+ * sender's pacing and by the receiver, the difference being what the relay adds.
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.RtpRelayHarness 20 10 5
+ * </pre>
+ * Arguments: streams, seconds, batch tick in ms (0, the default, processes each packet as
+ * it arrives). Needs the native library (run from the project root).
+ */
+public class RtpRelayHarness {
+
+    private static final int FRAME = 160;
+    /** Latency leaves out the first second: JIT and the engines' first calls. */
+    private static final int WARM_UP_PACKETS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int batchTickMillis = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int packets = seconds * 50;
+        ControlPlaneLoadHarness.quietLogging();
+
+        RtpRelayService relay = new RtpRelayService(true, "127.0.0.1", 41000, 41999, 0, streams, 30_000,
+                batchTickMillis > 0, batchTickMillis, 0);
+        relay.start();
+        EventLoopGroup receivers = new NioEventLoopGroup(2);
+
+        byte[] speech = new byte[packets * FRAME];
+        G711.ulawEncode(ShortBuffer.wrap(TestAudioThroughputBenchmark.speechLike(8000, seconds)), speech, 0);
+
+        List<Stream> calls = new ArrayList<>();
+        for (int i = 0; i < streams; i++) {
+            Stream stream = new Stream(i, packets);
+            stream.receiver = new Bootstrap().group(receivers).channel(NioDatagramChannel.class)
+                    .handler(stream).bind("127.0.0.1", 0).sync().channel();
+            int port = relay.open("harness-" + i, (InetSocketAddress) stream.receiver.localAddress(), 10f, 2f, 100f);
+            stream.sender = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+            stream.sender.connect(new InetSocketAddress("127.0.0.1", port));
+            calls.add(stream);
+        }
+
+        // One pacing thread for all streams, like a media server's 20 ms timer
+        ScheduledExecutorService pacer = Executors.newSingleThreadScheduledExecutor();
+        int[] tick = {0};
+        pacer.scheduleAtFixedRate(() -> {
+            int seq = tick[0]++;
+            if (seq >= packets) {
+                return;
+            }
+            for (Stream stream : calls) {
+                stream.send(seq, speech);
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(seconds * 1000L + 500);
+        pacer.shutdownNow();
+
+        System.out.printf("%d streams x %ds of 20 ms PCMU through the relay, %s%n%n", streams, seconds,
+                batchTickMillis > 0 ? "batched every " + batchTickMillis + " ms" : "per packet");
+        System.out.printf("%6s %8s %6s %10s %10s %10s %12s %12s %14s%n", "stream", "recv", "lost",
+                "e2e p50", "e2e p99", "e2e max", "relay p99", "send jitter", "recv jitter");
+        LatencyRecorder all = new LatencyRecorder();
+        double worstJitter = 0;
+        List<Map<String, Object>> sessions = relay.getSessionStats();
+        for (Stream stream : calls) {
+            Map<String, Object> session = sessions.stream()
+                    .filter(s -> ("harness-" + stream.id).equals(s.get("callId"))).findFirst().orElseThrow();
+            @SuppressWarnings("unchecked")
+            Map<String, Object> processed = (Map<String, Object>) session.get("processed");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> relayTime = (Map<String, Object>) processed.get("relay");
+            System.out.printf("%6d %8d %6d %8.2fms %8.2fms %8.2fms %10.3fms %10.2fms %12.2fms%n", stream.id,
+                    stream.received.getPackets(), stream.received.getLost(),
+                    stream.endToEnd.percentileMicros(50) / 1000.0, stream.endToEnd.percentileMicros(99) / 1000.0,
+                    stream.endToEnd.getMaxMicros() / 1000.0, (Double) relayTime.get("p99Ms"),
+                    (Double) processed.get("jitterMs"), stream.received.getJitterMillis());
+            worstJitter = Math.max(worstJitter, stream.received.getMaxJitterMillis());
+            for (int i = WARM_UP_PACKETS; i < packets; i++) {
+                long sent = stream.sentAt[i];
+                long got = stream.receivedAt[i];
+                if (sent != 0 && got != 0) {
+                    all.recordNanos(got - sent);
+                }
+            }
+        }
+        System.out.printf("%nall streams: e2e %s, worst receive jitter %.2f ms%n", all.snapshot(), worstJitter);
+        System.out.println("relay: " + relay.getStats());
+
+        calls.forEach(Stream::close);
+        relay.shutdown();
+        receivers.shutdownGracefully();
+        System.exit(0);
+    }
+
+    private static class Stream extends SimpleChannelInboundHandler<DatagramPacket> {
+        final int id;
+        final long[] sentAt;
+        final long[] receivedAt;
+        final RtpStreamStats received = new RtpStreamStats(8000);
+        final LatencyRecorder endToEnd = new LatencyRecorder();
+        final ByteBuffer packet = ByteBuffer.allocate(RtpPacket.HEADER_LENGTH + FRAME);
+        Channel receiver;
+        DatagramChannel sender;
+
+        Stream(int id, int packets) {
+            this.id = id;
+            this.sentAt = new long[packets];
+            this.receivedAt = new long[packets];
+        }
+
+        void send(int seq, byte[] speech) {
+            packet.clear();
+            packet.put((byte) 0x80).put((byte) RtpPacket.PT_PCMU).putShort((short) seq)
+                    .putInt(seq * FRAME).putInt(0x5000 + id)
+                    .put(speech, seq * FRAME, FRAME).flip();
+            try {
+                sentAt[seq] = System.nanoTime();
+                sender.write(packet);
+            } catch (Exception e) {
+                sentAt[seq] = 0;
+            }
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket msg) {
+            long now = System.nanoTime();
+            ByteBuf rtp = msg.content();
+            int seq = RtpPacket.sequence(rtp);
+            received.onPacket(RtpPacket.ssrc(rtp), seq, RtpPacket.timestamp(rtp), now);
+            if (seq >= WARM_UP_PACKETS && seq < receivedAt.length && sentAt[seq] != 0) {
+                receivedAt[seq] = now;
+                endToEnd.recordNanos(now - sentAt[seq]);
+            }
+        }
+
+        void close() {
+            receiver.close();
+            try {
+                sender.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+}
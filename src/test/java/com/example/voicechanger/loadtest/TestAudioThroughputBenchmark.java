@@ -0,0 +1,146 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.audio.AudioBufferPool;
+import com.example.voicechanger.dto.QualityLevel;
+import com.example.voicechanger.metrics.LatencyRecorder;
+import com.example.voicechanger.service.VoiceChangerService;
+import com.example.voicechanger.service.OverloadController;
+import com.example.voicechanger.service.VoiceProcessingService;
+import com.example.voicechanger.service.esl.CallDeadlineService;
+import com.example.voicechanger.service.esl.CallJournal;
+import com.example.voicechanger.service.spool.ScratchSpool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the {@code /voicechanger/test-upload} and {@code /test-live} rendering path:
+ * the in-process native engine ({@link VoiceChangerService#processTestAudio}) against the
+ * previous fork-per-request path (write the upload to a temp file, run {@code sox}, read the
+ * output back). Without {@code sox} on the PATH the fork path runs {@code true} instead, which
+ * is a lower bound on what the old path cost.
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.TestAudioThroughputBenchmark 4 200 5
+ * </pre>
+ * Arguments: concurrent clients, requests per path, seconds of audio per request. Needs the
+ * native library (run from the project root).
+ */
+public class TestAudioThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        ControlPlaneLoadHarness.quietLogging();
+
+        VoiceProcessingService processing = new VoiceProcessingService(new ScratchSpool(
+                System.getProperty("java.io.tmpdir") + "/voice_morph", false, 512L << 20, 10_000, 600_000, 60_000),
+                new AudioBufferPool(64 * 1024, 64 << 20, 256L << 20, false), new OverloadController(false, QualityLevel.FULL,
+                        0.5, 0.2, 250, 20, 2000, 15000, 16000),
+                "telephony", 44100, new int[]{8000}, clients, 30_000, 1, "jni", false);
+        VoiceChangerService service = new VoiceChangerService(null, null,
+                new CallDeadlineService(new CallJournal(false, null, 0), 100, 64), null, processing);
+        byte[] wav = processing.encodeWav(ShortBuffer.wrap(speechLike(processing.getSampleRate(), seconds)));
+
+        boolean sox = onPath("sox");
+        System.out.printf("%d clients, %d requests per path, %ds of %d Hz audio (%d bytes)%n%n",
+                clients, requests, seconds, processing.getSampleRate(), wav.length);
+        System.out.printf("%-28s %10s %10s %10s %10s %8s%n", "path", "req/s", "p50", "p99", "max", "errors");
+
+        run("in-process (warm-up)", clients, Math.max(clients, requests / 10), () -> service.processTestAudio(wav, "female"));
+        run("in-process native + echo", clients, requests, () -> service.processTestAudio(wav, "female"));
+        run(sox ? "fork sox" : "fork floor (true, no sox)", clients, requests, () -> forkPath(wav, sox));
+        System.exit(0);
+    }
+
+    private static void run(String name, int clients, int requests, Callable<byte[]> request) throws InterruptedException {
+        LatencyRecorder latency = new LatencyRecorder();
+        AtomicLong errors = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            futures.add(pool.submit(() -> {
+                long t = System.nanoTime();
+                try {
+                    request.call();
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+                latency.recordSince(t);
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception ignored) {
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.printf("%-28s %10.1f %8.2fms %8.2fms %8.2fms %8d%n", name, requests / elapsed,
+                latency.percentileMicros(50) / 1000.0, latency.percentileMicros(99) / 1000.0,
+                latency.getMaxMicros() / 1000.0, errors.get());
+    }
+
+    /**
+     * What every request used to cost: two temp files, one process spawn, one read back.
+     */
+    private static byte[] forkPath(byte[] wav, boolean sox) throws IOException, InterruptedException {
+        Path input = Files.createTempFile("input_", ".wav");
+        File output = new File(input + ".out.wav");
+        try {
+            Files.write(input, wav);
+            Process process = sox
+                    ? new ProcessBuilder("sox", input.toString(), output.getPath(), "pitch", "10", "echo", "0.8", "0.88", "100", "0.4").start()
+                    : new ProcessBuilder("true").start();
+            if (process.waitFor() != 0) {
+                throw new IOException("exit " + process.exitValue());
+            }
+            return sox ? Files.readAllBytes(output.toPath()) : wav;
+        } finally {
+            Files.deleteIfExists(input);
+            output.delete();
+        }
+    }
+
+    /**
+     * A pulse train through a couple of formant-ish resonances, so the pitch tracker has
+     * something voice-like to work on.
+     */
+    static short[] speechLike(int sampleRate, int seconds) {
+        short[] pcm = new short[sampleRate * seconds];
+        double pitch = 120;
+        for (int i = 0; i < pcm.length; i++) {
+            double t = (double) i / sampleRate;
+            double f0 = pitch * (1 + 0.1 * Math.sin(2 * Math.PI * 3 * t));
+            double phase = 2 * Math.PI * f0 * t;
+            double v = 0.5 * Math.sin(phase) + 0.3 * Math.sin(2 * phase + 0.4) + 0.15 * Math.sin(5 * phase + 1.1);
+            pcm[i] = (short) (v * 12_000);
+        }
+        return pcm;
+    }
+
+    private static boolean onPath(String command) {
+        try {
+            return new ProcessBuilder("which", command).start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.voicechanger.loadtest;
+
+import com.example.voicechanger.audio.AudioBufferPool;
+import com.example.voicechanger.audio.WavFile;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Upload decode cost: the previous Java Sound path (open a stream to detect the format, open
+ * a second one to read it through a ByteArrayOutputStream, then copy into a short[]) against
+ * {@link WavFile} decoding straight into a pooled buffer. Reports time and heap allocated per
+ * decode on the calling thread.
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *      com.example.voicechanger.loadtest.WavDecodeBenchmark 30 2000
+ * </pre>
+ * Arguments: seconds of audio per file, decodes per case.
+ */
+public class WavDecodeBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    static volatile long blackhole;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        AudioBufferPool pool = new AudioBufferPool(64 * 1024, 64 << 20, 256L << 20, false);
+
+        System.out.printf("%ds of 8 kHz audio, %d decodes per case%n%n", seconds, iterations);
+        System.out.printf("%-18s %-12s %12s %14s%n", "format", "path", "us/decode", "KiB alloc/op");
+        for (AudioFormat format : new AudioFormat[]{
+                new AudioFormat(8000, 16, 1, true, false),
+                new AudioFormat(8000, 16, 2, true, false),
+                new AudioFormat(AudioFormat.Encoding.ULAW, 8000, 8, 1, 1, 8000, false),
+                new AudioFormat(8000, 8, 1, false, false)}) {
+            byte[] wav = wav(format, seconds);
+            String name = format.getEncoding() + "/" + format.getSampleSizeInBits() + "/" + format.getChannels() + "ch";
+            run(name, "java sound", iterations, () -> javaSound(wav).length);
+            run(name, "WavFile", iterations, () -> {
+                WavFile parsed = WavFile.parse(wav);
+                try (AudioBufferPool.Lease pcm = pool.lease(parsed.getFrames() * 2)) {
+                    parsed.decodeMono(pcm.samples());
+                    return pcm.sampleCount();
+                }
+            });
+        }
+    }
+
+    private interface Decode {
+        int run() throws Exception;
+    }
+
+    private static void run(String format, String path, int iterations, Decode decode) throws Exception {
+        long sink = 0;
+        for (int i = 0; i < Math.max(50, iterations / 5); i++) {
+            sink += decode.run();
+        }
+        long thread = Thread.currentThread().threadId();
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += decode.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+        System.out.printf("%-18s %-12s %12.1f %14.1f%n", format, path, elapsed / 1e3 / iterations,
+                allocated / 1024.0 / iterations);
+        blackhole = sink;
+    }
+
+    /**
+     * What decodeToPcm did before: detect, reopen, convert to 16-bit mono, copy twice.
+     */
+    private static short[] javaSound(byte[] wav) throws Exception {
+        try (AudioInputStream detect = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav))) {
+            detect.getFormat();
+        }
+        AudioFormat target = new AudioFormat(8000, 16, 1, true, false);
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav));
+             AudioInputStream converted = source.getFormat().matches(target)
+                     ? source : AudioSystem.getAudioInputStream(target, source)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = converted.read(buffer)) != -1) {
+                baos.write(buffer, 0, bytesRead);
+            }
+            byte[] pcmBytes = baos.toByteArray();
+            short[] samples = new short[pcmBytes.length / 2];
+            ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+            return samples;
+        }
+    }
+
+    private static byte[] wav(AudioFormat format, int seconds) throws Exception {
+        short[] speech = TestAudioThroughputBenchmark.speechLike(8000, seconds);
+        byte[] pcm = new byte[speech.length * 2];
+        ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(speech);
+        AudioFormat pcm16 = new AudioFormat(8000, 16, 1, true, false);
+        AudioInputStream mono = new AudioInputStream(new ByteArrayInputStream(pcm), pcm16, speech.length);
+        AudioInputStream source = format.getChannels() == 2 ? stereo(pcm, speech.length)
+                : format.matches(pcm16) ? mono : AudioSystem.getAudioInputStream(format, mono);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AudioSystem.write(source, AudioFileFormat.Type.WAVE, out);
+        return out.toByteArray();
+    }
+
+    private static AudioInputStream stereo(byte[] pcm, int frames) {
+        byte[] interleaved = new byte[pcm.length * 2];
+        for (int i = 0; i < frames; i++) {
+            System.arraycopy(pcm, i * 2, interleaved, i * 4, 2);
+            System.arraycopy(pcm, i * 2, interleaved, i * 4 + 2, 2);
+        }
+        return new AudioInputStream(new ByteArrayInputStream(interleaved),
+                new AudioFormat(8000, 16, 2, true, false), frames);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.voicechanger.nativelib;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class NativeVoiceProcessorTest {
+
+    private static final int RATE = 16000;
+    private static final int FRAMES = 8000;
+
+    private boolean multiChannelSupported;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(NativeVoiceProcessor.isLibraryLoaded(), "libvoicechanger.so not loaded");
+        assumeTrue(!NativeVoiceProcessor.isFfmBinding());
+        multiChannelSupported = NativeVoiceProcessor.isMultiChannelSupported();
+        // As with a library built before configureProcessorChannels
+        ReflectionTestUtils.setField(NativeVoiceProcessor.class, "multiChannelSupported", false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (NativeVoiceProcessor.isLibraryLoaded()) {
+            ReflectionTestUtils.setField(NativeVoiceProcessor.class, "multiChannelSupported", multiChannelSupported);
+        }
+    }
+
+    @Test
+    void withoutMultiChannelSupportEachChannelIsProcessedOnItsOwn() {
+        short[] left = tone(220, 10000);
+        short[] right = tone(660, 6000);
+        ByteBuffer stereo = ByteBuffer.allocateDirect(FRAMES * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < FRAMES; i++) {
+            stereo.putShort(left[i]).putShort(right[i]);
+        }
+
+        NativeVoiceProcessor processor = new NativeVoiceProcessor();
+        try {
+            processor.processAudioInPlace(stereo, FRAMES, 2,
+                    new float[]{5f, -5f}, new float[]{1f, 0f}, new float[]{100f, 150f}, RATE);
+        } finally {
+            processor.dispose();
+        }
+
+        short[] outLeft = new short[FRAMES];
+        short[] outRight = new short[FRAMES];
+        ShortBuffer samples = stereo.position(0).asShortBuffer();
+        for (int i = 0; i < FRAMES; i++) {
+            outLeft[i] = samples.get(2 * i);
+            outRight[i] = samples.get(2 * i + 1);
+        }
+        assertFalse(Arrays.equals(left, outLeft)); // actually processed
+        // The same as the mono path gives each channel with its own settings
+        assertArrayEquals(mono(left, 5f, 1f, 100f), outLeft);
+        assertArrayEquals(mono(right, -5f, 0f, 150f), outRight);
+    }
+
+    private static short[] mono(short[] samples, float shift, float formant, float base) {
+        NativeVoiceProcessor processor = new NativeVoiceProcessor();
+        try {
+            return processor.processAudio(samples.clone(), samples.length, shift, formant, base, RATE);
+        } finally {
+            processor.dispose();
+        }
+    }
+
+    private static short[] tone(double hz, double amplitude) {
+        short[] samples = new short[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            samples[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / RATE));
+        }
+        return samples;
+    }
+}
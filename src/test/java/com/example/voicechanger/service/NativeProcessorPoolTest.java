@@ -0,0 +1,71 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.nativelib.NativeVoiceProcessor;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class NativeProcessorPoolTest {
+
+    // Stand-ins for the native processors, so the pool is tested without the library
+    private final NativeProcessorPool pool = new NativeProcessorPool(2, 50, () -> mock(NativeVoiceProcessor.class));
+
+    @Test
+    void aFullRateTimesOutWhileOtherRatesStillServe() throws InterruptedException {
+        pool.acquire(8000);
+        pool.acquire(8000);
+
+        long start = System.nanoTime();
+        assertThrows(ProcessorUnavailableException.class, () -> pool.acquire(8000));
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 45); // waited out the timeout
+        assertThrows(ProcessorUnavailableException.class, () -> pool.acquire(8000, 0));
+
+        pool.acquire(16000); // a pool of its own
+        Map<String, Object> stats = stats(8000);
+        assertEquals(2, stats.get("busy"));
+        assertEquals(4L, stats.get("requests"));
+        assertEquals(2L, stats.get("waits"));
+    }
+
+    @Test
+    void aReleasedProcessorIsReusedAndFreesItsSlot() throws InterruptedException {
+        NativeVoiceProcessor first = pool.acquire(8000);
+        NativeVoiceProcessor second = pool.acquire(8000);
+        assertNotSame(first, second);
+
+        pool.release(8000, first);
+        assertSame(first, pool.acquire(8000));
+        assertEquals(2L, stats(8000).get("processors"));
+        assertEquals(2, stats(8000).get("busy"));
+    }
+
+    @Test
+    void aLeakedProcessorGivesItsSlotBack() throws InterruptedException {
+        NativeVoiceProcessor leaked = pool.acquire(8000);
+        pool.acquire(8000);
+        ArgumentCaptor<Runnable> onLeak = ArgumentCaptor.forClass(Runnable.class);
+        verify(leaked).leased(onLeak.capture());
+
+        onLeak.getValue().run(); // what its cleaner does once it is unreachable
+        pool.acquire(8000); // no wait: the slot is back
+
+        Map<String, Object> stats = stats(8000);
+        assertEquals(1L, stats.get("leaks"));
+        assertEquals(0L, stats.get("waits"));
+        assertEquals(2L, stats.get("processors")); // three created, one lost
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats(int sampleRate) {
+        return (Map<String, Object>) pool.getStats().get(sampleRate + "Hz");
+    }
+}
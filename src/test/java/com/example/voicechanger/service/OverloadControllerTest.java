@@ -0,0 +1,71 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.dto.QualityLevel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OverloadControllerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L); // epoch millis
+
+    @Test
+    void stepsDownOneLevelPerIntervalAndRecoversOnlyAfterStayingCalm() {
+        OverloadController controller = new OverloadController(true, QualityLevel.NO_SPLIT,
+                0.5, 0.2, 250, 20, 100, 300, 16000, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            controller.record(0, SECOND, SECOND); // real-time factor 1: one step, not one per request
+        }
+        assertEquals(QualityLevel.LARGER_HOP, controller.level());
+        now.addAndGet(150);
+        for (int i = 0; i < 10; i++) {
+            controller.record(400_000_000L, 0, SECOND); // waiting for a processor counts too
+        }
+        assertEquals(QualityLevel.NO_SPLIT, controller.level());
+        now.addAndGet(150);
+        controller.record(400_000_000L, SECOND, SECOND);
+        assertEquals(QualityLevel.NO_SPLIT, controller.level()); // max-level
+        assertEquals(Integer.MAX_VALUE, controller.rateCeiling());
+
+        // Between the thresholds: neither worse nor better
+        for (int i = 0; i < 20; i++) {
+            controller.record(0, SECOND * 3 / 10, SECOND);
+        }
+        now.addAndGet(350);
+        controller.record(0, SECOND * 3 / 10, SECOND);
+        assertEquals(QualityLevel.NO_SPLIT, controller.level());
+
+        for (int i = 0; i < 20; i++) {
+            controller.record(0, 0, SECOND);
+        }
+        now.addAndGet(299);
+        assertEquals(QualityLevel.NO_SPLIT, controller.level()); // calm, but not for long enough
+        now.addAndGet(1);
+        assertEquals(QualityLevel.LARGER_HOP, controller.level());
+    }
+
+    @Test
+    void lowRateCapsNativeRatesAndDisabledStaysFull() {
+        OverloadController controller = new OverloadController(true, QualityLevel.LOW_RATE,
+                0.5, 0.2, 250, 20, 0, 60_000, 16000, now::get);
+        for (int i = 0; i < 10; i++) {
+            controller.record(0, 2 * SECOND, SECOND);
+        }
+        assertEquals(QualityLevel.LOW_RATE, controller.level());
+        assertEquals(16000, controller.rateCeiling());
+        controller.reset();
+        assertEquals(QualityLevel.FULL, controller.level());
+
+        OverloadController disabled = new OverloadController(false, QualityLevel.LOW_RATE,
+                0.5, 0.2, 250, 20, 0, 60_000, 16000, now::get);
+        for (int i = 0; i < 10; i++) {
+            disabled.record(0, 2 * SECOND, SECOND);
+        }
+        assertEquals(QualityLevel.FULL, disabled.level());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.voicechanger.service;
+
+import com.example.voicechanger.audio.AudioBufferPool;
+import com.example.voicechanger.dto.ProcessingMode;
+import com.example.voicechanger.service.spool.ScratchSpool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class VoiceProcessingServiceTest {
+
+    private OverloadController overload;
+    private AudioBufferPool bufferPool;
+    private VoiceProcessingService service;
+
+    @BeforeEach
+    void setUp() {
+        overload = mock(OverloadController.class);
+        when(overload.rateCeiling()).thenReturn(Integer.MAX_VALUE);
+        // 8 kHz is left out of the configured rates on purpose, and 48 kHz is above the ceiling
+        bufferPool = new AudioBufferPool(65536, 1 << 24, 1 << 26, false);
+        service = new VoiceProcessingService(mock(ScratchSpool.class), bufferPool, overload,
+                "native", 44100, new int[]{16000, 22050, 44100, 48000}, 2, 1_000, 8, "jni", false);
+    }
+
+    @Test
+    void nativeModeSnapsUpToTheNextSupportedRate() {
+        assertEquals(8000, service.processingRate(8000, ProcessingMode.NATIVE));
+        assertEquals(16000, service.processingRate(11025, ProcessingMode.NATIVE));
+        assertEquals(16000, service.processingRate(16000, ProcessingMode.NATIVE));
+        assertEquals(22050, service.processingRate(22050, ProcessingMode.NATIVE));
+        assertEquals(44100, service.processingRate(32000, ProcessingMode.NATIVE));
+        assertEquals(44100, service.processingRate(44100, ProcessingMode.NATIVE));
+        assertEquals(44100, service.processingRate(96000, ProcessingMode.NATIVE)); // capped
+        assertEquals(8000, service.processingRate(4000, ProcessingMode.NATIVE));
+    }
+
+    @Test
+    void telephonyAndOverloadLimitTheRate() {
+        assertEquals(8000, service.processingRate(44100, ProcessingMode.TELEPHONY));
+
+        when(overload.rateCeiling()).thenReturn(16000);
+        assertEquals(16000, service.processingRate(44100, ProcessingMode.NATIVE));
+        assertEquals(8000, service.processingRate(8000, ProcessingMode.NATIVE));
+
+        when(overload.rateCeiling()).thenReturn(12000); // below every configured rate but 8 kHz
+        assertEquals(8000, service.processingRate(44100, ProcessingMode.NATIVE));
+    }
+
+    @Test
+    void onlyNativeModeKeepsChannelsAndOnlyUpToTheLimit() {
+        assertEquals(1, service.keptChannels(1, ProcessingMode.NATIVE));
+        assertEquals(2, service.keptChannels(2, ProcessingMode.NATIVE));
+        assertEquals(8, service.keptChannels(8, ProcessingMode.NATIVE));
+        assertEquals(1, service.keptChannels(9, ProcessingMode.NATIVE)); // over the limit of 8: downmixed
+        assertEquals(1, service.keptChannels(2, ProcessingMode.TELEPHONY));
+    }
+
+    @Test
+    void multiChannelResamplingKeepsEachChannelToItself() throws IOException {
+        int frames = 10_000; // more than two resampling blocks
+        short[] left = tone(frames, 440, 48000, 12000);
+        short[] right = tone(frames, 3000, 48000, 4000);
+        short[] stereo = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            stereo[2 * i] = left[i];
+            stereo[2 * i + 1] = right[i];
+        }
+
+        short[] resampled = resample(stereo, 2);
+        short[] resampledLeft = resample(left, 1);
+        short[] resampledRight = resample(right, 1);
+
+        assertEquals(resampledLeft.length * 2, resampled.length);
+        assertEquals(frames / 3.0, resampledLeft.length, 20);
+        short[] outLeft = new short[resampledLeft.length];
+        short[] outRight = new short[resampledLeft.length];
+        for (int i = 0; i < outLeft.length; i++) {
+            outLeft[i] = resampled[2 * i];
+            outRight[i] = resampled[2 * i + 1];
+        }
+        // Each channel comes out as it would on its own: nothing of the other leaks in
+        assertArrayEquals(resampledLeft, outLeft);
+        assertArrayEquals(resampledRight, outRight);
+    }
+
+    private short[] resample(short[] samples, int channels) throws IOException {
+        AudioBufferPool.Lease in = bufferPool.lease(samples.length * 2);
+        in.samples().put(samples);
+        try (in; AudioBufferPool.Lease out = service.resample(in, 48000, 16000, channels)) {
+            ShortBuffer resampled = out.samples();
+            short[] result = new short[resampled.remaining()];
+            resampled.get(result);
+            return result;
+        }
+    }
+
+    private static short[] tone(int frames, double hz, int sampleRate, double amplitude) {
+        short[] samples = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / sampleRate));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.voicechanger.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.availability.ApplicationAvailabilityBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WarmupServiceTest {
+
+    private final ApplicationAvailabilityBean availability = new ApplicationAvailabilityBean();
+    private WarmupService warmup;
+
+    // Delivers readiness events like the application context: the availability bean, then the service
+    @SuppressWarnings("unchecked")
+    private final ApplicationEventPublisher events = event -> {
+        availability.onApplicationEvent((AvailabilityChangeEvent<?>) event);
+        warmup.onReadinessChange((AvailabilityChangeEvent<ReadinessState>) event);
+    };
+
+    @Test
+    void refusesTrafficUntilWarmAndAcceptsItWhateverTheOrder() throws InterruptedException {
+        VoiceProcessingService processing = mock(VoiceProcessingService.class);
+        when(processing.getNativeRates()).thenReturn(new int[]{8000});
+        VoiceChangerService changer = mock(VoiceChangerService.class);
+        when(changer.getVoiceTypes()).thenReturn(Set.of("female"));
+        OverloadController overload = mock(OverloadController.class);
+
+        for (int i = 0; i < 200; i++) {
+            warmup = new WarmupService(processing, changer, overload, events, true, 1, 20);
+            warmup.onApplicationReady(); // starts warming on its own thread
+            // What Spring Boot publishes right after ApplicationReadyEvent, racing the warm-up
+            AvailabilityChangeEvent.publish(events, this, ReadinessState.ACCEPTING_TRAFFIC);
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (warmup.getState() != WarmupService.State.READY && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(WarmupService.State.READY, warmup.getState());
+            synchronized (warmup) {
+                // READY is set and published under the service's lock
+            }
+            assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState(), "round " + i);
+        }
+    }
+
+    @Test
+    void staysRefusingWhileWarming() {
+        warmup = new WarmupService(mock(VoiceProcessingService.class), mock(VoiceChangerService.class),
+                mock(OverloadController.class), events, true, 1, 20);
+        AvailabilityChangeEvent.publish(events, this, ReadinessState.ACCEPTING_TRAFFIC);
+
+        assertEquals(WarmupService.State.PENDING, warmup.getState());
+        assertEquals(ReadinessState.REFUSING_TRAFFIC, availability.getReadinessState());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.voicechanger.service.esl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallDeadlineServiceTest {
+
+    private static final String UUID = "0f6c1a2e-1111-2222-3333-444455556666";
+
+    private final CallDeadlineService deadlines = new CallDeadlineService(new CallJournal(false, null, 0), 10, 64);
+
+    @AfterEach
+    void tearDown() {
+        deadlines.shutdown();
+    }
+
+    @Test
+    void rescheduleReplacesAndOnlyLatestFires() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        deadlines.registerHandler(CallDeadlineService.Kind.MANUAL, uuid -> {
+            fired.incrementAndGet();
+            done.countDown();
+        });
+
+        deadlines.schedule(UUID, CallDeadlineService.Kind.MANUAL, 50);
+        deadlines.schedule(UUID, CallDeadlineService.Kind.MANUAL, 80);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, fired.get());
+        assertNull(deadlines.get(UUID, CallDeadlineService.Kind.MANUAL));
+    }
+
+    @Test
+    void cancelAllDropsEveryKindForTheCall() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        deadlines.registerHandler(CallDeadlineService.Kind.TALK_TIME, uuid -> fired.incrementAndGet());
+        deadlines.registerHandler(CallDeadlineService.Kind.GLOBAL_DURATION, uuid -> fired.incrementAndGet());
+        deadlines.schedule(UUID, CallDeadlineService.Kind.TALK_TIME, 50);
+        deadlines.schedule(UUID, CallDeadlineService.Kind.GLOBAL_DURATION, 50);
+
+        assertEquals(2, deadlines.cancelAll(UUID));
+        assertFalse(deadlines.cancel(UUID, CallDeadlineService.Kind.TALK_TIME));
+
+        Thread.sleep(150);
+        assertEquals(0, fired.get());
+        assertEquals(0, deadlines.getStats().get("pending"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.voicechanger.service.esl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CallEventStreamTest {
+
+    private static final String A_LEG = "0f6c1a2e-1111-2222-3333-444455556666";
+    private static final String B_LEG = "0f6c1a2e-7777-8888-9999-000011112222";
+
+    private CallEventStream stream;
+
+    @BeforeEach
+    void setUp() {
+        EslService eslService = mock(EslService.class);
+        when(eslService.isConnected()).thenReturn(true);
+        when(eslService.getConnectionStatus()).thenReturn("✅ Connected to 127.0.0.1:8021");
+        // No timer: each test decides when a tick happens
+        stream = new CallEventStream(eslService, new ObjectMapper(), 0, 15_000);
+    }
+
+    @Test
+    void changesToOneCallWithinATickArePublishedOnce() {
+        stream.created(A_LEG, "1001", "1002");
+        stream.answered(A_LEG, "1001");
+        stream.bridged(A_LEG, B_LEG, "monster");
+        stream.presetChanged(B_LEG, "child"); // set on the bridged leg, applies to the call
+        stream.tick();
+
+        Map<String, Object> stats = stream.getStats();
+        assertEquals(1, stats.get("trackedCalls"));
+        assertEquals(4L, stats.get("updates"));
+        assertEquals(1L, stats.get("published"));
+        assertEquals(3L, stats.get("coalesced"));
+        assertEquals(1L, stats.get("batches"));
+
+        stream.tick(); // nothing changed, connection unchanged
+        assertEquals(1L, stream.getStats().get("batches"));
+    }
+
+    @Test
+    void hangupRemovesTheCallAndUnknownCallsAreIgnored() {
+        stream.created(A_LEG, "1001", "1002");
+        stream.tick();
+        stream.hungUp(A_LEG, "NORMAL_CLEARING");
+        stream.hungUp(B_LEG, "NORMAL_CLEARING");
+        stream.tick();
+
+        Map<String, Object> stats = stream.getStats();
+        assertEquals(0, stats.get("trackedCalls"));
+        assertEquals(2L, stats.get("updates"));
+        assertEquals(2L, stats.get("published"));
+    }
+
+    @Test
+    void changesAfterHangupDoNotBringTheCallBack() {
+        stream.created(A_LEG, "1001", "1002");
+        stream.bridged(A_LEG, B_LEG, "monster");
+        stream.hungUp(A_LEG, "NORMAL_CLEARING");
+        // A preset set over REST and a late bridge event, both after the hangup
+        stream.presetChanged(A_LEG, "child");
+        stream.presetChanged(B_LEG, "child");
+        stream.bridged(A_LEG, B_LEG, "monster");
+        stream.answered(B_LEG, "1002");
+
+        Map<String, Object> stats = stream.getStats();
+        assertEquals(0, stats.get("trackedCalls"));
+        assertEquals(3L, stats.get("updates"));
+        stream.tick();
+        assertEquals(1L, stream.getStats().get("published")); // the HUNG_UP, not replaced
+        assertEquals(0, stream.getStats().get("trackedCalls"));
+    }
+}
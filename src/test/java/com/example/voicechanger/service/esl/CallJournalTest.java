@@ -0,0 +1,54 @@
+package com.example.voicechanger.service.esl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallJournalTest {
+
+    @Test
+    void replayFoldsTheLogIntoWhatWasStillOpen(@TempDir Path dir) {
+        String path = dir.toString();
+        CallJournal journal = new CallJournal(true, path, 2);
+        assertTrue(journal.isEnabled());
+
+        journal.sessionReserved("call-1", "S-1", 1_000L, 600);
+        journal.sessionAnswered("call-1", 4_000L);
+        journal.sessionReserved("call-2", "S-2", 2_000L, 300);
+        journal.sessionClosed("call-2");
+        journal.sessionAnswered("call-3", 5_000L); // never reserved: ignored
+        journal.deadlineArmed("call-1", CallDeadlineService.Kind.TALK_TIME, 604_000L);
+        journal.deadlineArmed("call-1", CallDeadlineService.Kind.GLOBAL_DURATION, 3_601_000L);
+        journal.deadlineArmed("call-2", CallDeadlineService.Kind.TALK_TIME, 302_000L);
+        journal.deadlineCleared("call-2", CallDeadlineService.Kind.TALK_TIME);
+        journal.deadlineArmed("call-1", CallDeadlineService.Kind.TALK_TIME, 700_000L); // re-armed later
+        journal.close();
+
+        // A new process reading the same files
+        CallJournal reopened = new CallJournal(true, path, 2);
+        CallJournal.Snapshot snapshot = reopened.replay();
+        reopened.close();
+
+        assertEquals(Map.of("call-1", new CallJournal.SessionRecord("call-1", "S-1", 1_000L, 4_000L, 600)),
+                snapshot.sessions());
+        assertEquals(Map.of("call-1", 700_000L), snapshot.deadlines().get(CallDeadlineService.Kind.TALK_TIME));
+        assertEquals(Map.of("call-1", 3_601_000L), snapshot.deadlines().get(CallDeadlineService.Kind.GLOBAL_DURATION));
+        assertTrue(snapshot.deadlines().get(CallDeadlineService.Kind.MANUAL).isEmpty());
+    }
+
+    @Test
+    void aDisabledJournalReplaysNothing() {
+        CallJournal journal = new CallJournal(false, "unused", 2);
+        journal.sessionReserved("call-1", "S-1", 1_000L, 600);
+
+        CallJournal.Snapshot snapshot = journal.replay();
+        assertTrue(snapshot.sessions().isEmpty());
+        assertEquals(3, snapshot.deadlines().size());
+        snapshot.deadlines().values().forEach(deadlines -> assertTrue(deadlines.isEmpty()));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.voicechanger.service.esl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CallStateRecoveryTest {
+
+    private CallJournal journal;
+    private CallDeadlineService deadlineService;
+    private TalkTimeService talkTimeService;
+    private EslService eslService;
+    private CallStateRecovery recovery;
+
+    private final Map<String, CallJournal.SessionRecord> sessions = new LinkedHashMap<>();
+    private final Map<CallDeadlineService.Kind, Map<String, Long>> deadlines = new EnumMap<>(CallDeadlineService.Kind.class);
+
+    @BeforeEach
+    void setUp() {
+        journal = mock(CallJournal.class);
+        deadlineService = mock(CallDeadlineService.class);
+        talkTimeService = mock(TalkTimeService.class);
+        eslService = mock(EslService.class);
+        recovery = new CallStateRecovery(journal, deadlineService, talkTimeService, eslService);
+        ReflectionTestUtils.setField(recovery, "recoveryWaitSeconds", 1);
+        for (CallDeadlineService.Kind kind : CallDeadlineService.Kind.values()) {
+            deadlines.put(kind, new LinkedHashMap<>());
+        }
+        when(journal.replay()).thenReturn(new CallJournal.Snapshot(sessions, deadlines));
+    }
+
+    @Test
+    void callsStillUpAreRestoredAndEndedOnesBilled() {
+        long now = System.currentTimeMillis();
+        CallJournal.SessionRecord up = new CallJournal.SessionRecord("up", "S-1", now - 60_000, now - 50_000, 600);
+        // Ended while we were down; its 30 s of talk time ran out long ago
+        CallJournal.SessionRecord ended = new CallJournal.SessionRecord("ended", "S-2", now - 600_000, now - 590_000, 30);
+        // Ended too, but with talk time left: billed up to now
+        CallJournal.SessionRecord endedEarly = new CallJournal.SessionRecord("ended-early", "S-3", now - 20_000, 0, 600);
+        sessions.put(up.uuid(), up);
+        sessions.put(ended.uuid(), ended);
+        sessions.put(endedEarly.uuid(), endedEarly);
+        deadlines.get(CallDeadlineService.Kind.TALK_TIME).put("up", now + 540_000);
+        deadlines.get(CallDeadlineService.Kind.GLOBAL_DURATION).put("up", now - 1_000); // passed during downtime
+        deadlines.get(CallDeadlineService.Kind.TALK_TIME).put("ended", now - 560_000);
+        when(eslService.isConnected()).thenReturn(true);
+        when(eslService.getLiveChannelUuids()).thenReturn(Set.of("up"));
+
+        recovery.recover();
+
+        verify(talkTimeService).restoreSession(up);
+        verify(talkTimeService).restoreSession(ended);
+        verify(talkTimeService).restoreSession(endedEarly);
+        verify(talkTimeService, never()).deductTalkTime(eq("up"), any());
+        verify(talkTimeService).deductTalkTime("ended", new Date(now - 590_000 + 30_000));
+        ArgumentCaptor<Date> billedUntil = ArgumentCaptor.forClass(Date.class);
+        verify(talkTimeService).deductTalkTime(eq("ended-early"), billedUntil.capture());
+        assertTrue(billedUntil.getValue().getTime() >= now);
+
+        ArgumentCaptor<Long> remaining = ArgumentCaptor.forClass(Long.class);
+        verify(deadlineService).schedule(eq("up"), eq(CallDeadlineService.Kind.TALK_TIME), remaining.capture());
+        assertEquals(540_000, remaining.getValue(), 5_000);
+        verify(deadlineService).schedule(eq("up"), eq(CallDeadlineService.Kind.GLOBAL_DURATION), remaining.capture());
+        assertTrue(remaining.getValue() <= 0); // fires straight away
+        verify(deadlineService, never()).schedule(eq("ended"), any(), anyLong());
+        verify(journal).deadlineCleared("ended", CallDeadlineService.Kind.TALK_TIME);
+    }
+
+    @Test
+    void nothingIsDecidedWhenTheSwitchCannotBeReached() {
+        CallJournal.SessionRecord session = new CallJournal.SessionRecord("call-1", "S-1", 1_000L, 0, 600);
+        sessions.put(session.uuid(), session);
+        deadlines.get(CallDeadlineService.Kind.TALK_TIME).put("call-1", 601_000L);
+        when(eslService.isConnected()).thenReturn(false);
+
+        recovery.recover();
+
+        // Kept, so a hangup that does arrive is still billed; but no call is billed or cut on a guess
+        verify(talkTimeService).restoreSession(session);
+        verify(talkTimeService, never()).deductTalkTime(anyString(), any());
+        verify(deadlineService, never()).schedule(anyString(), any(), anyLong());
+        verify(journal, never()).deadlineCleared(anyString(), any());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.voicechanger.service.esl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EslCommandBatcherTest {
+
+    private static final String UUID = "0f6c1a2e-1111-2222-3333-444455556666";
+
+    private EslService eslService;
+    private EslCommandBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        eslService = mock(EslService.class);
+        when(eslService.sendCommandsPipelined(anyList())).thenAnswer(invocation -> {
+            List<String> commands = invocation.getArgument(0);
+            return commands.stream().map(c -> CompletableFuture.completedFuture("+OK " + c)).toList();
+        });
+        batcher = new EslCommandBatcher(eslService);
+        // Keep the timed flush out of the way so each test controls when the batch goes out
+        ReflectionTestUtils.setField(batcher, "batchWindowMs", 60_000L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void repeatedSetKeepsOnlyTheLastAfterStart() {
+        CompletableFuture<String> start = batcher.submit("voicechanger start " + UUID);
+        CompletableFuture<String> first = batcher.submit("voicechanger set " + UUID + " 10 2 100");
+        CompletableFuture<String> second = batcher.submit("voicechanger set " + UUID + " 8 4 120");
+        batcher.flush();
+
+        ArgumentCaptor<List<String>> sent = ArgumentCaptor.forClass(List.class);
+        verify(eslService).sendCommandsPipelined(sent.capture());
+        assertEquals(List.of("voicechanger start " + UUID, "voicechanger set " + UUID + " 8 4 120"), sent.getValue());
+
+        assertEquals("+OK voicechanger start " + UUID, start.join());
+        assertEquals("+OK voicechanger set " + UUID + " 8 4 120", first.join());
+        assertEquals(second.join(), first.join());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void killDropsPendingCommandsForTheSameCall() {
+        CompletableFuture<String> set = batcher.submit("voicechanger set " + UUID + " 10 2 100");
+        batcher.submit("show calls");
+        List<CompletableFuture<String>> kill = batcher.submitNow(List.of("uuid_kill " + UUID));
+
+        ArgumentCaptor<List<String>> sent = ArgumentCaptor.forClass(List.class);
+        verify(eslService).sendCommandsPipelined(sent.capture());
+        assertEquals(List.of("show calls", "uuid_kill " + UUID), sent.getValue());
+        assertEquals("ERROR: superseded by uuid_kill " + UUID, set.join());
+        assertEquals("+OK uuid_kill " + UUID, kill.get(0).join());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aCallsCommandsKeepTheirOrderWhenOnlySomeCanBeCoalesced() {
+        batcher.submit("voicechanger set " + UUID + " 10 2 100");
+        batcher.submit("voicechanger start " + UUID);
+        // Neither merges into the earlier command of its kind: a later command for the call sits in between
+        CompletableFuture<String> set = batcher.submit("voicechanger set " + UUID + " 8 4 120");
+        batcher.submit("voicechanger start " + UUID);
+        batcher.flush();
+
+        ArgumentCaptor<List<String>> sent = ArgumentCaptor.forClass(List.class);
+        verify(eslService).sendCommandsPipelined(sent.capture());
+        assertEquals(List.of(
+                "voicechanger set " + UUID + " 10 2 100",
+                "voicechanger start " + UUID,
+                "voicechanger set " + UUID + " 8 4 120",
+                "voicechanger start " + UUID), sent.getValue());
+        assertEquals("+OK voicechanger set " + UUID + " 8 4 120", set.join());
+    }
+
+    @Test
+    void batchesGoToTheWireInTheOrderTheyWereTaken() {
+        // A flush that let go of the batcher before sending could be overtaken by the next one
+        when(eslService.sendCommandsPipelined(anyList())).thenAnswer(invocation -> {
+            assertTrue(Thread.holdsLock(batcher), "batch sent outside the batcher's monitor");
+            List<String> commands = invocation.getArgument(0);
+            return commands.stream().map(c -> CompletableFuture.completedFuture("+OK " + c)).toList();
+        });
+
+        batcher.submit("voicechanger start " + UUID);
+        batcher.flush();
+        assertEquals("+OK voicechanger set " + UUID + " 8 4 120",
+                batcher.submitNow(List.of("voicechanger set " + UUID + " 8 4 120")).get(0).join());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.voicechanger.service.esl;
+
+import com.example.voicechanger.loadtest.FakeFreeSwitchServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Drops the event socket of a {@link FakeFreeSwitchServer} under live calls and checks that
+ * events resume and the calls that ended in the gap are reported.
+ */
+class EslFailoverTest {
+
+    private static final int CALLS = 6;
+
+    private final BlockingQueue<EslReconnectedEvent> reconnects = new LinkedBlockingQueue<>();
+    private FakeFreeSwitchServer server;
+    private EslService esl;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        server = new FakeFreeSwitchServer("ClueCon").start(0);
+        server.setActionTimeoutMillis(60_000); // calls stay parked: nothing here transfers them
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (esl != null) {
+            esl.shutdown();
+        }
+        server.close();
+    }
+
+    @Test
+    void theStandbyTakesOverAndMissedHangupsAreReported() throws InterruptedException {
+        startEsl(true);
+        awaitTrue(() -> Boolean.TRUE.equals(status().get("standbyReady")));
+
+        EslReconnectedEvent event = dropEventsWhileCallsEnd();
+
+        assertEquals(1, status().get("failovers"));
+        assertEquals(0, status().get("reconnectAttempts"));
+        assertEquals(CALLS / 2L, status().get("trackedCalls"));
+        assertEquals("default", event.nodeId());
+    }
+
+    @Test
+    void withoutAStandbyTheNodeReconnectsAndStillReconciles() throws InterruptedException {
+        startEsl(false);
+
+        dropEventsWhileCallsEnd();
+
+        assertEquals(0, status().get("failovers"));
+        assertEquals(CALLS / 2L, status().get("trackedCalls"));
+    }
+
+    // Track CALLS parked calls, end half of them silently, drop the event socket and wait for it to come back
+    private EslReconnectedEvent dropEventsWhileCallsEnd() throws InterruptedException {
+        server.generateCalls(50);
+        awaitTrue(() -> (long) status().get("trackedCalls") >= CALLS);
+        server.stopGenerating();
+        Thread.sleep(100); // a call started as the generator stopped
+        awaitTrue(() -> (long) status().get("trackedCalls") == server.getLiveCalls());
+        int live = server.getLiveCalls();
+
+        Set<String> ended = server.endCallsUnannounced(live - CALLS / 2);
+        server.dropSubscribers();
+
+        EslReconnectedEvent event = reconnects.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event, "no reconciliation after the event socket dropped");
+        assertEquals(ended, event.endedUuids());
+        assertTrue(server.hasSubscribers());
+        assertTrue(esl.isConnected());
+        assertEquals(CALLS / 2, server.getLiveCalls());
+        return event;
+    }
+
+    private void startEsl(boolean standby) {
+        esl = new EslService(mock(FreeSwitchEventListener.class), event -> {
+            if (event instanceof EslReconnectedEvent reconnected) {
+                reconnects.add(reconnected);
+            }
+        });
+        ReflectionTestUtils.setField(esl, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(esl, "port", server.getPort());
+        ReflectionTestUtils.setField(esl, "password", "ClueCon");
+        ReflectionTestUtils.setField(esl, "connectionTimeout", 5_000);
+        ReflectionTestUtils.setField(esl, "reconnectInterval", 1);
+        ReflectionTestUtils.setField(esl, "maxReconnectAttempts", 3);
+        ReflectionTestUtils.setField(esl, "pipelineEnabled", true);
+        ReflectionTestUtils.setField(esl, "standbyEnabled", standby);
+        ReflectionTestUtils.setField(esl, "failoverCheckMillis", 50L);
+        esl.init();
+    }
+
+    private Map<String, Object> status() {
+        return esl.getNodeStatuses().get(0);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.voicechanger.service.esl;
+
+import com.example.voicechanger.loadtest.FakeFreeSwitchServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Commands for a call no node is known to own, across two {@link FakeFreeSwitchServer}s.
+ */
+class EslRoutingTest {
+
+    private FakeFreeSwitchServer first;
+    private FakeFreeSwitchServer second;
+    private EslService esl;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        first = new FakeFreeSwitchServer("ClueCon").start(0);
+        second = new FakeFreeSwitchServer("ClueCon").start(0);
+        second.setActionTimeoutMillis(60_000); // calls stay parked: nothing here transfers them
+
+        esl = new EslService(mock(FreeSwitchEventListener.class), event -> {});
+        ReflectionTestUtils.setField(esl, "nodeList",
+                "a=127.0.0.1:" + first.getPort() + ",b=127.0.0.1:" + second.getPort());
+        ReflectionTestUtils.setField(esl, "password", "ClueCon");
+        ReflectionTestUtils.setField(esl, "connectionTimeout", 5_000);
+        ReflectionTestUtils.setField(esl, "reconnectInterval", 1);
+        ReflectionTestUtils.setField(esl, "maxReconnectAttempts", 3);
+        ReflectionTestUtils.setField(esl, "pipelineEnabled", true);
+        ReflectionTestUtils.setField(esl, "failoverCheckMillis", 50L);
+        esl.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        esl.shutdown();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void anUnknownCallIsFoundOnItsNode() throws InterruptedException {
+        second.generateCalls(50);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (second.getLiveCalls() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        second.stopGenerating();
+        String uuid = second.getLiveUuids().iterator().next();
+        // As if its events had been missed: no node is known to own it
+        ((Map<?, ?>) ReflectionTestUtils.getField(esl, "uuidOwners")).clear();
+
+        List<CompletableFuture<String>> results = esl.sendCommandsPipelined(
+                List.of("uuid_dump " + uuid, "uuid_kill " + uuid));
+
+        assertFalse(results.get(0).join().startsWith("-ERR"));
+        assertEquals("+OK", results.get(1).join().trim());
+        deadline = System.currentTimeMillis() + 10_000;
+        while (second.getLiveUuids().contains(uuid) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(second.getLiveUuids().contains(uuid));
+    }
+
+    @Test
+    void aCallNoNodeHasGoesToTheFirstNode() {
+        String result = esl.sendCommandAsync("uuid_kill not-a-call").join();
+
+        assertTrue(result.startsWith("-ERR"));
+        assertEquals(0, second.getLiveCalls());
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.voicechanger.service.esl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TalkTimeBalanceCacheTest {
+
+    private static final String A_PARTY = "8801700000001";
+
+    private final TalkTimeBalanceCache cache = new TalkTimeBalanceCache(true, 30_000, 60, 1_000);
+
+    @Test
+    void repeatCallerIsGrantedWhatEarlierCallsLeft() {
+        assertEquals(0, cache.tryReserve(A_PARTY));
+
+        cache.fetched(A_PARTY, 600);
+        assertEquals(0, cache.tryReserve(A_PARTY), "balance is held by the live call");
+
+        cache.released(A_PARTY, 600, 45);
+        assertEquals(555, cache.tryReserve(A_PARTY));
+        cache.released(A_PARTY, 555, 500);
+        assertEquals(0, cache.tryReserve(A_PARTY), "55s left is under min-seconds");
+    }
+
+    @Test
+    void disagreementStopsServingButKeepsLiveGrants() {
+        cache.fetched(A_PARTY, 600);
+        cache.released(A_PARTY, 600, 0);
+        int granted = cache.tryReserve(A_PARTY);
+
+        assertTrue(cache.reconciled(A_PARTY, granted, granted));
+        assertFalse(cache.reconciled(A_PARTY, granted, 100));
+        assertEquals(0, cache.tryReserve(A_PARTY));
+
+        // A fresh fetch for another call still counts the grant that is up
+        cache.fetched(A_PARTY, 600);
+        cache.released(A_PARTY, 600, 0);
+        assertEquals(0, cache.tryReserve(A_PARTY));
+        cache.released(A_PARTY, granted, 0);
+        assertEquals(600, cache.tryReserve(A_PARTY));
+    }
+
+    @Test
+    void disabledCacheNeverGrants() {
+        TalkTimeBalanceCache disabled = new TalkTimeBalanceCache(false, 30_000, 60, 1_000);
+        disabled.fetched(A_PARTY, 600);
+        disabled.released(A_PARTY, 600, 0);
+        assertEquals(0, disabled.tryReserve(A_PARTY));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.voicechanger.service.esl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TalkTimeDeductionOutboxTest {
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private TalkTimeDeductionOutbox outbox;
+
+    @AfterEach
+    void tearDown() {
+        if (outbox != null) {
+            outbox.shutdown();
+        }
+    }
+
+    @Test
+    void retriesWithBackoffUntilTheApiConfirms() throws InterruptedException {
+        outbox = outbox(billing(session -> requests.size() > 2), false, null, 50);
+        outbox.enqueue("S-1", 42, "2026-01-01 10:00:00", "2026-01-01 10:00:42");
+
+        awaitTrue(() -> outbox.getUnsentCount() == 0);
+        assertEquals(List.of("S-1", "S-1", "S-1"), requests);
+        Map<String, Object> stats = outbox.getStats();
+        assertEquals(1L, stats.get("sent"));
+        assertEquals(2L, stats.get("retries"));
+    }
+
+    @Test
+    void aSessionQueuedTwiceIsSentOnce() throws InterruptedException {
+        Sinks.One<ClientResponse> answer = Sinks.one();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.add(sessionId(request.url().getQuery()));
+                    return answer.asMono();
+                })
+                .build();
+        outbox = outbox(webClient, false, null, 50);
+
+        outbox.enqueue("S-1", 42, "2026-01-01 10:00:00", "2026-01-01 10:00:42");
+        outbox.enqueue("S-1", 42, "2026-01-01 10:00:00", "2026-01-01 10:00:42"); // a second hangup handler
+        answer.tryEmitValue(ClientResponse.create(HttpStatus.OK).body("success").build());
+
+        awaitTrue(() -> outbox.getUnsentCount() == 0);
+        assertEquals(List.of("S-1"), requests);
+    }
+
+    @Test
+    void aDeductionPastMaxAttemptsIsParkedAndStillRetried() throws InterruptedException {
+        outbox = outbox(billing(session -> requests.size() > 6), false, null, 3);
+        outbox.enqueue("S-1", 42, "2026-01-01 10:00:00", "2026-01-01 10:00:42");
+
+        awaitTrue(() -> Integer.valueOf(1).equals(outbox.getStats().get("parked")));
+        assertEquals(1, outbox.getUnsentCount());
+
+        awaitTrue(() -> outbox.getUnsentCount() == 0);
+        assertEquals(7, requests.size());
+        assertEquals(1L, outbox.getStats().get("sent"));
+        assertEquals(0, outbox.getStats().get("parked"));
+    }
+
+    @Test
+    void unacknowledgedDeductionsAreSentAgainAfterARestart(@TempDir Path dir) throws InterruptedException {
+        String path = dir.resolve("deductions").toString();
+        // Before the restart the API only takes S-1; S-2 and S-3 keep failing
+        outbox = outbox(billing(session -> session.equals("S-1")), true, path, 50);
+        ReflectionTestUtils.setField(outbox, "initialBackoffMillis", 60_000L);
+        outbox.init();
+        outbox.enqueue("S-1", 10, "2026-01-01 10:00:00", "2026-01-01 10:00:10");
+        outbox.enqueue("S-2", 20, "2026-01-01 10:00:00", "2026-01-01 10:00:20");
+        outbox.enqueue("S-3", 30, "2026-01-01 10:00:00", "2026-01-01 10:00:30");
+        awaitTrue(() -> requests.size() == 3 && outbox.getUnsentCount() == 2);
+        outbox.shutdown();
+
+        requests.clear();
+        outbox = outbox(billing(session -> true), true, path, 50);
+        outbox.init();
+
+        awaitTrue(() -> outbox.getUnsentCount() == 0);
+        assertEquals(List.of("S-2", "S-3"), requests);
+
+        // Both acknowledged now: a second restart has nothing to send
+        outbox.shutdown();
+        requests.clear();
+        outbox = outbox(billing(session -> true), true, path, 50);
+        outbox.init();
+        assertEquals(0, outbox.getUnsentCount());
+        assertTrue(requests.isEmpty());
+    }
+
+    // Records each deduction's session id and answers success when accepts says so, a 500 otherwise
+    private WebClient billing(Predicate<String> accepts) {
+        return WebClient.builder()
+                .exchangeFunction(request -> {
+                    String session = sessionId(request.url().getQuery());
+                    requests.add(session);
+                    return Mono.just(accepts.test(session)
+                            ? ClientResponse.create(HttpStatus.OK).body("success").build()
+                            : ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+                })
+                .build();
+    }
+
+    private static TalkTimeDeductionOutbox outbox(WebClient webClient, boolean durable, String path, int maxAttempts) {
+        TalkTimeDeductionOutbox outbox = new TalkTimeDeductionOutbox(webClient, durable, path, 7, 4);
+        ReflectionTestUtils.setField(outbox, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(outbox, "initialBackoffMillis", 5L);
+        ReflectionTestUtils.setField(outbox, "maxBackoffMillis", 20L);
+        ReflectionTestUtils.setField(outbox, "parkRetryMillis", 20L);
+        return outbox;
+    }
+
+    private static String sessionId(String query) {
+        return UriComponentsBuilder.newInstance().query(query).build().getQueryParams().getFirst("sessionId");
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
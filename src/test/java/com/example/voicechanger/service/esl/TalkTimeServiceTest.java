@@ -0,0 +1,152 @@
+package com.example.voicechanger.service.esl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class TalkTimeServiceTest {
+
+    private static final String UUID = "0f6c1a2e-1111-2222-3333-444455556666";
+    private static final String A_PARTY = "8801700000001";
+    private static final String GRANTED = "{\"statusCode\":1001,\"talkTime\":600,\"sessionId\":\"S-1\"}";
+
+    private final Sinks.One<String> billing = Sinks.one();
+    private CallDeadlineService deadlineService;
+    private CallJournal journal;
+    private TalkTimeDeductionOutbox outbox;
+    private EslService eslService;
+    private TalkTimeService service;
+
+    @BeforeEach
+    void setUp() {
+        // Each getTalkTime answers once the test emits the body
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> billing.asMono().map(body -> ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(body)
+                        .build()))
+                .build();
+        deadlineService = mock(CallDeadlineService.class);
+        journal = mock(CallJournal.class);
+        outbox = mock(TalkTimeDeductionOutbox.class);
+        eslService = mock(EslService.class);
+        service = new TalkTimeService(webClient, eslService, deadlineService, journal, outbox,
+                new TalkTimeBalanceCache(false, 30_000, 60, 1_000));
+    }
+
+    @Test
+    void hangupBeforeTheReservationLandsReleasesItWithAZeroDeduction() {
+        CompletableFuture<Boolean> reserved = service.checkAndReserveTalkTime(UUID, "8801700000001", "8801700000002", "a@b.c");
+        service.deductTalkTime(UUID, new Date());
+        billing.tryEmitValue(GRANTED);
+
+        assertFalse(reserved.join());
+        verify(outbox).enqueue(eq("S-1"), eq(0), anyString(), anyString());
+        verify(deadlineService, never()).schedule(anyString(), any(), anyLong());
+        verify(journal, never()).sessionReserved(anyString(), anyString(), anyLong(), anyInt());
+        assertEquals(0, service.getStats().get("activeSessions"));
+    }
+
+    @Test
+    void hangupAfterTheReservationDeductsNormally() {
+        CompletableFuture<Boolean> reserved = service.checkAndReserveTalkTime(UUID, "8801700000001", "8801700000002", "a@b.c");
+        billing.tryEmitValue(GRANTED);
+        assertTrue(reserved.join());
+        verify(deadlineService).schedule(UUID, CallDeadlineService.Kind.TALK_TIME, 600_000L);
+
+        service.deductTalkTime(UUID, new Date());
+        verify(outbox).enqueue(eq("S-1"), eq(0), anyString(), anyString()); // never answered
+        verify(journal).sessionClosed(UUID);
+    }
+
+    @Test
+    void aCacheGrantedCallOutlivesBillingErrorsAndIsBilledOnceTheApiAnswers() {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        TalkTimeService cached = serviceWithCache(requests, null, "{\"message\":\"busy\"}", GRANTED);
+
+        assertTrue(cached.checkAndReserveTalkTime(UUID, A_PARTY, "8801700000002", "a@b.c").join());
+        verify(journal, timeout(5_000)).sessionReserved(eq(UUID), eq("S-1"), anyLong(), eq(600));
+        assertEquals(List.of(UUID, UUID, UUID), requests); // one key: retries cannot open a second session
+        verify(eslService, never()).sendCommandAsync(anyString());
+
+        cached.deductTalkTime(UUID, new Date());
+        verify(outbox).enqueue(eq("S-1"), eq(0), anyString(), anyString());
+    }
+
+    @Test
+    void aCacheGrantedCallIsKilledOnlyWhenTheApiRefusesIt() {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        TalkTimeService cached = serviceWithCache(requests, null, "{\"statusCode\":1002,\"message\":\"No balance\"}");
+
+        assertTrue(cached.checkAndReserveTalkTime(UUID, A_PARTY, "8801700000002", "a@b.c").join());
+        verify(eslService, timeout(5_000)).sendCommandAsync("uuid_kill " + UUID);
+        assertEquals(2, requests.size());
+        verify(deadlineService).cancel(UUID, CallDeadlineService.Kind.TALK_TIME);
+        assertEquals(0, cached.getStats().get("activeSessions"));
+    }
+
+    @Test
+    void aCacheGrantedCallIsKilledWhenTheApiStaysDown() {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        TalkTimeService cached = serviceWithCache(requests, (String) null);
+
+        assertTrue(cached.checkAndReserveTalkTime(UUID, A_PARTY, "8801700000002", "a@b.c").join());
+        verify(eslService, timeout(5_000)).sendCommandAsync("uuid_kill " + UUID);
+        assertEquals(5, requests.size());
+        verify(deadlineService).cancel(UUID, CallDeadlineService.Kind.TALK_TIME);
+        assertEquals(0, cached.getStats().get("activeSessions"));
+        // The outage also ends serving this caller from the cache
+        assertFalse(cached.checkAndReserveTalkTime("another-call", A_PARTY, "8801700000002", "a@b.c")
+                .join());
+    }
+
+    // A service whose balance cache already knows A_PARTY from an earlier call; getTalkTime answers with the bodies
+    // in turn, null as a 500, and records each request's idempotency key
+    private TalkTimeService serviceWithCache(List<String> requests, String... bodies) {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.add(request.headers().getFirst(TalkTimeService.IDEMPOTENCY_KEY_HEADER));
+                    String body = bodies[Math.min(requests.size(), bodies.length) - 1];
+                    return Mono.just(body == null
+                            ? ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build()
+                            : ClientResponse.create(HttpStatus.OK)
+                                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                    .body(body)
+                                    .build());
+                })
+                .build();
+        TalkTimeBalanceCache cache = new TalkTimeBalanceCache(true, 30_000, 60, 1_000);
+        cache.fetched(A_PARTY, 600); // an earlier call, since ended unanswered
+        cache.released(A_PARTY, 600, 0);
+        TalkTimeService cached = new TalkTimeService(webClient, eslService, deadlineService, journal, outbox, cache);
+        ReflectionTestUtils.setField(cached, "reconcileMaxAttempts", 5);
+        ReflectionTestUtils.setField(cached, "reconcileInitialBackoffMillis", 5L);
+        ReflectionTestUtils.setField(cached, "reconcileMaxBackoffMillis", 20L);
+        return cached;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.voicechanger.service.rtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RtpFrameBatcherTest {
+
+    private static final InetSocketAddress TARGET = new InetSocketAddress("127.0.0.1", 40000);
+
+    private final List<Integer> batches = new ArrayList<>();
+    private boolean nativeOk = true;
+
+    // Stands in for the native batch call: records the batch size and leaves the samples alone
+    private RtpFrameBatcher batcher(int maxBatch) {
+        return new RtpFrameBatcher(maxBatch, 20, 1, (processors, lengths, frames, stride, count, threads) -> {
+            batches.add(count);
+            return nativeOk;
+        });
+    }
+
+    @Test
+    void aSecondFrameOfAStreamWaitsForTheNextTickInOrder() {
+        RtpFrameBatcher batcher = batcher(8);
+        EmbeddedChannel a = new EmbeddedChannel();
+        EmbeddedChannel b = new EmbeddedChannel();
+        RtpRelaySession sessionA = session(a);
+        RtpRelaySession sessionB = session(b);
+
+        batcher.submit(frame(sessionA, 1));
+        batcher.submit(frame(sessionA, 2));
+        batcher.submit(frame(sessionB, 1));
+        batcher.submit(frame(sessionA, 3));
+        batcher.processTick();
+        batcher.processTick();
+        batcher.processTick();
+        batcher.processTick();
+
+        assertEquals(List.of(2, 1, 1), batches);
+        assertEquals(List.of(1, 2, 3), sent(a));
+        assertEquals(List.of(1), sent(b));
+        assertEquals(2L, batcher.getStats().get("carriedOver"));
+    }
+
+    @Test
+    void framesBeyondAFullBatchAreCarriedOver() {
+        RtpFrameBatcher batcher = batcher(2);
+        EmbeddedChannel[] channels = {new EmbeddedChannel(), new EmbeddedChannel(), new EmbeddedChannel()};
+        for (EmbeddedChannel channel : channels) {
+            batcher.submit(frame(session(channel), 1));
+        }
+        nativeOk = false;
+        batcher.processTick();
+        batcher.processTick();
+
+        assertEquals(List.of(2, 1), batches);
+        for (EmbeddedChannel channel : channels) {
+            assertEquals(List.of(1), sent(channel)); // sent unchanged even when the batch failed
+        }
+        assertEquals(1L, batcher.getStats().get("carriedOver"));
+        assertEquals(2L, batcher.getStats().get("failedBatches"));
+    }
+
+    @Test
+    void framesOfAClosedSessionAreReleasedNotSent() {
+        RtpFrameBatcher batcher = batcher(8);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        RtpRelaySession session = session(channel);
+        RtpFrameBatcher.Frame first = frame(session, 1);
+        RtpFrameBatcher.Frame second = frame(session, 2);
+        RtpFrameBatcher.Frame late = frame(session, 3);
+
+        batcher.submit(first);
+        batcher.submit(second);
+        batcher.processTick(); // sends the first, carries the second
+        session.markClosed();
+        batcher.submit(late);
+        batcher.processTick();
+
+        assertEquals(List.of(1), batches);
+        assertEquals(List.of(1), sent(channel));
+        assertEquals(0, second.rtp().refCnt());
+        assertEquals(0, late.rtp().refCnt());
+    }
+
+    private static RtpRelaySession session(EmbeddedChannel channel) {
+        RtpRelaySession session = new RtpRelaySession("call", TARGET, null, null, 0, 0, 0);
+        session.bind(channel);
+        return session;
+    }
+
+    private static RtpFrameBatcher.Frame frame(RtpRelaySession session, int sequence) {
+        ByteBuf rtp = RtpPacket.writeHeader(Unpooled.buffer(), RtpPacket.PT_PCMU, false, sequence, 160L * sequence, 1);
+        rtp.writeZero(160);
+        return new RtpFrameBatcher.Frame(session, rtp, RtpPacket.HEADER_LENGTH, 160, RtpPacket.PT_PCMU, System.nanoTime());
+    }
+
+    // Sequence numbers of the packets the session sent, in order
+    private static List<Integer> sent(EmbeddedChannel channel) {
+        List<Integer> sequences = new ArrayList<>();
+        DatagramPacket packet;
+        while ((packet = channel.readOutbound()) != null) {
+            assertEquals(TARGET, packet.recipient());
+            sequences.add(RtpPacket.sequence(packet.content()));
+            packet.release();
+        }
+        assertNull(channel.readOutbound());
+        return sequences;
+    }
+}
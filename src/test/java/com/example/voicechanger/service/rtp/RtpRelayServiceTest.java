@@ -0,0 +1,184 @@
+package com.example.voicechanger.service.rtp;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Relays real UDP over loopback. Runs with or without the native library: without it, G.711
+ * passes through unchanged.
+ */
+class RtpRelayServiceTest {
+
+    private static final long SSRC = 0x1234ABCDL;
+
+    private final EventLoopGroup group = new NioEventLoopGroup(1);
+    private RtpRelayService relay;
+    private Endpoint caller;
+    private Endpoint target;
+    private InetSocketAddress relayAddress;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        relay = new RtpRelayService(true, "127.0.0.1", 47100, 47199, 1, 4, 300, false, 5, 0);
+        relay.start();
+        caller = new Endpoint(group);
+        target = new Endpoint(group);
+        relayAddress = new InetSocketAddress("127.0.0.1", relay.open("call-1", target.address(), 4, 2, 100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        relay.shutdown();
+        group.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void forwardsCallerAudioToTheTargetAndReturnsTargetAudioToTheCaller() throws Exception {
+        byte[] pcmu = rtp(RtpPacket.PT_PCMU, 1, SSRC, 160);
+        caller.send(pcmu, relayAddress);
+        byte[] forwarded = target.receive();
+        assertNotNull(forwarded);
+        assertEquals(pcmu.length, forwarded.length);
+        assertArrayEquals(Arrays.copyOf(pcmu, RtpPacket.HEADER_LENGTH), Arrays.copyOf(forwarded, RtpPacket.HEADER_LENGTH));
+
+        byte[] dynamic = rtp(96, 2, SSRC, 33); // not G.711: passed through as it is
+        caller.send(dynamic, relayAddress);
+        assertArrayEquals(dynamic, target.receive());
+
+        byte[] reply = rtp(RtpPacket.PT_PCMA, 7, 0x55L, 160);
+        target.send(reply, relayAddress);
+        assertArrayEquals(reply, caller.receive());
+    }
+
+    @Test
+    void strayPacketsDoNotTakeOverTheCallUntilTheCallerReallyMoves() throws Exception {
+        Endpoint other = new Endpoint(group);
+        caller.send(rtp(RtpPacket.PT_PCMU, 1, SSRC, 160), relayAddress);
+        assertNotNull(target.receive());
+
+        // One packet from elsewhere, even with the caller's SSRC, is dropped
+        other.send(rtp(RtpPacket.PT_PCMU, 2, SSRC, 160), relayAddress);
+        assertNull(target.receive(200));
+        target.send(rtp(RtpPacket.PT_PCMA, 1, 0x55L, 160), relayAddress);
+        assertNotNull(caller.receive());
+        assertNull(other.receive(200));
+        // The caller is still there, which starts the count over
+        caller.send(rtp(RtpPacket.PT_PCMU, 2, SSRC, 160), relayAddress);
+        assertNotNull(target.receive());
+
+        // A stream from a new address with the caller's SSRC is the caller after a NAT rebinding
+        for (int i = 0; i < RtpRelaySession.RELATCH_PACKETS; i++) {
+            other.send(rtp(RtpPacket.PT_PCMU, 3 + i, SSRC, 160), relayAddress);
+        }
+        assertNotNull(target.receive());
+        target.send(rtp(RtpPacket.PT_PCMA, 2, 0x55L, 160), relayAddress);
+        assertNotNull(other.receive());
+
+        Map<String, Object> stats = relay.getSessionStats().get(0);
+        assertEquals((long) RtpRelaySession.RELATCH_PACKETS, stats.get("rejected"));
+        assertEquals(1L, stats.get("relatched"));
+    }
+
+    @Test
+    void idleSessionsAreClosedAndTheirProcessorsReleased() throws Exception {
+        caller.send(rtp(RtpPacket.PT_PCMU, 1, SSRC, 160), relayAddress);
+        assertNotNull(target.receive());
+
+        // The sweep counts the close after the session is gone, and the pool gets its processor back later still
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!closedAndReleased() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Map<String, Object> stats = relay.getStats();
+        assertEquals(0, stats.get("activeSessions"));
+        assertEquals(1L, stats.get("idleClosed"));
+        Map<String, Object> pool = processorPool();
+        if (pool != null) {
+            // With the native library the session held a pooled processor; the close hands it back
+            assertEquals(1L, pool.get("requests"));
+            assertEquals(0, pool.get("busy"));
+        }
+
+        // The port is gone: nothing reaches the target any more
+        caller.send(rtp(RtpPacket.PT_PCMU, 2, SSRC, 160), relayAddress);
+        assertNull(target.receive(200));
+    }
+
+    private boolean closedAndReleased() {
+        Map<String, Object> pool = processorPool();
+        return Long.valueOf(1).equals(relay.getStats().get("idleClosed"))
+                && (pool == null || Integer.valueOf(0).equals(pool.get("busy")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> processorPool() {
+        return (Map<String, Object>) ((Map<String, Object>) relay.getStats().get("processors")).get("8000Hz");
+    }
+
+    private static byte[] rtp(int payloadType, int sequence, long ssrc, int payloadLength) {
+        ByteBuf packet = RtpPacket.writeHeader(Unpooled.buffer(), payloadType, false, sequence, 160L * sequence, ssrc);
+        for (int i = 0; i < payloadLength; i++) {
+            packet.writeByte(0x80 + (i * 7 & 0x3F));
+        }
+        return ByteBufUtil.getBytes(packet);
+    }
+
+    /**
+     * A UDP socket on loopback that queues what it receives.
+     */
+    private static final class Endpoint {
+        private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        private final Channel channel;
+
+        Endpoint(EventLoopGroup group) throws InterruptedException {
+            channel = new Bootstrap().group(group).channel(NioDatagramChannel.class)
+                    .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                            received.add(ByteBufUtil.getBytes(packet.content()));
+                        }
+                    })
+                    .bind("127.0.0.1", 0).sync().channel();
+        }
+
+        InetSocketAddress address() {
+            return (InetSocketAddress) channel.localAddress();
+        }
+
+        void send(byte[] packet, InetSocketAddress to) {
+            channel.writeAndFlush(new DatagramPacket(Unpooled.wrappedBuffer(packet), to)).syncUninterruptibly();
+        }
+
+        byte[] receive() throws InterruptedException {
+            return receive(2_000);
+        }
+
+        byte[] receive(long timeoutMillis) throws InterruptedException {
+            return received.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.voicechanger.service.rtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RtpStreamStatsTest {
+
+    private static final long FRAME_NANOS = 20_000_000L;
+
+    @Test
+    void jitterFollowsArrivalVariationAndLossCountsSequenceGaps() {
+        RtpStreamStats stats = new RtpStreamStats(8000);
+        long arrival = 0;
+        for (int i = 0; i < 50; i++) {
+            stats.onPacket(1, 65530 + i, 160L * i, arrival);
+            arrival += FRAME_NANOS;
+        }
+        assertEquals(0, stats.getJitterMillis(), 1e-9);
+        assertEquals(0, stats.getLost());
+
+        // Alternate 15 / 25 ms gaps for 20 ms of audio: every |D| is 5 ms
+        for (int i = 50; i < 500; i++) {
+            arrival += FRAME_NANOS + (i % 2 == 0 ? -5_000_000L : 5_000_000L);
+            stats.onPacket(1, (65530 + i) & 0xFFFF, 160L * i, arrival);
+        }
+        assertEquals(5, stats.getJitterMillis(), 0.01);
+
+        // 500 and 501 missing, then 500 arrives late
+        stats.onPacket(1, (65530 + 502) & 0xFFFF, 160L * 502, arrival += FRAME_NANOS);
+        stats.onPacket(1, (65530 + 500) & 0xFFFF, 160L * 500, arrival += FRAME_NANOS);
+        assertEquals(1, stats.getLost());
+        assertEquals(1, stats.getOutOfOrder());
+
+        // A new SSRC keeps the totals
+        stats.onPacket(2, 7, 0, arrival += FRAME_NANOS);
+        stats.onPacket(2, 9, 320, arrival += FRAME_NANOS);
+        assertEquals(2, stats.getLost());
+        assertEquals(504, stats.getPackets());
+    }
+
+    @Test
+    void payloadStartsAfterCsrcsAndExtensionAndStopsBeforePadding() {
+        ByteBuf packet = Unpooled.buffer();
+        packet.writeByte(0x80 | 0x20 | 0x10 | 2).writeByte(0x80 | RtpPacket.PT_PCMA)
+                .writeShort(4242).writeInt(0xFFFFFFF0).writeInt(0xCAFEBABE);
+        packet.writeInt(1).writeInt(2);                         // two CSRCs
+        packet.writeShort(0xBEDE).writeShort(1).writeInt(0);    // one-word extension
+        packet.writeBytes(new byte[160]).writeBytes(new byte[]{0, 0, 3});
+
+        int offset = RtpPacket.payloadOffset(packet);
+        assertEquals(12 + 8 + 8, offset);
+        assertEquals(160, RtpPacket.payloadLength(packet, offset));
+        assertEquals(RtpPacket.PT_PCMA, RtpPacket.payloadType(packet));
+        assertEquals(4242, RtpPacket.sequence(packet));
+        assertEquals(0xFFFFFFF0L, RtpPacket.timestamp(packet));
+        assertEquals(0xCAFEBABEL, RtpPacket.ssrc(packet));
+        assertEquals(-1, RtpPacket.payloadOffset(packet.slice(0, 24)));
+    }
+}
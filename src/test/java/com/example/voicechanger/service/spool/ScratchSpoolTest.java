@@ -0,0 +1,66 @@
+package com.example.voicechanger.service.spool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScratchSpoolTest {
+
+    @TempDir
+    Path dir;
+
+    private ScratchSpool spool;
+
+    @AfterEach
+    void tearDown() {
+        spool.shutdown();
+    }
+
+    @Test
+    void quotaBlocksUntilAFileIsClosed() throws IOException {
+        spool = new ScratchSpool(dir.toString(), false, 64 * 1024, 50, 600_000, 600_000);
+
+        ScratchSpool.ScratchFile first = spool.create("input_", ".mp3", 48 * 1024);
+        ScratchSpool.ScratchFile second = spool.create("input_", ".mp3", 16 * 1024);
+        assertNotEquals(first.getPath(), second.getPath());
+
+        assertThrows(IOException.class, () -> spool.create("input_", ".mp3", 1024));
+        assertEquals(1L, spool.getStats().get("rejections"));
+
+        first.close();
+        assertFalse(Files.exists(first.getPath()));
+        spool.create("input_", ".mp3", 32 * 1024).close();
+        first.close(); // second close must not return the reservation twice
+        assertEquals(16L * 1024, spool.getStats().get("reservedBytes"));
+    }
+
+    @Test
+    void reaperRemovesExpiredAndStrayFiles() throws IOException {
+        spool = new ScratchSpool(dir.toString(), false, 64 * 1024, 50, 1_000, 600_000);
+        ScratchSpool.ScratchFile fresh = spool.create("output_", ".wav", 1024);
+        ScratchSpool.ScratchFile expired = spool.create("output_", ".wav", 1024);
+        Path stray = Files.createFile(dir.resolve("input_leftover.mp3"));
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(expired.getPath(), old);
+        Files.setLastModifiedTime(stray, old);
+
+        spool.reap();
+
+        assertTrue(Files.exists(fresh.getPath()));
+        assertFalse(Files.exists(expired.getPath()));
+        assertFalse(Files.exists(stray));
+        assertEquals(2L, spool.getStats().get("reaped"));
+        assertEquals(1, spool.getStats().get("openFiles"));
+    }
+}